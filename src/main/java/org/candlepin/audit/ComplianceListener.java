@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.apache.log4j.Logger;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
+
+import com.google.inject.Inject;
+
+/**
+ * ComplianceListener - drops cached compliance statuses when the consumers or
+ * entitlements they were computed from change. Pool updates and imports can change
+ * any number of entitlements, so those drop every cached status.
+ */
+public class ComplianceListener implements EventListener {
+    private static Logger log = Logger.getLogger(ComplianceListener.class);
+
+    private ComplianceStatusCache cache;
+
+    @Inject
+    public ComplianceListener(ComplianceStatusCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        switch (e.getTarget()) {
+            case CONSUMER:
+            case ENTITLEMENT:
+                if (e.getConsumerId() != null) {
+                    cache.invalidate(e.getConsumerId());
+                }
+                break;
+            case POOL:
+                if (e.getType() == Event.Type.MODIFIED) {
+                    log.debug("Pool modified, dropping cached compliance statuses");
+                    cache.invalidateAll();
+                }
+                break;
+            case IMPORT:
+                cache.invalidateAll();
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+/**
+ * EntitySnapshot - the state of an entity when an event was created, only turned
+ * into JSON the first time the event asks for it. Events which are never sent
+ * never pay for serialization, and those which are get serialized by the event
+ * dispatchers rather than by the request which emitted them.
+ *
+ * The entity must be a detached copy, as it is read long after the request which
+ * captured it has moved on.
+ */
+class EntitySnapshot {
+
+    private final EventFactory factory;
+    private Object entity;
+    private String json;
+
+    EntitySnapshot(EventFactory factory, Object entity) {
+        this.factory = factory;
+        this.entity = entity;
+    }
+
+    synchronized String toJson() {
+        if (json == null) {
+            json = factory.entityToJson(entity);
+            entity = null;
+        }
+        return json;
+    }
+}
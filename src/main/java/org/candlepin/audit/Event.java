@@ -133,6 +133,13 @@ public class Event implements Persisted {
     @Transient
     private String newEntity;
 
+    // Entity state captured by the event factory, serialized into the old/new
+    // entity JSON above on first use:
+    @Transient
+    private transient EntitySnapshot oldSnapshot;
+    @Transient
+    private transient EntitySnapshot newSnapshot;
+
     @Transient
     private String messageText;
 
@@ -247,20 +254,38 @@ public class Event implements Persisted {
 
     @XmlTransient
     public String getOldEntity() {
+        if (oldSnapshot != null) {
+            return oldSnapshot.toJson();
+        }
         return oldEntity;
     }
 
     public void setOldEntity(String oldEntity) {
         this.oldEntity = oldEntity;
+        this.oldSnapshot = null;
+    }
+
+    void setOldSnapshot(EntitySnapshot snapshot) {
+        this.oldEntity = null;
+        this.oldSnapshot = snapshot;
     }
 
     @XmlTransient
     public String getNewEntity() {
+        if (newSnapshot != null) {
+            return newSnapshot.toJson();
+        }
         return newEntity;
     }
 
     public void setNewEntity(String newEntity) {
         this.newEntity = newEntity;
+        this.newSnapshot = null;
+    }
+
+    void setNewSnapshot(EntitySnapshot snapshot) {
+        this.newEntity = null;
+        this.newSnapshot = snapshot;
     }
 
     @Override
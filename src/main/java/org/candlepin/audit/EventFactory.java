@@ -14,6 +14,10 @@
  */
 package org.candlepin.audit;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeMap;
+
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.AnnotationIntrospector;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -21,11 +25,15 @@ import org.codehaus.jackson.map.introspect.JacksonAnnotationIntrospector;
 import org.codehaus.jackson.map.ser.impl.SimpleFilterProvider;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 import org.candlepin.auth.Principal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.jackson.HateoasBeanPropertyFilter;
 import org.candlepin.model.ActivationKey;
 import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.Environment;
 import org.candlepin.model.GuestId;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
@@ -39,11 +47,13 @@ import com.google.inject.Inject;
 public class EventFactory {
     private final PrincipalProvider principalProvider;
     private final ObjectMapper mapper;
+    private final int maxConsumerFacts;
     private static Logger logger = Logger.getLogger(EventFactory.class);
 
     @Inject
-    public EventFactory(PrincipalProvider principalProvider) {
+    public EventFactory(PrincipalProvider principalProvider, Config config) {
         this.principalProvider = principalProvider;
+        this.maxConsumerFacts = config.getInt(ConfigProperties.AUDIT_CONSUMER_FACTS_MAX);
 
         mapper = new ObjectMapper();
 
@@ -65,12 +75,12 @@ public class EventFactory {
     }
 
     public Event consumerCreated(Consumer newConsumer) {
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
         Event e = new Event(Event.Type.CREATED, Event.Target.CONSUMER,
             newConsumer.getName(), principal, newConsumer.getOwner().getId(),
-            newConsumer.getId(), newConsumer.getId(), null, newEntityJson,
+            newConsumer.getId(), newConsumer.getId(), null, null,
             null, null);
+        e.setNewSnapshot(consumerSnapshot(newConsumer));
         return e;
     }
 
@@ -86,33 +96,34 @@ public class EventFactory {
     }
 
     public Event consumerModified(Consumer newConsumer) {
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
 
-        return new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
+        Event e = new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
             newConsumer.getName(), principal, newConsumer.getOwner().getId(),
-            newConsumer.getId(), newConsumer.getId(), null, newEntityJson,
+            newConsumer.getId(), newConsumer.getId(), null, null,
             null, null);
+        e.setNewSnapshot(consumerSnapshot(newConsumer));
+        return e;
     }
 
     public Event consumerModified(Consumer oldConsumer, Consumer newConsumer) {
-        String oldEntityJson = entityToJson(oldConsumer);
-        String newEntityJson = entityToJson(newConsumer);
         Principal principal = principalProvider.get();
 
-        return new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
+        Event e = new Event(Event.Type.MODIFIED, Event.Target.CONSUMER,
             oldConsumer.getName(), principal, oldConsumer.getOwner().getId(),
-            oldConsumer.getId(), oldConsumer.getId(), oldEntityJson, newEntityJson,
+            oldConsumer.getId(), oldConsumer.getId(), null, null,
             null, null);
+        e.setOldSnapshot(consumerSnapshot(oldConsumer));
+        e.setNewSnapshot(consumerSnapshot(newConsumer));
+        return e;
     }
 
     public Event consumerDeleted(Consumer oldConsumer) {
-        String oldEntityJson = entityToJson(oldConsumer);
-
         Event e = new Event(Event.Type.DELETED, Event.Target.CONSUMER,
             oldConsumer.getName(), principalProvider.get(), oldConsumer
                 .getOwner().getId(), oldConsumer.getId(), oldConsumer.getId(),
-            oldEntityJson, null, null, null);
+            null, null, null, null);
+        e.setOldSnapshot(consumerSnapshot(oldConsumer));
         return e;
     }
 
@@ -212,8 +223,9 @@ public class EventFactory {
         Principal principal = principalProvider.get();
         Event e = new Event(Event.Type.CREATED, Event.Target.EXPORT, consumer.getName(),
             principal, consumer.getOwner().getId(), consumer.getId(),
-            consumer.getId(), null, entityToJson(consumer),
+            consumer.getId(), null, null,
             null, null);
+        e.setNewSnapshot(consumerSnapshot(consumer));
         return e;
     }
 
@@ -271,7 +283,57 @@ public class EventFactory {
         return event;
     }
 
-    private String entityToJson(Object entity) {
+    /**
+     * Copies the parts of a consumer which go into event JSON, so the JSON can be
+     * built later, once the event is sent, no matter what happens to the consumer
+     * in the meantime. Only the first facts in key order are kept, and the
+     * environment is reduced to the fields identifying it.
+     */
+    private EntitySnapshot consumerSnapshot(Consumer consumer) {
+        Consumer copy = new Consumer();
+        copy.setId(consumer.getId());
+        copy.setUuid(consumer.getUuid());
+        copy.setName(consumer.getName());
+        copy.setUsername(consumer.getUsername());
+        copy.setType(consumer.getType());
+        copy.setOwner(consumer.getOwner());
+        copy.setIdCert(consumer.getIdCert());
+        copy.setEntitlementStatus(consumer.getEntitlementStatus());
+        copy.setEntitlementCount(consumer.getEntitlementCount());
+        copy.setServiceLevel(consumer.getServiceLevel());
+        copy.setReleaseVer(consumer.getReleaseVer());
+        copy.setAutoheal(consumer.isAutoheal());
+        copy.setCanActivate(consumer.isCanActivate());
+        copy.setLastCheckin(consumer.getLastCheckin());
+        copy.setCreated(consumer.getCreated());
+        copy.setUpdated(consumer.getUpdated());
+
+        if (consumer.getFacts() != null) {
+            TreeMap<String, String> facts =
+                new TreeMap<String, String>(consumer.getFacts());
+            while (facts.size() > maxConsumerFacts) {
+                facts.remove(facts.lastKey());
+            }
+            copy.setFacts(facts);
+        }
+        if (consumer.getInstalledProducts() != null) {
+            copy.setInstalledProducts(new HashSet<ConsumerInstalledProduct>(
+                consumer.getInstalledProducts()));
+        }
+        if (consumer.getGuestIds() != null) {
+            copy.setGuestIds(new ArrayList<GuestId>(consumer.getGuestIds()));
+        }
+        Environment env = consumer.getEnvironment();
+        if (env != null) {
+            Environment envCopy = new Environment(env.getId(), env.getName(),
+                env.getOwner());
+            envCopy.setDescription(env.getDescription());
+            copy.setEnvironment(envCopy);
+        }
+        return new EntitySnapshot(this, copy);
+    }
+
+    String entityToJson(Object entity) {
         String newEntityJson = "";
         // TODO: Throw an auditing exception here
 
@@ -15,6 +15,7 @@
 package org.candlepin.audit;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 
 import org.apache.log4j.Logger;
@@ -26,6 +27,8 @@ import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Subscription;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.TransportConfiguration;
 import org.hornetq.api.core.client.ClientMessage;
@@ -35,8 +38,26 @@ import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.HornetQClient;
 import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 /**
  * EventSink - Reliably dispatches events to all configured listeners.
+ *
+ * Events emitted inside a transaction are held until it completes: they are
+ * queued once it commits and dropped if it rolls back. Queued events are
+ * serialized and sent to hornetq in batches by background dispatcher threads,
+ * each with its own session, so callers never wait on the message journal
+ * unless the queue is full.
  */
 @Singleton
 public class EventSinkImpl implements EventSink {
@@ -44,21 +65,48 @@ public class EventSinkImpl implements EventSink {
     private static Logger log = Logger.getLogger(EventSinkImpl.class);
     private EventFactory eventFactory;
     private ClientSessionFactory factory;
-    private ClientSession clientSession;
-    private ClientProducer clientProducer;
     private int largeMsgSize;
     private ObjectMapper mapper;
+    private Provider<EntityManager> entityManager;
+
+    private BlockingQueue<Event> queue;
+    private int batchSize;
+    private List<Thread> dispatchers = new ArrayList<Thread>();
+    private final ThreadLocal<PendingEvents> pending = new ThreadLocal<PendingEvents>();
+
+    // events queued or being sent, flush() waits for this to reach zero
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Object idle = new Object();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong rolledBackCount = new AtomicLong();
 
     @Inject
-    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper) {
+    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper,
+        Config config, Provider<EntityManager> entityManager) {
         this.eventFactory = eventFactory;
         this.mapper = mapper;
+        this.entityManager = entityManager;
+        this.batchSize = Math.max(1,
+            config.getInt(ConfigProperties.AUDIT_DISPATCH_BATCH_SIZE));
+        this.queue = new LinkedBlockingQueue<Event>(
+            config.getInt(ConfigProperties.AUDIT_DISPATCH_QUEUE_SIZE));
+        int threads = Math.max(1,
+            config.getInt(ConfigProperties.AUDIT_DISPATCH_THREADS));
+
+        List<Dispatcher> created = new ArrayList<Dispatcher>();
         try {
-            largeMsgSize = new Config().getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
+            largeMsgSize = config.getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
 
             factory =  createClientSessionFactory();
-            clientSession = factory.createSession();
-            clientProducer = clientSession.createProducer(EventSource.QUEUE_ADDRESS);
+            for (int i = 0; i < threads; i++) {
+                // sends are transacted, each batch is one commit
+                ClientSession session = factory.createSession(false, true);
+                created.add(new Dispatcher(session,
+                    session.createProducer(EventSource.QUEUE_ADDRESS)));
+            }
         }
         catch (HornetQException e) {
             throw new RuntimeException(e);
@@ -66,6 +114,13 @@ public class EventSinkImpl implements EventSink {
         catch (Exception e) {
             throw new RuntimeException(e);
         }
+
+        for (int i = 0; i < created.size(); i++) {
+            Thread thread = new Thread(created.get(i), "event-dispatcher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            dispatchers.add(thread);
+        }
     }
 
     protected ClientSessionFactory createClientSessionFactory() throws Exception {
@@ -80,14 +135,245 @@ public class EventSinkImpl implements EventSink {
         if (log.isDebugEnabled()) {
             log.debug("Sending event - " + event);
         }
+
+        Transaction transaction = activeTransaction();
+        if (transaction == null) {
+            enqueue(event);
+            return;
+        }
+
+        PendingEvents events = pending.get();
+        if (events == null || events.transaction != transaction) {
+            events = new PendingEvents(transaction);
+            transaction.registerSynchronization(events);
+            pending.set(events);
+        }
+        events.add(event);
+    }
+
+    private Transaction activeTransaction() {
+        try {
+            Session session = (Session) entityManager.get().getDelegate();
+            Transaction transaction = session.getTransaction();
+            return transaction != null && transaction.isActive() ? transaction : null;
+        }
+        catch (RuntimeException e) {
+            log.warn("Unable to determine the current transaction, " +
+                "sending event immediately", e);
+            return null;
+        }
+    }
+
+    private void enqueue(Event event) {
+        outstanding.incrementAndGet();
+        if (queue.offer(event)) {
+            return;
+        }
+
+        blockedCount.incrementAndGet();
+        log.warn("Event queue is full (" + queue.size() +
+            " events), waiting for the dispatchers");
         try {
-            ClientMessage message = clientSession.createMessage(true);
-            String eventString = mapper.writeValueAsString(event);
-            message.getBodyBuffer().writeString(eventString);
-            clientProducer.send(message);
+            queue.put(event);
         }
-        catch (Exception e) {
-            log.error("Error while trying to send event: " + event, e);
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedCount.incrementAndGet();
+            done(1);
+            log.error("Interrupted while queueing event: " + event);
+        }
+    }
+
+    private void done(int count) {
+        if (outstanding.addAndGet(-count) == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every event queued so far has been sent (or has failed).
+     */
+    public void flush() {
+        synchronized (idle) {
+            while (outstanding.get() > 0) {
+                try {
+                    idle.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends whatever is still queued, then stops the dispatchers and closes
+     * their sessions.
+     */
+    public void shutDown() {
+        flush();
+        for (Thread thread : dispatchers) {
+            thread.interrupt();
+        }
+        for (Thread thread : dispatchers) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("Event dispatchers stopped: " + sentCount.get() + " sent, " +
+            failedCount.get() + " failed, " + rolledBackCount.get() +
+            " dropped on rollback, " + blockedCount.get() + " times full");
+    }
+
+    /**
+     * @return number of events waiting for a dispatcher.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return how many times a caller had to wait for room in the queue.
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    public long getRolledBackCount() {
+        return rolledBackCount.get();
+    }
+
+    /**
+     * Events emitted during one transaction, queued after it commits.
+     */
+    private class PendingEvents implements Synchronization {
+        private final Transaction transaction;
+        private List<Event> events = new ArrayList<Event>();
+
+        PendingEvents(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        void add(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // nothing to do until we know the outcome
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+            List<Event> completed = events;
+            events = new ArrayList<Event>();
+
+            if (status == Status.STATUS_COMMITTED) {
+                for (Event event : completed) {
+                    enqueue(event);
+                }
+            }
+            else if (!completed.isEmpty()) {
+                rolledBackCount.addAndGet(completed.size());
+                log.debug("Dropping " + completed.size() +
+                    " events of a rolled back transaction");
+            }
+        }
+    }
+
+    /**
+     * Takes batches off the queue and sends them through its own session,
+     * committing once per batch.
+     */
+    private class Dispatcher implements Runnable {
+        private final ClientSession session;
+        private final ClientProducer producer;
+
+        Dispatcher(ClientSession session, ClientProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+
+        @Override
+        public void run() {
+            List<Event> batch = new ArrayList<Event>(batchSize);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+                    try {
+                        send(batch);
+                    }
+                    finally {
+                        done(batch.size());
+                        batch.clear();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // shutting down
+            }
+            finally {
+                try {
+                    session.close();
+                }
+                catch (HornetQException e) {
+                    log.warn("Unable to close event session", e);
+                }
+            }
+        }
+
+        private void send(List<Event> batch) {
+            int sent = 0;
+            for (Event event : batch) {
+                try {
+                    ClientMessage message = session.createMessage(true);
+                    String eventString = mapper.writeValueAsString(event);
+                    message.getBodyBuffer().writeString(eventString);
+                    producer.send(message);
+                    sent++;
+                }
+                catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    log.error("Error while trying to send event: " + event, e);
+                }
+            }
+            if (sent == 0) {
+                return;
+            }
+
+            try {
+                session.commit();
+                sentCount.addAndGet(sent);
+            }
+            catch (HornetQException e) {
+                failedCount.addAndGet(sent);
+                log.error("Error while committing " + sent + " events", e);
+                try {
+                    session.rollback();
+                }
+                catch (HornetQException re) {
+                    log.warn("Unable to roll back event session", re);
+                }
+            }
         }
     }
 
@@ -49,9 +49,12 @@ public class HornetqContextListener {
 
     private HornetQServer hornetqServer;
     private EventSource eventSource;
+    private EventSinkImpl eventSink;
 
     public void contextDestroyed() {
         if (hornetqServer != null) {
+            // let queued events reach the journal before it goes away
+            eventSink.shutDown();
             eventSource.shutDown();
             try {
                 hornetqServer.stop();
@@ -116,6 +119,7 @@ public class HornetqContextListener {
         List<String> listeners = Lists.newArrayList(candlepinConfig
             .getStringArray(ConfigProperties.AUDIT_LISTENERS));
 
+        eventSink = injector.getInstance(EventSinkImpl.class);
         eventSource = injector.getInstance(EventSource.class);
         for (int i = 0; i < listeners.size(); i++) {
             try {
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.OwnerInfoCurator;
+
+import com.google.inject.Inject;
+
+/**
+ * OwnerInfoListener - marks an owner's stored owner info dirty whenever one of
+ * its consumers, entitlements or pools changes, so it is recounted before it
+ * is served again.
+ */
+public class OwnerInfoListener implements EventListener {
+    private static Logger log = Logger.getLogger(OwnerInfoListener.class);
+
+    private OwnerInfoCurator ownerInfoCurator;
+
+    @Inject
+    public OwnerInfoListener(OwnerInfoCurator ownerInfoCurator) {
+        this.ownerInfoCurator = ownerInfoCurator;
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        if (e.getOwnerId() == null) {
+            return;
+        }
+
+        switch (e.getTarget()) {
+            case CONSUMER:
+            case ENTITLEMENT:
+            case POOL:
+                if (log.isDebugEnabled()) {
+                    log.debug("Owner info of " + e.getOwnerId() + " is out of date");
+                }
+                ownerInfoCurator.markDirty(e.getOwnerId());
+                break;
+            default:
+                break;
+        }
+    }
+}
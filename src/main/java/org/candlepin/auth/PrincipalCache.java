@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * PrincipalCache - remembers which consumers recently authenticated, keyed
+ * by consumer uuid plus the serial of the identity certificate they presented
+ * (null for header and oauth authentication).
+ *
+ * Only the consumer's database id is kept, never the entity itself, so every
+ * request still builds its principal from its own session. A fresh entry lets
+ * authentication skip the deleted consumer check, and lets the consumer be
+ * loaded by primary key; later lookups of the same uuid in that request are
+ * then answered from the session without going back to the database.
+ * Entries expire after a short time, and are dropped when the consumer is
+ * deleted or its identity certificate is regenerated.
+ */
+@Singleton
+public class PrincipalCache {
+
+    private final long ttl;
+    private final Map<String, Entry> entries;
+
+    @Inject
+    public PrincipalCache(Config config) {
+        this.ttl = config.getInt(ConfigProperties.PRINCIPAL_CACHE_TTL) * 1000L;
+        final int max = config.getInt(ConfigProperties.PRINCIPAL_CACHE_MAX);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    /**
+     * @param uuid consumer uuid
+     * @param serial serial of the identity certificate presented, or null
+     * @return true if this consumer authenticated with the same credentials
+     * recently enough to skip the deleted consumer check.
+     */
+    public synchronized boolean isAuthenticated(String uuid, BigInteger serial) {
+        Entry entry = entries.get(uuid);
+        if (entry == null || !entry.authenticated || entry.expires < now()) {
+            return false;
+        }
+        return serial == null ? entry.serial == null : serial.equals(entry.serial);
+    }
+
+    /**
+     * @param uuid consumer uuid
+     * @return database id of the consumer with this uuid, or null if unknown.
+     */
+    public synchronized String getConsumerId(String uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < now()) {
+            entries.remove(uuid);
+            return null;
+        }
+        return entry.consumerId;
+    }
+
+    /**
+     * Records a successful authentication.
+     *
+     * @param uuid consumer uuid
+     * @param serial serial of the identity certificate presented, or null
+     * @param consumerId database id of the consumer
+     */
+    public synchronized void authenticated(String uuid, BigInteger serial,
+        String consumerId) {
+        entries.put(uuid, new Entry(consumerId, serial, true, now() + ttl));
+    }
+
+    /**
+     * Records the database id of a consumer found by uuid, without marking
+     * it authenticated. An existing authentication is left in place.
+     *
+     * @param uuid consumer uuid
+     * @param consumerId database id of the consumer
+     */
+    public synchronized void found(String uuid, String consumerId) {
+        Entry entry = entries.get(uuid);
+        if (entry == null || !consumerId.equals(entry.consumerId)) {
+            entries.put(uuid, new Entry(consumerId, null, false, now() + ttl));
+        }
+    }
+
+    /**
+     * Forgets everything known about a consumer.
+     *
+     * @param uuid consumer uuid
+     */
+    public synchronized void invalidate(String uuid) {
+        entries.remove(uuid);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Entry {
+        private final String consumerId;
+        private final BigInteger serial;
+        private final boolean authenticated;
+        private final long expires;
+
+        Entry(String consumerId, BigInteger serial, boolean authenticated,
+            long expires) {
+            this.consumerId = consumerId;
+            this.serial = serial;
+            this.authenticated = authenticated;
+            this.expires = expires;
+        }
+    }
+}
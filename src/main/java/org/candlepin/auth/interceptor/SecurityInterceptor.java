@@ -267,12 +267,15 @@ public class SecurityInterceptor implements MethodInterceptor {
                 deletedConsumerCurator = injector.getInstance(DeletedConsumerCurator.class);
             }
 
-            if (deletedConsumerCurator.countByConsumerUuid(key) > 0) {
+            // Usually the consumer the request authenticated as, already in the
+            // session; only a missing consumer needs the deleted check.
+            Consumer consumer = consumerCurator.findByUuid(key);
+            if (consumer == null && deletedConsumerCurator.countByConsumerUuid(key) > 0) {
                 log.debug("Key " + key + " is deleted, throwing GoneException");
                 throw new GoneException("Consumer " + key + " has been deleted", key);
             }
 
-            return consumerCurator.findByUuid(key);
+            return consumer;
         }
     }
 
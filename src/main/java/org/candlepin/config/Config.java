@@ -196,6 +196,17 @@ public class Config {
         return getBoolean(ConfigProperties.ENABLE_CERT_V3);
     }
 
+    /**
+     * Returns true if best pool selection should use the Java selector rather than
+     * the select_pool_global javascript rule.
+     *
+     * @return if the java pool selection engine is configured.
+     */
+    public boolean javaPoolSelectionEnabled() {
+        return ConfigProperties.POOL_SELECTION_JAVA.equalsIgnoreCase(
+            getString(ConfigProperties.POOL_SELECTION_ENGINE));
+    }
+
     protected Map<String, String> loadProperties() {
         try {
             return new ConfigurationFileLoader()
@@ -23,6 +23,8 @@ import org.candlepin.pinsetter.tasks.CancelJobJob;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
 import org.candlepin.pinsetter.tasks.ImportRecordJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.OwnerInfoRefreshJob;
+import org.candlepin.pinsetter.tasks.PoolCounterReconcilerJob;
 import org.candlepin.pinsetter.tasks.StatisticHistoryTask;
 
 /**
@@ -45,13 +47,23 @@ public class ConfigProperties {
     public static final String HORNETQ_BASE_DIR = "candlepin.audit.hornetq.base_dir";
     public static final String HORNETQ_LARGE_MSG_SIZE =
                                       "candlepin.audit.hornetq.large_msg_size";
+    public static final String AUDIT_DISPATCH_THREADS =
+                                      "candlepin.audit.dispatch.threads";
+    public static final String AUDIT_DISPATCH_BATCH_SIZE =
+                                      "candlepin.audit.dispatch.batch_size";
+    public static final String AUDIT_DISPATCH_QUEUE_SIZE =
+                                      "candlepin.audit.dispatch.queue_size";
     public static final String AUDIT_LISTENERS = "candlepin.audit.listeners";
+    public static final String AUDIT_CONSUMER_FACTS_MAX =
+                                      "candlepin.audit.consumer_facts.max";
     public static final String AUDIT_LOG_FILE = "candlepin.audit.log_file";
     public static final String AUDIT_LOG_VERBOSE = "candlepin.audit.log_verbose";
 
     public static final String PRETTY_PRINT = "candlepin.pretty_print";
     public static final String REVOKE_ENTITLEMENT_IN_FIFO_ORDER =
                                       "candlepin.entitlement.revoke.order.fifo";
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.keypair_pool.size";
+    public static final String KEYPAIR_POOL_THREADS = "candlepin.keypair_pool.threads";
     public static final String ACTIVATION_DEBUG_PREFIX =
                                       "candlepin.subscription.activation.debug_prefix";
 
@@ -63,6 +75,8 @@ public class ConfigProperties {
     public static final String SSL_AUTHENTICATION = "candlepin.auth.ssl.enable";
     public static final String OAUTH_AUTHENTICATION = "candlepin.auth.oauth.enable";
     public static final String BASIC_AUTHENTICATION = "candlepin.auth.basic.enable";
+    public static final String PRINCIPAL_CACHE_TTL = "candlepin.auth.principal_cache.ttl";
+    public static final String PRINCIPAL_CACHE_MAX = "candlepin.auth.principal_cache.max";
 
     // Pinsetter
     public static final String TASKS = "pinsetter.tasks";
@@ -73,7 +87,9 @@ public class ConfigProperties {
         CertificateRevocationListTask.class.getName(),
         JobCleaner.class.getName(), ImportRecordJob.class.getName(),
         StatisticHistoryTask.class.getName(),
-        CancelJobJob.class.getName()};
+        CancelJobJob.class.getName(),
+        PoolCounterReconcilerJob.class.getName(),
+        OwnerInfoRefreshJob.class.getName()};
 
     public static final String SYNC_WORK_DIR = "candlepin.sync.work_dir";
     public static final String CONSUMER_FACTS_MATCHER =
@@ -97,9 +113,35 @@ public class ConfigProperties {
         "candlepin.passphrase.path";
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
+    public static final String PRODUCT_CACHE_TTL = "candlepin.cache.product_cache_ttl";
+    public static final String OWNER_INFO_MAX_AGE = "candlepin.owner_info.max_age";
+    public static final String COMPLIANCE_CACHE_BUCKET =
+        "candlepin.compliance.cache.bucket";
+    public static final String COMPLIANCE_CACHE_MAX = "candlepin.compliance.cache.max";
+    public static final String CONTENT_PAYLOAD_CACHE_MAX =
+        "candlepin.cache.content_payload_cache_max";
 
     public static final String ENABLE_CERT_V3 = "candlepin.enable_cert_v3";
 
+    public static final String POOL_SELECTION_ENGINE =
+        "candlepin.entitlement.pool_selection";
+    public static final String POOL_SELECTION_RULES = "rules";
+    public static final String POOL_SELECTION_JAVA = "java";
+
+    public static final String REFRESH_POOLS_CHUNK_SIZE =
+        "candlepin.refresh_pools.chunk_size";
+    public static final String REFRESH_POOLS_THREADS = "candlepin.refresh_pools.threads";
+
+    public static final String STATISTICS_THREADS = "candlepin.statistics.threads";
+
+    public static final String ENTITLEMENT_REGEN_BATCH_SIZE =
+        "candlepin.entitlement_regen.batch_size";
+    public static final String ENTITLEMENT_REGEN_SIGNING_THREADS =
+        "candlepin.entitlement_regen.signing_threads";
+
+    public static final String HYPERVISOR_CHECKIN_CHUNK_SIZE =
+        "candlepin.hypervisor.checkin.chunk_size";
+
     public static final Map<String, String> DEFAULT_PROPERTIES =
         new HashMap<String, String>() {
 
@@ -116,13 +158,39 @@ public class ConfigProperties {
 
                 this.put(HORNETQ_BASE_DIR, "/var/lib/candlepin/hornetq");
                 this.put(HORNETQ_LARGE_MSG_SIZE, new Integer(10 * 1024).toString());
+
+                /**
+                 * Events are sent to hornetq after their transaction commits, by
+                 * this many background threads, each committing up to batch_size
+                 * messages at a time. Once queue_size events are waiting, callers
+                 * block until the dispatchers catch up.
+                 */
+                this.put(AUDIT_DISPATCH_THREADS, "2");
+                this.put(AUDIT_DISPATCH_BATCH_SIZE, "50");
+                this.put(AUDIT_DISPATCH_QUEUE_SIZE, "10000");
                 this.put(AUDIT_LISTENERS,
                     "org.candlepin.audit.DatabaseListener," +
                         "org.candlepin.audit.LoggingListener," +
-                        "org.candlepin.audit.ActivationListener");
+                        "org.candlepin.audit.ActivationListener," +
+                        "org.candlepin.audit.OwnerInfoListener," +
+                        "org.candlepin.audit.ComplianceListener");
                 this.put(AUDIT_LOG_FILE, "/var/log/candlepin/audit.log");
                 this.put(AUDIT_LOG_VERBOSE, "false");
 
+                /**
+                 * Consumers carried by events keep at most this many of their facts,
+                 * the first ones in key order.
+                 */
+                this.put(AUDIT_CONSUMER_FACTS_MAX, "100");
+
+                /**
+                 * Number of consumer key pairs generated ahead of time, and the
+                 * number of low priority threads keeping that reserve full.
+                 * A size of 0 generates every key pair when it is needed.
+                 */
+                this.put(KEYPAIR_POOL_SIZE, "50");
+                this.put(KEYPAIR_POOL_THREADS, "1");
+
                 this.put(PRETTY_PRINT, "false");
                 this.put(REVOKE_ENTITLEMENT_IN_FIFO_ORDER, "true");
                 this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
@@ -134,6 +202,14 @@ public class ConfigProperties {
                 this.put(OAUTH_AUTHENTICATION, "true");
                 this.put(BASIC_AUTHENTICATION, "true");
 
+                /**
+                 * Seconds an authenticated consumer is trusted without checking
+                 * again whether it was deleted, and the number of consumers
+                 * remembered at once.
+                 */
+                this.put(PRINCIPAL_CACHE_TTL, "30");
+                this.put(PRINCIPAL_CACHE_MAX, "10000");
+
                 // By default, environments should be hidden so clients do not need to
                 // submit one when registering.
                 this.put(HIDDEN_RESOURCES, "environments");
@@ -177,10 +253,73 @@ public class ConfigProperties {
                  */
                 this.put(PRODUCT_CACHE_MAX, "100");
 
+                /**
+                 *  Defines how many seconds a cached product is used before it is
+                 *  looked up again, to pick up products changed upstream.
+                 */
+                this.put(PRODUCT_CACHE_TTL, "600");
+
+                /**
+                 *  Defines the maximum number of compressed content sets kept for
+                 *  v3 entitlement certificates. Each entry is one set of content
+                 *  paths shared by every certificate granting that content.
+                 */
+                this.put(CONTENT_PAYLOAD_CACHE_MAX, "200");
+
+                /**
+                 * Seconds a stored owner info is served before being recounted,
+                 * even if the owner did not change, so that pools starting and
+                 * expiring are reflected. 0 recounts on every request.
+                 */
+                this.put(OWNER_INFO_MAX_AGE, "3600");
+
+                /**
+                 * Seconds a computed compliance status is reused for, as long as
+                 * the consumer's entitlements, facts and installed products and
+                 * the rules are unchanged. 0 disables the compliance cache. The
+                 * cache is kept per node, so other changes made through another
+                 * node can be missed for up to this long.
+                 */
+                this.put(COMPLIANCE_CACHE_BUCKET, "3600");
+                this.put(COMPLIANCE_CACHE_MAX, "10000");
+
                 /**
                  * By default, disable cert v3.
                  */
                 this.put(ENABLE_CERT_V3, "false");
+
+                /**
+                 * Engine used to select the best pools when autobinding/healing.
+                 * "rules" runs select_pool_global from the javascript rules,
+                 * "java" uses the polynomial greedy selector instead.
+                 */
+                this.put(POOL_SELECTION_ENGINE, POOL_SELECTION_RULES);
+
+                /**
+                 * Refreshing pools commits after every chunk of this many
+                 * subscriptions. With more than one thread, chunks are refreshed
+                 * in parallel, each in its own session.
+                 */
+                this.put(REFRESH_POOLS_CHUNK_SIZE, "100");
+                this.put(REFRESH_POOLS_THREADS, "1");
+
+                /**
+                 * Owners whose statistics are collected at the same time by the
+                 * nightly statistics run, each in a transaction of its own.
+                 */
+                this.put(STATISTICS_THREADS, "1");
+
+                /**
+                 * Entitlement certificates are regenerated this many at a time.
+                 * The signing threads default to the number of processors.
+                 */
+                this.put(ENTITLEMENT_REGEN_BATCH_SIZE, "100");
+
+                /**
+                 * Hypervisor check-ins commit after every chunk of this many
+                 * hosts, so a failure only loses the hosts of its own chunk.
+                 */
+                this.put(HYPERVISOR_CHECKIN_CHUNK_SIZE, "50");
             }
         };
     public static final String CRL_FILE_PATH = "candlepin.crl.file";
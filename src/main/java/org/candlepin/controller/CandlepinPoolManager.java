@@ -16,6 +16,7 @@ package org.candlepin.controller;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -23,7 +24,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -64,6 +64,7 @@ import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.persist.Transactional;
 
 /**
@@ -87,6 +88,7 @@ public class CandlepinPoolManager implements PoolManager {
     private ComplianceRules complianceRules;
     private ProductCache productCache;
     private EnvironmentCurator envCurator;
+    private Provider<CandlepinPoolManager> workerProvider;
 
     /**
      * @param poolCurator
@@ -94,6 +96,7 @@ public class CandlepinPoolManager implements PoolManager {
      * @param sink
      * @param eventFactory
      * @param config
+     * @param workerProvider pool managers for the threads of a parallel refresh
      */
     @Inject
     public CandlepinPoolManager(PoolCurator poolCurator,
@@ -103,7 +106,7 @@ public class CandlepinPoolManager implements PoolManager {
         EventFactory eventFactory, Config config, Enforcer enforcer,
         PoolRules poolRules, EntitlementCurator curator1, ConsumerCurator consumerCurator,
         EntitlementCertificateCurator ecC, ComplianceRules complianceRules,
-        EnvironmentCurator envCurator) {
+        EnvironmentCurator envCurator, Provider<CandlepinPoolManager> workerProvider) {
 
         this.poolCurator = poolCurator;
         this.subAdapter = subAdapter;
@@ -119,16 +122,28 @@ public class CandlepinPoolManager implements PoolManager {
         this.complianceRules = complianceRules;
         this.productCache = productCache;
         this.envCurator = envCurator;
+        this.workerProvider = workerProvider;
     }
 
-    Set<Entitlement> refreshPoolsWithoutRegeneration(Owner owner) {
+    /**
+     * Work out what a refresh of the owner's pools has to do, without changing any
+     * pools yet. Expired subscriptions are deleted here, their pools are left to be
+     * deleted along with the pools of subscriptions which disappeared.
+     *
+     * @param owner owner to refresh
+     * @param subs receives the subscriptions whose pools need creating or updating
+     * @param knownPools receives the current pools of those subscriptions
+     * @param orphans receives the pools which no longer have a subscription
+     */
+    void planPoolRefresh(Owner owner, List<Subscription> subs,
+        Map<String, List<Pool>> knownPools, List<Pool> orphans) {
         log.debug("Refreshing pools");
 
-        List<Subscription> subs = subAdapter.getSubscriptions(owner);
+        List<Subscription> ownerSubs = subAdapter.getSubscriptions(owner);
 
         if (log.isDebugEnabled()) {
             log.debug("Found subscriptions: ");
-            for (Subscription sub : subs) {
+            for (Subscription sub : ownerSubs) {
                 log.debug("   " + sub);
             }
         }
@@ -156,8 +171,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
-        Set<Entitlement> entitlementsToRegen = Util.newSet();
-        for (Subscription sub : subs) {
+        for (Subscription sub : ownerSubs) {
             // Delete any expired subscriptions. Leave it in the map
             // so that the pools will get deleted as well.
             if (isExpired(sub)) {
@@ -166,29 +180,59 @@ public class CandlepinPoolManager implements PoolManager {
                 continue;
             }
 
-            if (!poolExistsForSubscription(subToPoolMap, sub.getId())) {
+            List<Pool> subPools = subToPoolMap.remove(sub.getId());
+            subs.add(sub);
+            knownPools.put(sub.getId(),
+                subPools == null ? new LinkedList<Pool>() : subPools);
+        }
+
+        // pools whose subscription disappeared:
+        for (List<Pool> subPools : subToPoolMap.values()) {
+            orphans.addAll(subPools);
+        }
+    }
+
+    /**
+     * Apply one chunk of a pool refresh in a transaction of its own: create or
+     * update the pools of the given subscriptions, delete the orphaned pools, and
+     * regenerate the certificates of any entitlements affected.
+     *
+     * @param subs subscriptions whose pools need creating or updating
+     * @param knownPools current pools of the subscriptions, the pools of any
+     * subscription missing from the map are looked up
+     * @param orphans pools which no longer have a subscription
+     * @param detached true if the pools given were loaded in another session, and
+     * have to be read again before they are changed
+     * @param lazy mark certificates dirty rather than regenerating them now
+     */
+    @Transactional
+    void refreshPoolsChunk(List<Subscription> subs, Map<String, List<Pool>> knownPools,
+        List<Pool> orphans, boolean detached, boolean lazy) {
+        Set<Entitlement> entitlementsToRegen = Util.newSet();
+        for (Subscription sub : subs) {
+            List<Pool> pools = detached ? null : knownPools.get(sub.getId());
+            if (pools == null) {
+                pools = poolCurator.lookupBySubscriptionId(sub.getId());
+            }
+
+            if (pools.isEmpty()) {
                 createPoolsForSubscription(sub);
-                subToPoolMap.remove(sub.getId());
             }
             else {
-                entitlementsToRegen.addAll(
-                    updatePoolsForSubscription(subToPoolMap.get(sub.getId()), sub)
-                );
-                subToPoolMap.remove(sub.getId());
+                entitlementsToRegen.addAll(updatePoolsForSubscription(pools, sub));
             }
         }
 
-        // delete pools whose subscription disappeared:
-        for (Entry<String, List<Pool>> entry : subToPoolMap.entrySet()) {
-            for (Pool p : entry.getValue()) {
-                deletePool(p);
+        for (Pool orphan : orphans) {
+            Pool pool = detached ? poolCurator.find(orphan.getId()) : orphan;
+            if (pool != null) {
+                deletePool(pool);
             }
         }
 
-        return entitlementsToRegen;
+        regenerateCertificatesOf(entitlementsToRegen, lazy);
     }
 
-
     private boolean isExpired(Subscription subscription) {
         Date now = new Date();
         return now.after(subscription.getEndDate());
@@ -204,6 +248,8 @@ public class CandlepinPoolManager implements PoolManager {
             Iterator<Entitlement> iter = this.poolCurator
                 .retrieveFreeEntitlementsOfPool(existingPool, lifo).iterator();
 
+            // revokeEntitlement lowers the pool's stored consumed count as the loop
+            // runs, so count down a copy taken before any revocation instead.
             long consumed = existingPool.getConsumed();
             while ((consumed > existingPool.getQuantity()) && iter.hasNext()) {
                 Entitlement e = iter.next();
@@ -377,8 +423,6 @@ public class CandlepinPoolManager implements PoolManager {
 
         ValidationResult failedResult = null;
 
-        List<Pool> allOwnerPools = poolCurator.listAvailableEntitlementPools(
-            consumer, owner, (String) null, entitleDate, true, false);
         List<Pool> filteredPools = new LinkedList<Pool>();
 
         // We have to check compliance status here so we can replace an empty
@@ -401,30 +445,27 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
-        for (Pool pool : allOwnerPools) {
-            boolean providesProduct = false;
-            for (String productId : productIds) {
-                if (pool.provides(productId)) {
-                    providesProduct = true;
-                    break;
+        // Only pools providing one of the products are of any use, let the
+        // database find those:
+        List<Pool> candidatePools = poolCurator.listAvailablePoolsProviding(
+            consumer, owner, Arrays.asList(productIds), entitleDate, true, false);
+
+        Map<Pool, ValidationResult> results = enforcer.preEntitlement(consumer,
+            candidatePools, 1);
+        for (Pool pool : candidatePools) {
+            ValidationResult result = results.get(pool);
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResult = result;
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to rules " +
+                        "failure: " +
+                        pool.getId());
                 }
             }
-            if (providesProduct) {
-                PreEntHelper preHelper = enforcer.preEntitlement(consumer, pool, 1);
-                ValidationResult result = preHelper.getResult();
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResult = result;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to rules " +
-                            "failure: " +
-                            pool.getId());
-                    }
-                }
-                else {
-                    filteredPools.add(pool);
-                }
+            else {
+                filteredPools.add(pool);
             }
         }
 
@@ -490,12 +531,12 @@ public class CandlepinPoolManager implements PoolManager {
         consumer.addEntitlement(e);
         pool.getEntitlements().add(e);
 
-        // The quantity is calculated at fetch time. We update it here
-        // To reflect what we just added to the db.
+        // Keep the pool counters in step with what we just added, both in the
+        // db and on the pool we already have loaded.
+        long exportedDelta = consumer.getType().isManifest() ? quantity : 0;
+        poolCurator.adjustConsumed(pool, quantity, exportedDelta);
         pool.setConsumed(pool.getConsumed() + quantity);
-        if (consumer.getType().isManifest()) {
-            pool.setExported(pool.getExported() + quantity);
-        }
+        pool.setExported(pool.getExported() + exportedDelta);
 
         PoolHelper poolHelper = new PoolHelper(this, productCache, e);
         enforcer.postEntitlement(consumer, poolHelper, e);
@@ -603,11 +644,101 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Transactional
     void regenerateCertificatesOf(Iterable<Entitlement> iterable, boolean lazy) {
+        if (lazy) {
+            for (Entitlement e : iterable) {
+                regenerateCertificatesOf(e, false, true);
+            }
+            return;
+        }
+
+        int batchSize = getRegenBatchSize();
+        List<Entitlement> batch = new ArrayList<Entitlement>(batchSize);
         for (Entitlement e : iterable) {
-            regenerateCertificatesOf(e, false, lazy);
+            batch.add(e);
+            if (batch.size() == batchSize) {
+                regenerateCertificates(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            regenerateCertificates(batch);
         }
     }
 
+    /*
+     * Regenerates the certificates of a batch of entitlements together, so the
+     * certificate adapter can allocate serials, sign and store them in bulk.
+     */
+    private void regenerateCertificates(List<Entitlement> entitlements) {
+        Map<String, Subscription> subsById = new HashMap<String, Subscription>();
+        Map<String, Subscription> subs = new HashMap<String, Subscription>();
+        Map<String, Product> products = new HashMap<String, Product>();
+        List<Entitlement> withoutSub = new ArrayList<Entitlement>();
+        for (Entitlement e : entitlements) {
+            if (log.isDebugEnabled()) {
+                log.debug("Revoking entitlementCertificates of : " + e);
+            }
+            this.entCertAdapter.revokeEntitlementCertificates(e);
+            for (EntitlementCertificate ec :
+                new ArrayList<EntitlementCertificate>(e.getCertificates())) {
+                this.entitlementCertificateCurator.delete(ec);
+            }
+            e.getCertificates().clear();
+
+            // Entitlements of a batch mostly share a few subscriptions:
+            String subId = e.getPool().getSubscriptionId();
+            Subscription sub = null;
+            if (subId != null) {
+                if (!subsById.containsKey(subId)) {
+                    subsById.put(subId, subAdapter.getSubscription(subId));
+                }
+                sub = subsById.get(subId);
+            }
+
+            if (sub != null) {
+                products.put(e.getId(), sub.getProduct());
+            }
+            else {
+                withoutSub.add(e);
+                sub = findSubscription(e);
+            }
+            subs.put(e.getId(), sub);
+        }
+
+        // Products of entitlements without a subscription are loaded together:
+        if (!withoutSub.isEmpty()) {
+            Set<String> productIds = new HashSet<String>();
+            for (Entitlement e : withoutSub) {
+                productIds.add(e.getProductId());
+            }
+            Map<String, Product> byId = productCache.getProductsByIds(productIds);
+            for (Entitlement e : withoutSub) {
+                products.put(e.getId(), byId.get(e.getProductId()));
+            }
+        }
+
+        try {
+            entCertAdapter.generateEntitlementCerts(entitlements, subs, products);
+        }
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        for (Entitlement e : entitlements) {
+            e.setDirty(false);
+            entitlementCurator.merge(e);
+
+            // send entitlement changed event.
+            this.sink.sendEvent(this.eventFactory.entitlementChanged(e));
+        }
+        log.info("Regenerated " + entitlements.size() + " entitlement certificates");
+    }
+
+    private int getRegenBatchSize() {
+        return Math.max(1, config.getInt(ConfigProperties.ENTITLEMENT_REGEN_BATCH_SIZE,
+            100));
+    }
+
     /**
      * Used to regenerate certificates affected by a mass content promotion/demotion.
      *
@@ -624,9 +755,20 @@ public class CandlepinPoolManager implements PoolManager {
         boolean lazy) {
         log.info("Regenerating relevant certificates in environment: " + e.getId());
         List<Entitlement> allEnvEnts = entitlementCurator.listByEnvironment(e);
+
+        // Load every product involved up front rather than one at a time:
+        Set<String> productIds = new HashSet<String>();
+        for (Entitlement ent : allEnvEnts) {
+            productIds.add(ent.getProductId());
+            for (ProvidedProduct provided : ent.getPool().getProvidedProducts()) {
+                productIds.add(provided.getProductId());
+            }
+        }
+        Map<String, Product> products = productCache.getProductsByIds(productIds);
+
         Set<Entitlement> entsToRegen = new HashSet<Entitlement>();
         for (Entitlement ent : allEnvEnts) {
-            Product prod = productCache.getProductById(ent.getProductId());
+            Product prod = products.get(ent.getProductId());
             for (String contentId : affectedContent) {
                 if (prod.hasContent(contentId)) {
                     entsToRegen.add(ent);
@@ -635,8 +777,7 @@ public class CandlepinPoolManager implements PoolManager {
 
             // Now the provided products:
             for (ProvidedProduct provided : ent.getPool().getProvidedProducts()) {
-                Product providedProd = productCache.getProductById(
-                    provided.getProductId());
+                Product providedProd = products.get(provided.getProductId());
                 for (String contentId : affectedContent) {
                     if (providedProd.hasContent(contentId)) {
                         entsToRegen.add(ent);
@@ -708,16 +849,48 @@ public class CandlepinPoolManager implements PoolManager {
     }
 
     @Override
-    @Transactional
     public void regenerateCertificatesOf(String productId, boolean lazy) {
+        regenerateCertificatesOf(productId, lazy, null, null);
+    }
+
+    @Override
+    public void regenerateCertificatesOf(String productId, boolean lazy,
+        String resumeAfter, RegenProgress progress) {
         List<Pool> poolsForProduct = this.poolCurator
             .listAvailableEntitlementPools(null, null, productId, new Date(),
                 false, false);
-        for (Pool pool : poolsForProduct) {
-            regenerateCertificatesOf(pool.getEntitlements(), lazy);
+
+        // Sorted here as well, the database collation need not agree with ours:
+        List<String> entitlementIds = entitlementCurator.listIdsByPools(poolsForProduct);
+        Collections.sort(entitlementIds);
+
+        int start = 0;
+        if (resumeAfter != null) {
+            while (start < entitlementIds.size() &&
+                entitlementIds.get(start).compareTo(resumeAfter) <= 0) {
+                start++;
+            }
+            log.info("Resuming certificate regeneration for product " + productId +
+                ", skipping " + start + " entitlements");
+        }
+
+        int batchSize = getRegenBatchSize();
+        for (int i = start; i < entitlementIds.size(); i += batchSize) {
+            List<String> batch = entitlementIds.subList(i,
+                Math.min(i + batchSize, entitlementIds.size()));
+            regenerateCertificatesByIds(batch, lazy);
+            if (progress != null) {
+                progress.batchDone(batch.get(batch.size() - 1), i + batch.size(),
+                    entitlementIds.size());
+            }
         }
     }
 
+    @Transactional
+    void regenerateCertificatesByIds(List<String> entitlementIds, boolean lazy) {
+        regenerateCertificatesOf(entitlementCurator.listByIds(entitlementIds), lazy);
+    }
+
     @Override
     @Transactional
     public void removeEntitlement(Entitlement entitlement) {
@@ -769,12 +942,13 @@ public class CandlepinPoolManager implements PoolManager {
         entitlementCurator.delete(entitlement);
         Event event = eventFactory.entitlementDeleted(entitlement);
 
-        // The quantity is calculated at fetch time. We update it here
-        // To reflect what we just removed from the db.
-        pool.setConsumed(pool.getConsumed() - entitlement.getQuantity());
-        if (consumer.getType().isManifest()) {
-            pool.setExported(pool.getExported() - entitlement.getQuantity());
-        }
+        // Keep the pool counters in step with what we just removed, both in the
+        // db and on the pool we already have loaded.
+        long quantity = entitlement.getQuantity();
+        long exportedDelta = consumer.getType().isManifest() ? quantity : 0;
+        poolCurator.adjustConsumed(pool, -quantity, -exportedDelta);
+        pool.setConsumed(pool.getConsumed() - quantity);
+        pool.setExported(pool.getExported() - exportedDelta);
         // post unbind actions
         PoolHelper poolHelper = new PoolHelper(this, productCache, entitlement);
         enforcer.postUnbind(consumer, poolHelper, entitlement);
@@ -902,6 +1076,8 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Override
     public Refresher getRefresher(boolean lazy) {
-        return new Refresher(this, this.subAdapter, this.poolCurator, lazy);
+        return new Refresher(this, this.workerProvider, this.subAdapter, lazy,
+            config.getInt(ConfigProperties.REFRESH_POOLS_CHUNK_SIZE, 100),
+            config.getInt(ConfigProperties.REFRESH_POOLS_THREADS, 1));
     }
 }
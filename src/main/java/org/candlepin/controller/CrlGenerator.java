@@ -17,19 +17,31 @@ package org.candlepin.controller;
 import static org.candlepin.util.Util.newList;
 import static org.candlepin.util.Util.newMap;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509CRLEntryWrapper;
+import org.candlepin.util.CrlFileUtil;
+import org.candlepin.util.CrlSerialIndex;
 import org.candlepin.util.OIDUtil;
 import org.candlepin.util.Util;
 
@@ -41,8 +53,13 @@ import com.google.inject.Inject;
  */
 public class CrlGenerator {
 
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String NEW_SUFFIX = ".new";
+    private static final Object FILE_LOCK = new Object();
+
     private PKIUtility pkiUtility;
     private CertificateSerialCurator certificateSerialCurator;
+    private CrlFileUtil crlFileUtil;
 
     private static Logger log = Logger.getLogger(CrlGenerator.class);
 
@@ -51,12 +68,105 @@ public class CrlGenerator {
      *
      * @param curator the curator
      * @param pkiUtility PKIUtility for crl creation
+     * @param crlFileUtil reads crl files when their index has to be rebuilt
      */
     @Inject
-    public CrlGenerator(CertificateSerialCurator curator, PKIUtility pkiUtility) {
+    public CrlGenerator(CertificateSerialCurator curator, PKIUtility pkiUtility,
+        CrlFileUtil crlFileUtil) {
 
         this.certificateSerialCurator = curator;
         this.pkiUtility = pkiUtility;
+        this.crlFileUtil = crlFileUtil;
+    }
+
+    /**
+     * Synchronizes the given crl file with the values from the database
+     * without parsing it. The entries of the crl are kept sorted in an index
+     * file next to it; only the serials collected or expired since the last
+     * run are loaded from the database and merged into the index, and the crl
+     * is then streamed from the index back to disk. The index is rebuilt from
+     * the crl whenever the crl has been written by something else.
+     *
+     * @param crlFile the crl file to sync (need not exist yet).
+     * @throws CRLException if the crl has to be parsed and cannot be
+     * @throws CertificateException if the crl has to be parsed and cannot be
+     * @throws IOException if the crl or its index cannot be written
+     */
+    public void syncCRLFileWithDB(File crlFile)
+        throws CRLException, CertificateException, IOException {
+
+        synchronized (FILE_LOCK) {
+            File indexFile = new File(crlFile.getPath() + INDEX_SUFFIX);
+            CrlSerialIndex index = CrlSerialIndex.read(indexFile);
+            if (index == null || !index.describes(crlFile)) {
+                index = rebuildIndex(crlFile, indexFile);
+            }
+
+            Set<BigInteger> expired = Util.newSet();
+            for (CertificateSerial cs : certificateSerialCurator.getExpiredSerials()) {
+                expired.add(cs.getSerial());
+            }
+            List<CertificateSerial> collected =
+                certificateSerialCurator.retrieveTobeCollectedSerials();
+            Map<BigInteger, X509CRLEntryWrapper> added =
+                new TreeMap<BigInteger, X509CRLEntryWrapper>();
+            Date now = new Date();
+            for (CertificateSerial cs : collected) {
+                added.put(cs.getSerial(), new X509CRLEntryWrapper(cs.getSerial(), now));
+            }
+
+            BigInteger no = index.getCrlNumber().add(BigInteger.ONE);
+            File newIndexFile = new File(indexFile.getPath() + NEW_SUFFIX);
+            File newCrlFile = new File(crlFile.getPath() + NEW_SUFFIX);
+            CrlSerialIndex newIndex = CrlSerialIndex.write(newIndexFile, no,
+                new MergingIterator(index.iterator(), added.values().iterator(),
+                    expired));
+
+            OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(newCrlFile));
+            try {
+                pkiUtility.writeX509CRL(newIndex, no, out);
+            }
+            finally {
+                out.close();
+            }
+
+            // the crl goes first, an index left behind no longer describes it
+            newIndex.describe(newCrlFile);
+            rename(newCrlFile, crlFile);
+            rename(newIndexFile, indexFile);
+            log.info("Wrote CRL number " + no + " with " + newIndex.size() +
+                " entries, " + collected.size() + " newly revoked");
+
+            for (CertificateSerial cs : collected) {
+                cs.setCollected(true);
+            }
+            this.certificateSerialCurator.saveOrUpdateAll(collected);
+            this.certificateSerialCurator.deleteExpiredSerials();
+        }
+    }
+
+    private CrlSerialIndex rebuildIndex(File crlFile, File indexFile)
+        throws CRLException, CertificateException, IOException {
+
+        log.info("Rebuilding CRL index: " + indexFile);
+        X509CRL x509crl = crlFileUtil.readCRLFile(crlFile);
+        Map<BigInteger, X509CRLEntryWrapper> entries =
+            new TreeMap<BigInteger, X509CRLEntryWrapper>();
+        if (x509crl != null && x509crl.getRevokedCertificates() != null) {
+            for (X509CRLEntryWrapper entry : toSimpleCRLEntries(
+                x509crl.getRevokedCertificates())) {
+                entries.put(entry.getSerialNumber(), entry);
+            }
+        }
+        return CrlSerialIndex.write(indexFile, getCRLNumber(x509crl),
+            entries.values().iterator());
+    }
+
+    private void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Unable to move " + from + " to " + to);
+        }
     }
 
     /**
@@ -237,4 +347,82 @@ public class CrlGenerator {
         return crlEntries;
     }
 
+    /**
+     * Merges two iterators of entries sorted by serial, dropping expired
+     * serials. A serial found in both keeps its original revocation date.
+     */
+    private static class MergingIterator implements Iterator<X509CRLEntryWrapper> {
+        private final Iterator<X509CRLEntryWrapper> existing;
+        private final Iterator<X509CRLEntryWrapper> added;
+        private final Set<BigInteger> expired;
+        private X509CRLEntryWrapper nextExisting;
+        private X509CRLEntryWrapper nextAdded;
+        private X509CRLEntryWrapper next;
+
+        MergingIterator(Iterator<X509CRLEntryWrapper> existing,
+            Iterator<X509CRLEntryWrapper> added, Set<BigInteger> expired) {
+            this.existing = existing;
+            this.added = added;
+            this.expired = expired;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null) {
+                if (nextExisting == null && existing.hasNext()) {
+                    nextExisting = existing.next();
+                }
+                if (nextAdded == null && added.hasNext()) {
+                    nextAdded = added.next();
+                }
+                if (nextExisting == null && nextAdded == null) {
+                    return;
+                }
+
+                X509CRLEntryWrapper candidate;
+                int cmp = nextExisting == null ? 1 : nextAdded == null ? -1 :
+                    nextExisting.getSerialNumber().compareTo(nextAdded.getSerialNumber());
+                if (cmp <= 0) {
+                    candidate = nextExisting;
+                    nextExisting = null;
+                    if (cmp == 0) {
+                        nextAdded = null;
+                    }
+                }
+                else {
+                    candidate = nextAdded;
+                    nextAdded = null;
+                }
+
+                if (!expired.contains(candidate.getSerialNumber())) {
+                    next = candidate;
+                }
+                else if (log.isTraceEnabled()) {
+                    log.trace("Serial " + candidate.getSerialNumber() +
+                        " has expired. Removing it from CRL");
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public X509CRLEntryWrapper next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            X509CRLEntryWrapper result = next;
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
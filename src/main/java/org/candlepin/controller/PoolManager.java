@@ -32,6 +32,13 @@ import java.util.Set;
  */
 public interface PoolManager {
 
+    /**
+     * RegenProgress - notified as each batch of a certificate regeneration commits.
+     */
+    interface RegenProgress {
+        void batchDone(String lastEntitlementId, int done, int total);
+    }
+
     Pool createPool(Pool p);
 
     /**
@@ -110,6 +117,18 @@ public interface PoolManager {
 
     void regenerateCertificatesOf(String productId, boolean lazy);
 
+    /**
+     * Regenerates the certificates of all entitlements to a product, in batches
+     * each committed on its own, by ascending entitlement id.
+     *
+     * @param productId product whose entitlements get new certificates
+     * @param lazy only mark the certificates dirty
+     * @param resumeAfter id of the last entitlement an interrupted run got to, or null
+     * @param progress notified after each batch, may be null
+     */
+    void regenerateCertificatesOf(String productId, boolean lazy, String resumeAfter,
+        RegenProgress progress);
+
     void regenerateEntitlementCertificates(Consumer consumer, boolean lazy);
 
     int revokeAllEntitlements(Consumer consumer);
@@ -14,38 +14,71 @@
  */
 package org.candlepin.controller;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.candlepin.model.Entitlement;
+import org.apache.log4j.Logger;
+import org.candlepin.auth.Principal;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
-import org.candlepin.model.PoolCurator;
 import org.candlepin.model.Product;
 import org.candlepin.model.Subscription;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.util.Util;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import com.google.inject.Provider;
 
 /**
- * Refresher
+ * Refresher - works out which pools need creating, updating or deleting, then
+ * applies those changes in chunks of subscriptions, each chunk in a transaction
+ * of its own. With more than one thread configured the chunks are applied in
+ * parallel, each worker thread using a pool manager of its own: the enforcer and
+ * rules behind a pool manager are not meant to be shared between threads.
  */
 public class Refresher {
 
+    private static Logger log = Logger.getLogger(Refresher.class);
+
+    /**
+     * Progress - notified after each chunk of a refresh is applied.
+     */
+    public interface Progress {
+        void update(int done, int total);
+    }
+
     private CandlepinPoolManager poolManager;
+    private Provider<CandlepinPoolManager> workerProvider;
     private SubscriptionServiceAdapter subAdapter;
-    private PoolCurator poolCurator;
     private boolean lazy;
+    private int chunkSize;
+    private int threads;
+    private Progress progress;
 
     private Set<Owner> owners = Util.newSet();
     private Set<Product> products = Util.newSet();
 
-    Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
-        PoolCurator poolCurator, boolean lazy) {
+    Refresher(CandlepinPoolManager poolManager,
+        Provider<CandlepinPoolManager> workerProvider,
+        SubscriptionServiceAdapter subAdapter, boolean lazy, int chunkSize, int threads) {
         this.poolManager = poolManager;
+        this.workerProvider = workerProvider;
         this.subAdapter = subAdapter;
-        this.poolCurator = poolCurator;
         this.lazy = lazy;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threads = Math.max(1, threads);
     }
 
     public Refresher add(Owner owner) {
@@ -58,8 +91,12 @@ public class Refresher {
         return this;
     }
 
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
     public void run() {
-        Set<Subscription> subscriptions = Util.newSet();
+        Set<Subscription> productSubs = new LinkedHashSet<Subscription>();
         for (Product product : products) {
             List<Subscription> candidates = subAdapter.getSubscriptions(product);
 
@@ -67,33 +104,138 @@ public class Refresher {
             // refreshPools call.
             for (Subscription subscription : candidates) {
                 if (!owners.contains(subscription.getOwner())) {
-                    subscriptions.add(subscription);
+                    productSubs.add(subscription);
                 }
             }
         }
 
-        Set<Entitlement> toRegen = new HashSet<Entitlement>();
+        /*
+         * Pools of the product subscriptions are looked up when their chunk is
+         * applied. On the off chance that one is actually a new subscription, its
+         * pools get created. this shouldn't happen; we should really get a
+         * refreshpools by owner call for it, but why not handle it, just in case!
+         */
+        List<Subscription> subs = new ArrayList<Subscription>(productSubs);
+        Map<String, List<Pool>> knownPools = new HashMap<String, List<Pool>>();
+        List<Pool> orphans = new ArrayList<Pool>();
+        for (Owner owner : owners) {
+            poolManager.planPoolRefresh(owner, subs, knownPools, orphans);
+        }
 
-        for (Subscription subscription : subscriptions) {
-            /*
-             * on the off chance that this is actually a new subscription, make the required
-             * pools. this shouldn't happen; we should really get a refreshpools by owner
-             * call for it, but why not handle it, just in case!
-             */
-            List<Pool> pools = poolCurator.lookupBySubscriptionId(subscription.getId());
-            if (pools.isEmpty()) {
-                poolManager.createPoolsForSubscription(subscription);
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i < subs.size(); i += chunkSize) {
+            chunks.add(new Chunk(subs.subList(i, Math.min(i + chunkSize, subs.size())),
+                Collections.<Pool>emptyList()));
+        }
+        for (int i = 0; i < orphans.size(); i += chunkSize) {
+            chunks.add(new Chunk(Collections.<Subscription>emptyList(),
+                orphans.subList(i, Math.min(i + chunkSize, orphans.size()))));
+        }
+
+        int total = subs.size() + orphans.size();
+        log.info("Refreshing " + subs.size() + " subscriptions and deleting " +
+            orphans.size() + " pools in " + chunks.size() + " chunks");
+        if (threads == 1 || chunks.size() < 2) {
+            runInline(chunks, knownPools, total);
+        }
+        else {
+            runParallel(chunks, total);
+        }
+    }
+
+    private void runInline(List<Chunk> chunks, Map<String, List<Pool>> knownPools,
+        int total) {
+        int done = 0;
+        for (Chunk chunk : chunks) {
+            poolManager.refreshPoolsChunk(chunk.subs, knownPools, chunk.orphans, false,
+                lazy);
+            done += chunk.size();
+            reportProgress(done, total);
+        }
+    }
+
+    /*
+     * Each chunk runs on a worker thread with a session of its own, so the pools
+     * loaded while planning the refresh are read again by the chunk. A chunk takes
+     * one of the workers' pool managers for as long as it runs, so no two threads
+     * ever share a manager, or the rules it runs.
+     */
+    private void runParallel(List<Chunk> chunks, int total) {
+        final Principal principal = ResteasyProviderFactory.getContextData(
+            Principal.class);
+        final Map<String, List<Pool>> noPools = Collections.emptyMap();
+        int workers = Math.min(threads, chunks.size());
+        final BlockingQueue<CandlepinPoolManager> managers =
+            new ArrayBlockingQueue<CandlepinPoolManager>(workers);
+        for (int i = 0; i < workers; i++) {
+            managers.add(workerProvider.get());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (final Chunk chunk : chunks) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws InterruptedException {
+                        CandlepinPoolManager manager = managers.take();
+                        ResteasyProviderFactory.pushContext(Principal.class, principal);
+                        try {
+                            manager.refreshPoolsChunk(chunk.subs, noPools,
+                                chunk.orphans, true, lazy);
+                            return chunk.size();
+                        }
+                        finally {
+                            ResteasyProviderFactory.popContextData(Principal.class);
+                            managers.add(manager);
+                        }
+                    }
+                }));
+            }
+
+            int done = 0;
+            for (Future<Integer> result : results) {
+                done += result.get();
+                reportProgress(done, total);
             }
-            else {
-                toRegen.addAll(poolManager.updatePoolsForSubscription(pools, subscription));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while refreshing pools", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
         }
+    }
 
-        for (Owner owner : owners) {
-            toRegen.addAll(poolManager.refreshPoolsWithoutRegeneration(owner));
+    private void reportProgress(int done, int total) {
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed " + done + " of " + total);
+        }
+        if (progress != null) {
+            progress.update(done, total);
+        }
+    }
+
+    /**
+     * Chunk - subscriptions and orphaned pools applied in one transaction.
+     */
+    private static class Chunk {
+        private List<Subscription> subs;
+        private List<Pool> orphans;
+
+        Chunk(List<Subscription> subs, List<Pool> orphans) {
+            this.subs = subs;
+            this.orphans = orphans;
         }
 
-        // now regenerate all pending entitlements
-        poolManager.regenerateCertificatesOf(toRegen, lazy);
+        int size() {
+            return subs.size() + orphans.size();
+        }
     }
 }
@@ -47,6 +47,8 @@ import org.candlepin.pinsetter.core.PinsetterKernel;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
 import org.candlepin.pinsetter.tasks.EntitlerJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.OwnerInfoRefreshJob;
+import org.candlepin.pinsetter.tasks.PoolCounterReconcilerJob;
 import org.candlepin.pinsetter.tasks.RefreshPoolsJob;
 import org.candlepin.pki.PKIReader;
 import org.candlepin.pki.PKIUtility;
@@ -85,6 +87,8 @@ import org.candlepin.resource.SubscriptionResource;
 import org.candlepin.resource.UserResource;
 import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.interceptor.AuthInterceptor;
+import org.candlepin.resteasy.interceptor.LinkHeaderPostInterceptor;
+import org.candlepin.resteasy.interceptor.PageRequestInterceptor;
 import org.candlepin.resteasy.interceptor.PinsetterAsyncInterceptor;
 import org.candlepin.resteasy.interceptor.VersionPostInterceptor;
 import org.candlepin.service.UniqueIdGenerator;
@@ -189,6 +193,8 @@ public class CandlepinModule extends AbstractModule {
         bind(AuthInterceptor.class);
         bind(PinsetterAsyncInterceptor.class);
         bind(VersionPostInterceptor.class);
+        bind(PageRequestInterceptor.class);
+        bind(LinkHeaderPostInterceptor.class);
         bind(JsonProvider.class);
         bind(EventSink.class).to(EventSinkImpl.class);
         bind(JobFactory.class).to(GuiceJobFactory.class);
@@ -196,6 +202,8 @@ public class CandlepinModule extends AbstractModule {
         bind(PinsetterKernel.class);
         bind(CertificateRevocationListTask.class);
         bind(JobCleaner.class);
+        bind(PoolCounterReconcilerJob.class);
+        bind(OwnerInfoRefreshJob.class);
 
         bind(Exporter.class).asEagerSingleton();
         bind(MetaExporter.class);
@@ -16,34 +16,106 @@ package org.candlepin.jackson;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.ser.BeanPropertyFilter;
 
 /**
  * JsonBeanPropertyFilter
+ *
+ * Looks up the annotations on property getters in a table built once per class,
+ * rather than reflecting on the getter for every property serialized.
  */
 public abstract class JsonBeanPropertyFilter implements BeanPropertyFilter {
 
     private static Logger log = Logger.getLogger(JsonBeanPropertyFilter.class);
 
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Set<Class<?>>>>
+        ANNOTATIONS =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Set<Class<?>>>>();
+
+    /*
+     * Negative entry for properties without a getter, so they are only looked for
+     * and reported once per class.
+     */
+    private static final Set<Class<?>> NO_GETTER = Collections.emptySet();
+
     protected Boolean annotationPresent(Object obj, String propertyName,
         Class<? extends Annotation> clazz) {
-        String methodName = "get" + propertyName.substring(0, 1).toUpperCase() +
-            propertyName.substring(1);
-        try {
-            Method getter = obj.getClass().getMethod(methodName);
-            Annotation a = getter.getAnnotation(clazz);
-            if (a != null) {
-                return true;
+        ConcurrentMap<String, Set<Class<?>>> byProperty = annotations(obj.getClass());
+        Set<Class<?>> annotations = byProperty.get(propertyName);
+        if (annotations == null) {
+            if (byProperty.putIfAbsent(propertyName, NO_GETTER) == null) {
+                log.warn("Unable to serialize property '" + propertyName +
+                    "' of " + obj.getClass().getName() + " without getter: get" +
+                    propertyName.substring(0, 1).toUpperCase() +
+                    propertyName.substring(1));
             }
-        }
-        catch (NoSuchMethodException e) {
-            log.warn("Unable to serialize property '" + propertyName +
-                " without getter: " + methodName);
             return false;
         }
-        return false;
+        return annotations.contains(clazz);
+    }
+
+    /**
+     * @return the annotation types on each getter of the given class, by the name
+     * of the property which maps to the getter.
+     */
+    private static ConcurrentMap<String, Set<Class<?>>> annotations(Class<?> type) {
+        ConcurrentMap<String, Set<Class<?>>> annotations = ANNOTATIONS.get(type);
+        if (annotations == null) {
+            annotations = new ConcurrentHashMap<String, Set<Class<?>>>();
+            for (Entry<String, Method> getter : findGetters(type).entrySet()) {
+                Set<Class<?>> types = new HashSet<Class<?>>();
+                for (Annotation a : getter.getValue().getAnnotations()) {
+                    types.add(a.annotationType());
+                }
+                annotations.put(getter.getKey(), Collections.unmodifiableSet(types));
+            }
+            ConcurrentMap<String, Set<Class<?>>> existing =
+                ANNOTATIONS.putIfAbsent(type, annotations);
+            if (existing != null) {
+                annotations = existing;
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * @return the public no argument getters of the given class, by the names of
+     * the properties which map to them.
+     */
+    private static Map<String, Method> findGetters(Class<?> type) {
+        Map<String, Method> getters = new HashMap<String, Method>();
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if (!name.startsWith("get") || name.length() < 4 || method.isBridge() ||
+                method.getParameterTypes().length != 0) {
+                continue;
+            }
+            // Properties map to "get" plus their name with the first letter upper
+            // cased, so either case of that letter finds this getter:
+            String first = name.substring(3, 4);
+            if (!first.equals(first.toUpperCase())) {
+                continue;
+            }
+            Method existing = getters.get(first + name.substring(4));
+            if (existing != null &&
+                !existing.getReturnType().isAssignableFrom(method.getReturnType())) {
+                // keep the most specific override, as Class.getMethod would
+                continue;
+            }
+            getters.put(first + name.substring(4), method);
+            getters.put(first.toLowerCase() + name.substring(4), method);
+        }
+        return getters;
     }
 
 }
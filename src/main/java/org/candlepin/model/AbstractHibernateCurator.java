@@ -15,6 +15,7 @@
 package org.candlepin.model;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -22,8 +23,15 @@ import javax.persistence.EntityManager;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.interceptor.EnforceAccessControl;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
+import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -38,6 +46,7 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
     private static Logger log = Logger.getLogger(AbstractHibernateCurator.class);
     private final Class<E> entityType;
     private int batchSize = 30;
+    private int streamBatchSize = 100;
 
     protected AbstractHibernateCurator(Class<E> entityType) {
         //entityType = (Class<E>) ((ParameterizedType)
@@ -79,6 +88,20 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return entity;
     }
 
+    /**
+     * Persists all the given entities, flushing once at the end so the inserts
+     * go to the database in JDBC batches.
+     *
+     * @param entities entities to be created.
+     */
+    @Transactional
+    public void createAll(Collection<E> entities) {
+        for (E entity : entities) {
+            getEntityManager().persist(entity);
+        }
+        flush();
+    }
+
     /**
      * @return all entities for a particular type.
      */
@@ -93,6 +116,102 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return query.getExecutableCriteria(currentSession()).list();
     }
 
+    /**
+     * Lists the entities matched by the given criteria. If the request asks for a
+     * page, only that page is loaded, along with the total number of matches.
+     * Otherwise every match is streamed out of the database as the page data is
+     * iterated.
+     *
+     * @param criteria query to run, without any ordering.
+     * @param pageRequest paging and ordering requested, may be null.
+     * @return the requested page of results.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public Page<E> listByCriteria(Criteria criteria, PageRequest pageRequest) {
+        Page<E> page = new Page<E>();
+        page.setPageRequest(pageRequest);
+
+        if (pageRequest != null && pageRequest.isPaging()) {
+            // Count before ordering, some databases refuse an ordered count:
+            Number count = (Number) criteria.setProjection(Projections.rowCount())
+                .uniqueResult();
+            criteria.setProjection(null).setResultTransformer(Criteria.ROOT_ENTITY);
+            page.setMaxRecords(count.intValue());
+
+            addOrder(criteria, pageRequest);
+            criteria.setFirstResult(pageRequest.getFirstResult());
+            criteria.setMaxResults(pageRequest.getPerPage());
+            page.setPageData(criteria.list());
+        }
+        else {
+            if (pageRequest != null) {
+                addOrder(criteria, pageRequest);
+            }
+            page.setPageData(new ResultStream<E>(getEntityManager(), criteria,
+                streamBatchSize));
+        }
+        return page;
+    }
+
+    /**
+     * Cuts the requested page out of results which had to be filtered in memory.
+     *
+     * @param results every matching entity, in the requested order.
+     * @param pageRequest paging requested, may be null.
+     * @return the requested page of results.
+     */
+    protected Page<E> listPage(List<E> results, PageRequest pageRequest) {
+        Page<E> page = new Page<E>();
+        page.setPageRequest(pageRequest);
+
+        if (pageRequest != null && pageRequest.isPaging()) {
+            page.setMaxRecords(results.size());
+            int from = Math.min(pageRequest.getFirstResult(), results.size());
+            int to = Math.min(from + pageRequest.getPerPage(), results.size());
+            page.setPageData(results.subList(from, to));
+        }
+        else {
+            page.setPageData(results);
+        }
+        return page;
+    }
+
+    /**
+     * Orders the criteria as requested, falling back to the creation date if the
+     * requested field can't be sorted on. The id is always added as a final sort
+     * so records never move between pages.
+     */
+    protected void addOrder(Criteria criteria, PageRequest pageRequest) {
+        ClassMetadata metadata = currentSession().getSessionFactory()
+            .getClassMetadata(entityType);
+        String id = metadata.getIdentifierPropertyName();
+        boolean ascending = pageRequest.getOrder() != PageRequest.Order.DESCENDING;
+
+        String sortBy = pageRequest.getSortBy();
+        if (sortBy != null && !sortBy.equals(id) && !isSortable(metadata, sortBy)) {
+            log.debug("Unable to sort " + entityType.getSimpleName() + " by " +
+                sortBy + ", using the default ordering.");
+            sortBy = null;
+        }
+        if (sortBy == null && isSortable(metadata, PageRequest.DEFAULT_SORT_FIELD)) {
+            sortBy = PageRequest.DEFAULT_SORT_FIELD;
+        }
+
+        if (sortBy != null && !sortBy.equals(id)) {
+            criteria.addOrder(ascending ? Order.asc(sortBy) : Order.desc(sortBy));
+        }
+        criteria.addOrder(ascending ? Order.asc(id) : Order.desc(id));
+    }
+
+    private boolean isSortable(ClassMetadata metadata, String property) {
+        if (!Arrays.asList(metadata.getPropertyNames()).contains(property)) {
+            return false;
+        }
+        Type type = metadata.getPropertyType(property);
+        return !type.isAssociationType() && !type.isComponentType();
+    }
+
     @SuppressWarnings("unchecked")
     @Transactional
     @EnforceAccessControl
@@ -141,6 +260,14 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         getEntityManager().flush();
     }
 
+    /**
+     * Detaches everything from the current session, including changes which were
+     * never written, so later flushes neither retry nor dirty check them.
+     */
+    public void clear() {
+        getEntityManager().clear();
+    }
+
     protected Session currentSession() {
         Session sess = (Session) entityManager.get().getDelegate();
         return sess;
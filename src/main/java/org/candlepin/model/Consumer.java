@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -71,6 +72,7 @@ import org.hibernate.annotations.MapKeyManyToMany;
 public class Consumer extends AbstractHibernateObject implements Linkable, Owned {
 
     public static final String UEBER_CERT_CONSUMER = "ueber_cert_consumer";
+    public static final String VIRT_UUID_FACT = "virt.uuid";
 
     @Id
     @GeneratedValue(generator = "system-uuid")
@@ -98,6 +100,14 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     @Column(length = 255, nullable =  true)
     private String releaseVer;
 
+    /*
+     * Copy of the virt.uuid fact, kept in sync by the fact setters so guests can be
+     * looked up by an indexed column rather than by scanning the facts table.
+     */
+    @Column(name = "virt_uuid", length = 255, nullable = true)
+    @Index(name = "cp_consumer_virt_uuid_idx")
+    private String virtUuid;
+
     /*
      * Because this object is used both as a Hibernate object, as well as a DTO to be
      * serialized and sent to callers, we do some magic with these two cert related
@@ -325,6 +335,40 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
      */
     public void setFacts(Map<String, String> factsIn) {
         facts = factsIn;
+        virtUuid = factsIn == null ? null : factsIn.get(VIRT_UUID_FACT);
+    }
+
+    /**
+     * Brings the facts of this consumer in line with the given facts, key by key.
+     * The existing map is modified in place, so hibernate only writes the facts
+     * which were added, changed or removed instead of recreating every row.
+     *
+     * @param factsIn the new facts of this consumer.
+     * @return the number of facts added, changed or removed.
+     */
+    public int updateFacts(Map<String, String> factsIn) {
+        if (facts == null) {
+            setFacts(new HashMap<String, String>(factsIn));
+            return factsIn.size();
+        }
+
+        int written = 0;
+        Iterator<String> keys = facts.keySet().iterator();
+        while (keys.hasNext()) {
+            if (!factsIn.containsKey(keys.next())) {
+                keys.remove();
+                written++;
+            }
+        }
+        for (Entry<String, String> fact : factsIn.entrySet()) {
+            if (!facts.containsKey(fact.getKey()) ||
+                !Util.equals(facts.get(fact.getKey()), fact.getValue())) {
+                facts.put(fact.getKey(), fact.getValue());
+                written++;
+            }
+        }
+        virtUuid = facts.get(VIRT_UUID_FACT);
+        return written;
     }
 
     /**
@@ -377,6 +421,29 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
             facts = new HashMap<String, String>();
         }
         this.facts.put(name, value);
+        if (VIRT_UUID_FACT.equals(name)) {
+            virtUuid = value;
+        }
+    }
+
+    /**
+     * @return the virt.uuid fact of this consumer, as stored in its own column.
+     */
+    @XmlTransient
+    public String getVirtUuid() {
+        return virtUuid;
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        virtUuid = getFact(VIRT_UUID_FACT);
+    }
+
+    @Override
+    protected void onUpdate() {
+        super.onUpdate();
+        virtUuid = getFact(VIRT_UUID_FACT);
     }
 
     public long getEntitlementCount() {
@@ -385,6 +452,10 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         }
         return entitlementCount.longValue();
     }
+
+    public void setEntitlementCount(Long count) {
+        this.entitlementCount = count;
+    }
     /**
      * @return Returns the entitlements.
      */
@@ -15,6 +15,7 @@
 package org.candlepin.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,13 +23,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Pattern;
 
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.exceptions.BadRequestException;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.hibernate.Criteria;
-import org.hibernate.Hibernate;
+import org.hibernate.FetchMode;
 import org.hibernate.ReplicationMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -47,6 +52,9 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private DeletedConsumerCurator deletedConsumerCurator;
     @Inject private Config config;
     @Inject private I18n i18n;
+    @Inject private PrincipalCache principalCache;
+    @Inject private ConsumerFactMetrics factMetrics;
+    private Pattern factFilter;
     private static final int NAME_LENGTH = 250;
     //private static Logger log = Logger.getLogger(ConsumerCurator.class);
 
@@ -74,6 +82,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             entity.getOwner().getId());
 
         super.delete(entity);
+        principalCache.invalidate(entity.getUuid());
 
         DeletedConsumer existing = deletedConsumerCurator.
                     findByConsumerUuid(dc.getConsumerUuid());
@@ -142,17 +151,39 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Transactional
     @EnforceAccessControl
     public Consumer findByVirtUuid(String uuid) {
-        Consumer result = null;
-        List<Consumer> options = currentSession()
-            .createCriteria(Consumer.class)
+        return (Consumer) currentSession().createCriteria(Consumer.class)
+            .add(Restrictions.eq("virtUuid", uuid))
             .addOrder(Order.desc("updated"))
-            .add(Restrictions.sqlRestriction("{alias}.id in (select cp_consumer_id " +
-                "from cp_consumer_facts where mapkey = 'virt.uuid' and element = ?)",
-                uuid, Hibernate.STRING)).list();
-        if (options != null && options.size() != 0) {
-            result = options.get(0);
+            .setMaxResults(1)
+            .uniqueResult();
+    }
+
+    /**
+     * Lookup the consumers of several virt.uuids at once. As with
+     * findByVirtUuid, the most recently updated consumer wins when several
+     * share a virt.uuid.
+     *
+     * @param uuids consumer virt.uuids to find
+     * @return Consumers found, by virt.uuid. Unknown virt.uuids are left out.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public Map<String, Consumer> findByVirtUuids(Collection<String> uuids) {
+        Map<String, Consumer> found = new HashMap<String, Consumer>();
+        if (uuids.isEmpty()) {
+            return found;
         }
-        return result;
+
+        // Oldest first, so newer consumers replace older ones:
+        List<Consumer> consumers = currentSession().createCriteria(Consumer.class)
+            .add(Restrictions.in("virtUuid", uuids))
+            .addOrder(Order.asc("updated"))
+            .list();
+        for (Consumer consumer : consumers) {
+            found.put(consumer.getVirtUuid(), consumer);
+        }
+        return found;
     }
 
     /**
@@ -187,9 +218,49 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     // NOTE: This is a giant hack that is for use *only* by SSLAuth in order
     // to bypass the authentication. Do not call it!
     // TODO: Come up with a better way to do this!
+    //
+    // Consumers seen recently are loaded by primary key, which the session
+    // answers without a query once the consumer has been loaded, so the
+    // authentication, security and resource lookups of one request share a
+    // single fetch.
     public Consumer getConsumer(String uuid) {
-        return (Consumer) currentSession().createCriteria(Consumer.class)
+        String id = principalCache.getConsumerId(uuid);
+        if (id != null) {
+            Consumer consumer = get(Consumer.class, id);
+            if (consumer != null && uuid.equals(consumer.getUuid())) {
+                return consumer;
+            }
+            principalCache.invalidate(uuid);
+        }
+
+        Consumer consumer = (Consumer) currentSession().createCriteria(Consumer.class)
             .add(Restrictions.eq("uuid", uuid)).uniqueResult();
+        if (consumer != null) {
+            principalCache.found(uuid, consumer.getId());
+        }
+        return consumer;
+    }
+
+    /**
+     * Lookup several consumers by uuid at once.
+     *
+     * @param uuids Consumer uuids sought.
+     * @return Consumers found, by uuid. Unknown uuids are left out.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public Map<String, Consumer> findByUuids(Collection<String> uuids) {
+        Map<String, Consumer> found = new HashMap<String, Consumer>();
+        if (uuids.isEmpty()) {
+            return found;
+        }
+        List<Consumer> consumers = currentSession().createCriteria(Consumer.class)
+            .add(Restrictions.in("uuid", uuids)).list();
+        for (Consumer consumer : consumers) {
+            found.put(consumer.getUuid(), consumer);
+        }
+        return found;
     }
 
     @SuppressWarnings("unchecked")
@@ -206,13 +277,13 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
      * @param userName the username to match, or null to ignore
      * @param type the type to match, or null to ignore
      * @param owner Optional owner to filter on, pass null to skip.
-     * @return a list of matching Consumers
+     * @param pageRequest paging and ordering to apply, may be null.
+     * @return a page of matching Consumers
      */
-    @SuppressWarnings("unchecked")
     @Transactional
     @EnforceAccessControl
-    public List<Consumer> listByUsernameAndType(String userName,
-        ConsumerType type, Owner owner) {
+    public Page<Consumer> listByUsernameAndType(String userName,
+        ConsumerType type, Owner owner, PageRequest pageRequest) {
 
         Criteria criteria = currentSession().createCriteria(Consumer.class);
 
@@ -226,7 +297,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             criteria.add(Restrictions.eq("owner", owner));
         }
 
-        return criteria.list();
+        return listByCriteria(criteria, pageRequest);
     }
 
     /**
@@ -246,9 +317,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         existingConsumer.setEntitlements(entitlementCurator
             .bulkUpdate(updatedConsumer.getEntitlements()));
         Map<String, String> newFacts = filterFacts(updatedConsumer.getFacts());
-        if (factsChanged(newFacts, existingConsumer.getFacts())) {
-            existingConsumer.setFacts(newFacts);
-        }
+        existingConsumer.updateFacts(newFacts);
         existingConsumer.setName(updatedConsumer.getName());
         existingConsumer.setOwner(updatedConsumer.getOwner());
         existingConsumer.setType(updatedConsumer.getType());
@@ -272,9 +341,15 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return consumer;
     }
 
-    private boolean factsChanged(Map<String, String> updatedFacts,
-        Map<String, String> existingFacts) {
-        return !existingFacts.equals(updatedFacts);
+    /**
+     * Counts a consumer fact check-in towards the consumer fact metrics. Only the
+     * consumer update API calls this, once per check-in which includes facts.
+     *
+     * @param reported number of facts the consumer reported.
+     * @param written number of facts added, changed or removed as a result.
+     */
+    public void recordFactUpdate(int reported, int written) {
+        factMetrics.record(reported, written);
     }
 
     /**
@@ -282,17 +357,27 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
      * @return the list of facts filtered by the fact filter regex config
      */
     private Map<String, String> filterFacts(Map<String, String> factsIn) {
+        Pattern filter = getFactFilter();
         Map<String, String> facts = new HashMap<String, String>();
         for (Entry<String, String> entry : factsIn.entrySet()) {
-            if (entry.getKey().matches(
-                config.getString(ConfigProperties.CONSUMER_FACTS_MATCHER))) {
-
+            if (filter.matcher(entry.getKey()).matches()) {
                 facts.put(entry.getKey(), entry.getValue());
             }
         }
         return facts;
     }
 
+    /**
+     * @return the fact filter regex config, compiled once rather than per fact.
+     */
+    private Pattern getFactFilter() {
+        String regex = config.getString(ConfigProperties.CONSUMER_FACTS_MATCHER);
+        if (factFilter == null || !factFilter.pattern().equals(regex)) {
+            factFilter = Pattern.compile(regex);
+        }
+        return factFilter;
+    }
+
     /**
      * @param consumers consumers to update
      * @return updated consumers
@@ -318,24 +403,43 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Transactional
     @EnforceAccessControl
     public Consumer getHost(String guestId) {
-
-        // TODO: could the query do the work for us here? sort on updated time, limit to 1.
-        // Avoids any potential (albeit unlikely) hibernate issues where we mistakenly
-        // load a bunch of data.
-        List<GuestId> consumers = currentSession()
+        GuestId newest = (GuestId) currentSession()
             .createCriteria(GuestId.class)
             .add(Restrictions.eq("guestId", guestId))
+            .setFetchMode("consumer", FetchMode.JOIN)
+            .addOrder(Order.desc("updated"))
+            .setMaxResults(1)
+            .uniqueResult();
+        return newest == null ? null : newest.getConsumer();
+    }
+
+    /**
+     * Get the host consumers of several guest system ids at once. As with
+     * getHost, the host which most recently reported a guest ID wins.
+     *
+     * @param guestIds virtual guest IDs (not consumer UUIDs)
+     * @return host consumers, by guest ID. Unreported guest IDs are left out.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public Map<String, Consumer> getHostsByGuestIds(Collection<String> guestIds) {
+        Map<String, Consumer> hosts = new HashMap<String, Consumer>();
+        if (guestIds.isEmpty()) {
+            return hosts;
+        }
+
+        // Oldest first, so later reports replace earlier ones:
+        List<GuestId> reported = currentSession()
+            .createCriteria(GuestId.class)
+            .add(Restrictions.in("guestId", guestIds))
+            .setFetchMode("consumer", FetchMode.JOIN)
+            .addOrder(Order.asc("updated"))
             .list();
-        Consumer newest = null;
-        if (consumers != null) {
-            for (GuestId cg : consumers) {
-                if (newest == null ||
-                    cg.getUpdated().getTime() > newest.getUpdated().getTime()) {
-                    newest = cg.getConsumer();
-                }
-            }
+        for (GuestId cg : reported) {
+            hosts.put(cg.getGuestId(), cg.getConsumer());
         }
-        return newest;
+        return hosts;
     }
 
     /**
@@ -356,12 +460,19 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         }
         List<Consumer> guests = new ArrayList<Consumer>();
         List<GuestId> consumerGuests = consumer.getGuestIds();
-        if (consumerGuests != null) {
+        if (consumerGuests != null && !consumerGuests.isEmpty()) {
+            List<String> guestIds = new ArrayList<String>();
+            for (GuestId cg : consumerGuests) {
+                guestIds.add(cg.getGuestId());
+            }
+            Map<String, Consumer> hosts = getHostsByGuestIds(guestIds);
+            Map<String, Consumer> found = findByVirtUuids(guestIds);
+
             for (GuestId cg : consumerGuests) {
                 // Check if this is the most recent host to report the guest by asking
                 // for the consumer's current host and comparing it to ourselves.
-                if (consumer.equals(getHost(cg.getGuestId()))) {
-                    Consumer guest = findByVirtUuid(cg.getGuestId());
+                if (consumer.equals(hosts.get(cg.getGuestId()))) {
+                    Consumer guest = found.get(cg.getGuestId());
                     if (guest != null) {
                         guests.add(guest);
                     }
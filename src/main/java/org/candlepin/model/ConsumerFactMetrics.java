@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.inject.Singleton;
+
+/**
+ * ConsumerFactMetrics - counts how many consumer facts are reported on check-in,
+ * against how many of them actually had to be written to the database. Facts
+ * are updated key by key, so the written count should stay well below the
+ * reported one for consumers which check in with the same facts. Updates is the
+ * number of check-ins which included facts, whether or not any of them changed.
+ */
+@Singleton
+public class ConsumerFactMetrics {
+
+    private long updates;
+    private long factsReported;
+    private long factsWritten;
+
+    /**
+     * @param reported number of facts the consumer reported.
+     * @param written number of facts added, changed or removed as a result.
+     */
+    public synchronized void record(int reported, int written) {
+        updates++;
+        factsReported += reported;
+        factsWritten += written;
+    }
+
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    public synchronized long getFactsReported() {
+        return factsReported;
+    }
+
+    public synchronized long getFactsWritten() {
+        return factsWritten;
+    }
+
+    /**
+     * @return the counters, by name.
+     */
+    public synchronized Map<String, Long> toMap() {
+        Map<String, Long> metrics = new HashMap<String, Long>();
+        metrics.put("updates", updates);
+        metrics.put("factsReported", factsReported);
+        metrics.put("factsWritten", factsWritten);
+        return metrics;
+    }
+}
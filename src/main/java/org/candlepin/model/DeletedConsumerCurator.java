@@ -17,7 +17,10 @@ package org.candlepin.model;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * DeletedConsumerCurator
@@ -39,6 +42,22 @@ public class DeletedConsumerCurator extends
             .uniqueResult();
     }
 
+    /**
+     * @param uuids consumer uuids to check
+     * @return those of the given uuids which belong to deleted consumers.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> findDeletedUuids(Collection<String> uuids) {
+        if (uuids.isEmpty()) {
+            return new HashSet<String>();
+        }
+        return new HashSet<String>(currentSession()
+            .createCriteria(DeletedConsumer.class)
+            .add(Restrictions.in("consumerUuid", uuids))
+            .setProjection(Projections.property("consumerUuid"))
+            .list());
+    }
+
     public List<DeletedConsumer> findByOwner(Owner o) {
         return findByOwnerId(o.getId());
     }
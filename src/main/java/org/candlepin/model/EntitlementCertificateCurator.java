@@ -53,6 +53,24 @@ public class EntitlementCertificateCurator extends
             .list();
     }
 
+    /**
+     * Lists the serial ids of a consumer's certificates without loading the
+     * certificates themselves.
+     *
+     * @param c consumer
+     * @return serial ids, in ascending order.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<Long> listSerialIdsForConsumer(Consumer c) {
+        return currentSession().createQuery(
+            "select cert.serial.id from EntitlementCertificate cert " +
+            "where cert.entitlement.consumer = :consumer " +
+            "order by cert.serial.id")
+            .setParameter("consumer", c)
+            .list();
+    }
+
     @Transactional
     public void delete(EntitlementCertificate cert) {
         //make sure to delete it! else get ready to face
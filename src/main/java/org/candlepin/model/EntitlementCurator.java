@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -21,10 +23,13 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.candlepin.service.ProductServiceAdapter;
 import org.hibernate.Criteria;
 import org.hibernate.ReplicationMode;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.xnap.commons.i18n.I18n;
 
@@ -74,6 +79,13 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return listByCriteria(query);
     }
 
+    public List<Entitlement> listDirtyByConsumer(Consumer consumer) {
+        DetachedCriteria query = DetachedCriteria.forClass(Entitlement.class)
+            .add(Restrictions.eq("consumer", consumer))
+            .add(Restrictions.eq("dirty", true));
+        return listByCriteria(query);
+    }
+
     public List<Entitlement> listByEnvironment(Environment environment) {
         Criteria criteria = currentSession().createCriteria(Entitlement.class)
             .createCriteria("consumer").add(Restrictions.eq("environment", environment));
@@ -111,6 +123,21 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return listByCriteria(query);
     }
 
+    /**
+     * Lists the entitlements of the given owner, one page at a time if requested.
+     *
+     * @param owner owner whose entitlements are listed.
+     * @param pageRequest paging and ordering to apply, may be null.
+     * @return a page of the owner's entitlements.
+     */
+    @Transactional
+    public Page<Entitlement> listByOwner(Owner owner, PageRequest pageRequest) {
+        Criteria criteria = currentSession().createCriteria(Entitlement.class)
+            .add(Restrictions.eq("owner", owner));
+
+        return listByCriteria(criteria, pageRequest);
+    }
+
     /*
      * Creates date filtering criteria to for checking if an entitlement has any overlap
      * with a "modifying" entitlement that has just been granted.
@@ -288,6 +315,38 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         currentSession().delete(toDelete);
     }
 
+    /**
+     * @param pools pools to look in
+     * @return ids of all the entitlements to the given pools, in ascending order.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<String> listIdsByPools(Collection<Pool> pools) {
+        if (pools.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        return currentSession().createQuery(
+            "select e.id from Entitlement e where e.pool in (:pools) order by e.id")
+            .setParameterList("pools", pools)
+            .list();
+    }
+
+    /**
+     * @param ids ids of the entitlements to load
+     * @return the entitlements with the given ids, in ascending id order.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<Entitlement> listByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<Entitlement>();
+        }
+        return currentSession().createCriteria(Entitlement.class)
+            .add(Restrictions.in("id", ids))
+            .addOrder(Order.asc("id"))
+            .list();
+    }
+
     @Transactional
     public Entitlement findByCertificateSerial(Long serial) {
         return (Entitlement) currentSession().createCriteria(Entitlement.class)
@@ -14,9 +14,12 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.auth.PrincipalCache;
+import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.hibernate.criterion.Restrictions;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
 /**
  * IdentityCertificateCurator
@@ -24,6 +27,8 @@ import com.google.inject.Inject;
 public class IdentityCertificateCurator extends
     AbstractHibernateCurator<IdentityCertificate> {
 
+    @Inject private PrincipalCache principalCache;
+
     @Inject
     public IdentityCertificateCurator() {
         super(IdentityCertificate.class);
@@ -35,4 +40,15 @@ public class IdentityCertificateCurator extends
             IdentityCertificate.class).add(
             Restrictions.eq("serial", serialNumber)).uniqueResult();
     }
+
+    @Override
+    @Transactional
+    @EnforceAccessControl
+    public void delete(IdentityCertificate entity) {
+        // the consumer no longer authenticates with this certificate
+        if (entity.getConsumer() != null) {
+            principalCache.invalidate(entity.getConsumer().getUuid());
+        }
+        super.delete(entity);
+    }
 }
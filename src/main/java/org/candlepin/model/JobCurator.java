@@ -21,6 +21,8 @@ import org.candlepin.pinsetter.core.model.JobStatus.TargetType;
 
 import org.hibernate.criterion.Restrictions;
 
+import com.google.inject.persist.Transactional;
+
 import java.util.Date;
 import java.util.List;
 
@@ -43,6 +45,41 @@ public class JobCurator extends AbstractHibernateCurator<JobStatus> {
         return j;
     }
 
+    /**
+     * Record the progress of a running job, in a transaction of its own so it is
+     * visible while the job carries on.
+     *
+     * @param jobId id of the job
+     * @param result progress to report as the job result
+     */
+    @Transactional
+    public void updateResult(String jobId, String result) {
+        this.currentSession().createQuery(
+            "update JobStatus set result = :result where id = :id")
+               .setString("result", result)
+               .setString("id", jobId)
+               .executeUpdate();
+    }
+
+    /**
+     * Record how far a resumable job got along with its progress, in a transaction
+     * of its own so a restarted job can carry on from there.
+     *
+     * @param jobId id of the job
+     * @param checkpoint where the job would resume
+     * @param result progress to report as the job result
+     */
+    @Transactional
+    public void updateCheckpoint(String jobId, String checkpoint, String result) {
+        this.currentSession().createQuery(
+            "update JobStatus set checkpoint = :checkpoint, result = :result " +
+            "where id = :id")
+               .setString("checkpoint", checkpoint)
+               .setString("result", result)
+               .setString("id", jobId)
+               .executeUpdate();
+    }
+
     public int cleanupFailedJobs(Date deadline) {
         return this.currentSession().createQuery(
             "delete from JobStatus where startTime <= :date and " +
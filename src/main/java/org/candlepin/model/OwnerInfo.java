@@ -19,9 +19,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
 /**
- * OwnerInfo NOTE: this class only contains dynamic values. it should *not* be
- * saved to the db.
+ * OwnerInfo NOTE: this class only contains dynamic values. It is not an entity,
+ * but is kept as JSON in an {@link OwnerInfoSnapshot} between recounts.
  */
 public class OwnerInfo {
 
@@ -159,7 +162,9 @@ public class OwnerInfo {
         private int physical;
         private int guest;
 
-        public ConsumptionTypeCounts(int physical, int guest) {
+        @JsonCreator
+        public ConsumptionTypeCounts(@JsonProperty("physical") int physical,
+            @JsonProperty("guest") int guest) {
             this.physical = physical;
             this.guest = guest;
         }
@@ -14,17 +14,23 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.service.ProductServiceAdapter;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.persist.Transactional;
 
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -37,22 +43,141 @@ import javax.persistence.EntityManager;
 
 /**
  * OwnerInfoCurator
+ *
+ * Counting everything in an owner info takes dozens of queries, so the result
+ * is kept in an {@link OwnerInfoSnapshot} per owner. Changes to an owner's
+ * consumers, entitlements and pools mark its snapshot dirty (see
+ * org.candlepin.audit.OwnerInfoListener), and a dirty snapshot is recounted
+ * the next time it is read or by the OwnerInfoRefreshJob, whichever comes
+ * first. Snapshots older than candlepin.owner_info.max_age are recounted as
+ * well, since pools starting and expiring change the counts over time.
  */
-
 public class OwnerInfoCurator {
+    private static Logger log = Logger.getLogger(OwnerInfoCurator.class);
+
     private Provider<EntityManager> entityManager;
     private ConsumerTypeCurator consumerTypeCurator;
+    private Config config;
+    private ObjectMapper mapper = new ObjectMapper();
 
     @Inject
     public OwnerInfoCurator(Provider<EntityManager> entityManager,
-        ConsumerTypeCurator consumerTypeCurator, ProductServiceAdapter psa) {
+        ConsumerTypeCurator consumerTypeCurator, ProductServiceAdapter psa,
+        Config config) {
         this.entityManager = entityManager;
         this.consumerTypeCurator = consumerTypeCurator;
+        this.config = config;
     }
 
+    /**
+     * @param owner owner to look up
+     * @return owner info from the owner's snapshot, recounted first if the
+     * snapshot is missing, dirty or too old.
+     */
+    @Transactional
     public OwnerInfo lookupByOwner(Owner owner) {
-        OwnerInfo info = new OwnerInfo();
+        // Read as a projection: snapshots are only ever changed by bulk updates,
+        // which would not show in an instance held by the session.
+        OwnerInfoSnapshot snapshot = (OwnerInfoSnapshot) currentSession().createQuery(
+            "select new OwnerInfoSnapshot(s.ownerId, s.info, s.computed, s.dirtied) " +
+            "from OwnerInfoSnapshot s where s.ownerId = :ownerId")
+            .setString("ownerId", owner.getId())
+            .uniqueResult();
+        if (snapshot != null && snapshot.isCurrent(getCutoff())) {
+            try {
+                return mapper.readValue(snapshot.getInfo(), OwnerInfo.class);
+            }
+            catch (IOException e) {
+                log.warn("Unreadable owner info snapshot for " + owner.getKey(), e);
+            }
+        }
+        return refresh(owner);
+    }
+
+    /**
+     * Recounts the owner info and stores it as the owner's snapshot.
+     *
+     * @param owner owner to count
+     * @return the new owner info
+     */
+    @Transactional
+    public OwnerInfo refresh(Owner owner) {
         Date now = new Date();
+        OwnerInfo info = count(owner, now);
+
+        String json;
+        try {
+            json = mapper.writeValueAsString(info);
+        }
+        catch (IOException e) {
+            log.warn("Unable to store owner info snapshot for " + owner.getKey(), e);
+            return info;
+        }
+
+        // Update in place rather than merging, so a change reported while we
+        // were counting keeps its dirtied time and is not lost.
+        int updated = currentSession().createQuery(
+            "update OwnerInfoSnapshot s set s.info = :info, s.computed = :computed " +
+            "where s.ownerId = :ownerId")
+            .setString("info", json)
+            .setTimestamp("computed", now)
+            .setString("ownerId", owner.getId())
+            .executeUpdate();
+        if (updated == 0) {
+            currentSession().save(new OwnerInfoSnapshot(owner.getId(), json, now));
+        }
+        return info;
+    }
+
+    /**
+     * Records that an owner's counts changed, so its snapshot is recounted
+     * before it is next served.
+     *
+     * @param ownerId id of the owner that changed
+     */
+    @Transactional
+    public void markDirty(String ownerId) {
+        currentSession().createQuery(
+            "update OwnerInfoSnapshot s set s.dirtied = :now where s.ownerId = :ownerId")
+            .setTimestamp("now", new Date())
+            .setString("ownerId", ownerId)
+            .executeUpdate();
+    }
+
+    /**
+     * @return owners without a snapshot that can be served as is.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<Owner> listOwnersToRefresh() {
+        return currentSession().createQuery(
+            "select o from Owner o where o.id not in (" +
+            "select s.ownerId from OwnerInfoSnapshot s where s.computed > :cutoff " +
+            "and (s.dirtied is null or s.computed > s.dirtied))")
+            .setTimestamp("cutoff", getCutoff())
+            .list();
+    }
+
+    /**
+     * Removes the snapshot of an owner being deleted.
+     *
+     * @param owner owner being deleted
+     */
+    @Transactional
+    public void deleteSnapshot(Owner owner) {
+        currentSession().createQuery(
+            "delete from OwnerInfoSnapshot s where s.ownerId = :ownerId")
+            .setString("ownerId", owner.getId())
+            .executeUpdate();
+    }
+
+    private Date getCutoff() {
+        return new Date(System.currentTimeMillis() -
+            config.getInt(ConfigProperties.OWNER_INFO_MAX_AGE) * 1000L);
+    }
+
+    private OwnerInfo count(Owner owner, Date now) {
+        OwnerInfo info = new OwnerInfo();
 
         List<ConsumerType> types = consumerTypeCurator.listAll();
         HashMap<String, ConsumerType> typeHash = new HashMap<String, ConsumerType>();
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * OwnerInfoSnapshot - the last OwnerInfo computed for an owner, stored as
+ * JSON so the owner info and statistics can be served without recounting.
+ *
+ * A snapshot is current while it was computed after the owner last changed,
+ * see {@link OwnerInfoCurator}.
+ */
+@Entity
+@Table(name = "cp_owner_info")
+public class OwnerInfoSnapshot {
+
+    @Id
+    @Column(name = "owner_id", length = 32)
+    private String ownerId;
+
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "info_blob")
+    private String info;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date computed;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dirtied;
+
+    public OwnerInfoSnapshot(String ownerId, String info, Date computed) {
+        this.ownerId = ownerId;
+        this.info = info;
+        this.computed = computed;
+    }
+
+    public OwnerInfoSnapshot(String ownerId, String info, Date computed,
+        Date dirtied) {
+        this(ownerId, info, computed);
+        this.dirtied = dirtied;
+    }
+
+    public OwnerInfoSnapshot() {
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    /**
+     * @return when counting started for this snapshot.
+     */
+    public Date getComputed() {
+        return computed;
+    }
+
+    /**
+     * @return when a change to the owner was last reported, or null.
+     */
+    public Date getDirtied() {
+        return dirtied;
+    }
+
+    /**
+     * @param cutoff snapshots computed before this are too old to use.
+     * @return true if the snapshot can be served as is.
+     */
+    public boolean isCurrent(Date cutoff) {
+        return computed.after(cutoff) && (dirtied == null || computed.after(dirtied));
+    }
+}
@@ -21,7 +21,6 @@ import org.codehaus.jackson.map.annotate.JsonFilter;
 
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.ForeignKey;
-import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 import org.hibernate.annotations.LazyCollection;
@@ -138,14 +137,15 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
     private String contractNumber;
     private String accountNumber;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent " +
-             "where ent.pool_id = id)")
-    private Long consumed;
+    // Running totals of the entitlement quantities in this pool, maintained by the
+    // pool manager as entitlements are added and removed. They are never written
+    // by a regular entity update, only through PoolCurator.adjustConsumed and
+    // PoolCurator.reconcileConsumed, so a stale pool being merged cannot clobber them.
+    @Column(nullable = false, updatable = false)
+    private Long consumed = 0L;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent, cp_consumer cons, " +
-        "cp_consumer_type ctype where ent.pool_id = id and ent.consumer_id = cons.id " +
-        "and cons.type_id = ctype.id and ctype.manifest = 'Y')")
-    private Long exported;
+    @Column(nullable = false, updatable = false)
+    private Long exported = 0L;
 
     // TODO: May not still be needed, iirc a temporary hack for client.
     private String productName;
@@ -238,8 +238,8 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param consumed set the activate uses.
      */
     public void setConsumed(Long consumed) {
-        // Even tho this is calculated at DB fetch time, we allow
-        // setting it for changes in a single txn
+        // Only changes the in memory value, use PoolCurator.adjustConsumed
+        // to persist a change.
         this.consumed = consumed;
     }
 
@@ -254,8 +254,8 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param exported set the activate uses.
      */
     public void setExported(Long exported) {
-        // Even tho this is calculated at DB fetch time, we allow
-        // setting it for changes in a single txn
+        // Only changes the in memory value, use PoolCurator.adjustConsumed
+        // to persist a change.
         this.exported = exported;
     }
 
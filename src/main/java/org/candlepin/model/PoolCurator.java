@@ -20,10 +20,11 @@ import com.google.inject.persist.Transactional;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.interceptor.EnforceAccessControl;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.candlepin.policy.Enforcer;
 import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.ProductCache;
-import org.candlepin.policy.js.entitlement.PreEntHelper;
 import org.candlepin.policy.criteria.RulesCriteria;
 import org.hibernate.Criteria;
 import org.hibernate.Filter;
@@ -35,14 +36,18 @@ import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.hibernate.impl.FilterImpl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -51,6 +56,16 @@ import java.util.TreeSet;
  */
 public class PoolCurator extends AbstractHibernateCurator<Pool> {
 
+    // Sums the pool counters are derived from, %1$s is the pool id column:
+    private static final String CONSUMED_SUM =
+        "select coalesce(sum(ent.quantity), 0) from cp_entitlement ent " +
+        "where ent.pool_id = %1$s";
+    private static final String EXPORTED_SUM =
+        "select coalesce(sum(ent.quantity), 0) from cp_entitlement ent, " +
+        "cp_consumer cons, cp_consumer_type ctype where ent.pool_id = %1$s " +
+        "and ent.consumer_id = cons.id and cons.type_id = ctype.id " +
+        "and ctype.manifest = 'Y'";
+
     private static Logger log = Logger.getLogger(PoolCurator.class);
     private Enforcer enforcer;
     private RulesCriteria poolCriteria;
@@ -185,6 +200,95 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             log.debug("   product: " + productId);
         }
 
+        Criteria crit = createAvailablePoolsCriteria(c, o, productIds(productId),
+            activeOn, activeOnly);
+
+        // FIXME: sort by enddate?
+        return filterAvailablePools(crit.list(), c, includeWarnings);
+    }
+
+    /**
+     * List entitlement pools which provide any of the given products, either as
+     * their top level product or as a provided product. Otherwise behaves like
+     * listAvailableEntitlementPools.
+     *
+     * @param c Consumer being entitled.
+     * @param o Owner whose subscriptions should be inspected.
+     * @param productIds only entitlements which provide one of these products are
+     *        included.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param activeOnly if true, only active entitlements are included.
+     * @param includeWarnings When filtering by consumer, include pools that
+     *        triggered a rule warning. (errors will still be excluded)
+     * @return List of entitlement pools.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public List<Pool> listAvailablePoolsProviding(Consumer c, Owner o,
+        Collection<String> productIds, Date activeOn, boolean activeOnly,
+        boolean includeWarnings) {
+
+        if (o == null && c != null) {
+            o = c.getOwner();
+        }
+        if (productIds.isEmpty()) {
+            return new ArrayList<Pool>();
+        }
+
+        Criteria crit = createAvailablePoolsCriteria(c, o, productIds, activeOn,
+            activeOnly);
+        return filterAvailablePools(crit.list(), c, includeWarnings);
+    }
+
+    /**
+     * List entitlement pools, one page at a time if requested. Takes the same
+     * filters as listAvailableEntitlementPools. When filtering by consumer, the
+     * rules run in memory and the page is cut from the pools which pass;
+     * otherwise the database does the paging.
+     *
+     * @param c Consumer being entitled.
+     * @param o Owner whose subscriptions should be inspected.
+     * @param productId only entitlements which provide this product are included.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param activeOnly if true, only active entitlements are included.
+     * @param includeWarnings When filtering by consumer, include pools that
+     *        triggered a rule warning. (errors will still be excluded)
+     * @param pageRequest paging and ordering to apply, may be null.
+     * @return Page of entitlement pools.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public Page<Pool> listAvailableEntitlementPools(Consumer c, Owner o,
+        String productId, Date activeOn, boolean activeOnly, boolean includeWarnings,
+        PageRequest pageRequest) {
+
+        if (o == null && c != null) {
+            o = c.getOwner();
+        }
+
+        Criteria crit = createAvailablePoolsCriteria(c, o, productIds(productId),
+            activeOn, activeOnly);
+        if (c == null) {
+            return listByCriteria(crit, pageRequest);
+        }
+
+        if (pageRequest != null) {
+            addOrder(crit, pageRequest);
+        }
+        return listPage(filterAvailablePools(crit.list(), c, includeWarnings),
+            pageRequest);
+    }
+
+    private Collection<String> productIds(String productId) {
+        return productId == null ? null : Collections.singleton(productId);
+    }
+
+    private Criteria createAvailablePoolsCriteria(Consumer c, Owner o,
+        Collection<String> productIds, Date activeOn, boolean activeOnly) {
         Criteria crit = currentSession().createCriteria(Pool.class);
         if (activeOnly) {
             crit.add(Restrictions.eq("activeSubscription", Boolean.TRUE));
@@ -214,43 +318,31 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             crit.add(Restrictions.le("startDate", activeOn));
             crit.add(Restrictions.ge("endDate", activeOn));
         }
-
-        // FIXME: sort by enddate?
-        List<Pool> results = crit.list();
-
-        if (log.isDebugEnabled()) {
-            log.debug("Loaded " + results.size() + " pools from database.");
+        if (productIds != null) {
+            // Either the pool's own product, or one it provides:
+            DetachedCriteria provided = DetachedCriteria.forClass(ProvidedProduct.class)
+                .add(Restrictions.in("productId", productIds))
+                .setProjection(Projections.property("pool.id"));
+            crit.add(Restrictions.or(Restrictions.in("productId", productIds),
+                Subqueries.propertyIn("id", provided)));
         }
 
+        return crit;
+    }
+
+    private List<Pool> filterAvailablePools(List<Pool> results, Consumer c,
+        boolean includeWarnings) {
         if (results == null) {
             log.debug("no results");
             return new ArrayList<Pool>();
         }
 
         if (log.isDebugEnabled()) {
+            log.debug("Loaded " + results.size() + " pools from database.");
             log.debug("results(postfilter): " + results);
             log.debug("active pools for owner: " + results.size());
         }
 
-        // crit.add(Restrictions.or(Restrictions.eq("productId", productId),
-        // Restrictions.in("", results)))
-        // Filter for product we want:
-        if (productId != null) {
-
-            List<Pool> newResults = new LinkedList<Pool>();
-            for (Pool p : results) {
-                // Provides will check if the products are a direct match, or if the
-                // desired product is provided by the product this pool is for:
-                if (p.provides(productId)) {
-                    newResults.add(p);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool provides " + productId + ": " + p);
-                    }
-                }
-            }
-            results = newResults;
-        }
-
         // If querying for pools available to a specific consumer, we need
         // to do a rules pass to verify the entitlement will be granted.
         // Note that something could change between the time we list a pool as
@@ -258,9 +350,10 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         // request still could fail.
         if (c != null) {
             List<Pool> newResults = new LinkedList<Pool>();
+            Map<Pool, ValidationResult> resultsByPool =
+                enforcer.preEntitlement(c, results, 1);
             for (Pool p : results) {
-                PreEntHelper helper = enforcer.preEntitlement(c, p, 1);
-                ValidationResult result = helper.getResult();
+                ValidationResult result = resultsByPool.get(p);
                 if (result.isSuccessful() && (!result.hasWarnings() || includeWarnings)) {
                     newResults.add(p);
                 }
@@ -424,6 +517,60 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return pool;
     }
 
+    /**
+     * Atomically adjust the persisted consumed and exported counters of a pool.
+     * Only the database row is changed, callers holding the pool should update
+     * the in memory values themselves.
+     *
+     * @param pool pool whose counters are changing
+     * @param consumedDelta change to the consumed quantity
+     * @param exportedDelta change to the exported quantity
+     */
+    @Transactional
+    public void adjustConsumed(Pool pool, long consumedDelta, long exportedDelta) {
+        currentSession().createQuery(
+            "update Pool p set p.consumed = p.consumed + :consumed, " +
+            "p.exported = p.exported + :exported where p.id = :id")
+            .setLong("consumed", consumedDelta)
+            .setLong("exported", exportedDelta)
+            .setString("id", pool.getId())
+            .executeUpdate();
+    }
+
+    /**
+     * @return ids of the pools whose consumed or exported counters no longer match
+     * the entitlements they hold.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> listPoolIdsWithCounterDrift() {
+        return currentSession().createSQLQuery(
+            "select p.id from cp_pool p " +
+            "where p.consumed <> (" + String.format(CONSUMED_SUM, "p.id") + ") " +
+            "or p.exported <> (" + String.format(EXPORTED_SUM, "p.id") + ")")
+            .list();
+    }
+
+    /**
+     * Recalculate the consumed and exported counters of the given pools from the
+     * entitlements table.
+     *
+     * @param poolIds ids of the pools to repair
+     * @return number of pools updated
+     */
+    @Transactional
+    public int reconcileConsumed(List<String> poolIds) {
+        if (poolIds.isEmpty()) {
+            return 0;
+        }
+        return currentSession().createSQLQuery(
+            "update cp_pool " +
+            "set consumed = (" + String.format(CONSUMED_SUM, "cp_pool.id") + "), " +
+            "exported = (" + String.format(EXPORTED_SUM, "cp_pool.id") + ") " +
+            "where id in (:ids)")
+            .setParameterList("ids", poolIds)
+            .executeUpdate();
+    }
+
     public List<ActivationKey> getActivationKeysForPool(Pool p) {
         List<ActivationKey> activationKeys = new ArrayList<ActivationKey>();
         List<ActivationKeyPool> activationKeyPools = currentSession().createCriteria(
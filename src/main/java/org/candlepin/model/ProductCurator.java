@@ -14,10 +14,16 @@
  */
 package org.candlepin.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.candlepin.auth.interceptor.EnforceAccessControl;
 
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Query;
 import org.hibernate.criterion.Restrictions;
 
@@ -53,6 +59,27 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
             .add(Restrictions.eq("id", id)).uniqueResult();
     }
 
+    /**
+     * Loads several products in one query, along with their attributes and
+     * content.
+     *
+     * @param ids ids of the products to lookup
+     * @return the Products which match the given ids.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<Product> listAllByIds(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<Product>();
+        }
+        return currentSession().createCriteria(Product.class)
+            .add(Restrictions.in("id", ids))
+            .setFetchMode("attributes", FetchMode.JOIN)
+            .setFetchMode("productContent", FetchMode.JOIN)
+            .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+            .list();
+    }
+
     /**
      * Create the given product if it does not already exist, otherwise update
      * existing product.
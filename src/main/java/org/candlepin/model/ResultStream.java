@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * ResultStream
+ *
+ * Scrolls through the results of a criteria query as it is iterated, rather than
+ * loading them all into the session up front. The session is cleared every
+ * batchSize rows, so each entity must be done with before the next one is
+ * requested; this suits writing the results straight out to a response.
+ *
+ * The query runs when iteration starts, which for a REST resource is after the
+ * resource method has returned. If no transaction is active at that point one is
+ * held open until the results are exhausted or the stream is closed.
+ *
+ * @param <E> entity type returned by the query.
+ */
+public class ResultStream<E> implements Iterable<E> {
+    private final EntityManager entityManager;
+    private final Criteria criteria;
+    private final int batchSize;
+    private ScrollableResults results;
+    private EntityTransaction transaction;
+
+    public ResultStream(EntityManager entityManager, Criteria criteria, int batchSize) {
+        this.entityManager = entityManager;
+        this.criteria = criteria;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        if (results != null) {
+            throw new IllegalStateException("Results can only be streamed once.");
+        }
+
+        EntityTransaction tx = entityManager.getTransaction();
+        if (!tx.isActive()) {
+            tx.begin();
+            transaction = tx;
+        }
+        results = criteria.setFetchSize(batchSize).scroll(ScrollMode.FORWARD_ONLY);
+        return new ResultIterator();
+    }
+
+    /**
+     * Releases the underlying cursor, and ends the transaction if this stream
+     * started it. Safe to call more than once.
+     */
+    public void close() {
+        if (results != null) {
+            results.close();
+        }
+        if (transaction != null && transaction.isActive()) {
+            transaction.commit();
+        }
+        transaction = null;
+    }
+
+    /**
+     * ResultIterator
+     */
+    private class ResultIterator implements Iterator<E> {
+        private int count = 0;
+        private boolean advanced = false;
+        private boolean hasNext = false;
+
+        @Override
+        public boolean hasNext() {
+            if (!advanced) {
+                if (count > 0 && count % batchSize == 0) {
+                    // Everything handed out so far has been written, let it go:
+                    ((Session) entityManager.getDelegate()).clear();
+                }
+                hasNext = results.next();
+                advanced = true;
+                if (!hasNext) {
+                    close();
+                }
+            }
+            return hasNext;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            count++;
+            return (E) results.get(0);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
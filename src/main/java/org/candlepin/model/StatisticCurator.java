@@ -14,6 +14,9 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.audit.Event;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Statistic.EntryType;
 import org.candlepin.model.Statistic.ValueType;
 
@@ -23,30 +26,31 @@ import com.google.inject.persist.Transactional;
 import org.hibernate.Query;
 import org.hibernate.Session;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * StatisticCurator
  */
 public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
 
-    private OwnerCurator ownerCurator;
-    private OwnerInfoCurator ownerInfoCurator;
     private StatisticCuratorQueries statisticCuratorQueries;
+    private Config config;
 
     @Inject
-    public StatisticCurator(OwnerCurator ownerCurator,
-        OwnerInfoCurator ownerInfoCurator,
-        StatisticCuratorQueries statisticCuratorQueries) {
+    public StatisticCurator(StatisticCuratorQueries statisticCuratorQueries,
+        Config config) {
         super(Statistic.class);
-        this.ownerCurator = ownerCurator;
-        this.ownerInfoCurator = ownerInfoCurator;
         this.statisticCuratorQueries = statisticCuratorQueries;
+        this.config = config;
     }
 
     @Transactional
@@ -73,205 +77,273 @@ public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
         return statisticCuratorQueries.getStatisticsByProduct(prodId, vType, from, to);
     }
 
+    /**
+     * Records the statistics of every owner. Each owner is counted with a fixed
+     * number of grouped queries in a transaction of its own, optionally on
+     * several threads, and the session is cleared between owners so nothing
+     * but the owner ids is held for the whole run.
+     */
     public void executeStatisticRun() {
-        List<Owner> owners = ownerCurator.listAll();
-        for (Owner owner : owners) {
-            String ownerId = owner.getId();
-
-            systemCounts(owner);
-            totalConsumers(owner);
-            consumersPerSocketCount(owner);
-            int tsc = totalSubscriptionCount(ownerId);
-            totalSubscriptionConsumed(ownerId, tsc);
-            perPool(ownerId);
-            perProduct(ownerId);
+        List<String> ownerIds = listOwnerIds();
+        int threads = Math.min(config.getInt(ConfigProperties.STATISTICS_THREADS, 1),
+            ownerIds.size());
+        if (threads <= 1) {
+            for (String ownerId : ownerIds) {
+                executeStatisticRun(ownerId);
+                currentSession().flush();
+                currentSession().clear();
+            }
+            return;
+        }
+
+        // Each worker's transactions run in a session of its own, which
+        // ends along with them.
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (final String ownerId : ownerIds) {
+                results.add(executor.submit(new Runnable() {
+                    public void run() {
+                        executeStatisticRun(ownerId);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while collecting statistics", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
         }
     }
 
-    private void systemCounts(Owner owner) {
-        OwnerInfo oi = ownerInfoCurator.lookupByOwner(owner);
+    /**
+     * Records the statistics of one owner.
+     *
+     * @param ownerId id of the owner
+     */
+    @Transactional
+    public void executeStatisticRun(String ownerId) {
+        List<Statistic> stats = new ArrayList<Statistic>();
 
-        Statistic consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.VIRTUAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.GUEST),
-            owner.getId());
-        create(consumerCountStatistic);
+        int total = systemCounts(ownerId, stats);
+        consumersPerSocketCount(ownerId, total, stats);
+        int tsc = totalSubscriptionCount(ownerId, stats);
+        totalSubscriptionConsumed(ownerId, tsc, stats);
+        perPool(ownerId, stats);
+        perProduct(ownerId, stats);
 
-        consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.PHYSICAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.PHYSICAL),
-            owner.getId());
-        create(consumerCountStatistic);
+        createAll(stats);
+    }
 
+    @SuppressWarnings("unchecked")
+    @Transactional
+    protected List<String> listOwnerIds() {
+        return currentSession().createQuery("select o.id from Owner o").list();
     }
 
-    private void totalConsumers(Owner owner) {
-        int count = owner.getConsumers().size();
-        Statistic consumerCountStatistic = new Statistic(
-            EntryType.TOTALCONSUMERS, ValueType.RAW, null, count, owner.getId());
-        create(consumerCountStatistic);
+    /*
+     * Total, guest and physical consumer counts. Non-system consumers, which
+     * have no virt.is_guest fact, count as physical.
+     */
+    private int systemCounts(String ownerId, List<Statistic> stats) {
+        int total = count(currentSession().createQuery(
+            "select count(c) from Consumer c where c.owner.id = :ownerId")
+            .setString("ownerId", ownerId));
+        int guests = count(currentSession().createQuery(
+            "select count(c) from Consumer c join c.facts as fact " +
+            "where c.owner.id = :ownerId and index(fact) = 'virt.is_guest' " +
+            "and fact = 'true'")
+            .setString("ownerId", ownerId));
+
+        stats.add(new Statistic(EntryType.SYSTEM, ValueType.VIRTUAL, null, guests,
+            ownerId));
+        stats.add(new Statistic(EntryType.SYSTEM, ValueType.PHYSICAL, null,
+            total - guests, ownerId));
+        stats.add(new Statistic(EntryType.TOTALCONSUMERS, ValueType.RAW, null, total,
+            ownerId));
+        return total;
     }
 
-    private void consumersPerSocketCount(Owner owner) {
-        Map<String, Integer> map = new HashMap<String, Integer>();
-        for (Consumer c : owner.getConsumers()) {
-            String sockets = c.getFact("cpu.cpu_socket(s)");
-            Integer count = map.get(sockets);
-            if (count == null) {
-                count = Integer.valueOf(0);
-            }
-            count++;
-            map.put(sockets, count);
+    private void consumersPerSocketCount(String ownerId, int total,
+        List<Statistic> stats) {
+        Query query = currentSession().createQuery(
+            "select fact, count(c) from Consumer c join c.facts as fact " +
+            "where c.owner.id = :ownerId and index(fact) = 'cpu.cpu_socket(s)' " +
+            "group by fact")
+            .setString("ownerId", ownerId);
+
+        int withFact = 0;
+        for (Object[] row : rows(query)) {
+            int count = ((Long) row[1]).intValue();
+            withFact += count;
+            stats.add(new Statistic(EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW,
+                (String) row[0], count, ownerId));
         }
 
-        for (Entry<String, Integer> entry : map.entrySet()) {
-            Statistic socketCountStatistic = new Statistic(
-                EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, entry.getKey(),
-                entry.getValue(), owner.getId());
-            create(socketCountStatistic);
+        // Consumers without the fact are reported under no socket count:
+        if (total > withFact) {
+            stats.add(new Statistic(EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW,
+                null, total - withFact, ownerId));
         }
     }
 
-    private int totalSubscriptionCount(String ownerId) {
-        int subscriptionCountTotal = 0;
-        String subscriptionCountString = "select sum(quantity) from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query subscriptionCountQuery = currentSession().createQuery(
-            subscriptionCountString).setString("ownerId", ownerId);
-        Long subCount = (Long) subscriptionCountQuery.iterate().next();
-        subscriptionCountTotal = (subCount == null ? 0 : subCount.intValue());
-        Statistic subscriptionCountStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null,
-            subscriptionCountTotal, ownerId);
-        create(subscriptionCountStatistic);
+    private int totalSubscriptionCount(String ownerId, List<Statistic> stats) {
+        int subscriptionCountTotal = count(currentSession().createQuery(
+            "select sum(quantity) from Pool p where p.owner.id = :ownerId")
+            .setString("ownerId", ownerId));
+        stats.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null,
+            subscriptionCountTotal, ownerId));
         return subscriptionCountTotal;
     }
 
     private void totalSubscriptionConsumed(String ownerId,
-        int subscriptionCountTotal) {
+        int subscriptionCountTotal, List<Statistic> stats) {
 
         // Total Subscription Consumed (Raw Count and Percentage)
-        int entitlementCountTotal = 0;
-        String entitlementCountString = "select sum(quantity) from Entitlement e" +
-            " where e.owner.id = :ownerId";
-        Query entitlementCountQuery = currentSession().createQuery(
-            entitlementCountString).setString("ownerId", ownerId);
-        Long entCount = (Long) entitlementCountQuery.iterate().next();
-        entitlementCountTotal = (entCount == null ? 0 : entCount.intValue());
-        Statistic entitlementCountRawStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW, null,
-            entitlementCountTotal, ownerId);
-        create(entitlementCountRawStatistic);
-        int percentage = 0;
-        if (subscriptionCountTotal > 0) {
-            percentage = (entitlementCountTotal * 100 / subscriptionCountTotal);
-        }
-        Statistic entitlementCountPercentageStatistic = new Statistic(
-            EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.PERCENTAGECONSUMED,
-            null, percentage, ownerId);
-        create(entitlementCountPercentageStatistic);
+        int entitlementCountTotal = count(currentSession().createQuery(
+            "select sum(quantity) from Entitlement e where e.owner.id = :ownerId")
+            .setString("ownerId", ownerId));
+        stats.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW,
+            null, entitlementCountTotal, ownerId));
+        stats.add(new Statistic(EntryType.TOTALSUBSCRIPTIONCONSUMED,
+            ValueType.PERCENTAGECONSUMED, null,
+            percentage(entitlementCountTotal, subscriptionCountTotal), ownerId));
     }
 
-    private void perPool(String ownerId) {
-        String poolString = "select id from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query poolQuery = currentSession().createQuery(poolString).setString(
-            "ownerId", ownerId);
-        Iterator poolIter = poolQuery.iterate();
-        String perPoolString = "select count(e) from Event e " +
+    private void perPool(String ownerId, List<Statistic> stats) {
+        Map<String, Integer> quantities = new HashMap<String, Integer>();
+        for (Object[] row : rows(currentSession().createQuery(
+            "select p.id, p.quantity from Pool p where p.owner.id = :ownerId")
+            .setString("ownerId", ownerId))) {
+            quantities.put((String) row[0],
+                row[1] == null ? 0 : ((Long) row[1]).intValue());
+        }
+
+        EventCounts counts = new EventCounts(rows(currentSession().createQuery(
+            "select e.referenceId, e.type, count(e) from Event e " +
             "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
-            "and e.type = :type and e.referenceId = :referenceId";
-        while (poolIter.hasNext()) {
-            String poolId = (String) poolIter.next();
-
-            Query perPoolQuery = currentSession().createQuery(perPoolString);
-            perPoolQuery.setString("type", "CREATED");
-            perPoolQuery.setString("referenceId", poolId);
-            Long ppUCount = (Long) perPoolQuery.iterate().next();
-            int perPoolUsedCount = (ppUCount == null ? 0 : ppUCount.intValue());
-
-            perPoolQuery.setString("type", "DELETED");
-            Long ppDCount = (Long) perPoolQuery.iterate().next();
-            int perPoolDeletedCount = (ppDCount == null ? 0 : ppDCount
-                .intValue());
-            int perPoolConsumedCount = perPoolUsedCount - perPoolDeletedCount;
-
-            String totalPoolCountString = "select quantity from Pool p" +
-                " where p.id = :poolId";
-            Query totalPoolCountQuery = currentSession().createQuery(
-                totalPoolCountString).setString("poolId", poolId);
-
-            Long tpCount = (Long) totalPoolCountQuery.iterate().next();
-            int totalPoolCountTotal = (tpCount == null ? 0 : tpCount.intValue());
-            int poolPercentage = 0;
-            if (totalPoolCountTotal > 0) {
-                poolPercentage = (perPoolConsumedCount * 100 / totalPoolCountTotal);
-            }
-            Statistic perPoolCountPercentageStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED, poolId,
-                poolPercentage, ownerId);
-            create(perPoolCountPercentageStatistic);
-            Statistic perPoolCountUsedStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.USED, poolId, perPoolUsedCount,
-                ownerId);
-            create(perPoolCountUsedStatistic);
-            Statistic perPoolCountConsumedStatistic = new Statistic(
-                EntryType.PERPOOL, ValueType.CONSUMED, poolId,
-                perPoolConsumedCount, ownerId);
-            create(perPoolCountConsumedStatistic);
+            "and e.referenceId in (select p.id from Pool p " +
+            "where p.owner.id = :ownerId) " +
+            "group by e.referenceId, e.type")
+            .setString("ownerId", ownerId)));
+
+        for (Entry<String, Integer> pool : quantities.entrySet()) {
+            String poolId = pool.getKey();
+            int used = counts.created(poolId);
+            int consumed = used - counts.deleted(poolId);
+
+            stats.add(new Statistic(EntryType.PERPOOL, ValueType.PERCENTAGECONSUMED,
+                poolId, percentage(consumed, pool.getValue()), ownerId));
+            stats.add(new Statistic(EntryType.PERPOOL, ValueType.USED, poolId, used,
+                ownerId));
+            stats.add(new Statistic(EntryType.PERPOOL, ValueType.CONSUMED, poolId,
+                consumed, ownerId));
         }
     }
 
-    private void perProduct(String ownerId) {
-        String productString = "select distinct p.productName, p.productId from Pool p" +
-            " where p.owner.id = :ownerId";
-        Query productQuery = currentSession().createQuery(productString)
-            .setString("ownerId", ownerId);
-        Iterator productIter = productQuery.iterate();
-        String perProductString = "select count(e) from Event e " +
+    /*
+     * Product statistics count the entitlements and pools of a product name
+     * across all owners, the product just has to be offered to this owner.
+     */
+    private void perProduct(String ownerId, List<Statistic> stats) {
+        List<Object[]> products = rows(currentSession().createQuery(
+            "select distinct p.productName, p.productId from Pool p " +
+            "where p.owner.id = :ownerId")
+            .setString("ownerId", ownerId));
+        if (products.isEmpty()) {
+            return;
+        }
+
+        EventCounts counts = new EventCounts(rows(currentSession().createQuery(
+            "select e.targetName, e.type, count(e) from Event e " +
             "where e.target = 'ENTITLEMENT' and e.referenceType = 'POOL' " +
-            "and e.type = :type and e.targetName = :productName";
-        while (productIter.hasNext()) {
-            Object[] productName = (Object[]) productIter.next();
-
-            Query perProductQuery = currentSession().createQuery(
-                perProductString);
-            perProductQuery.setString("type", "CREATED");
-            perProductQuery.setString("productName", (String) productName[0]);
-            Long ppUCount = (Long) perProductQuery.iterate().next();
-            int perProductUsedCount = (ppUCount == null ? 0 : ppUCount
-                .intValue());
-
-            perProductQuery.setString("type", "DELETED");
-            Long ppDCount = (Long) perProductQuery.iterate().next();
-            int perProductDeletedCount = (ppDCount == null ? 0 : ppDCount
-                .intValue());
-            int perProductConsumedCount = perProductUsedCount -
-                perProductDeletedCount;
-
-            String totalProductCountString = "select sum(quantity) from Pool p" +
-                " where p.productName = :productName";
-            Query totalProductCountQuery = currentSession().createQuery(
-                totalProductCountString).setString("productName",
-                (String) productName[0]);
-            Long tpCount = (Long) totalProductCountQuery.iterate().next();
-            int totalProductCountTotal = (tpCount == null ? 0 : tpCount
-                .intValue());
-            int productPercentage = 0;
-            if (totalProductCountTotal > 0) {
-                productPercentage = (perProductConsumedCount * 100 /
-                                     totalProductCountTotal);
+            "and e.targetName in (select p.productName from Pool p " +
+            "where p.owner.id = :ownerId) " +
+            "group by e.targetName, e.type")
+            .setString("ownerId", ownerId)));
+
+        Map<String, Integer> quantities = new HashMap<String, Integer>();
+        for (Object[] row : rows(currentSession().createQuery(
+            "select p.productName, sum(p.quantity) from Pool p " +
+            "where p.productName in (select p2.productName from Pool p2 " +
+            "where p2.owner.id = :ownerId) " +
+            "group by p.productName")
+            .setString("ownerId", ownerId))) {
+            quantities.put((String) row[0],
+                row[1] == null ? 0 : ((Long) row[1]).intValue());
+        }
+
+        for (Object[] product : products) {
+            String productName = (String) product[0];
+            String productId = (String) product[1];
+            int used = counts.created(productName);
+            int consumed = used - counts.deleted(productName);
+            Integer quantity = quantities.get(productName);
+
+            stats.add(new Statistic(EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
+                productId, percentage(consumed, quantity == null ? 0 : quantity),
+                ownerId));
+            stats.add(new Statistic(EntryType.PERPRODUCT, ValueType.USED, productId,
+                used, ownerId));
+            stats.add(new Statistic(EntryType.PERPRODUCT, ValueType.CONSUMED,
+                productId, consumed, ownerId));
+        }
+    }
+
+    private static int percentage(int part, int total) {
+        return total > 0 ? part * 100 / total : 0;
+    }
+
+    private static int count(Query query) {
+        Long count = (Long) query.uniqueResult();
+        return count == null ? 0 : count.intValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object[]> rows(Query query) {
+        return query.list();
+    }
+
+    /**
+     * EventCounts - created and deleted entitlement events per pool id or
+     * product name, from (key, type, count) rows.
+     */
+    private static class EventCounts {
+        private Map<String, Integer> created = new HashMap<String, Integer>();
+        private Map<String, Integer> deleted = new HashMap<String, Integer>();
+
+        EventCounts(List<Object[]> rows) {
+            for (Object[] row : rows) {
+                Event.Type type = (Event.Type) row[1];
+                int count = ((Long) row[2]).intValue();
+                if (type == Event.Type.CREATED) {
+                    created.put((String) row[0], count);
+                }
+                else if (type == Event.Type.DELETED) {
+                    deleted.put((String) row[0], count);
+                }
             }
-            Statistic perPoolCountPercentageStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.PERCENTAGECONSUMED,
-                (String) productName[1], productPercentage, ownerId);
-            create(perPoolCountPercentageStatistic);
-            Statistic perPoolCountUsedStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.USED, (String) productName[1],
-                perProductUsedCount, ownerId);
-            create(perPoolCountUsedStatistic);
-            Statistic perPoolCountConsumedStatistic = new Statistic(
-                EntryType.PERPRODUCT, ValueType.CONSUMED,
-                (String) productName[1], perProductConsumedCount, ownerId);
-            create(perPoolCountConsumedStatistic);
+        }
+
+        int created(String key) {
+            Integer count = created.get(key);
+            return count == null ? 0 : count;
+        }
+
+        int deleted(String key) {
+            Integer count = deleted.get(key);
+            return count == null ? 0 : count;
         }
     }
 
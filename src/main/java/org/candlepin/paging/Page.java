@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.paging;
+
+/**
+ * Page
+ *
+ * The results of a list request. When the request asked for paging, the data
+ * holds just the requested page and the total number of matching records is
+ * known; otherwise the data holds every match and the total is left null.
+ *
+ * @param <E> type of the records listed.
+ */
+public class Page<E> {
+    private Iterable<E> pageData;
+    private Integer maxRecords;
+    private PageRequest pageRequest;
+
+    public Iterable<E> getPageData() {
+        return pageData;
+    }
+
+    public void setPageData(Iterable<E> pageData) {
+        this.pageData = pageData;
+    }
+
+    public Integer getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(Integer maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public PageRequest getPageRequest() {
+        return pageRequest;
+    }
+
+    public void setPageRequest(PageRequest pageRequest) {
+        this.pageRequest = pageRequest;
+    }
+
+    /**
+     * @return true if this holds a single page out of a larger result set.
+     */
+    public boolean isPaged() {
+        return pageRequest != null && pageRequest.isPaging() && maxRecords != null;
+    }
+
+    /**
+     * @return number of the last page, 1 when there are no records at all.
+     */
+    public int getLastPage() {
+        int perPage = pageRequest.getPerPage();
+        return Math.max(1, (maxRecords + perPage - 1) / perPage);
+    }
+}
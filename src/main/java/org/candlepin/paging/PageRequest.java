@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.paging;
+
+/**
+ * PageRequest
+ *
+ * The paging and ordering parameters a client sent along with a list request.
+ * Pages are numbered from 1.
+ */
+public class PageRequest {
+    public static final int DEFAULT_PER_PAGE = 10;
+    public static final int MAX_PER_PAGE = 1000;
+    public static final String DEFAULT_SORT_FIELD = "created";
+
+    /**
+     * Order
+     */
+    public enum Order {
+        ASCENDING, DESCENDING
+    }
+
+    private Integer page;
+    private Integer perPage;
+    private String sortBy;
+    private Order order = Order.ASCENDING;
+
+    public Integer getPage() {
+        return page;
+    }
+
+    public void setPage(Integer page) {
+        this.page = page;
+    }
+
+    public Integer getPerPage() {
+        return perPage;
+    }
+
+    public void setPerPage(Integer perPage) {
+        this.perPage = perPage;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(String sortBy) {
+        this.sortBy = sortBy;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    /**
+     * @return true if only one page of results was asked for, false if the
+     * request just specifies an ordering.
+     */
+    public boolean isPaging() {
+        return page != null && perPage != null;
+    }
+
+    /**
+     * @return index of the first record on the requested page.
+     */
+    public int getFirstResult() {
+        return (page - 1) * perPage;
+    }
+}
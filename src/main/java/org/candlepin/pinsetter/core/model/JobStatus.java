@@ -22,6 +22,7 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.candlepin.auth.Principal;
 import org.candlepin.model.AbstractHibernateObject;
@@ -72,6 +73,7 @@ public class JobStatus extends AbstractHibernateObject {
     private Date finishTime;
     private String result;
     private String principalName;
+    private String checkpoint;
 
     private TargetType targetType;
     private String targetId;
@@ -175,4 +177,16 @@ public class JobStatus extends AbstractHibernateObject {
     public String getPrincipalName() {
         return this.principalName;
     }
+
+    /**
+     * @return how far a resumable job got before it was interrupted, if it did.
+     */
+    @XmlTransient
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
 }
@@ -20,7 +20,6 @@ import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.CrlGenerator;
-import org.candlepin.util.CrlFileUtil;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -29,7 +28,6 @@ import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 
 /**
  * CertificateRevocationListTask.
@@ -40,21 +38,18 @@ public class CertificateRevocationListTask implements Job {
 
     private Config config;
     private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
 
     private static Logger log = Logger.getLogger(CertificateRevocationListTask.class);
 
     /**
      * Instantiates a new certificate revocation list task.
      *
-     * @param crlFileUtil file util
      * @param conf the conf
+     * @param crlGenerator the crl generator
      */
     @Inject
-    public CertificateRevocationListTask(Config conf,
-        CrlFileUtil crlFileUtil, CrlGenerator crlGenerator) {
+    public CertificateRevocationListTask(Config conf, CrlGenerator crlGenerator) {
         this.config = conf;
-        this.crlFileUtil = crlFileUtil;
         this.crlGenerator = crlGenerator;
     }
 
@@ -68,10 +63,7 @@ public class CertificateRevocationListTask implements Job {
                 ConfigProperties.CRL_FILE_PATH, false);
         }
         try {
-            File crlFile = new File(filePath);
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            crlFileUtil.writeCRLFile(crlFile, crl);
+            crlGenerator.syncCRLFileWithDB(new File(filePath));
         }
         catch (CRLException e) {
             log.error(e);
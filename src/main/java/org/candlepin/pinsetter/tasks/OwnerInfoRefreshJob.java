@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerInfoCurator;
+import org.hibernate.HibernateException;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.google.inject.Inject;
+
+/**
+ * OwnerInfoRefreshJob: recounts the stored owner info of every owner whose
+ * snapshot is missing, dirty or too old, so that reads rarely have to.
+ */
+public class OwnerInfoRefreshJob implements Job {
+
+    public static final String DEFAULT_SCHEDULE = "0 0/15 * * * ?"; // every 15 minutes
+
+    private static Logger log = Logger.getLogger(OwnerInfoRefreshJob.class);
+
+    private OwnerInfoCurator ownerInfoCurator;
+
+    @Inject
+    public OwnerInfoRefreshJob(OwnerInfoCurator ownerInfoCurator) {
+        this.ownerInfoCurator = ownerInfoCurator;
+    }
+
+    @Override
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        try {
+            List<Owner> owners = ownerInfoCurator.listOwnersToRefresh();
+            for (Owner owner : owners) {
+                ownerInfoCurator.refresh(owner);
+            }
+            if (!owners.isEmpty()) {
+                log.info("Refreshed owner info of " + owners.size() + " owner(s).");
+            }
+        }
+        catch (HibernateException e) {
+            log.error("Unable to refresh owner info: ", e);
+            throw new JobExecutionException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.PoolCurator;
+import org.hibernate.HibernateException;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.google.inject.Inject;
+
+/**
+ * PoolCounterReconcilerJob: recalculates the consumed and exported counters of any
+ * pool whose stored values no longer match its entitlements.
+ */
+public class PoolCounterReconcilerJob implements Job {
+
+    public static final String DEFAULT_SCHEDULE = "0 30 2 * * ?"; // run every
+                                                                  // day at 2:30 AM
+    // Keep the in clause of the reconcile update well below database limits:
+    static final int BATCH_SIZE = 500;
+
+    private static Logger log = Logger.getLogger(PoolCounterReconcilerJob.class);
+
+    private PoolCurator poolCurator;
+
+    @Inject
+    public PoolCounterReconcilerJob(PoolCurator poolCurator) {
+        this.poolCurator = poolCurator;
+    }
+
+    @Override
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        try {
+            List<String> drifted = poolCurator.listPoolIdsWithCounterDrift();
+            if (drifted.isEmpty()) {
+                log.debug("All pool counters match their entitlements.");
+                return;
+            }
+
+            log.warn("Reconciling consumed/exported counters for " + drifted.size() +
+                " pool(s): " + drifted);
+            int updated = 0;
+            for (int i = 0; i < drifted.size(); i += BATCH_SIZE) {
+                updated += poolCurator.reconcileConsumed(drifted.subList(i,
+                    Math.min(i + BATCH_SIZE, drifted.size())));
+            }
+            log.info("Reconciled counters of " + updated + " pool(s).");
+        }
+        catch (HibernateException e) {
+            log.error("Unable to reconcile pool counters: ", e);
+            throw new JobExecutionException(e);
+        }
+    }
+}
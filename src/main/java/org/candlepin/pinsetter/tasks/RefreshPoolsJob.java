@@ -17,13 +17,14 @@ package org.candlepin.pinsetter.tasks;
 import static org.quartz.JobBuilder.newJob;
 
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.Refresher;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.util.Util;
 
 import com.google.inject.Inject;
-import com.google.inject.persist.Transactional;
 
 import org.quartz.Job;
 import org.quartz.JobDataMap;
@@ -39,25 +40,28 @@ public class RefreshPoolsJob implements Job {
 
     private OwnerCurator ownerCurator;
     private PoolManager poolManager;
+    private JobCurator jobCurator;
 
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RefreshPoolsJob(OwnerCurator ownerCurator, PoolManager poolManager) {
+    public RefreshPoolsJob(OwnerCurator ownerCurator, PoolManager poolManager,
+        JobCurator jobCurator) {
         this.ownerCurator = ownerCurator;
         this.poolManager = poolManager;
+        this.jobCurator = jobCurator;
     }
 
     /**
      * {@inheritDoc}
      *
      * Executes {@link PoolManager#refreshPools(org.candlepin.model.Owner)}
-     * as a pinsetter job.
+     * as a pinsetter job. Not transactional itself, the refresher commits each
+     * chunk of subscriptions as it goes and reports its progress in the job status.
      *
      * @param context the job's execution context
      */
     @Override
-    @Transactional
     public void execute(JobExecutionContext context) throws JobExecutionException {
         String ownerKey = context.getMergedJobDataMap().getString(JobStatus.TARGET_ID);
         Boolean lazy = context.getMergedJobDataMap().getBoolean(LAZY_REGEN);
@@ -67,8 +71,18 @@ public class RefreshPoolsJob implements Job {
             return;
         }
 
+        final String jobId = context.getJobDetail().getKey().getName();
+        final String ownerName = owner.getDisplayName();
+
         // Assume that we verified the request in the resource layer:
-        poolManager.getRefresher(lazy).add(owner).run();
+        Refresher refresher = poolManager.getRefresher(lazy).add(owner);
+        refresher.setProgress(new Refresher.Progress() {
+            public void update(int done, int total) {
+                jobCurator.updateResult(jobId, "Refreshed " + done + " of " + total +
+                    " subscriptions and pools for owner " + ownerName);
+            }
+        });
+        refresher.run();
 
         context.setResult("Pools refreshed for owner " + owner.getDisplayName());
     }
@@ -14,25 +14,36 @@
  */
 package org.candlepin.pinsetter.tasks;
 
+import org.apache.log4j.Logger;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import com.google.inject.Inject;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.model.JobCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
 
 /**
  * The Class RegenEntitlementCertsJob.
+ *
+ * Certificates are regenerated in batches, each committed on its own. The last
+ * entitlement of every batch is recorded as the job's checkpoint, so a job
+ * recovered after a restart carries on from there.
  */
 public class RegenProductEntitlementCertsJob implements Job {
+    private static Logger log = Logger.getLogger(RegenProductEntitlementCertsJob.class);
 
     private PoolManager poolManager;
+    private JobCurator jobCurator;
     public static final String PROD_ID = "product_id";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenProductEntitlementCertsJob(PoolManager poolManager) {
+    public RegenProductEntitlementCertsJob(PoolManager poolManager,
+        JobCurator jobCurator) {
         this.poolManager = poolManager;
+        this.jobCurator = jobCurator;
     }
 
     @Override
@@ -40,6 +51,21 @@ public class RegenProductEntitlementCertsJob implements Job {
         String prodId = arg0.getJobDetail().getJobDataMap().getString(
             PROD_ID);
         boolean lazy = arg0.getJobDetail().getJobDataMap().getBoolean(LAZY_REGEN);
-        this.poolManager.regenerateCertificatesOf(prodId, lazy);
+        final String jobId = arg0.getJobDetail().getKey().getName();
+
+        JobStatus status = jobCurator.find(jobId);
+        String resumeAfter = status == null ? null : status.getCheckpoint();
+        if (resumeAfter != null) {
+            log.info("Resuming job " + jobId + " after entitlement " + resumeAfter);
+        }
+
+        this.poolManager.regenerateCertificatesOf(prodId, lazy, resumeAfter,
+            new PoolManager.RegenProgress() {
+                public void batchDone(String lastEntitlementId, int done, int total) {
+                    jobCurator.updateCheckpoint(jobId, lastEntitlementId,
+                        "Regenerated " + done + " of " + total +
+                        " entitlement certificates");
+                }
+            });
     }
 }
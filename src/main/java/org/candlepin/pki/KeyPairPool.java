@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.log4j.Logger;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeyPairPool - keeps a reserve of freshly generated RSA key pairs, so that
+ * registering a consumer does not have to wait for a key to be generated.
+ * Low priority background threads refill the reserve whenever pairs are
+ * taken from it; once it is drained, pairs are generated on the caller's
+ * thread as before. A reserve size of 0 turns the pool off.
+ */
+@Singleton
+public class KeyPairPool {
+    private static Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private PKIUtility pki;
+    private BlockingQueue<KeyPair> reserve;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong inline = new AtomicLong();
+
+    @Inject
+    public KeyPairPool(PKIUtility pki, Config config) {
+        this.pki = pki;
+        int size = config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE);
+        if (size <= 0) {
+            return;
+        }
+
+        reserve = new ArrayBlockingQueue<KeyPair>(size);
+        int threads = Math.max(1, config.getInt(ConfigProperties.KEYPAIR_POOL_THREADS));
+        for (int i = 0; i < threads; i++) {
+            Thread producer = new Thread(new Producer(), "keypair-producer-" + i);
+            producer.setDaemon(true);
+            producer.setPriority(Thread.MIN_PRIORITY);
+            producer.start();
+        }
+        log.info("Keeping a reserve of " + size + " key pairs, refilled by " +
+            threads + " threads");
+    }
+
+    /**
+     * @return a new key pair, from the reserve if there is one ready.
+     * @throws NoSuchAlgorithmException if RSA keys cannot be generated
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair pair = reserve == null ? null : reserve.poll();
+        if (pair != null) {
+            taken.incrementAndGet();
+            return pair;
+        }
+
+        inline.incrementAndGet();
+        if (reserve != null && log.isDebugEnabled()) {
+            log.debug("Key pair reserve is empty, generating inline");
+        }
+        return pki.generateNewKeyPair();
+    }
+
+    /**
+     * @return number of key pairs ready to be taken.
+     */
+    public int getReserveSize() {
+        return reserve == null ? 0 : reserve.size();
+    }
+
+    public long getGeneratedCount() {
+        return generated.get();
+    }
+
+    public long getTakenCount() {
+        return taken.get();
+    }
+
+    /**
+     * @return number of key pairs generated on the caller's thread because
+     * the reserve was empty.
+     */
+    public long getInlineCount() {
+        return inline.get();
+    }
+
+    /**
+     * @return key pairs generated per second by one background thread, or 0
+     * if none has been generated yet.
+     */
+    public double getGenerationRate() {
+        long nanos = generationNanos.get();
+        return nanos == 0 ? 0 : generated.get() * 1000000000.0 / nanos;
+    }
+
+    /**
+     * Generates pairs until the reserve is full, then waits for room.
+     */
+    private class Producer implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    KeyPair pair = pki.generateNewKeyPair();
+                    generationNanos.addAndGet(System.nanoTime() - start);
+                    generated.incrementAndGet();
+                    reserve.put(pair);
+                }
+            }
+            catch (InterruptedException e) {
+                // shutting down
+            }
+            catch (NoSuchAlgorithmException e) {
+                log.error("Unable to generate key pairs, reserve disabled", e);
+            }
+        }
+    }
+}
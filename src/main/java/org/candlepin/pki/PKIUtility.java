@@ -17,6 +17,7 @@ package org.candlepin.pki;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.Key;
@@ -76,6 +77,19 @@ public abstract class PKIUtility {
     public abstract X509CRL createX509CRL(List<X509CRLEntryWrapper> entries,
         BigInteger crlNumber);
 
+    /**
+     * Write a PEM encoded crl to the given stream without building it in memory.
+     * The entries are iterated twice, so they must be re-iterable, and they are
+     * written in the order given.
+     *
+     * @param entries the entries
+     * @param crlNumber the crl number
+     * @param out stream to write the crl to
+     * @throws IOException if the crl cannot be written
+     */
+    public abstract void writeX509CRL(Iterable<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, OutputStream out) throws IOException;
+
     public KeyPair decodeKeys(byte[] privKeyBits, byte[] pubKeyBits)
         throws InvalidKeySpecException, NoSuchAlgorithmException {
 
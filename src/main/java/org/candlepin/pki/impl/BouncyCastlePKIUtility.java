@@ -16,25 +16,38 @@ package org.candlepin.pki.impl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAKey;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.misc.MiscObjectIdentifiers;
 import org.bouncycastle.asn1.misc.NetscapeCertType;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
@@ -42,7 +55,9 @@ import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ExtensionsGenerator;
 import org.bouncycastle.openssl.PEMWriter;
 import org.bouncycastle.x509.X509V2CRLGenerator;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
@@ -89,6 +104,13 @@ import com.google.inject.Inject;
 public class BouncyCastlePKIUtility extends PKIUtility {
     private static Logger log = Logger.getLogger(BouncyCastlePKIUtility.class);
 
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int DER_BIT_STRING = 0x03;
+    private static final byte[] PEM_CRL_HEADER =
+        "-----BEGIN X509 CRL-----\n".getBytes();
+    private static final byte[] PEM_CRL_FOOTER =
+        "-----END X509 CRL-----\n".getBytes();
+
     @Inject
     public BouncyCastlePKIUtility(PKIReader reader,
         SubjectKeyIdentifierWriter subjectKeyWriter) {
@@ -195,6 +217,177 @@ public class BouncyCastlePKIUtility extends PKIUtility {
         }
     }
 
+    /*
+     * Produces the same CRL as createX509CRL, but the DER is written by hand so
+     * the entries never have to be held in memory: the first pass over them
+     * only adds up their encoded length, the second writes them out through
+     * the signature.
+     */
+    @Override
+    public void writeX509CRL(Iterable<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, OutputStream out) throws IOException {
+
+        try {
+            X509Certificate caCert = reader.getCACert();
+            PrivateKey caKey = reader.getCaKey();
+            if (!(caKey instanceof RSAKey)) {
+                throw new IllegalStateException("CA key is not an RSA key");
+            }
+
+            byte[] version = new DERInteger(1).getDEREncoded();
+            byte[] algorithm = new AlgorithmIdentifier(
+                PKCSObjectIdentifiers.sha1WithRSAEncryption, DERNull.INSTANCE)
+                .getDEREncoded();
+            byte[] issuer = caCert.getIssuerX500Principal().getEncoded();
+            byte[] thisUpdate = new Time(new Date()).getDEREncoded();
+            byte[] nextUpdate = new Time(Util.tomorrow()).getDEREncoded();
+
+            X509ExtensionsGenerator extensionsGen = new X509ExtensionsGenerator();
+            extensionsGen.addExtension(X509Extensions.AuthorityKeyIdentifier,
+                false, new AuthorityKeyIdentifierStructure(caCert));
+            extensionsGen.addExtension(X509Extensions.CRLNumber, false,
+                new CRLNumber(crlNumber));
+            byte[] extensions = new DERTaggedObject(true, 0,
+                extensionsGen.generate()).getDEREncoded();
+
+            X509ExtensionsGenerator reasonGen = new X509ExtensionsGenerator();
+            reasonGen.addExtension(X509Extensions.ReasonCode, false,
+                new CRLReason(CRLReason.privilegeWithdrawn));
+            X509Extensions reason = reasonGen.generate();
+
+            long entriesLength = 0;
+            for (X509CRLEntryWrapper entry : entries) {
+                entriesLength += encodeCRLEntry(entry, reason).length;
+            }
+            // revokedCertificates is left out altogether when there are none
+            byte[] entriesHeader = entriesLength > 0 ?
+                derHeader(DER_SEQUENCE, entriesLength) : new byte[0];
+
+            long tbsLength = version.length + algorithm.length + issuer.length +
+                thisUpdate.length + nextUpdate.length + entriesHeader.length +
+                entriesLength + extensions.length;
+            byte[] tbsHeader = derHeader(DER_SEQUENCE, tbsLength);
+
+            // an RSA signature is always as long as the modulus
+            int signatureLength = (((RSAKey) caKey).getModulus().bitLength() + 7) / 8;
+            byte[] signatureHeader = derHeader(DER_BIT_STRING, signatureLength + 1);
+            long crlLength = tbsHeader.length + tbsLength + algorithm.length +
+                signatureHeader.length + signatureLength + 1;
+
+            Signature signature = Signature.getInstance(SIGNATURE_ALGO);
+            signature.initSign(caKey);
+
+            out.write(PEM_CRL_HEADER);
+            PemBodyOutputStream body = new PemBodyOutputStream(out);
+            body.write(derHeader(DER_SEQUENCE, crlLength));
+            writeSigned(body, signature, tbsHeader, version, algorithm, issuer,
+                thisUpdate, nextUpdate, entriesHeader);
+            for (X509CRLEntryWrapper entry : entries) {
+                writeSigned(body, signature, encodeCRLEntry(entry, reason));
+            }
+            writeSigned(body, signature, extensions);
+
+            byte[] signed = signature.sign();
+            if (signed.length != signatureLength) {
+                throw new IllegalStateException("Unexpected CRL signature length: " +
+                    signed.length);
+            }
+            body.write(algorithm);
+            body.write(signatureHeader);
+            body.write(0);
+            body.write(signed);
+            body.finish();
+            out.write(PEM_CRL_FOOTER);
+            out.flush();
+            log.info("Completed writing CRL number " + crlNumber);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] encodeCRLEntry(X509CRLEntryWrapper entry, X509Extensions reason) {
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        v.add(new DERInteger(entry.getSerialNumber()));
+        v.add(new Time(entry.getRevocationDate()));
+        v.add(reason);
+        return new DERSequence(v).getDEREncoded();
+    }
+
+    private void writeSigned(OutputStream out, Signature signature, byte[]... parts)
+        throws IOException, GeneralSecurityException {
+        for (byte[] part : parts) {
+            signature.update(part);
+            out.write(part);
+        }
+    }
+
+    private static byte[] derHeader(int tag, long length) {
+        if (length < 0x80) {
+            return new byte[] {(byte) tag, (byte) length};
+        }
+        int size = 0;
+        for (long l = length; l > 0; l >>>= 8) {
+            size++;
+        }
+        byte[] header = new byte[size + 2];
+        header[0] = (byte) tag;
+        header[1] = (byte) (0x80 | size);
+        for (int i = 0; i < size; i++) {
+            header[header.length - 1 - i] = (byte) (length >>> (8 * i));
+        }
+        return header;
+    }
+
+    /**
+     * Base64 encodes everything written to it in 64 column lines, as PEM
+     * expects. finish() must be called to write out the last line.
+     */
+    private static class PemBodyOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] line = new byte[48];
+        private int used;
+
+        PemBodyOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            line[used++] = (byte) b;
+            if (used == line.length) {
+                writeLine();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, line.length - used);
+                System.arraycopy(b, off, line, used, n);
+                used += n;
+                off += n;
+                len -= n;
+                if (used == line.length) {
+                    writeLine();
+                }
+            }
+        }
+
+        public void finish() throws IOException {
+            if (used > 0) {
+                writeLine();
+            }
+        }
+
+        private void writeLine() throws IOException {
+            byte[] chunk = used == line.length ? line : Arrays.copyOf(line, used);
+            out.write(Base64.encodeBase64(chunk));
+            out.write('\n');
+            used = 0;
+        }
+    }
+
     private byte[] getPemEncoded(Object obj) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         OutputStreamWriter oswriter = new OutputStreamWriter(byteArrayOutputStream);
@@ -24,7 +24,9 @@ import org.candlepin.policy.js.entitlement.PreEntHelper;
 import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 import org.candlepin.policy.js.pool.PoolHelper;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -49,6 +51,20 @@ public interface Enforcer {
      */
     PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool, Integer quantity);
 
+    /**
+     * Run pre-entitlement checks for many pools at once.
+     *
+     * Same checks as the single pool version, but evaluated in one pass through the
+     * rules, for callers filtering a large list of candidate pools.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to check.
+     * @param quantity number of entitlements to consume from each pool.
+     * @return the result of the checks for each pool, in the order given.
+     */
+    Map<Pool, ValidationResult> preEntitlement(Consumer consumer, Collection<Pool> pools,
+        Integer quantity);
+
     /**
      * Run post-entitlement actions.
      *
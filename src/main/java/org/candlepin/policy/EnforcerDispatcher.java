@@ -14,7 +14,9 @@
  */
 package org.candlepin.policy;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.model.Consumer;
@@ -67,6 +69,16 @@ public class EnforcerDispatcher implements Enforcer {
         return jsEnforcer.preEntitlement(consumer, entitlementPool, quantity);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+
+        if (consumer.getType().isManifest()) {
+            return manifestEnforcer.preEntitlement(consumer, pools, quantity);
+        }
+
+        return jsEnforcer.preEntitlement(consumer, pools, quantity);
+    }
 
     @Override
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
@@ -80,7 +80,7 @@ public class RulesCriteria  {
 
         List<Criterion> poolsCriteria = null;
         try {
-            poolsCriteria = jsRules.invokeMethod("poolCriteria", args);
+            poolsCriteria = jsRules.invokeMethod(jsNameSpace, "poolCriteria", args);
         }
         catch (NoSuchMethodException e) {
             log.error("Unable to find javascript method: poolCriteria");
@@ -21,6 +21,7 @@ import org.candlepin.model.ProductAttribute;
 
 import org.apache.log4j.Logger;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Scriptable;
@@ -28,59 +29,133 @@ import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
 import org.mozilla.javascript.Wrapper;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * JsRules - javascript runner
+ *
+ * Holds no per call state: every invocation names the namespace it runs in, so one
+ * instance can be used by several threads and rules classes at once.
  */
 public class JsRules {
     private static Logger log = Logger.getLogger(JsRules.class);
 
-    private Object rulesNameSpace;
-    private String namespace;
+    // Each thread keeps the rhino context it last used, so entering one for every
+    // rule invocation does not have to build a new Context each time.
+    private static final ThreadLocal<Context> THREAD_CONTEXT = new ThreadLocal<Context>();
+
     private Scriptable scope;
 
-    private boolean initialized = false;
+    // Evaluated namespace objects, and values derived from the rules, shared by
+    // every JsRules created from the same compiled rules:
+    private ConcurrentMap<String, Object> namespaces;
+    private ConcurrentMap<String, Object> derived;
+    private Date updated;
 
     public JsRules(Scriptable scope) {
+        this(scope, new ConcurrentHashMap<String, Object>(),
+            new ConcurrentHashMap<String, Object>(), null);
+    }
+
+    public JsRules(Scriptable scope, ConcurrentMap<String, Object> namespaces,
+        ConcurrentMap<String, Object> derived, Date updated) {
         this.scope = scope;
+        this.namespaces = namespaces;
+        this.derived = derived;
+        this.updated = updated;
+    }
+
+    /**
+     * @return the last update of the rules this was created from, which identifies
+     * the rules version on every node, or null if not known.
+     */
+    public Date getUpdated() {
+        return updated;
     }
 
     /**
-     * initialize the javascript rules for the provided namespace. you must run this
-     * before trying to run a javascript rule or method.
+     * Evaluate the provided namespace ahead of its first use, so a broken rules
+     * file is reported when the rules class using it is created. Each namespace is
+     * only evaluated once per version of the rules.
      *
      * @param namespace the javascript rules namespace containing the rules type you want
      */
     public void init(String namespace) {
-        this.namespace = namespace;
-
-        if (!initialized) {
+        namespace(namespace);
+    }
 
-            Context context = Context.enter();
+    private Object namespace(String namespace) {
+        Object evaluated = namespaces.get(namespace);
+        if (evaluated == null) {
+            Context context = enterContext();
             try {
                 Object func = ScriptableObject.getProperty(scope, namespace);
-                this.rulesNameSpace = unwrapReturnValue(((Function) func).call(context,
+                evaluated = unwrapReturnValue(((Function) func).call(context,
                     scope, scope, Context.emptyArgs));
-
-                this.initialized = true;
             }
             catch (RhinoException ex) {
-                this.initialized = false;
                 throw new RuleParseException(ex);
             }
             finally {
                 Context.exit();
             }
+
+            if (evaluated == null) {
+                throw new IllegalStateException(
+                    "javascript rules namespace not found: " + namespace);
+            }
+            Object existing = namespaces.putIfAbsent(namespace, evaluated);
+            if (existing != null) {
+                evaluated = existing;
+            }
         }
+        return evaluated;
+    }
+
+    /**
+     * @param key name of a value computed from the rules
+     * @return the value stored for this version of the rules, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDerived(String key) {
+        return (T) derived.get(key);
     }
 
-    public void reinitTo(String namespace) {
-        initialized = false;
-        init(namespace);
+    /**
+     * Keep a value computed from the rules until they are recompiled, so it is
+     * computed once per version of the rules rather than on every call.
+     *
+     * @param key name of the value
+     * @param value the computed value
+     * @return the value stored first, which callers should use.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T putDerived(String key, T value) {
+        T existing = (T) derived.putIfAbsent(key, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Enter a rhino context for the current thread, reusing the one this thread
+     * entered last time when possible. Must be paired with Context.exit().
+     *
+     * @return the entered context
+     */
+    static Context enterContext() {
+        if (Context.getCurrentContext() != null) {
+            // Nested call, stay in the context this thread is already in:
+            return Context.enter();
+        }
+        Context context = ContextFactory.getGlobal().enterContext(THREAD_CONTEXT.get());
+        THREAD_CONTEXT.set(context);
+        return context;
     }
 
     Object unwrapReturnValue(Object result) {
@@ -91,38 +166,58 @@ public class JsRules {
         return result instanceof Undefined ? null : result;
     }
 
+    public <T> T invokeMethod(String namespace, String method)
+        throws NoSuchMethodException, RhinoException {
+        return this.<T>invokeMethod(namespace, method,
+            Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Invoke a method in the given namespace. The arguments are only visible to
+     * this invocation, they are placed in a scope of their own on top of the shared
+     * rules scope.
+     */
     @SuppressWarnings("unchecked")
-    public <T> T invokeMethod(String method) throws NoSuchMethodException,
-            RhinoException {
-        Scriptable localScope = Context.toObject(this.rulesNameSpace, scope);
-        Object func = ScriptableObject.getProperty(localScope, method);
-        if (!(func instanceof Function)) {
-            throw new NoSuchMethodException("no such javascript method: " + method);
-        }
-        Context context = Context.enter();
+    public <T> T invokeMethod(String namespace, String method, Map<String, Object> args)
+        throws NoSuchMethodException, RhinoException {
+        Object rulesNameSpace = namespace(namespace);
+        Context context = enterContext();
         try {
-            return (T) unwrapReturnValue(((Function) func).call(context, scope, localScope,
-                Context.emptyArgs));
+            Scriptable localScope = Context.toObject(rulesNameSpace, scope);
+            Object func = ScriptableObject.getProperty(localScope, method);
+            if (!(func instanceof Function)) {
+                throw new NoSuchMethodException("no such javascript method: " + method);
+            }
+            return (T) unwrapReturnValue(((Function) func).call(context,
+                newCallScope(context, args), localScope, Context.emptyArgs));
         }
         finally {
             Context.exit();
         }
     }
 
-    @SuppressWarnings("unchecked")
-    public <T> T invokeMethod(String method, Map<String, Object> args)
-        throws NoSuchMethodException, RhinoException {
+    private Scriptable newCallScope(Context context, Map<String, Object> args) {
+        if (args.isEmpty()) {
+            return scope;
+        }
+        Scriptable callScope = context.newObject(scope);
+        callScope.setPrototype(scope);
+        callScope.setParentScope(null);
         for (Entry<String, Object> entry : args.entrySet()) {
-            scope.put(entry.getKey(), scope, entry.getValue());
+            callScope.put(entry.getKey(), callScope, entry.getValue());
         }
-        return (T) invokeMethod(method);
+        return callScope;
+    }
+
+    public void invokeRule(String namespace, String ruleName) {
+        invokeRule(namespace, ruleName, Collections.<String, Object>emptyMap());
     }
 
-    public void invokeRule(String ruleName) {
+    public void invokeRule(String namespace, String ruleName, Map<String, Object> args) {
         log.debug("Running rule: " + ruleName + " in namespace: " + namespace);
 
         try {
-            this.invokeMethod(ruleName);
+            this.invokeMethod(namespace, ruleName, args);
         }
         catch (NoSuchMethodException ex) {
             log.warn("No rule found: " + ruleName + " in namespace: " + namespace);
@@ -132,14 +227,6 @@ public class JsRules {
         }
     }
 
-    public void invokeRule(String ruleName, Map<String, Object> args) {
-        for (Entry<String, Object> entry : args.entrySet()) {
-            scope.put(entry.getKey(), scope, entry.getValue());
-
-        }
-        invokeRule(ruleName);
-    }
-
     /**
      * Both products and pools can carry attributes, we need to trigger rules for each.
      * In this map, pool attributes will override product attributes, should the same
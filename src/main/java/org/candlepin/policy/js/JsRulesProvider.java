@@ -15,6 +15,8 @@
 package org.candlepin.policy.js;
 
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -46,7 +48,11 @@ public class JsRulesProvider implements Provider<JsRules> {
     private Script script;
     private Scriptable scope;
     private Date updated;
-    // Use this lock to access script, scope and updated
+    // Namespace objects evaluated from the current script, and values derived from
+    // it, shared by all JsRules:
+    private ConcurrentMap<String, Object> namespaces;
+    private ConcurrentMap<String, Object> derived;
+    // Use this lock to access script, scope, namespaces, derived and updated
     private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
 
     /**
@@ -111,6 +117,8 @@ public class JsRulesProvider implements Provider<JsRules> {
                 null);
             script.exec(context, scope);
             ((ScriptableObject) scope).sealObject();
+            this.namespaces = new ConcurrentHashMap<String, Object>();
+            this.derived = new ConcurrentHashMap<String, Object>();
             this.updated = newUpdated;
         }
         finally {
@@ -128,19 +136,29 @@ public class JsRulesProvider implements Provider<JsRules> {
         // try and recompile (if needed) first
         compileRules(this.rulesCurator);
         Scriptable rulesScope;
+        ConcurrentMap<String, Object> rulesNamespaces;
+        ConcurrentMap<String, Object> rulesDerived;
+        Date rulesUpdated;
         scriptLock.readLock().lock();
         try {
-            Context context = Context.enter();
-            rulesScope = context.newObject(scope);
-            rulesScope.setPrototype(scope);
-            rulesScope.setParentScope(null);
-            Context.exit();
+            Context context = JsRules.enterContext();
+            try {
+                rulesScope = context.newObject(scope);
+                rulesScope.setPrototype(scope);
+                rulesScope.setParentScope(null);
+            }
+            finally {
+                Context.exit();
+            }
+            rulesNamespaces = namespaces;
+            rulesDerived = derived;
+            rulesUpdated = updated;
         }
         finally {
             scriptLock.readLock().unlock();
         }
 
-        return new JsRules(rulesScope);
+        return new JsRules(rulesScope, rulesNamespaces, rulesDerived, rulesUpdated);
     }
 
 }
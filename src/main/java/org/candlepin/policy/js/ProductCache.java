@@ -14,18 +14,30 @@
  */
 package org.candlepin.policy.js;
 
-import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Set;
 
+import javax.persistence.EntityManager;
+import javax.transaction.Synchronization;
+
+import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.guice.CandlepinSingletonScoped;
+import org.candlepin.model.Content;
 import org.candlepin.model.Product;
+import org.candlepin.model.ProductAttribute;
+import org.candlepin.model.ProductContent;
 import org.candlepin.service.ProductServiceAdapter;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
 
 /**
  * ProductCache
@@ -35,107 +47,273 @@ import com.google.inject.Inject;
  * is not in the cache, it is looked up by the adapter and
  * is automatically stored.
  *
- * The cache can only contain its configured maximum of products
- * at a time {@link ConfigProperties} <code>PRODUCT_CACHE_MAX</code>
- * and is implemented using <code>SoftReference</code>s so that when
- * memory becomes an issue, the GC can claim any products it requires.
+ * The cache is shared by all requests. It holds at most its configured
+ * maximum of products {@link ConfigProperties} <code>PRODUCT_CACHE_MAX</code>,
+ * evicting the least recently used, and products are looked up again once they
+ * are older than <code>PRODUCT_CACHE_TTL</code> seconds, or once they are
+ * invalidated after being changed locally.
  *
+ * Cached products outlive the session they were loaded in and are shared by
+ * every thread, so the cache holds detached copies rather than the entities the
+ * adapter returned. A product changed inside a transaction is invalidated again
+ * once that transaction completes, so a concurrent request which cached the
+ * previous version in the meantime does not keep serving it.
  */
-@CandlepinSingletonScoped
+@Singleton
 public class ProductCache {
 
-    private ProductServiceAdapter productAdapter;
+    private static Logger log = Logger.getLogger(ProductCache.class);
+
+    private final ProductServiceAdapter productAdapter;
+    private final Provider<EntityManager> entityManager;
+    private final long ttl;
+    private final Map<String, Entry> products;
 
-    // Protected for testing purposes
-    protected ProductMapping products;
+    private long hits;
+    private long misses;
+    private long evictions;
 
     @Inject
-    public ProductCache(Config config, ProductServiceAdapter productAdapter) {
-        products = new ProductMapping(config.getInt(ConfigProperties.PRODUCT_CACHE_MAX));
+    public ProductCache(Config config, ProductServiceAdapter productAdapter,
+        Provider<EntityManager> entityManager) {
         this.productAdapter = productAdapter;
+        this.entityManager = entityManager;
+        this.ttl = config.getInt(ConfigProperties.PRODUCT_CACHE_TTL) * 1000L;
+        final int max = config.getInt(ConfigProperties.PRODUCT_CACHE_MAX);
+        this.products = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > max) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
     }
 
+    /**
+     * @param productId id of the product to look up
+     * @return the product, loaded from the adapter if not cached, or null if
+     * the adapter does not know it.
+     */
     public Product getProductById(String productId) {
-        ProductReference productReference = null;
-        if (!contains(productId)) {
-            productReference = addProductReference(productId);
+        Product product = lookup(productId);
+        if (product == null) {
+            product = addProduct(productAdapter.getProductById(productId));
         }
-        else {
-            productReference = products.get(productId);
+        return product;
+    }
+
+    /**
+     * Looks up several products at once, loading those which are not cached
+     * with a single adapter call.
+     *
+     * @param productIds ids of the products to look up
+     * @return the products found, by id
+     */
+    public Map<String, Product> getProductsByIds(Collection<String> productIds) {
+        Map<String, Product> found = new HashMap<String, Product>();
+        Set<String> missing = new HashSet<String>();
+        for (String productId : productIds) {
+            if (found.containsKey(productId) || missing.contains(productId)) {
+                continue;
+            }
+            Product product = lookup(productId);
+            if (product == null) {
+                missing.add(productId);
+            }
+            else {
+                found.put(productId, product);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (Product product : productAdapter.getProductsByIds(missing)) {
+                found.put(product.getId(), addProduct(product));
+            }
         }
-        return productReference.get();
+        return found;
     }
 
-    public void addProducts(Set<Product> products) {
+    public void addProducts(Collection<Product> products) {
         for (Product product : products) {
-            if (!contains(product.getId())) {
-                this.products.put(product.getId(), new ProductReference(product));
-            }
+            addProduct(product);
         }
     }
 
-    public boolean contains(String productId) {
-        if (!this.products.containsKey(productId)) {
-            return false;
+    /**
+     * Drops a product which has been changed or deleted, so it is looked up
+     * again the next time it is needed. Inside a transaction the product is
+     * dropped again after it completes, as other requests can only see the
+     * change from then on.
+     *
+     * @param productId id of the product
+     */
+    public void invalidate(String productId) {
+        remove(productId);
+        removeAfterCompletion(productId);
+    }
+
+    /**
+     * Drops every cached product, again after the current transaction
+     * completes if there is one.
+     */
+    public void invalidateAll() {
+        remove(null);
+        removeAfterCompletion(null);
+    }
+
+    /*
+     * Removes the given product, or every product when the id is null.
+     */
+    private synchronized void remove(String productId) {
+        if (productId == null) {
+            products.clear();
+        }
+        else {
+            products.remove(productId);
         }
+    }
 
-        // GC may have cleaned up the fetched reference if memory was required.
-        ProductReference productReference = this.products.get(productId);
-        return productReference != null && productReference.get() != null;
+    private void removeAfterCompletion(final String productId) {
+        Transaction transaction = activeTransaction();
+        if (transaction == null) {
+            return;
+        }
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nothing to do until the change is visible
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                // rolled back or not, the cache may hold what was read meanwhile
+                remove(productId);
+            }
+        });
+    }
+
+    private Transaction activeTransaction() {
+        if (entityManager == null) {
+            return null;
+        }
+        try {
+            Session session = (Session) entityManager.get().getDelegate();
+            Transaction transaction = session.getTransaction();
+            return transaction != null && transaction.isActive() ? transaction : null;
+        }
+        catch (RuntimeException e) {
+            log.warn("Unable to determine the current transaction, " +
+                "products will only be invalidated now", e);
+            return null;
+        }
+    }
+
+    public synchronized boolean contains(String productId) {
+        Entry entry = products.get(productId);
+        return entry != null && entry.expires >= now();
     }
 
-    public int size() {
+    public synchronized int size() {
         return products.size();
     }
 
-    private ProductReference addProductReference(String productId) {
-        ProductReference productReference =
-            new ProductReference(productAdapter.getProductById(productId));
-        products.put(productId, productReference);
-        return productReference;
+    public synchronized long getHits() {
+        return hits;
     }
 
-    /**
-     * ProductReference
-     *
-     * A reference to a product object. We use <code>SoftReference</code>
-     * here instead of WeakReference as they only get GC'd when memory
-     * is getting low.
-     */
-    protected class ProductReference extends SoftReference<Product> {
+    public synchronized long getMisses() {
+        return misses;
+    }
 
-        public ProductReference(Product referent) {
-            super(referent);
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private synchronized Product lookup(String productId) {
+        Entry entry = products.get(productId);
+        if (entry != null && entry.expires < now()) {
+            products.remove(productId);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
         }
+        hits++;
+        return entry.product;
+    }
 
+    private Product addProduct(Product product) {
+        if (product == null || product.getId() == null) {
+            return product;
+        }
+        Product copy = detachedCopy(product);
+        synchronized (this) {
+            products.put(copy.getId(), new Entry(copy, now() + ttl));
+        }
+        return copy;
     }
 
-    /**
-     *
-     * ProductMapping
-     *
-     * A <code>LinkedHashMap</code> implementation that represents a mapped
-     * reference to {@link Product} references. This implementation allows
-     * a maximum of 100 mapped products. When an attempt is made to insert
-     * more than 100, the eldest product reference will be removed.
+    /*
+     * Copies a product, with its attributes and content, into plain objects which
+     * belong to no session.
      */
-    protected class ProductMapping extends LinkedHashMap<String, ProductReference> {
+    private Product detachedCopy(Product product) {
+        Product copy = new Product(product.getId(), product.getName(),
+            product.getMultiplier());
+        copy.setCreated(product.getCreated());
+        copy.setUpdated(product.getUpdated());
+        copy.setDependentProductIds(
+            new HashSet<String>(product.getDependentProductIds()));
 
-        private int max;
+        for (ProductAttribute attr : product.getAttributes()) {
+            ProductAttribute attrCopy = new ProductAttribute(attr.getName(),
+                attr.getValue());
+            attrCopy.setId(attr.getId());
+            attrCopy.setProduct(copy);
+            copy.getAttributes().add(attrCopy);
+        }
 
-        public ProductMapping(int max) {
-            this.max = max;
+        for (ProductContent pc : product.getProductContent()) {
+            copy.getProductContent().add(new ProductContent(copy,
+                detachedCopy(pc.getContent()), pc.getEnabled()));
         }
+        return copy;
+    }
 
-        /*
-         * When an attempt is made to add a product to the map,
-         * let the mapping remove the eldest product that was
-         * added if we are over our size limit.
-         */
-        @Override
-        protected boolean removeEldestEntry(Entry<String, ProductReference> eldest) {
-            return this.size() > max;
+    private Content detachedCopy(Content content) {
+        if (content == null) {
+            return null;
         }
+        Content copy = new Content(content.getName(), content.getId(),
+            content.getLabel(), content.getType(), content.getVendor(),
+            content.getContentUrl(), content.getGpgUrl());
+        copy.setRequiredTags(content.getRequiredTags());
+        copy.setReleaseVer(content.getReleaseVer());
+        copy.setMetadataExpire(content.getMetadataExpire());
+        copy.setModifiedProductIds(
+            new HashSet<String>(content.getModifiedProductIds()));
+        copy.setCreated(content.getCreated());
+        copy.setUpdated(content.getUpdated());
+        return copy;
+    }
+
+    private static class Entry {
+        private final Product product;
+        private final long expires;
 
+        Entry(Product product, long expires) {
+            this.product = product;
+            this.expires = expires;
+        }
     }
 }
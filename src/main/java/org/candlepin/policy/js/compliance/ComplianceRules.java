@@ -38,14 +38,18 @@ public class ComplianceRules {
 
     private EntitlementCurator entCurator;
     private JsRules jsRules;
+    private ComplianceStatusCache cache;
     private static Logger log = Logger.getLogger(ComplianceRules.class);
+    private static final String NAME_SPACE = "compliance_name_space";
 
     @Inject
-    public ComplianceRules(JsRules jsRules, EntitlementCurator entCurator) {
+    public ComplianceRules(JsRules jsRules, EntitlementCurator entCurator,
+        ComplianceStatusCache cache) {
         this.entCurator = entCurator;
         this.jsRules = jsRules;
+        this.cache = cache;
 
-        jsRules.init("compliance_name_space");
+        jsRules.init(NAME_SPACE);
     }
 
     /**
@@ -59,13 +63,22 @@ public class ComplianceRules {
 
         List<Entitlement> ents = entCurator.listByConsumerAndDate(c, date);
 
+        Date rulesUpdated = jsRules.getUpdated();
+        ComplianceStatus cached = cache.get(c, date, ents, rulesUpdated);
+        if (cached != null) {
+            return cached;
+        }
+
         Map<String, Object> args = new HashMap<String, Object>();
         args.put("consumer", c);
         args.put("entitlements", ents);
         args.put("ondate", date);
         args.put("helper", new ComplianceRulesHelper(entCurator));
         args.put("log", log);
-        return runJsFunction(ComplianceStatus.class, "get_status", args);
+        ComplianceStatus status = runJsFunction(ComplianceStatus.class, "get_status",
+            args);
+        cache.put(c, date, ents, rulesUpdated, status);
+        return status;
     }
 
     public boolean isStackCompliant(Consumer consumer, String stackId,
@@ -90,7 +103,7 @@ public class ComplianceRules {
         Map<String, Object> args) {
         T returner = null;
         try {
-            returner = jsRules.invokeMethod(function, args);
+            returner = jsRules.invokeMethod(NAME_SPACE, function, args);
         }
         catch (NoSuchMethodException e) {
             log.warn("No compliance javascript method found: " + function);
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ComplianceStatusCache - remembers the last compliance status computed for each
+ * consumer, so the compliance rules only need to run again once something they
+ * depend on changes.
+ *
+ * A status is reused while the consumer's entitlements on the date checked (ids,
+ * quantities, dates and last update), its installed products and its facts are the
+ * same, and the date checked falls in the same time bucket. The bucket bounds how
+ * long changes the key can't see, such as new future dated entitlements, are
+ * missed. Entries are also dropped when events say the consumer or one of its
+ * entitlements changed.
+ *
+ * Only entitlement ids are kept, never the entities, and a cached status is rebuilt
+ * around the entitlements loaded by the current request.
+ *
+ * The cache is local to each node, and only changes made through this node invalidate
+ * its entries. What other
+ * nodes change is still seen through the key where it can be: entitlements, facts
+ * and installed products are read from the database, and the key includes the
+ * last update of the rules, so new rules take effect everywhere. Anything else,
+ * such as product attributes changed elsewhere, is only picked up once the time
+ * bucket rolls over, so keep the bucket short when running several nodes.
+ */
+@Singleton
+public class ComplianceStatusCache {
+
+    private final long bucket;
+    private final Map<String, Entry> entries;
+
+    @Inject
+    public ComplianceStatusCache(Config config) {
+        this.bucket = config.getInt(ConfigProperties.COMPLIANCE_CACHE_BUCKET) * 1000L;
+        final int max = config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    /**
+     * @param consumer consumer being checked
+     * @param date date being checked
+     * @param ents the consumer's entitlements on that date
+     * @param rulesUpdated last update of the rules computing the status
+     * @return the cached status rebuilt for the given date and entitlements, or
+     * null if there is no usable cached status.
+     */
+    public ComplianceStatus get(Consumer consumer, Date date, List<Entitlement> ents,
+        Date rulesUpdated) {
+        if (!isCacheable(consumer)) {
+            return null;
+        }
+
+        String key = key(consumer, date, ents, rulesUpdated);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(consumer.getId());
+        }
+        if (entry == null || !entry.key.equals(key)) {
+            return null;
+        }
+        return entry.toStatus(date, ents);
+    }
+
+    /**
+     * Remembers a freshly computed status.
+     *
+     * @param consumer consumer checked
+     * @param date date checked
+     * @param ents the consumer's entitlements on that date
+     * @param rulesUpdated last update of the rules which computed the status
+     * @param status the computed status
+     */
+    public void put(Consumer consumer, Date date, List<Entitlement> ents,
+        Date rulesUpdated, ComplianceStatus status) {
+        if (!isCacheable(consumer) || status == null) {
+            return;
+        }
+
+        Entry entry = new Entry(key(consumer, date, ents, rulesUpdated), status);
+        synchronized (this) {
+            entries.put(consumer.getId(), entry);
+        }
+    }
+
+    /**
+     * Forgets the status of a consumer.
+     *
+     * @param consumerId database id of the consumer
+     */
+    public synchronized void invalidate(String consumerId) {
+        entries.remove(consumerId);
+    }
+
+    /**
+     * Forgets every status, for changes which can affect any consumer.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean isCacheable(Consumer consumer) {
+        return bucket > 0 && consumer.getId() != null;
+    }
+
+    private String key(Consumer consumer, Date date, List<Entitlement> ents,
+        Date rulesUpdated) {
+        StringBuilder key = new StringBuilder();
+        key.append(time(rulesUpdated)).append('|').append(date.getTime() / bucket);
+
+        List<String> entKeys = new ArrayList<String>();
+        for (Entitlement ent : ents) {
+            entKeys.add(ent.getId() + ":" + ent.getQuantity() + ":" +
+                time(ent.getStartDate()) + ":" + time(ent.getEndDate()) + ":" +
+                time(ent.getUpdated()));
+        }
+        Collections.sort(entKeys);
+        key.append('|').append(entKeys);
+
+        List<String> installed = new ArrayList<String>();
+        if (consumer.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct cip : consumer.getInstalledProducts()) {
+                installed.add(cip.getProductId());
+            }
+        }
+        Collections.sort(installed);
+        key.append('|').append(installed);
+
+        if (consumer.getFacts() != null) {
+            key.append('|').append(new TreeMap<String, String>(consumer.getFacts()));
+        }
+        return key.toString();
+    }
+
+    private static Long time(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    private static Map<String, Set<String>> ids(Map<String, Set<Entitlement>> map) {
+        Map<String, Set<String>> ids = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, Set<Entitlement>> e : map.entrySet()) {
+            Set<String> entIds = new HashSet<String>();
+            for (Entitlement ent : e.getValue()) {
+                entIds.add(ent.getId());
+            }
+            ids.put(e.getKey(), entIds);
+        }
+        return ids;
+    }
+
+    /**
+     * The parts of a status which outlive the request it was computed in.
+     */
+    private static class Entry {
+        private final String key;
+        private final Date compliantUntil;
+        private final boolean compliantUntilIsDate;
+        private final Set<String> nonCompliantProducts;
+        private final Map<String, Set<String>> compliantProducts;
+        private final Map<String, Set<String>> partiallyCompliantProducts;
+        private final Map<String, Set<String>> partialStacks;
+
+        Entry(String key, ComplianceStatus status) {
+            this.key = key;
+            this.compliantUntil = status.getCompliantUntil();
+            // Non compliant consumers are only "compliant until" the date checked:
+            this.compliantUntilIsDate = compliantUntil != null &&
+                compliantUntil.equals(status.getDate());
+            this.nonCompliantProducts = new HashSet<String>(
+                status.getNonCompliantProducts());
+            this.compliantProducts = ids(status.getCompliantProducts());
+            this.partiallyCompliantProducts = ids(
+                status.getPartiallyCompliantProducts());
+            this.partialStacks = ids(status.getPartialStacks());
+        }
+
+        /**
+         * @return the status for the given entitlements, or null if the cached
+         * status refers to an entitlement which was not loaded.
+         */
+        ComplianceStatus toStatus(Date date, List<Entitlement> ents) {
+            Map<String, Entitlement> byId = new HashMap<String, Entitlement>();
+            for (Entitlement ent : ents) {
+                byId.put(ent.getId(), ent);
+            }
+
+            ComplianceStatus status = new ComplianceStatus(date);
+            status.setCompliantUntil(compliantUntilIsDate ? date : compliantUntil);
+            for (String productId : nonCompliantProducts) {
+                status.addNonCompliantProduct(productId);
+            }
+            for (Map.Entry<String, Set<String>> e : compliantProducts.entrySet()) {
+                for (String id : e.getValue()) {
+                    if (!byId.containsKey(id)) {
+                        return null;
+                    }
+                    status.addCompliantProduct(e.getKey(), byId.get(id));
+                }
+            }
+            for (Map.Entry<String, Set<String>> e :
+                partiallyCompliantProducts.entrySet()) {
+                for (String id : e.getValue()) {
+                    if (!byId.containsKey(id)) {
+                        return null;
+                    }
+                    status.addPartiallyCompliantProduct(e.getKey(), byId.get(id));
+                }
+            }
+            for (Map.Entry<String, Set<String>> e : partialStacks.entrySet()) {
+                for (String id : e.getValue()) {
+                    if (!byId.containsKey(id)) {
+                        return null;
+                    }
+                    status.addPartialStack(e.getKey(), byId.get(id));
+                }
+            }
+            return status;
+        }
+    }
+}
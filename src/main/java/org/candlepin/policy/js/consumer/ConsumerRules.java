@@ -27,12 +27,14 @@ import org.candlepin.policy.js.ReadOnlyConsumer;
  */
 public class ConsumerRules {
 
+    private static final String NAME_SPACE = "consumer_delete_name_space";
+
     private JsRules jsRules;
 
     @Inject
     public ConsumerRules(JsRules jsRules) {
         this.jsRules = jsRules;
-        jsRules.init("consumer_delete_name_space");
+        jsRules.init(NAME_SPACE);
     }
 
     public ConsumerDeleteHelper onConsumerDelete(
@@ -41,7 +43,7 @@ public class ConsumerRules {
         args.put("consumer", new ReadOnlyConsumer(consumer));
         args.put("helper", consumerDeleteHelper);
 
-        jsRules.invokeRule("global", args);
+        jsRules.invokeRule(NAME_SPACE, "global", args);
 
         return consumerDeleteHelper;
     }
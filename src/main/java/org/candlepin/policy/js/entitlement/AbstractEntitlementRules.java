@@ -16,10 +16,12 @@ package org.candlepin.policy.js.entitlement;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,8 +36,10 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.PoolCurator;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.policy.Enforcer;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.JsRules;
 import org.candlepin.policy.js.ReadOnlyConsumer;
+import org.candlepin.policy.js.ReadOnlyPool;
 import org.candlepin.policy.js.ReadOnlyProduct;
 import org.candlepin.policy.js.ProductCache;
 import org.candlepin.policy.js.RuleExecutionException;
@@ -56,13 +60,14 @@ public abstract class AbstractEntitlementRules implements Enforcer {
 
     protected ProductCache productCache;
     protected I18n i18n;
-    protected Map<String, Set<Rule>> attributesToRules;
     protected JsRules jsRules;
     protected Config config;
     protected ConsumerCurator consumerCurator;
     protected PoolCurator poolCurator;
 
     protected static final String PROD_ARCHITECTURE_SEPARATOR = ",";
+    protected static final String ENTITLEMENT_NAME_SPACE = "entitlement_name_space";
+    protected static final String UNBIND_NAME_SPACE = "unbind_name_space";
     protected static final String PRE_PREFIX = "pre_";
     protected static final String POST_PREFIX = "post_";
     protected static final String SELECT_POOL_PREFIX = "select_pool_";
@@ -70,21 +75,32 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         "global";
     protected static final String GLOBAL_PRE_FUNCTION = PRE_PREFIX + "global";
     protected static final String GLOBAL_POST_FUNCTION = POST_PREFIX + "global";
+    protected static final String BATCH_PRE_FUNCTION = PRE_PREFIX + "entitlement_batch";
 
-    protected void rulesInit() {
-        String mappings;
-        try {
-            mappings = jsRules.invokeMethod("attribute_mappings");
-            this.attributesToRules = parseAttributeMappings(mappings);
-        }
-        catch (RhinoException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-        catch (NoSuchMethodException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    /**
+     * @param namespace the rules namespace whose attribute mappings are wanted
+     * @return the rules of the namespace by the attributes they apply to, parsed
+     * once per version of the rules.
+     */
+    protected Map<String, Set<Rule>> attributesToRules(String namespace) {
+        String key = namespace + ".attribute_mappings";
+        Map<String, Set<Rule>> attributesToRules = jsRules.getDerived(key);
+        if (attributesToRules == null) {
+            String mappings;
+            try {
+                mappings = jsRules.invokeMethod(namespace, "attribute_mappings");
+            }
+            catch (NoSuchMethodException e) {
+                log.warn("No attribute mappings found in namespace: " + namespace);
+                mappings = "";
+            }
+            catch (RhinoException e) {
+                throw new RuleExecutionException(e);
+            }
+            attributesToRules = jsRules.putDerived(key,
+                Collections.unmodifiableMap(parseAttributeMappings(mappings)));
         }
+        return attributesToRules;
     }
 
     /**
@@ -179,13 +195,94 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     protected void callPreEntitlementRules(List<Rule> matchingRules,
         Map<String, Object> args) {
         for (Rule rule : matchingRules) {
-            jsRules.invokeRule(PRE_PREFIX + rule.getRuleName(), args);
+            jsRules.invokeRule(ENTITLEMENT_NAME_SPACE, PRE_PREFIX + rule.getRuleName(),
+                args);
+        }
+    }
+
+    /**
+     * Run the pre-entitlement rules for each of the given pools in a single call
+     * into the rules, falling back to one call per rule and pool for rules which
+     * predate the batch entry point.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to check.
+     * @param quantity number of entitlements to consume from each pool.
+     * @param attributeRules false to only run the global rule for each pool.
+     * @return the pre-entitlement helper of each pool, in the order given.
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<Pool, PreEntHelper> runPreEntitlementBatch(Consumer consumer,
+        Collection<Pool> pools, Integer quantity, boolean attributeRules) {
+        Map<Pool, PreEntHelper> helpers = new LinkedHashMap<Pool, PreEntHelper>();
+        List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+        for (Pool pool : pools) {
+            PreEntHelper preHelper = new PreEntHelper(quantity, consumerCurator);
+            Map<String, String> allAttributes = jsRules.getFlattenedAttributes(pool);
+
+            List<String> ruleNames = new ArrayList<String>();
+            if (attributeRules) {
+                for (Rule rule : rulesForAttributes(allAttributes.keySet(),
+                    attributesToRules(ENTITLEMENT_NAME_SPACE))) {
+                    ruleNames.add(rule.getRuleName());
+                }
+            }
+            else {
+                ruleNames.add("global");
+            }
+
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("product", new ReadOnlyProduct(pool.getProductId(),
+                pool.getProductName(),
+                jsRules.getFlattenedAttributes(pool.getProductAttributes())));
+            item.put("pool", new ReadOnlyPool(pool));
+            item.put("pre", preHelper);
+            item.put("attributes", allAttributes);
+            item.put("rules", ruleNames);
+            batch.add(item);
+            helpers.put(pool, preHelper);
+        }
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("consumer", new ReadOnlyConsumer(consumer));
+        args.put("batch", batch);
+        args.put("prodAttrSeparator", PROD_ARCHITECTURE_SEPARATOR);
+        args.put("standalone", config.standalone());
+        args.put("log", rulesLogger);
+        // Set by the batch function for each pool before its rules are run:
+        args.put("product", null);
+        args.put("pool", null);
+        args.put("pre", null);
+        args.put("attributes", null);
+
+        log.debug("Running pre-entitlement rules for: " + consumer.getUuid() +
+            " on " + batch.size() + " pools");
+        try {
+            jsRules.invokeMethod(ENTITLEMENT_NAME_SPACE, BATCH_PRE_FUNCTION, args);
+        }
+        catch (NoSuchMethodException e) {
+            log.debug("No batch rule found: " + BATCH_PRE_FUNCTION +
+                ", running pools one at a time");
+            for (Map<String, Object> item : batch) {
+                Map<String, Object> poolArgs = new HashMap<String, Object>(args);
+                poolArgs.putAll(item);
+                for (String ruleName : (List<String>) item.get("rules")) {
+                    jsRules.invokeRule(ENTITLEMENT_NAME_SPACE, PRE_PREFIX + ruleName,
+                        poolArgs);
+                }
+            }
+        }
+        catch (RhinoException e) {
+            throw new RuleExecutionException(e);
         }
+        return helpers;
     }
 
-    protected void callPostEntitlementRules(List<Rule> matchingRules) {
+    protected void callPostEntitlementRules(List<Rule> matchingRules,
+        Map<String, Object> args) {
         for (Rule rule : matchingRules) {
-            jsRules.invokeRule(POST_PREFIX + rule.getRuleName());
+            jsRules.invokeRule(ENTITLEMENT_NAME_SPACE, POST_PREFIX + rule.getRuleName(),
+                args);
         }
     }
 
@@ -193,7 +290,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         // No method for this product, try to find a global function, if
         // neither exists this is ok and we'll just carry on.
         try {
-            jsRules.invokeMethod(GLOBAL_POST_FUNCTION, args);
+            jsRules.invokeMethod(ENTITLEMENT_NAME_SPACE, GLOBAL_POST_FUNCTION, args);
             log.debug("Ran rule: " + GLOBAL_POST_FUNCTION);
         }
         catch (NoSuchMethodException ex) {
@@ -209,7 +306,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         // No method for this product, try to find a global function, if
         // neither exists this is ok and we'll just carry on.
         try {
-            jsRules.invokeMethod(GLOBAL_PRE_FUNCTION, args);
+            jsRules.invokeMethod(ENTITLEMENT_NAME_SPACE, GLOBAL_PRE_FUNCTION, args);
             log.debug("Ran rule: " + GLOBAL_PRE_FUNCTION);
         }
         catch (NoSuchMethodException ex) {
@@ -221,9 +318,11 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         }
     }
 
-    protected void callPostUnbindRules(List<Rule> matchingRules) {
+    protected void callPostUnbindRules(List<Rule> matchingRules,
+        Map<String, Object> args) {
         for (Rule rule : matchingRules) {
-            jsRules.invokeRule(POST_PREFIX + rule.getRuleName());
+            jsRules.invokeRule(UNBIND_NAME_SPACE, POST_PREFIX + rule.getRuleName(),
+                args);
         }
     }
 
@@ -231,7 +330,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         // No method for this product, try to find a global function, if
         // neither exists this is ok and we'll just carry on.
         try {
-            jsRules.invokeMethod(GLOBAL_POST_FUNCTION, args);
+            jsRules.invokeMethod(UNBIND_NAME_SPACE, GLOBAL_POST_FUNCTION, args);
             log.debug("Ran rule: " + GLOBAL_POST_FUNCTION);
         }
         catch (NoSuchMethodException ex) {
@@ -357,11 +456,11 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         log.debug("Running post-entitlement rules for: " + c.getUuid() +
             " product: " + topLevelProductId);
 
-        List<Rule> matchingRules
-            = rulesForAttributes(allAttributes.keySet(), attributesToRules);
+        List<Rule> matchingRules = rulesForAttributes(allAttributes.keySet(),
+            attributesToRules(ENTITLEMENT_NAME_SPACE));
 
         invokeGlobalPostEntitlementRule(args);
-        callPostEntitlementRules(matchingRules);
+        callPostEntitlementRules(matchingRules, args);
     }
 
     protected void runPostUnbind(PoolHelper postHelper, Entitlement ent) {
@@ -390,32 +489,24 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         log.debug("Running post-unbind rules for: " + c.getUuid() +
             " product: " + topLevelProductId);
 
-        List<Rule> matchingRules
-            = rulesForAttributes(allAttributes.keySet(), attributesToRules);
+        List<Rule> matchingRules = rulesForAttributes(allAttributes.keySet(),
+            attributesToRules(UNBIND_NAME_SPACE));
 
         invokeGlobalPostUnbindRule(args);
-        callPostUnbindRules(matchingRules);
+        callPostUnbindRules(matchingRules, args);
     }
 
     public PoolHelper postEntitlement(
             Consumer consumer, PoolHelper postEntHelper, Entitlement ent) {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         runPostEntitlement(postEntHelper, ent);
         return postEntHelper;
     }
 
     public PreUnbindHelper preUnbind(Consumer consumer, Pool entitlementPool) {
-        jsRules.reinitTo("unbind_name_space");
-        rulesInit();
         return new PreUnbindHelper(consumerCurator);
     }
 
     public PoolHelper postUnbind(Consumer c, PoolHelper postHelper, Entitlement ent) {
-        jsRules.reinitTo("unbind_name_space");
-        rulesInit();
         runPostUnbind(postHelper, ent);
         return postHelper;
     }
@@ -423,23 +514,25 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     @Override
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         return new PreEntHelper(1, null);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, preEntitlement(consumer, pool, quantity).getResult());
+        }
+        return results;
+    }
+
     @Override
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
         List<Pool> pools, ComplianceStatus compliance,
         String serviceLevelOverride,
         Set<String> exemptList)
         throws RuleExecutionException {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         if (pools.isEmpty()) {
             return null;
         }
@@ -28,6 +28,7 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProvidedProduct;
 import org.candlepin.policy.Enforcer;
 import org.candlepin.policy.ValidationError;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.JsRules;
 import org.candlepin.policy.js.ReadOnlyConsumer;
@@ -42,7 +43,9 @@ import org.mozilla.javascript.RhinoException;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -64,7 +67,6 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         this.dateSource = dateSource;
         this.productCache = productCache;
         this.i18n = i18n;
-        this.attributesToRules = null;
         this.config = config;
         this.consumerCurator = consumerCurator;
 
@@ -77,10 +79,6 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     @Override
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         PreEntHelper preHelper = runPreEntitlement(consumer, entitlementPool,
             quantity);
 
@@ -94,6 +92,25 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         return preHelper;
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+        for (Entry<Pool, PreEntHelper> entry :
+            runPreEntitlementBatch(consumer, pools, quantity, true).entrySet()) {
+            Pool pool = entry.getKey();
+            ValidationResult result = entry.getValue().getResult();
+            if (pool.isExpired(dateSource)) {
+                result.addError(
+                    new ValidationError(i18n.tr("Entitlements for {0} expired on: {1}",
+                        pool.getProductId(),
+                        pool.getEndDate())));
+            }
+            results.put(pool, result);
+        }
+        return results;
+    }
+
     private PreEntHelper runPreEntitlement(Consumer consumer, Pool pool, Integer quantity) {
         PreEntHelper preHelper = new PreEntHelper(quantity, consumerCurator);
 
@@ -116,8 +133,8 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
 
         log.debug("Running pre-entitlement rules for: " + consumer.getUuid() +
             " product: " + topLevelProductId);
-        List<Rule> matchingRules
-            = rulesForAttributes(allAttributes.keySet(), attributesToRules);
+        List<Rule> matchingRules = rulesForAttributes(allAttributes.keySet(),
+            attributesToRules(ENTITLEMENT_NAME_SPACE));
 
         callPreEntitlementRules(matchingRules, args);
 
@@ -137,10 +154,6 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
         List<Pool> pools, ComplianceStatus compliance, String serviceLevelOverride,
         Set<String> exemptLevels) {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         int poolsBeforeContentFilter = pools.size();
         pools = filterPoolsForV1Certificates(consumer, pools);
 
@@ -177,6 +190,15 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
             readOnlyProducts.add(roProduct);
         }
 
+        if (config.javaPoolSelectionEnabled()) {
+            log.debug("Using java pool selection");
+            Map<ReadOnlyPool, Integer> result = new GreedyPoolSelector(
+                PROD_ARCHITECTURE_SEPARATOR).selectBestPools(
+                    new ReadOnlyConsumer(consumer, serviceLevelOverride), readOnlyPools,
+                    readOnlyProducts, compliance, exemptLevels);
+            return toPoolQuantities(productIds, pools, result);
+        }
+
         // Provide objects for the script:
         Map<String, Object> args = new HashMap<String, Object>();
         args.put("consumer", new ReadOnlyConsumer(consumer, serviceLevelOverride));
@@ -191,7 +213,8 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
         // Only need to run the select best pools global rule:
         try {
             Object output =
-                jsRules.invokeMethod(GLOBAL_SELECT_POOL_FUNCTION, args);
+                jsRules.invokeMethod(ENTITLEMENT_NAME_SPACE, GLOBAL_SELECT_POOL_FUNCTION,
+                    args);
             result = jsRules.convertMap(output);
             if (log.isDebugEnabled()) {
                 log.debug("Excuted javascript rule: " + GLOBAL_SELECT_POOL_FUNCTION);
@@ -206,6 +229,11 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
             throw new RuleExecutionException(e);
         }
 
+        return toPoolQuantities(productIds, pools, result);
+    }
+
+    private List<PoolQuantity> toPoolQuantities(String[] productIds, List<Pool> pools,
+        Map<ReadOnlyPool, Integer> result) {
         if (pools.size() > 0 && result == null) {
             throw new RuleExecutionException(
                 "Rule did not select a pool for products: " + Arrays.toString(productIds));
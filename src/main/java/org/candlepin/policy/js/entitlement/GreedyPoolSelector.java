@@ -0,0 +1,540 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.entitlement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.model.ProductPoolAttribute;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.policy.js.ReadOnlyConsumer;
+import org.candlepin.policy.js.ReadOnlyPool;
+import org.candlepin.policy.js.ReadOnlyProduct;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+
+/**
+ * GreedyPoolSelector - Java implementation of the select_pool_global rule.
+ *
+ * The javascript rule enumerates every combination of pool classes (pools providing
+ * the same subset of the requested products) which becomes exponential once an owner
+ * has more than a handful of candidate pools. This selector applies the same
+ * filtering (service level, architecture, installed overlap) and the same stacking
+ * logic per pool class, but picks the classes with a greedy weighted set cover:
+ * repeatedly take the class covering the most still uncovered products, preferring
+ * the class needing the fewest entitlements on a tie.
+ *
+ * The result has the same shape as the javascript output, so it can be used as a
+ * drop in replacement in {@link EntitlementRules#selectBestPools}.
+ */
+public class GreedyPoolSelector {
+
+    private static Logger log = Logger.getLogger(GreedyPoolSelector.class);
+
+    private static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    private static final String MULTI_ENTITLEMENT = "multi-entitlement";
+    private static final String STACKING_ID = "stacking_id";
+
+    private final String prodAttrSeparator;
+
+    public GreedyPoolSelector(String prodAttrSeparator) {
+        this.prodAttrSeparator = prodAttrSeparator;
+    }
+
+    /**
+     * Select the best pools for the given products.
+     *
+     * @param consumer consumer being entitled
+     * @param pools candidate pools, already filtered by the pre-entitlement rules
+     * @param products installed products to cover
+     * @param compliance current compliance status of the consumer
+     * @param exemptList service levels exempt from SLA matching
+     * @return map of selected pool to quantity, or null if nothing was selected
+     */
+    public Map<ReadOnlyPool, Integer> selectBestPools(ReadOnlyConsumer consumer,
+        List<ReadOnlyPool> pools, List<ReadOnlyProduct> products,
+        ComplianceStatus compliance, Set<String> exemptList) {
+
+        List<PoolClass> poolClasses = buildPoolClasses(consumer, pools, products,
+            exemptList);
+
+        log.debug("Selecting " + products.size() + " products from " +
+            poolClasses.size() + " pool classes");
+
+        Set<String> covered = new HashSet<String>();
+        Set<String> seenProductIds = new HashSet<String>();
+        Map<ReadOnlyPool, Integer> selected = new HashMap<ReadOnlyPool, Integer>();
+
+        while (true) {
+            PoolClass best = null;
+            Map<ReadOnlyPool, Integer> bestSelection = null;
+            int bestNewProducts = 0;
+            int bestEntitlements = 0;
+
+            for (PoolClass poolClass : poolClasses) {
+                int newProducts = poolClass.countUncovered(covered);
+                if (newProducts == 0 || newProducts < bestNewProducts) {
+                    continue;
+                }
+
+                if (overlaps(poolClass.getBest(), seenProductIds)) {
+                    continue;
+                }
+
+                Map<ReadOnlyPool, Integer> poolMap = findStackingPools(
+                    poolClass.getPools(), consumer, compliance);
+                if (poolMap.isEmpty()) {
+                    continue;
+                }
+
+                int entitlements = sum(poolMap.values());
+                if (newProducts > bestNewProducts || entitlements < bestEntitlements) {
+                    best = poolClass;
+                    bestSelection = poolMap;
+                    bestNewProducts = newProducts;
+                    bestEntitlements = entitlements;
+                }
+            }
+
+            if (best == null) {
+                break;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Selected pool class covering: " + best.getProductIds());
+            }
+            selected.putAll(bestSelection);
+            covered.addAll(best.getProductIds());
+            for (ReadOnlyProduct product : best.getBest().getProducts()) {
+                seenProductIds.add(product.getId());
+            }
+            poolClasses.remove(best);
+        }
+
+        return selected.isEmpty() ? null : selected;
+    }
+
+    /*
+     * Group the usable pools by the subset of requested products they provide. Each
+     * class is kept sorted from best to worst pool.
+     */
+    private List<PoolClass> buildPoolClasses(ReadOnlyConsumer consumer,
+        List<ReadOnlyPool> pools, List<ReadOnlyProduct> products,
+        Set<String> exemptList) {
+        Map<Set<String>, PoolClass> classes = new LinkedHashMap<Set<String>, PoolClass>();
+
+        String consumerSLA = consumer.getServiceLevel();
+        boolean filterBySLA = consumerSLA != null && !consumerSLA.equals("");
+        Map<ReadOnlyPool, Set<String>> providedByPool = indexProvided(pools, products);
+
+        for (ReadOnlyPool pool : pools) {
+            String poolSLA = pool.getProductAttribute("support_level");
+            if (filterBySLA && !isLevelExempt(poolSLA, exemptList) &&
+                !consumerSLA.equalsIgnoreCase(poolSLA)) {
+                log.debug("Skipping pool " + pool.getId() +
+                    " since SLA does not match that of the consumer.");
+                continue;
+            }
+
+            if (!architectureMatches(pool.getTopLevelProduct(), consumer)) {
+                continue;
+            }
+
+            // A pool providing none of the requested products can never be selected.
+            Set<String> provided = providedByPool.get(pool);
+            if (provided == null) {
+                continue;
+            }
+
+            PoolClass poolClass = classes.get(provided);
+            if (poolClass == null) {
+                poolClass = new PoolClass(provided);
+                classes.put(provided, poolClass);
+            }
+            poolClass.add(pool);
+        }
+
+        return new ArrayList<PoolClass>(classes.values());
+    }
+
+    /*
+     * Work out which of the requested products each pool provides. The pools are
+     * indexed by the products they provide first, so this takes one pass over the
+     * pools and one lookup per requested product, rather than scanning every pool's
+     * provided products once per requested product. Pools providing none of the
+     * requested products are left out.
+     */
+    private Map<ReadOnlyPool, Set<String>> indexProvided(List<ReadOnlyPool> pools,
+        List<ReadOnlyProduct> products) {
+        Map<String, List<ReadOnlyPool>> poolsByProduct =
+            new HashMap<String, List<ReadOnlyPool>>();
+        for (ReadOnlyPool pool : pools) {
+            addToIndex(poolsByProduct, pool.getProductId(), pool);
+            if (pool.getProvidedProducts() != null) {
+                for (ProvidedProduct provided : pool.getProvidedProducts()) {
+                    addToIndex(poolsByProduct, provided.getProductId(), pool);
+                }
+            }
+        }
+
+        Map<ReadOnlyPool, Set<String>> providedByPool =
+            new HashMap<ReadOnlyPool, Set<String>>();
+        for (ReadOnlyProduct product : products) {
+            List<ReadOnlyPool> providing = poolsByProduct.get(product.getId());
+            if (providing == null) {
+                continue;
+            }
+            for (ReadOnlyPool pool : providing) {
+                Set<String> provided = providedByPool.get(pool);
+                if (provided == null) {
+                    provided = new LinkedHashSet<String>();
+                    providedByPool.put(pool, provided);
+                }
+                provided.add(product.getId());
+            }
+        }
+        return providedByPool;
+    }
+
+    private void addToIndex(Map<String, List<ReadOnlyPool>> poolsByProduct,
+        String productId, ReadOnlyPool pool) {
+        List<ReadOnlyPool> indexed = poolsByProduct.get(productId);
+        if (indexed == null) {
+            indexed = new ArrayList<ReadOnlyPool>();
+            poolsByProduct.put(productId, indexed);
+        }
+        indexed.add(pool);
+    }
+
+    /*
+     * Mirrors findStackingPools in the default rules: work out the quantity needed
+     * from each pool of a class to cover the consumer's sockets, building on any
+     * partial stack the consumer already has.
+     */
+    Map<ReadOnlyPool, Integer> findStackingPools(List<ReadOnlyPool> poolClass,
+        ReadOnlyConsumer consumer, ComplianceStatus compliance) {
+        double consumerSockets = getConsumerSockets(consumer);
+
+        Map<String, Double> stackToEntitledSockets = new HashMap<String, Double>();
+        Map<String, Map<ReadOnlyPool, Integer>> stackToPoolMap =
+            new LinkedHashMap<String, Map<ReadOnlyPool, Integer>>();
+        List<ReadOnlyPool> notStackable = new ArrayList<ReadOnlyPool>();
+
+        Map<String, String> productIdToStackId = new HashMap<String, String>();
+        for (Entry<String, Set<Entitlement>> stack :
+            compliance.getPartialStacks().entrySet()) {
+            double coveredSockets = 0;
+            for (Entitlement ent : stack.getValue()) {
+                Pool entPool = ent.getPool();
+                coveredSockets += ent.getQuantity() * getPoolSockets(entPool);
+                productIdToStackId.put(entPool.getProductId(), stack.getKey());
+                for (ProvidedProduct provided : entPool.getProvidedProducts()) {
+                    productIdToStackId.put(provided.getProductId(), stack.getKey());
+                }
+            }
+            stackToEntitledSockets.put(stack.getKey(), coveredSockets);
+        }
+
+        for (ReadOnlyPool pool : poolClass) {
+            if (!hasNoInstalledOverlap(pool, compliance)) {
+                log.debug("installed overlap found, skipping: " + pool.getId());
+                continue;
+            }
+
+            String stackId = pool.getProductAttribute(STACKING_ID);
+            if (!isSet(pool.getProductAttribute(MULTI_ENTITLEMENT)) || !isSet(stackId)) {
+                notStackable.add(pool);
+                continue;
+            }
+
+            // Make sure there isn't a conflicting stack already on the system:
+            String installedStackId = null;
+            boolean seenStackId = false;
+            boolean conflictingStacks = false;
+            for (ReadOnlyProduct product : pool.getProducts()) {
+                String existing = productIdToStackId.get(product.getId());
+                if (existing != null && !existing.equals(installedStackId)) {
+                    if (!seenStackId) {
+                        installedStackId = existing;
+                        seenStackId = true;
+                    }
+                    else {
+                        conflictingStacks = true;
+                    }
+                }
+            }
+            if (conflictingStacks || (seenStackId && !installedStackId.equals(stackId))) {
+                continue;
+            }
+
+            if (!stackToPoolMap.containsKey(stackId)) {
+                stackToPoolMap.put(stackId, new HashMap<ReadOnlyPool, Integer>());
+                if (!stackToEntitledSockets.containsKey(stackId)) {
+                    stackToEntitledSockets.put(stackId, 0.0);
+                }
+            }
+
+            double entitled = stackToEntitledSockets.get(stackId);
+            if (entitled >= consumerSockets) {
+                continue;
+            }
+
+            int quantity = 0;
+            double productSockets = 0;
+            double poolSockets = getPoolSockets(pool.getProductAttribute("sockets"));
+            while (entitled + productSockets < consumerSockets) {
+                productSockets += poolSockets;
+                quantity++;
+            }
+
+            // don't take more entitlements than are available!
+            long available = pool.getMaxMembers() - pool.getCurrentMembers();
+            if (quantity > available) {
+                quantity = (int) available;
+            }
+
+            stackToEntitledSockets.put(stackId, entitled + quantity * poolSockets);
+            stackToPoolMap.get(stackId).put(pool, quantity);
+        }
+
+        boolean foundPool = false;
+        double notStackedSockets = 0;
+        Map<ReadOnlyPool, Integer> notStackedPoolMap = new HashMap<ReadOnlyPool, Integer>();
+        for (ReadOnlyPool pool : notStackable) {
+            double coveredSockets = getPoolSockets(pool.getProductAttribute("sockets"));
+            if (coveredSockets > notStackedSockets) {
+                foundPool = true;
+                notStackedPoolMap = new HashMap<ReadOnlyPool, Integer>();
+                notStackedPoolMap.put(pool, 1);
+                notStackedSockets = coveredSockets;
+            }
+        }
+
+        // if an unstacked pool can cover all our products, take that.
+        if (notStackedSockets >= consumerSockets) {
+            return notStackedPoolMap;
+        }
+
+        double bestSockets = 0;
+        String bestStack = null;
+        for (Entry<String, Map<ReadOnlyPool, Integer>> entry : stackToPoolMap.entrySet()) {
+            foundPool = true;
+            double entitled = stackToEntitledSockets.get(entry.getKey());
+            if (entitled >= consumerSockets) {
+                return entry.getValue();
+            }
+            else if (entitled > bestSockets) {
+                bestStack = entry.getKey();
+                bestSockets = entitled;
+            }
+        }
+
+        if (!foundPool || (notStackedSockets >= bestSockets)) {
+            return notStackedPoolMap;
+        }
+        return stackToPoolMap.get(bestStack);
+    }
+
+    /*
+     * Returns true if the pool provides a non multi-entitlement product which was
+     * already provided by a previously selected pool.
+     */
+    private boolean overlaps(ReadOnlyPool pool, Set<String> seenProductIds) {
+        for (ReadOnlyProduct product : pool.getProducts()) {
+            if (seenProductIds.contains(product.getId()) &&
+                !"yes".equals(product.getAttribute(MULTI_ENTITLEMENT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasNoInstalledOverlap(ReadOnlyPool pool,
+        ComplianceStatus compliance) {
+        for (ReadOnlyProduct product : pool.getProducts()) {
+            if (!"yes".equals(product.getAttribute(MULTI_ENTITLEMENT)) &&
+                compliance.getCompliantProducts().containsKey(product.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean architectureMatches(ReadOnlyProduct product,
+        ReadOnlyConsumer consumer) {
+        // Non-system consumers without an architecture fact can pass this rule
+        // regardless what arch the product requires.
+        if (!consumer.hasFact("uname.machine") && !consumer.getType().equals("system")) {
+            return true;
+        }
+
+        String archString = product.getAttribute("arch");
+        if (archString == null) {
+            return true;
+        }
+
+        Set<String> supportedArches = new HashSet<String>(
+            Arrays.asList(archString.toUpperCase().split(prodAttrSeparator)));
+
+        // If X86 is supported, add all variants to this list:
+        if (supportedArches.contains("X86")) {
+            supportedArches.add("I386");
+            supportedArches.add("I586");
+            supportedArches.add("I686");
+        }
+
+        return supportedArches.contains("ALL") || (consumer.hasFact("uname.machine") &&
+            supportedArches.contains(consumer.getFact("uname.machine").toUpperCase()));
+    }
+
+    private boolean isLevelExempt(String level, Set<String> exemptList) {
+        if (exemptList == null) {
+            return false;
+        }
+        for (String exemptLevel : exemptList) {
+            if (exemptLevel.equalsIgnoreCase(level)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double getConsumerSockets(ReadOnlyConsumer consumer) {
+        if (!consumer.hasFact(SOCKET_FACT)) {
+            return 1;
+        }
+        try {
+            return Double.parseDouble(consumer.getFact(SOCKET_FACT));
+        }
+        catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private double getPoolSockets(Pool pool) {
+        ProductPoolAttribute sockets = pool.getProductAttribute("sockets");
+        return getPoolSockets(sockets == null ? null : sockets.getValue());
+    }
+
+    /*
+     * Number of sockets covered by one entitlement, if sockets is set to 0 or is not
+     * set, it is considered to be unlimited.
+     */
+    private double getPoolSockets(String sockets) {
+        if (!isSet(sockets)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        try {
+            int value = Integer.parseInt(sockets.trim());
+            return value == 0 ? Double.POSITIVE_INFINITY : value;
+        }
+        catch (NumberFormatException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private boolean isSet(String value) {
+        return value != null && !value.equals("");
+    }
+
+    private int sum(Iterable<Integer> values) {
+        int total = 0;
+        for (Integer value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Given two pools offering the same products, returns true if the first is a
+     * better choice than the second. Same ordering as comparePools in the rules.
+     */
+    static boolean isBetter(ReadOnlyPool pool1, ReadOnlyPool pool2) {
+        boolean virt1 = "true".equals(pool1.getAttribute("virt_only"));
+        boolean virt2 = "true".equals(pool2.getAttribute("virt_only"));
+
+        // Prefer a virt_only pool over a regular pool.
+        if (virt1 != virt2) {
+            return virt1;
+        }
+
+        // If both virt_only, prefer one with host_requires.
+        if (virt1) {
+            boolean host1 = pool1.getAttribute("requires_host") != null;
+            boolean host2 = pool2.getAttribute("requires_host") != null;
+            if (host1 != host2) {
+                return host1;
+            }
+        }
+
+        // Otherwise select the pool that expires first.
+        return pool2.getEndDate().after(pool1.getEndDate());
+    }
+
+    /**
+     * PoolClass - pools providing the exact same subset of the requested products,
+     * sorted from best to worst.
+     */
+    static class PoolClass {
+        private final Set<String> productIds;
+        private final List<ReadOnlyPool> pools = new ArrayList<ReadOnlyPool>();
+
+        PoolClass(Set<String> productIds) {
+            this.productIds = productIds;
+        }
+
+        void add(ReadOnlyPool pool) {
+            int i = 0;
+            for (; i < pools.size(); i++) {
+                if (isBetter(pool, pools.get(i))) {
+                    break;
+                }
+            }
+            pools.add(i, pool);
+        }
+
+        int countUncovered(Set<String> covered) {
+            int count = 0;
+            for (String productId : productIds) {
+                if (!covered.contains(productId)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        Set<String> getProductIds() {
+            return productIds;
+        }
+
+        List<ReadOnlyPool> getPools() {
+            return pools;
+        }
+
+        ReadOnlyPool getBest() {
+            return pools.get(0);
+        }
+    }
+}
@@ -14,8 +14,11 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
@@ -24,6 +27,7 @@ import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Pool;
 import org.candlepin.policy.Enforcer;
 import org.candlepin.policy.ValidationError;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.JsRules;
 import org.candlepin.policy.js.ReadOnlyConsumer;
@@ -51,7 +55,6 @@ public class ManifestEntitlementRules extends AbstractEntitlementRules implement
         this.dateSource = dateSource;
         this.productCache = productCache;
         this.i18n = i18n;
-        this.attributesToRules = null;
         this.config = config;
         this.consumerCurator = consumerCurator;
 
@@ -63,16 +66,23 @@ public class ManifestEntitlementRules extends AbstractEntitlementRules implement
     @Override
     public PreEntHelper preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity) {
-
-        jsRules.reinitTo("entitlement_name_space");
-        rulesInit();
-
         PreEntHelper preHelper = runPreEntitlement(consumer, entitlementPool,
             quantity);
 
         return preHelper;
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+        for (Entry<Pool, PreEntHelper> entry :
+            runPreEntitlementBatch(consumer, pools, quantity, false).entrySet()) {
+            results.put(entry.getKey(), entry.getValue().getResult());
+        }
+        return results;
+    }
+
     /**
      * The standard pre entitlement runs both the global and the attribute rules
      *    Here we have limited it to the global only as the exclusions based on
@@ -34,6 +34,7 @@ import java.util.Map;
  */
 public class JsExportRules {
     private static Logger log = Logger.getLogger(JsExportRules.class);
+    private static final String NAME_SPACE = "export_name_space";
 
     private JsRules jsRules;
     private ProductServiceAdapter productAdapter;
@@ -42,7 +43,7 @@ public class JsExportRules {
     public JsExportRules(JsRules jsRules, ProductServiceAdapter productAdapter) {
         this.jsRules = jsRules;
         this.productAdapter = productAdapter;
-        jsRules.init("export_name_space");
+        jsRules.init(NAME_SPACE);
     }
 
     public boolean canExport(Entitlement entitlement) {
@@ -57,7 +58,7 @@ public class JsExportRules {
         // just default to true if there are any errors
         Boolean canExport = true;
         try {
-            canExport = jsRules.invokeMethod("can_export_entitlement", args);
+            canExport = jsRules.invokeMethod(NAME_SPACE, "can_export_entitlement", args);
         }
         catch (NoSuchMethodException e) {
             log.warn("No method found: can_export_entitlement");
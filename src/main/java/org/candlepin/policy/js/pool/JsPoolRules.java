@@ -36,6 +36,7 @@ import com.google.inject.Inject;
 public class JsPoolRules implements PoolRules {
 
     private static Logger log = Logger.getLogger(JsPoolRules.class);
+    private static final String NAME_SPACE = "pool_name_space";
     protected Logger rulesLogger = null;
 
     private JsRules jsRules;
@@ -53,7 +54,7 @@ public class JsPoolRules implements PoolRules {
         this.config = config;
         this.rulesLogger = Logger.getLogger(
             JsPoolRules.class.getCanonicalName() + ".rules");
-        jsRules.init("pool_name_space");
+        jsRules.init(NAME_SPACE);
     }
 
     @Override
@@ -67,7 +68,7 @@ public class JsPoolRules implements PoolRules {
         args.put("log", rulesLogger);
         List<Pool> poolsCreated = null;
         try {
-            poolsCreated = jsRules.invokeMethod("createPools", args);
+            poolsCreated = jsRules.invokeMethod(NAME_SPACE, "createPools", args);
         }
         catch (NoSuchMethodException e) {
             log.error("Unable to find javascript method: createPools");
@@ -88,7 +89,7 @@ public class JsPoolRules implements PoolRules {
         args.put("standalone", config.standalone());
         List<PoolUpdate> poolsUpdated = null;
         try {
-            poolsUpdated = jsRules.invokeMethod("updatePools", args);
+            poolsUpdated = jsRules.invokeMethod(NAME_SPACE, "updatePools", args);
         }
         catch (NoSuchMethodException e) {
             log.error("Unable to find javascript method: updatePools");
@@ -14,12 +14,15 @@
  */
 package org.candlepin.resource;
 
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
 import org.apache.log4j.Logger;
+import org.candlepin.model.ConsumerFactMetrics;
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
 import org.candlepin.service.UserServiceAdapter;
@@ -42,11 +45,14 @@ public class AdminResource {
 
     private UserServiceAdapter userService;
     private UserCurator userCurator;
+    private ConsumerFactMetrics factMetrics;
 
     @Inject
-    public AdminResource(UserServiceAdapter userService, UserCurator userCurator) {
+    public AdminResource(UserServiceAdapter userService, UserCurator userCurator,
+        ConsumerFactMetrics factMetrics) {
         this.userService = userService;
         this.userCurator = userCurator;
+        this.factMetrics = factMetrics;
     }
 
     /**
@@ -86,4 +92,20 @@ public class AdminResource {
             return "Already initialized.";
         }
     }
+
+    /**
+     * Consumer fact write metrics.
+     *
+     * Counts the consumer updates since the server started, the facts those
+     * consumers reported, and how many of them had to be written to the database.
+     *
+     * @return the fact counters, by name.
+     * @httpcode 200
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("metrics/facts")
+    public Map<String, Long> getFactMetrics() {
+        return factMetrics.toMap();
+    }
 }
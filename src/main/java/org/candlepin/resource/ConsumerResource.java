@@ -19,13 +19,17 @@ import com.google.inject.persist.Transactional;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -41,9 +45,13 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.log4j.Logger;
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventAdapter;
@@ -93,6 +101,8 @@ import org.candlepin.model.PoolQuantity;
 import org.candlepin.model.Product;
 import org.candlepin.model.Release;
 import org.candlepin.model.User;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.candlepin.pinsetter.tasks.EntitlerJob;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
@@ -109,6 +119,7 @@ import org.candlepin.sync.ExportCreationException;
 import org.candlepin.sync.Exporter;
 import org.candlepin.util.Util;
 import org.jboss.resteasy.annotations.providers.jaxb.Wrapped;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.quartz.JobDetail;
 import org.xnap.commons.i18n.I18n;
 
@@ -206,9 +217,10 @@ public class ConsumerResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Wrapped(element = "consumers")
-    public List<Consumer> list(@QueryParam("username") String userName,
+    public Iterable<Consumer> list(@QueryParam("username") String userName,
         @QueryParam("type") String typeLabel,
-        @QueryParam("owner") String ownerKey) {
+        @QueryParam("owner") String ownerKey,
+        @Context PageRequest pageRequest) {
         ConsumerType type = null;
 
         if (typeLabel != null) {
@@ -228,7 +240,10 @@ public class ConsumerResource {
 
         // We don't look up the user and warn if it doesn't exist here to not
         // give away usernames
-        return consumerCurator.listByUsernameAndType(userName, type, owner);
+        Page<Consumer> page = consumerCurator.listByUsernameAndType(userName, type,
+            owner, pageRequest);
+        ResteasyProviderFactory.pushContext(Page.class, page);
+        return page.getPageData();
     }
 
     /**
@@ -765,14 +780,18 @@ public class ConsumerResource {
             }
             return false;
         }
-        else if (!existing.factsAreEqual(incoming)) {
+
+        boolean changed = !existing.factsAreEqual(incoming);
+        int written = 0;
+        if (changed) {
             if (log.isDebugEnabled()) {
                 log.debug("Updating consumer facts.");
             }
-            existing.setFacts(incoming.getFacts());
-            return true;
+            written = existing.updateFacts(incoming.getFacts());
         }
-        return false;
+        // Count every check-in, including those which change nothing.
+        consumerCurator.recordFactUpdate(incoming.getFacts().size(), written);
+        return changed;
     }
 
     /**
@@ -837,6 +856,15 @@ public class ConsumerResource {
         List<GuestId> removedGuests = getRemovedGuestIds(existing, incoming);
         List<GuestId> addedGuests = getAddedGuestIds(existing, incoming);
 
+        // Resolve the hosts and guest consumers of all reported guests together,
+        // as they were before this update:
+        List<String> reportedIds = new ArrayList<String>();
+        for (GuestId guestId : incoming.getGuestIds()) {
+            reportedIds.add(guestId.getGuestId());
+        }
+        Map<String, Consumer> hosts = consumerCurator.getHostsByGuestIds(reportedIds);
+        Map<String, Consumer> guests = consumerCurator.findByVirtUuids(reportedIds);
+
         // Ensure that existing actually has guest ids initialized.
         if (existing.getGuestIds() != null) {
             // Always clear existing id so that the timestamps are updated
@@ -850,8 +878,8 @@ public class ConsumerResource {
 
         // Check guests that are existing/added.
         for (GuestId guestId : incoming.getGuestIds()) {
-            Consumer host = consumerCurator.getHost(guestId.getGuestId());
-            Consumer guest = consumerCurator.findByVirtUuid(guestId.getGuestId());
+            Consumer host = hosts.get(guestId.getGuestId());
+            Consumer guest = guests.get(guestId.getGuestId());
 
             // Add back the guestId.
             existing.addGuestId(guestId);
@@ -1126,17 +1154,22 @@ public class ConsumerResource {
      * is a small subset of data clients can use to determine which certificates
      * they need to update/fetch.
      *
+     * The response carries an ETag computed from the serials. When the
+     * If-None-Match header of the request still matches it, nothing has changed
+     * and 304 is returned without a body.
+     *
      * @param consumerUuid UUID of the consumer
      * @return list of the client certificate metadata for the given consumer.
      * @httpcode 404
+     * @httpcode 304
      * @httpcode 200
      */
     @GET
     @Path("{consumer_uuid}/certificates/serials")
     @Produces(MediaType.APPLICATION_JSON)
-    @Wrapped(element = "serials")
-    public List<CertificateSerialDto> getEntitlementCertificateSerials(
-        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid) {
+    public Response getEntitlementCertificateSerials(
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @Context Request request) {
 
         if (log.isDebugEnabled()) {
             log.debug("Getting client certificate serials for consumer: " +
@@ -1144,15 +1177,44 @@ public class ConsumerResource {
         }
         Consumer consumer = verifyAndLookupConsumer(consumerUuid);
         poolManager.regenerateDirtyEntitlements(
-            entitlementCurator.listByConsumer(consumer));
+            entitlementCurator.listDirtyByConsumer(consumer));
+
+        // serials only, the certificates themselves are never loaded
+        List<Long> serialIds = entCertService.listSerialIdsForConsumer(consumer);
+        EntityTag etag = new EntityTag(serialsTag(serialIds));
+        ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            return notModified.build();
+        }
 
         List<CertificateSerialDto> allCerts = new LinkedList<CertificateSerialDto>();
-        for (EntitlementCertificate cert : entCertService
-            .listForConsumer(consumer)) {
-            allCerts.add(new CertificateSerialDto(cert.getSerial().getId()));
+        for (Long serialId : serialIds) {
+            allCerts.add(new CertificateSerialDto(serialId));
         }
 
-        return allCerts;
+        return Response.ok(allCerts).tag(etag).build();
+    }
+
+    /*
+     * Serials are never reused and every regenerated certificate gets a new
+     * one, so the sorted list of serials changes whenever any of the
+     * consumer's certificates does.
+     */
+    private String serialsTag(List<Long> serialIds) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Long serialId : serialIds) {
+                md.update(serialId.toString().getBytes("UTF-8"));
+                md.update((byte) ',');
+            }
+            return new String(Hex.encodeHex(md.digest()));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -16,6 +16,7 @@ package org.candlepin.resource;
 
 import com.google.inject.Inject;
 
+import org.apache.commons.io.FileUtils;
 import org.candlepin.auth.Principal;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
@@ -77,18 +78,14 @@ public class CrlResource {
         String filePath = getCrlFilePath();
         File crlFile = new File(filePath);
 
-        byte[] encoded = null;
-
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            crlGenerator.syncCRLFileWithDB(crlFile);
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
 
-        return new String(encoded);
+        return FileUtils.readFileToString(crlFile);
     }
 
     /**
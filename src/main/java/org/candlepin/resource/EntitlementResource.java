@@ -227,6 +227,7 @@ public class EntitlementResource {
         JobDetail detail = newJob(RegenProductEntitlementCertsJob.class)
             .withIdentity("regen_entitlement_cert_of_prod" + Util.generateUUID())
             .usingJobData(map)
+            .requestRecovery(true) // resume the job from its checkpoint upon restarts
             .build();
 
         return detail;
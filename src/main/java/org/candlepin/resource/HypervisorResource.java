@@ -16,13 +16,14 @@ package org.candlepin.resource;
 
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.interceptor.SecurityHole;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
-import org.candlepin.model.DeletedConsumer;
 import org.candlepin.model.DeletedConsumerCurator;
 import org.candlepin.model.GuestId;
 import org.candlepin.resource.dto.HypervisorCheckInResult;
@@ -31,10 +32,12 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.apache.log4j.Logger;
+import org.hibernate.Hibernate;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -54,14 +57,17 @@ public class HypervisorResource {
     private PoolManager poolManager;
     private ConsumerResource consumerResource;
     private DeletedConsumerCurator deletedConsumerCurator;
+    private Config config;
 
     @Inject
     public HypervisorResource(ConsumerResource consumerResource, PoolManager poolManager,
-        ConsumerCurator consumerCurator, DeletedConsumerCurator deletedConsumerCurator) {
+        ConsumerCurator consumerCurator, DeletedConsumerCurator deletedConsumerCurator,
+        Config config) {
         this.consumerResource = consumerResource;
         this.poolManager = poolManager;
         this.consumerCurator = consumerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
+        this.config = config;
     }
 
     /**
@@ -69,6 +75,10 @@ public class HypervisorResource {
      * guests for each host. This is typically used when a host is unable to
      * register to candlepin via subscription manager.
      *
+     * Hosts are checked in a chunk at a time, each chunk in a transaction of its
+     * own. The session is cleared after every chunk, so a chunk which fails to
+     * commit leaves nothing behind for the next one to flush, and the consumers of
+     * earlier chunks are not dirty checked again.
      *
      * @param hostGuestMap a mapping of host_id to list of guestIds
      * @param principal
@@ -84,27 +94,63 @@ public class HypervisorResource {
     @Produces(MediaType.APPLICATION_JSON)
     // FIXME Temporarily open up until auth is figured out.
     @SecurityHole(noAuth = true)
-    @Transactional
     public HypervisorCheckInResult hypervisorCheckIn(
         Map<String, List<GuestId>> hostGuestMap, @Context Principal principal,
         @QueryParam("owner") String ownerKey) {
         HypervisorCheckInResult result = new HypervisorCheckInResult();
-        for (Entry<String, List<GuestId>> hostEntry : hostGuestMap.entrySet()) {
+        List<String> hostIds = new ArrayList<String>(hostGuestMap.keySet());
+        int chunkSize = Math.max(1,
+            config.getInt(ConfigProperties.HYPERVISOR_CHECKIN_CHUNK_SIZE));
+
+        for (int i = 0; i < hostIds.size(); i += chunkSize) {
+            List<String> chunk = hostIds.subList(i,
+                Math.min(i + chunkSize, hostIds.size()));
+            HypervisorCheckInResult chunkResult = new HypervisorCheckInResult();
             try {
-                log.info("Attempting to register host: " + hostEntry.getKey());
-                List<GuestId> guestIds = hostEntry.getValue();
-                DeletedConsumer deletedHypervisor =
-                    deletedConsumerCurator.findByConsumerUuid(hostEntry.getKey());
-                if (deletedHypervisor != null) {
-                    throw new GoneException("Hypervisor " + hostEntry.getKey() +
+                checkInHosts(chunk, hostGuestMap, principal, ownerKey, chunkResult);
+                result.add(chunkResult);
+            }
+            catch (RuntimeException e) {
+                // The whole chunk was rolled back:
+                log.error("Unable to check in hypervisors", e);
+                for (String hostId : chunk) {
+                    result.failed(hostId, e.getMessage());
+                }
+            }
+            finally {
+                consumerCurator.clear();
+            }
+            log.info("Checked in " + Math.min(i + chunkSize, hostIds.size()) +
+                " of " + hostIds.size() + " hypervisors");
+        }
+        return result;
+    }
+
+    /*
+     * Checks in one chunk of hosts in a transaction of its own. The hosts and
+     * deleted host records of the chunk are looked up together. Everything the
+     * result serializes is loaded here, before the session is cleared.
+     */
+    @Transactional
+    void checkInHosts(List<String> hostIds, Map<String, List<GuestId>> hostGuestMap,
+        Principal principal, String ownerKey, HypervisorCheckInResult result) {
+        Set<String> deletedHosts = deletedConsumerCurator.findDeletedUuids(hostIds);
+        Map<String, Consumer> hosts = consumerCurator.findByUuids(hostIds);
+
+        for (String hostId : hostIds) {
+            try {
+                log.info("Attempting to register host: " + hostId);
+                List<GuestId> guestIds = hostGuestMap.get(hostId);
+                if (deletedHosts.contains(hostId)) {
+                    throw new GoneException("Hypervisor " + hostId +
                                                 " has been deleted previously");
                 }
-                Consumer consumer = consumerCurator.findByUuid(hostEntry.getKey());
+                Consumer consumer = hosts.get(hostId);
                 if (consumer == null) {
                     // Create new consumer
                     consumer = new Consumer();
-                    consumer.setName(hostEntry.getKey());
-                    consumer.setUuid(hostEntry.getKey());
+                    consumer.setName(hostId);
+                    consumer.setUuid(hostId);
                     consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
                     consumer.setFact("uname.machine", "x86_64");
                     consumer = consumerResource.create(consumer, principal, null, ownerKey,
@@ -123,12 +169,13 @@ public class HypervisorResource {
                 if (consumerResource.performConsumerUpdates(withIds, consumer)) {
                     consumerCurator.update(consumer);
                 }
+                Hibernate.initialize(consumer.getInstalledProducts());
+                Hibernate.initialize(consumer.getGuestIds());
                 result.updated(consumer);
             }
             catch (Exception e) {
-                result.failed(hostEntry.getKey(), e.getMessage());
+                result.failed(hostId, e.getMessage());
             }
         }
-        return result;
     }
 }
@@ -82,6 +82,8 @@ import org.candlepin.model.StatisticCurator;
 import org.candlepin.model.Subscription;
 import org.candlepin.model.SubscriptionCurator;
 import org.candlepin.model.UeberCertificateGenerator;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.candlepin.pinsetter.tasks.RefreshPoolsJob;
 import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.service.ProductServiceAdapter;
@@ -97,6 +99,7 @@ import org.jboss.resteasy.annotations.providers.jaxb.Wrapped;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartInput;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.jboss.resteasy.util.GenericType;
 import org.quartz.JobDetail;
 import org.xnap.commons.i18n.I18n;
@@ -338,6 +341,7 @@ public class OwnerResource {
             log.info("Deleting import record:  " + record);
             importRecordCurator.delete(record);
         }
+        ownerInfoCurator.deleteSnapshot(owner);
 
         for (OwnerPermission perm : permissionCurator.findByOwner(owner)) {
             log.info("Deleting permission: " + perm.getAccess());
@@ -380,16 +384,14 @@ public class OwnerResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/entitlements")
-    public List<Entitlement> ownerEntitlements(
-        @PathParam("owner_key") @Verify(Owner.class) String ownerKey) {
+    public Iterable<Entitlement> ownerEntitlements(
+        @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
+        @Context PageRequest pageRequest) {
         Owner owner = findOwner(ownerKey);
 
-        List<Entitlement> toReturn = new LinkedList<Entitlement>();
-        for (Pool pool : owner.getPools()) {
-            toReturn.addAll(poolCurator.entitlementsIn(pool));
-        }
-
-        return toReturn;
+        Page<Entitlement> page = entitlementCurator.listByOwner(owner, pageRequest);
+        ResteasyProviderFactory.pushContext(Page.class, page);
+        return page.getPageData();
     }
 
     /**
@@ -528,10 +530,11 @@ public class OwnerResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/consumers")
-    public List<Consumer> ownerConsumers(
+    public Iterable<Consumer> ownerConsumers(
         @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
         @QueryParam("username") String userName,
-        @QueryParam("type") String typeLabel) {
+        @QueryParam("type") String typeLabel,
+        @Context PageRequest pageRequest) {
 
         Owner owner = findOwner(ownerKey);
 
@@ -543,7 +546,10 @@ public class OwnerResource {
 
         // We don't look up the user and warn if it doesn't exist here to not
         // give away usernames
-        return consumerCurator.listByUsernameAndType(userName, type, owner);
+        Page<Consumer> page = consumerCurator.listByUsernameAndType(userName, type,
+            owner, pageRequest);
+        ResteasyProviderFactory.pushContext(Page.class, page);
+        return page.getPageData();
     }
 
     private ConsumerType lookupConsumerType(String label) {
@@ -569,13 +575,14 @@ public class OwnerResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/pools")
-    public List<Pool> getPools(
+    public Iterable<Pool> getPools(
         @PathParam("owner_key")
             @Verify(value = Owner.class, require = Access.READ_POOLS) String ownerKey,
         @QueryParam("consumer") String consumerUuid,
         @QueryParam("product") String productId,
         @QueryParam("listall") @DefaultValue("false") boolean listAll,
-        @QueryParam("activeon") String activeOn) {
+        @QueryParam("activeon") String activeOn,
+        @Context PageRequest pageRequest) {
 
         Owner owner = findOwner(ownerKey);
 
@@ -596,8 +603,10 @@ public class OwnerResource {
                     "Consumer specified does not belong to owner on path");
             }
         }
-        return poolCurator.listAvailableEntitlementPools(c, owner, productId,
-            activeOnDate, true, listAll);
+        Page<Pool> page = poolCurator.listAvailableEntitlementPools(c, owner,
+            productId, activeOnDate, true, listAll, pageRequest);
+        ResteasyProviderFactory.pushContext(Page.class, page);
+        return page.getPageData();
     }
 
     /**
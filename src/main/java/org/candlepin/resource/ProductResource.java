@@ -28,6 +28,7 @@ import org.candlepin.model.ProductContent;
 import org.candlepin.model.Statistic;
 import org.candlepin.model.StatisticCurator;
 import org.candlepin.pinsetter.tasks.RefreshPoolsForProductJob;
+import org.candlepin.policy.js.ProductCache;
 import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.service.ProductServiceAdapter;
 
@@ -62,6 +63,7 @@ public class ProductResource {
     private ContentCurator contentCurator;
     private StatisticCurator statisticCurator;
     private OwnerCurator ownerCurator;
+    private ProductCache productCache;
     private I18n i18n;
 
     /**
@@ -76,11 +78,13 @@ public class ProductResource {
                            StatisticCurator statisticCurator,
                            ContentCurator contentCurator,
                            OwnerCurator ownerCurator,
+                           ProductCache productCache,
                            I18n i18n) {
         this.prodAdapter = prodAdapter;
         this.contentCurator = contentCurator;
         this.statisticCurator = statisticCurator;
         this.ownerCurator = ownerCurator;
+        this.productCache = productCache;
         this.i18n = i18n;
     }
 
@@ -152,7 +156,9 @@ public class ProductResource {
     @POST
     @Produces(MediaType.APPLICATION_JSON)
     public Product createProduct(Product product) {
-        return prodAdapter.createProduct(product);
+        Product created = prodAdapter.createProduct(product);
+        productCache.invalidate(created.getId());
+        return created;
     }
 
     /**
@@ -170,6 +176,7 @@ public class ProductResource {
 
         ProductContent productContent = new ProductContent(product, content, enabled);
         product.getProductContent().add(productContent);
+        productCache.invalidate(pid);
         return prodAdapter.getProductById((product.getId()));
     }
 
@@ -182,6 +189,7 @@ public class ProductResource {
     public void removeContent(@PathParam("product_uuid") String pid,
                               @PathParam("content_id") String contentId) {
         prodAdapter.removeContent(pid, contentId);
+        productCache.invalidate(pid);
     }
 
     /**
@@ -205,6 +213,7 @@ public class ProductResource {
         }
 
         prodAdapter.deleteProduct(product);
+        productCache.invalidate(pid);
     }
 
     /**
@@ -31,6 +31,7 @@ import org.candlepin.exceptions.ServiceUnavailableException;
 import org.candlepin.model.CuratorException;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.util.VersionUtil;
 import org.xnap.commons.i18n.I18n;
 
@@ -44,15 +45,19 @@ public class RulesResource {
     private static Logger log = Logger.getLogger(RulesResource.class);
     private RulesCurator rulesCurator;
     private I18n i18n;
+    private ComplianceStatusCache complianceStatusCache;
 
     /**
      * Default ctor
      * @param rulesCurator Curator used to interact with Rules.
+     * @param complianceStatusCache statuses computed by the replaced rules.
      */
     @Inject
-    public RulesResource(RulesCurator rulesCurator, I18n i18n) {
+    public RulesResource(RulesCurator rulesCurator, I18n i18n,
+        ComplianceStatusCache complianceStatusCache) {
         this.rulesCurator = rulesCurator;
         this.i18n = i18n;
+        this.complianceStatusCache = complianceStatusCache;
     }
 
     /**
@@ -82,6 +87,7 @@ public class RulesResource {
                 i18n.tr("Error decoding the rules. The text should be base 64 encoded"));
         }
         rulesCurator.update(rules);
+        complianceStatusCache.invalidateAll();
         return rulesBuffer;
     }
 
@@ -115,5 +121,6 @@ public class RulesResource {
     @Produces(MediaType.APPLICATION_JSON)
     public void delete() {
         rulesCurator.delete(rulesCurator.getRules());
+        complianceStatusCache.invalidateAll();
     }
 }
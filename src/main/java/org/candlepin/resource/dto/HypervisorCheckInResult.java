@@ -54,6 +54,12 @@ public class HypervisorCheckInResult {
         this.failed.add(hostVirtId + ": " + error);
     }
 
+    public void add(HypervisorCheckInResult other) {
+        this.created.addAll(other.created);
+        this.updated.addAll(other.updated);
+        this.failed.addAll(other.failed);
+    }
+
     public Set<Consumer> getCreated() {
         return created;
     }
@@ -15,8 +15,16 @@
 package org.candlepin.resteasy;
 
 import com.google.inject.Inject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.Provider;
 
 import org.codehaus.jackson.jaxrs.Annotations;
@@ -29,6 +37,7 @@ import org.codehaus.jackson.map.ser.impl.SimpleFilterProvider;
 import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 import org.candlepin.config.Config;
 import org.candlepin.jackson.HateoasBeanPropertyFilter;
+import org.candlepin.model.ResultStream;
 
 /**
  * JsonProvider
@@ -51,6 +60,26 @@ public class JsonProvider extends JacksonJsonProvider {
         setMapper(mapper);
     }
 
+    /**
+     * Streamed results are written row by row as they come out of the database,
+     * make sure the cursor behind them is released however the write ends.
+     */
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType,
+        Annotation[] annotations, MediaType mediaType,
+        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+        throws IOException {
+        try {
+            super.writeTo(value, type, genericType, annotations, mediaType,
+                httpHeaders, entityStream);
+        }
+        finally {
+            if (value instanceof ResultStream) {
+                ((ResultStream<?>) value).close();
+            }
+        }
+    }
+
     private void configureHateoasObjectMapper(ObjectMapper mapper, Config config) {
         mapper.configure(SerializationConfig.Feature.WRITE_DATES_AS_TIMESTAMPS, false);
 
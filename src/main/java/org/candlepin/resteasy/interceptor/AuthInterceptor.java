@@ -24,6 +24,7 @@ import org.apache.log4j.Logger;
 import org.candlepin.auth.ConsumerPrincipal;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.auth.interceptor.SecurityHole;
 import org.candlepin.config.Config;
 import org.candlepin.exceptions.UnauthorizedException;
@@ -53,6 +54,7 @@ public class AuthInterceptor implements PreProcessInterceptor {
     private Injector injector;
     private ConsumerCurator consumerCurator;
     private DeletedConsumerCurator deletedConsumerCurator;
+    private PrincipalCache principalCache;
     private OwnerCurator ownerCurator;
     private Config config;
     private UserServiceAdapter userService;
@@ -61,7 +63,8 @@ public class AuthInterceptor implements PreProcessInterceptor {
     @Inject
     public AuthInterceptor(Config config, UserServiceAdapter userService,
         OwnerCurator ownerCurator, ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator, Injector injector) {
+        DeletedConsumerCurator deletedConsumerCurator, PrincipalCache principalCache,
+        Injector injector) {
         super();
         this.consumerCurator = consumerCurator;
         this.injector = injector;
@@ -69,6 +72,7 @@ public class AuthInterceptor implements PreProcessInterceptor {
         this.userService = userService;
         this.ownerCurator = ownerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
+        this.principalCache = principalCache;
         this.setupAuthStrategies();
     }
 
@@ -80,8 +84,8 @@ public class AuthInterceptor implements PreProcessInterceptor {
         // use oauth
         if (config.oAuthEnabled()) {
             log.debug("OAuth Authentication is enabled.");
-            TrustedConsumerAuth consumerAuth =
-                new TrustedConsumerAuth(consumerCurator, deletedConsumerCurator);
+            TrustedConsumerAuth consumerAuth = new TrustedConsumerAuth(consumerCurator,
+                deletedConsumerCurator, principalCache);
             TrustedUserAuth userAuth = new TrustedUserAuth(userService, injector);
             TrustedExternalSystemAuth systemAuth = new TrustedExternalSystemAuth();
             providers
@@ -96,12 +100,14 @@ public class AuthInterceptor implements PreProcessInterceptor {
         // consumer certificates
         if (config.sslAuthEnabled()) {
             log.debug("Certificate Based Authentication is enabled.");
-            providers.add(new SSLAuth(consumerCurator, deletedConsumerCurator));
+            providers.add(new SSLAuth(consumerCurator, deletedConsumerCurator,
+                principalCache));
         }
         // trusted headers
         if (config.trustedAuthEnabled()) {
             log.debug("Trusted Authentication is enabled.");
-            providers.add(new TrustedConsumerAuth(consumerCurator, deletedConsumerCurator));
+            providers.add(new TrustedConsumerAuth(consumerCurator,
+                deletedConsumerCurator, principalCache));
             providers.add(new TrustedUserAuth(userService, injector));
         }
     }
@@ -14,8 +14,11 @@
  */
 package org.candlepin.resteasy.interceptor;
 
+import java.math.BigInteger;
+
 import org.apache.log4j.Logger;
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
@@ -32,28 +35,46 @@ public abstract class ConsumerAuth implements AuthProvider {
 
     protected ConsumerCurator consumerCurator;
     protected DeletedConsumerCurator deletedConsumerCurator;
+    protected PrincipalCache principalCache;
 
     @Inject
     ConsumerAuth(ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator) {
+        DeletedConsumerCurator deletedConsumerCurator, PrincipalCache principalCache) {
         this.consumerCurator = consumerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
+        this.principalCache = principalCache;
     }
 
     public ConsumerPrincipal createPrincipal(String consumerUuid) {
+        return createPrincipal(consumerUuid, null);
+    }
+
+    /**
+     * @param consumerUuid uuid of the consumer to authenticate
+     * @param serial serial of the identity certificate presented, or null
+     * @return principal for the consumer, or null if there is no such consumer.
+     */
+    public ConsumerPrincipal createPrincipal(String consumerUuid, BigInteger serial) {
         ConsumerPrincipal principal = null;
 
         if (consumerUuid != null) {
-            // If this UUID has been deleted, return a 410.
-            if (deletedConsumerCurator.countByConsumerUuid(consumerUuid) > 0) {
-                log.debug("Key " + consumerUuid + " is deleted, throwing GoneException");
-                throw new GoneException("Consumer " + consumerUuid +
-                    " has been deleted", consumerUuid);
+            // A recent authentication with the same credentials means the
+            // consumer was not deleted then; if it has been since, the lookup
+            // below comes back empty and the check is made after all.
+            boolean checked = !principalCache.isAuthenticated(consumerUuid, serial);
+            if (checked) {
+                checkNotDeleted(consumerUuid);
             }
 
             Consumer consumer = this.consumerCurator.getConsumer(consumerUuid);
 
+            if (consumer == null && !checked) {
+                principalCache.invalidate(consumerUuid);
+                checkNotDeleted(consumerUuid);
+            }
+
             if (consumer != null) {
+                principalCache.authenticated(consumerUuid, serial, consumer.getId());
                 principal = new ConsumerPrincipal(consumer);
 
                 if (log.isDebugEnabled() && principal != null) {
@@ -66,4 +87,13 @@ public abstract class ConsumerAuth implements AuthProvider {
         return principal;
     }
 
+    private void checkNotDeleted(String consumerUuid) {
+        // If this UUID has been deleted, return a 410.
+        if (deletedConsumerCurator.countByConsumerUuid(consumerUuid) > 0) {
+            log.debug("Key " + consumerUuid + " is deleted, throwing GoneException");
+            throw new GoneException("Consumer " + consumerUuid +
+                " has been deleted", consumerUuid);
+        }
+    }
+
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.interceptor;
+
+import org.candlepin.paging.Page;
+
+import org.jboss.resteasy.annotations.interception.Precedence;
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.core.ServerResponse;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.jboss.resteasy.spi.interception.PostProcessInterceptor;
+
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Resteasy interceptor that decorates a paged list response with a Link header
+ * pointing at the first, previous, next and last pages, and a header giving the
+ * total number of records. Resources push the {@link Page} they listed into the
+ * context for this to pick up.
+ */
+@Provider
+@ServerInterceptor
+@Precedence("HEADER_DECORATOR")
+public class LinkHeaderPostInterceptor implements PostProcessInterceptor {
+    public static final String LINK_HEADER = "Link";
+    public static final String TOTAL_RECORDS_HEADER = "X-Total-Count";
+
+    @Override
+    public void postProcess(ServerResponse response) {
+        Page<?> page = ResteasyProviderFactory.getContextData(Page.class);
+        if (page == null || !page.isPaged()) {
+            return;
+        }
+
+        HttpRequest request = ResteasyProviderFactory.getContextData(HttpRequest.class);
+        int current = page.getPageRequest().getPage();
+        int last = page.getLastPage();
+
+        StringBuilder links = new StringBuilder();
+        appendLink(links, request, 1, "first");
+        if (current > 1) {
+            appendLink(links, request, Math.min(current - 1, last), "prev");
+        }
+        if (current < last) {
+            appendLink(links, request, current + 1, "next");
+        }
+        appendLink(links, request, last, "last");
+
+        response.getMetadata().add(LINK_HEADER, links.toString());
+        response.getMetadata().add(TOTAL_RECORDS_HEADER, page.getMaxRecords());
+    }
+
+    private void appendLink(StringBuilder links, HttpRequest request, int page,
+        String rel) {
+        UriBuilder builder = request.getUri().getRequestUriBuilder()
+            .replaceQueryParam(PageRequestInterceptor.PAGE_PARAM, page);
+
+        if (links.length() > 0) {
+            links.append(", ");
+        }
+        links.append("<").append(builder.build()).append(">; rel=\"")
+            .append(rel).append("\"");
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.interceptor;
+
+import org.candlepin.exceptions.BadRequestException;
+import org.candlepin.paging.PageRequest;
+
+import com.google.inject.Inject;
+
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.core.ResourceMethod;
+import org.jboss.resteasy.core.ServerResponse;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.jboss.resteasy.spi.interception.PreProcessInterceptor;
+import org.xnap.commons.i18n.I18n;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Resteasy interceptor that reads the paging and ordering query parameters of a
+ * request and exposes them to resources as a {@link PageRequest}, injectable via
+ * the Context annotation. Requests without any of these parameters get no
+ * PageRequest at all.
+ */
+@Provider
+@ServerInterceptor
+public class PageRequestInterceptor implements PreProcessInterceptor {
+    public static final String PAGE_PARAM = "page";
+    public static final String PER_PAGE_PARAM = "per_page";
+    public static final String ORDER_PARAM = "order";
+    public static final String SORT_BY_PARAM = "sort_by";
+
+    private com.google.inject.Provider<I18n> i18nProvider;
+
+    @Inject
+    public PageRequestInterceptor(com.google.inject.Provider<I18n> i18nProvider) {
+        this.i18nProvider = i18nProvider;
+    }
+
+    @Override
+    public ServerResponse preProcess(HttpRequest request, ResourceMethod method) {
+        MultivaluedMap<String, String> params = request.getUri().getQueryParameters();
+        String page = params.getFirst(PAGE_PARAM);
+        String perPage = params.getFirst(PER_PAGE_PARAM);
+        String order = params.getFirst(ORDER_PARAM);
+        String sortBy = params.getFirst(SORT_BY_PARAM);
+
+        if (page == null && perPage == null && order == null && sortBy == null) {
+            return null;
+        }
+
+        PageRequest pageRequest = new PageRequest();
+        if (page != null || perPage != null) {
+            int size = perPage == null ? PageRequest.DEFAULT_PER_PAGE :
+                parse(PER_PAGE_PARAM, perPage, PageRequest.MAX_PER_PAGE);
+            pageRequest.setPerPage(size);
+            pageRequest.setPage(page == null ? 1 : parse(PAGE_PARAM, page,
+                maxPage(size)));
+        }
+        if (order != null) {
+            pageRequest.setOrder(parseOrder(order));
+        }
+        pageRequest.setSortBy(sortBy);
+
+        ResteasyProviderFactory.pushContext(PageRequest.class, pageRequest);
+        return null;
+    }
+
+    /*
+     * The last page whose first record still has an int index, as that is what the
+     * query is given. Anything past it is rejected rather than wrapped around.
+     */
+    private static int maxPage(int perPage) {
+        return (int) Math.min(Integer.MAX_VALUE, Integer.MAX_VALUE / perPage + 1L);
+    }
+
+    private int parse(String param, String value, int max) {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            result = 0;
+        }
+
+        if (result < 1 || result > max) {
+            throw new BadRequestException(i18nProvider.get().tr(
+                "{0} must be a number between 1 and {1}", param, max));
+        }
+        return result;
+    }
+
+    private PageRequest.Order parseOrder(String order) {
+        if ("asc".equalsIgnoreCase(order) || "ascending".equalsIgnoreCase(order)) {
+            return PageRequest.Order.ASCENDING;
+        }
+        if ("desc".equalsIgnoreCase(order) || "descending".equalsIgnoreCase(order)) {
+            return PageRequest.Order.DESCENDING;
+        }
+        throw new BadRequestException(i18nProvider.get().tr(
+            "{0} must be asc or desc", ORDER_PARAM));
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.Principal;
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
 
@@ -39,8 +40,8 @@ class SSLAuth extends ConsumerAuth {
 
     @Inject
     SSLAuth(ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator) {
-        super(consumerCurator, deletedConsumerCurator);
+        DeletedConsumerCurator deletedConsumerCurator, PrincipalCache principalCache) {
+        super(consumerCurator, deletedConsumerCurator, principalCache);
     }
 
     public Principal getPrincipal(HttpRequest request) {
@@ -61,7 +62,8 @@ class SSLAuth extends ConsumerAuth {
         // itself.
         X509Certificate identityCert = certs[0];
 
-        return createPrincipal(parseUuid(identityCert));
+        return createPrincipal(parseUuid(identityCert),
+            identityCert.getSerialNumber());
     }
 
     // Pulls the consumer uuid off of the x509 cert.
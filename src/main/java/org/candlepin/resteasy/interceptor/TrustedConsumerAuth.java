@@ -18,6 +18,7 @@ import java.util.List;
 
 import org.candlepin.auth.ConsumerPrincipal;
 import org.candlepin.auth.Principal;
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
 
@@ -36,8 +37,8 @@ class TrustedConsumerAuth extends ConsumerAuth {
 
     @Inject
     TrustedConsumerAuth(ConsumerCurator consumerCurator,
-        DeletedConsumerCurator deletedConsumerCurator) {
-        super(consumerCurator, deletedConsumerCurator);
+        DeletedConsumerCurator deletedConsumerCurator, PrincipalCache principalCache) {
+        super(consumerCurator, deletedConsumerCurator, principalCache);
     }
 
     public Principal getPrincipal(HttpRequest request) {
@@ -14,11 +14,18 @@
  */
 package org.candlepin.service;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
 import org.candlepin.model.EntitlementCertificateCurator;
+import org.candlepin.model.Product;
+import org.candlepin.model.Subscription;
 
 /**
  * BaseEntitlementCertServiceAdapter
@@ -37,4 +44,28 @@ public abstract class BaseEntitlementCertServiceAdapter implements
         return entCertCurator.listForConsumer(consumer);
     }
 
+    @Override
+    public List<Long> listSerialIdsForConsumer(Consumer consumer) {
+        return entCertCurator.listSerialIdsForConsumer(consumer);
+    }
+
+    /**
+     * Generates the certificates one entitlement at a time. Adapters able to do
+     * better for a whole batch should override this.
+     */
+    @Override
+    public List<EntitlementCertificate> generateEntitlementCerts(
+        List<Entitlement> entitlements, Map<String, Subscription> subscriptions,
+        Map<String, Product> products)
+        throws GeneralSecurityException, IOException {
+        List<EntitlementCertificate> certs =
+            new ArrayList<EntitlementCertificate>(entitlements.size());
+        for (Entitlement entitlement : entitlements) {
+            certs.add(generateEntitlementCert(entitlement,
+                subscriptions.get(entitlement.getId()),
+                products.get(entitlement.getId())));
+        }
+        return certs;
+    }
+
 }
@@ -17,6 +17,7 @@ package org.candlepin.service;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.Map;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
@@ -62,6 +63,20 @@ public interface EntitlementCertServiceAdapter {
         Subscription sub, Product product)
         throws GeneralSecurityException, IOException;
 
+    /**
+     * Generate entitlement certificates for a batch of entitlements at once.
+     *
+     * @param entitlements entitlements which granted the certs.
+     * @param subscriptions Subscription being used, by entitlement id.
+     * @param products Product being consumed, by entitlement id.
+     * @return Client entitlement certificates, in the order of the entitlements.
+     * @throws IOException thrown if there's a problem reading the certs.
+     * @throws GeneralSecurityException thrown security problem
+     */
+    List<EntitlementCertificate> generateEntitlementCerts(List<Entitlement> entitlements,
+        Map<String, Subscription> subscriptions, Map<String, Product> products)
+        throws GeneralSecurityException, IOException;
+
     /**
      * Revoke certificates for the given entitlement
      *
@@ -76,4 +91,13 @@ public interface EntitlementCertServiceAdapter {
      * @return All entitlement certs for this consumer.
      */
     List<EntitlementCertificate> listForConsumer(Consumer consumer);
+
+    /**
+     * Return the serial ids of all entitlement certificates for a given
+     * consumer, in ascending order, without loading the certificates.
+     *
+     * @param consumer
+     * @return serial ids of all entitlement certs for this consumer.
+     */
+    List<Long> listSerialIdsForConsumer(Consumer consumer);
 }
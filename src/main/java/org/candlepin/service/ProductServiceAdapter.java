@@ -17,6 +17,7 @@ package org.candlepin.service;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductCertificate;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -35,6 +36,13 @@ public interface ProductServiceAdapter {
      */
     Product getProductById(String id);
 
+    /**
+     * Query several products by their string IDs at once.
+     * @param ids product ids
+     * @return the products found, unknown ids are skipped.
+     */
+    List<Product> getProductsByIds(Collection<String> ids);
+
     /**
      * List all Products
      * @return all products.
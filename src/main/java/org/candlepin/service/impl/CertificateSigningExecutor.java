@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * CertificateSigningExecutor - the threads entitlement certificates are signed
+ * on, shared by every batch so concurrent regenerations stay within the configured
+ * number of signing threads.
+ */
+@Singleton
+public class CertificateSigningExecutor {
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    @Inject
+    public CertificateSigningExecutor(Config config) {
+        this.threads = config.getInt(ConfigProperties.ENTITLEMENT_REGEN_SIGNING_THREADS,
+            Runtime.getRuntime().availableProcessors());
+        this.executor = threads > 1 ?
+            Executors.newFixedThreadPool(threads, new SignerThreadFactory()) : null;
+    }
+
+    /**
+     * @return the number of signing threads, batches are signed on the calling
+     * thread when this is one or less.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException {
+        return executor.invokeAll(tasks);
+    }
+
+    /*
+     * Daemon threads, so an idle pool never holds up shutdown.
+     */
+    private static class SignerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "cert-signer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
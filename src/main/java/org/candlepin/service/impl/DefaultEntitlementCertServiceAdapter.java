@@ -21,14 +21,21 @@ import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.candlepin.config.Config;
 import org.candlepin.exceptions.IseException;
+import org.candlepin.json.model.EntitlementBody;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Entitlement;
@@ -75,6 +82,7 @@ public class DefaultEntitlementCertServiceAdapter extends
     private EntitlementCurator entCurator;
     private I18n i18n;
     private Config config;
+    private CertificateSigningExecutor signingExecutor;
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultEntitlementCertServiceAdapter.class);
@@ -88,7 +96,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         CertificateSerialCurator serialCurator,
         ProductServiceAdapter productAdapter,
         EntitlementCurator entCurator, I18n i18n,
-        Config config) {
+        Config config, CertificateSigningExecutor signingExecutor) {
 
         this.pki = pki;
         this.extensionUtil = extensionUtil;
@@ -100,6 +108,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         this.entCurator = entCurator;
         this.i18n = i18n;
         this.config = config;
+        this.signingExecutor = signingExecutor;
     }
 
 
@@ -130,7 +139,13 @@ public class DefaultEntitlementCertServiceAdapter extends
         }
     }
 
-    private Set<Product> getProvidedProducts(Pool pool, Subscription sub) {
+    /**
+     * @param pool pool the entitlement was made from.
+     * @param sub subscription of the pool, or null if it has none.
+     * @return the provided products of the subscription, or else of the pool, the
+     * latter loaded in one call by product id.
+     */
+    public Set<Product> getProvidedProducts(Pool pool, Subscription sub) {
         Set<Product> providedProducts = new HashSet<Product>();
         if (sub != null) {
             providedProducts = sub.getProvidedProducts();
@@ -138,10 +153,11 @@ public class DefaultEntitlementCertServiceAdapter extends
         else {
             // If this pool doesn't have a subscription associated with it, we need to
             // lookup all the Product objects manually:
+            List<String> productIds = new ArrayList<String>();
             for (ProvidedProduct providedProduct : pool.getProvidedProducts()) {
-                providedProducts.add(
-                    productAdapter.getProductById(providedProduct.getId()));
+                productIds.add(providedProduct.getProductId());
             }
+            providedProducts.addAll(productAdapter.getProductsByIds(productIds));
         }
         return providedProducts;
     }
@@ -150,6 +166,19 @@ public class DefaultEntitlementCertServiceAdapter extends
         Subscription sub, Product product, BigInteger serialNumber,
         KeyPair keyPair, boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
+        return prepareSigner(ent, sub, product, serialNumber, keyPair,
+            useContentPrefix, false).createCertificate();
+    }
+
+    /*
+     * Gathers everything needed to build and sign the certificate of an
+     * entitlement. This reads the entitlement's consumer, pool and products, so
+     * it must run on the thread owning the session; the returned signer does not.
+     */
+    private CertificateSigner prepareSigner(Entitlement ent, Subscription sub,
+        Product product, BigInteger serialNumber, KeyPair keyPair,
+        boolean useContentPrefix, boolean withPayload)
+        throws IOException {
 
         // oiduitl is busted at the moment, so do this manually
         Set<X509ExtensionWrapper> extensions;
@@ -162,21 +191,30 @@ public class DefaultEntitlementCertServiceAdapter extends
         Map<String, EnvironmentContent> promotedContent = getPromotedContent(ent);
         String contentPrefix = getContentPrefix(ent, useContentPrefix);
 
+        byte[] payload = null;
         if (shouldGenerateV3(ent)) {
             extensions = prepareV3Extensions(products, ent, contentPrefix,
                 promotedContent, sub);
-            byteExtensions = prepareV3ByteExtensions(products, ent, contentPrefix,
-                promotedContent, sub);
+
+            // The byte extension and the payload share one entitlement body, the
+            // extension only needs its products:
+            EntitlementBody body = withPayload ?
+                v3extensionUtil.createEntitlementBody(products, ent, contentPrefix,
+                    promotedContent, sub) :
+                v3extensionUtil.createEntitlementBodyContent(products, ent,
+                    contentPrefix, promotedContent, sub);
+            byteExtensions = v3extensionUtil.getByteExtensions(body);
+            if (withPayload) {
+                payload = v3extensionUtil.createEntitlementDataPayload(body);
+            }
         }
         else {
             extensions = prepareV1Extensions(products, ent, contentPrefix,
                 promotedContent, sub);
         }
 
-        X509Certificate x509Cert =  this.pki.createX509Certificate(
-                createDN(ent), extensions, byteExtensions, sub.getStartDate(),
-                ent.getEndDate(), keyPair, serialNumber, null);
-        return x509Cert;
+        return new CertificateSigner(createDN(ent), extensions, byteExtensions,
+            sub.getStartDate(), ent.getEndDate(), keyPair, serialNumber, payload);
     }
 
     private boolean shouldGenerateV3(Entitlement entitlement) {
@@ -316,17 +354,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         Subscription sub, Product product, boolean thisIsUeberCert)
         throws GeneralSecurityException, IOException {
 
-        log.debug("Generating entitlement cert for:");
-        log.debug("   consumer: {}", entitlement.getConsumer().getUuid());
-        log.debug("   product: {}" , product.getId());
-        log.debug("entitlement's endDt == subs endDt? {} == {} ?",
-            entitlement.getEndDate(), sub.getEndDate());
-        Preconditions
-            .checkArgument(
-                entitlement.getEndDate().getTime() == sub.getEndDate().getTime(),
-                "Entitlement #%s 's endDt[%s] must equal Subscription #%s 's endDt[%s]",
-                entitlement.getId(), entitlement.getEndDate(), sub.getId(),
-                sub.getEndDate());
+        checkEndDates(entitlement, sub, product);
 
         KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
         CertificateSerial serial = new CertificateSerial(entitlement.getEndDate());
@@ -334,38 +362,115 @@ public class DefaultEntitlementCertServiceAdapter extends
         // otherwise we could have used cascading create
         serial = serialCurator.create(serial);
 
-        X509Certificate x509Cert = createX509Certificate(entitlement, sub,
-            product, BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert);
+        String pem = prepareSigner(entitlement, sub, product,
+            BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert, true).call();
 
-        EntitlementCertificate cert = new EntitlementCertificate();
-        cert.setSerial(serial);
-        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
+        EntitlementCertificate cert = createCertificate(entitlement, serial, keyPair,
+            pem);
+        entCertCurator.create(cert);
+        return cert;
+    }
 
-        Set<Product> products = new HashSet<Product>(getProvidedProducts(entitlement
-            .getPool(), sub));
-        products.add(product);
-        Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
-        String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
+    /**
+     * Generates the certificates of a batch of entitlements. Serials and
+     * certificates are each inserted in one flush, and the certificates are
+     * signed in parallel on up to one thread per processor.
+     */
+    @Override
+    public List<EntitlementCertificate> generateEntitlementCerts(
+        List<Entitlement> entitlements, Map<String, Subscription> subscriptions,
+        Map<String, Product> products)
+        throws GeneralSecurityException, IOException {
 
-        String pem = new String(this.pki.getPemEncoded(x509Cert));
+        List<KeyPair> keyPairs = new ArrayList<KeyPair>(entitlements.size());
+        List<CertificateSerial> serials =
+            new ArrayList<CertificateSerial>(entitlements.size());
+        for (Entitlement entitlement : entitlements) {
+            checkEndDates(entitlement, subscriptions.get(entitlement.getId()),
+                products.get(entitlement.getId()));
+            keyPairs.add(keyPairCurator.getConsumerKeyPair(entitlement.getConsumer()));
+            serials.add(new CertificateSerial(entitlement.getEndDate()));
+        }
+        serialCurator.createAll(serials);
+
+        List<CertificateSigner> signers =
+            new ArrayList<CertificateSigner>(entitlements.size());
+        for (int i = 0; i < entitlements.size(); i++) {
+            Entitlement entitlement = entitlements.get(i);
+            signers.add(prepareSigner(entitlement,
+                subscriptions.get(entitlement.getId()),
+                products.get(entitlement.getId()),
+                BigInteger.valueOf(serials.get(i).getId()), keyPairs.get(i), true,
+                true));
+        }
+        List<String> pems = sign(signers);
 
-        if (shouldGenerateV3(entitlement)) {
-            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(products,
-                entitlement, contentPrefix, promotedContent, sub);
-            String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
-            payload += Util.toBase64(payloadBytes);
-            payload += "-----END ENTITLEMENT DATA-----\n";
+        List<EntitlementCertificate> certs =
+            new ArrayList<EntitlementCertificate>(entitlements.size());
+        for (int i = 0; i < entitlements.size(); i++) {
+            certs.add(createCertificate(entitlements.get(i), serials.get(i),
+                keyPairs.get(i), pems.get(i)));
+        }
+        entCertCurator.createAll(certs);
+        return certs;
+    }
 
-            byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payloadBytes));
-            String signature = "-----BEGIN RSA SIGNATURE-----\n";
-            signature += Util.toBase64(bytes);
-            signature += "-----END RSA SIGNATURE-----\n";
+    private List<String> sign(List<CertificateSigner> signers)
+        throws GeneralSecurityException, IOException {
+        List<String> pems = new ArrayList<String>(signers.size());
+        if (signingExecutor.getThreads() <= 1 || signers.size() <= 1) {
+            for (CertificateSigner signer : signers) {
+                pems.add(signer.call());
+            }
+            return pems;
+        }
 
-            pem += payload + signature;
+        try {
+            for (Future<String> pem : signingExecutor.invokeAll(signers)) {
+                pems.add(pem.get());
+            }
+            return pems;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while signing certificates", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
         }
+    }
 
-        cert.setCert(pem);
+    private void checkEndDates(Entitlement entitlement, Subscription sub,
+        Product product) {
+        log.debug("Generating entitlement cert for:");
+        log.debug("   consumer: {}", entitlement.getConsumer().getUuid());
+        log.debug("   product: {}" , product.getId());
+        log.debug("entitlement's endDt == subs endDt? {} == {} ?",
+            entitlement.getEndDate(), sub.getEndDate());
+        Preconditions
+            .checkArgument(
+                entitlement.getEndDate().getTime() == sub.getEndDate().getTime(),
+                "Entitlement #%s 's endDt[%s] must equal Subscription #%s 's endDt[%s]",
+                entitlement.getId(), entitlement.getEndDate(), sub.getId(),
+                sub.getEndDate());
+    }
 
+    private EntitlementCertificate createCertificate(Entitlement entitlement,
+        CertificateSerial serial, KeyPair keyPair, String pem) throws IOException {
+        EntitlementCertificate cert = new EntitlementCertificate();
+        cert.setSerial(serial);
+        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
+        cert.setCert(pem);
         cert.setEntitlement(entitlement);
 
         if (log.isDebugEnabled()) {
@@ -375,7 +480,6 @@ public class DefaultEntitlementCertServiceAdapter extends
         }
 
         entitlement.getCertificates().add(cert);
-        entCertCurator.create(cert);
         return cert;
     }
 
@@ -384,4 +488,55 @@ public class DefaultEntitlementCertServiceAdapter extends
         sb.append(ent.getId());
         return sb.toString();
     }
+
+    /**
+     * CertificateSigner - builds, signs and PEM encodes one certificate, along
+     * with the signed v3 entitlement data payload when there is one.
+     */
+    private class CertificateSigner implements Callable<String> {
+        private String dn;
+        private Set<X509ExtensionWrapper> extensions;
+        private Set<X509ByteExtensionWrapper> byteExtensions;
+        private Date startDate;
+        private Date endDate;
+        private KeyPair keyPair;
+        private BigInteger serialNumber;
+        private byte[] payload;
+
+        CertificateSigner(String dn, Set<X509ExtensionWrapper> extensions,
+            Set<X509ByteExtensionWrapper> byteExtensions, Date startDate,
+            Date endDate, KeyPair keyPair, BigInteger serialNumber, byte[] payload) {
+            this.dn = dn;
+            this.extensions = extensions;
+            this.byteExtensions = byteExtensions;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.keyPair = keyPair;
+            this.serialNumber = serialNumber;
+            this.payload = payload;
+        }
+
+        X509Certificate createCertificate()
+            throws GeneralSecurityException, IOException {
+            return pki.createX509Certificate(dn, extensions, byteExtensions,
+                startDate, endDate, keyPair, serialNumber, null);
+        }
+
+        @Override
+        public String call() throws GeneralSecurityException, IOException {
+            String pem = new String(pki.getPemEncoded(createCertificate()));
+            if (payload != null) {
+                pem += "-----BEGIN ENTITLEMENT DATA-----\n";
+                pem += Util.toBase64(payload);
+                pem += "-----END ENTITLEMENT DATA-----\n";
+
+                byte[] bytes = pki.getSHA256WithRSAHash(
+                    new ByteArrayInputStream(payload));
+                pem += "-----BEGIN RSA SIGNATURE-----\n";
+                pem += Util.toBase64(bytes);
+                pem += "-----END RSA SIGNATURE-----\n";
+            }
+            return pem;
+        }
+    }
 }
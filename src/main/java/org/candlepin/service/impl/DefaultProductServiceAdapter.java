@@ -37,6 +37,7 @@ import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -81,6 +82,12 @@ public class DefaultProductServiceAdapter implements ProductServiceAdapter {
         return prodCurator.lookupById(id);
     }
 
+    @Override
+    public List<Product> getProductsByIds(Collection<String> ids) {
+        log.debug("called getProductsByIds");
+        return prodCurator.listAllByIds(ids);
+    }
+
     @Override
     public List<Product> getProducts() {
         return prodCurator.listAll();
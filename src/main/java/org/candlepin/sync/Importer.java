@@ -53,6 +53,7 @@ import org.candlepin.model.ProductCurator;
 import org.candlepin.model.Subscription;
 import org.candlepin.model.SubscriptionCurator;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.policy.js.ProductCache;
 import org.candlepin.util.VersionUtil;
 
 import org.codehaus.jackson.map.ObjectMapper;
@@ -115,13 +116,15 @@ public class Importer {
     private CertificateSerialCurator csCurator;
     private EventSink sink;
     private I18n i18n;
+    private ProductCache productCache;
 
     @Inject
     public Importer(ConsumerTypeCurator consumerTypeCurator, ProductCurator productCurator,
         RulesImporter rulesImporter, OwnerCurator ownerCurator,
         ContentCurator contentCurator, SubscriptionCurator subCurator, PoolManager pm,
         PKIUtility pki, Config config, ExporterMetadataCurator emc,
-        CertificateSerialCurator csc, EventSink sink, I18n i18n) {
+        CertificateSerialCurator csc, EventSink sink, I18n i18n,
+        ProductCache productCache) {
 
         this.config = config;
         this.consumerTypeCurator = consumerTypeCurator;
@@ -137,6 +140,7 @@ public class Importer {
         this.csCurator = csc;
         this.sink = sink;
         this.i18n = i18n;
+        this.productCache = productCache;
     }
 
     /**
@@ -351,7 +355,8 @@ public class Importer {
         // This also implies there will be no entitlements to import.
         if (importFiles.get(ImportFile.PRODUCTS.fileName()) != null) {
             Refresher refresher = poolManager.getRefresher();
-            ProductImporter importer = new ProductImporter(productCurator, contentCurator, poolManager);
+            ProductImporter importer = new ProductImporter(productCurator, contentCurator,
+                poolManager, productCache);
 
             Set<Product> productsToImport = importProducts(
                 importFiles.get(ImportFile.PRODUCTS.fileName()).listFiles(),
@@ -24,6 +24,7 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductAttribute;
 import org.candlepin.model.ProductContent;
 import org.candlepin.model.ProductCurator;
+import org.candlepin.policy.js.ProductCache;
 import org.candlepin.util.Util;
 
 import com.google.common.collect.Sets;
@@ -37,12 +38,14 @@ public class ProductImporter {
     private ProductCurator curator;
     private ContentCurator contentCurator;
     private PoolManager poolManager;
+    private ProductCache productCache;
 
     public ProductImporter(ProductCurator curator, ContentCurator contentCurator,
-        PoolManager poolManager) {
+        PoolManager poolManager, ProductCache productCache) {
         this.curator = curator;
         this.contentCurator = contentCurator;
         this.poolManager = poolManager;
+        this.productCache = productCache;
     }
 
     public Product createObject(ObjectMapper mapper, Reader reader)
@@ -77,6 +80,7 @@ public class ProductImporter {
             }
 
             curator.createOrUpdate(importedProduct);
+            productCache.invalidate(importedProduct.getId());
         }
     }
 
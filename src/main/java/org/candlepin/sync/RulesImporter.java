@@ -21,6 +21,7 @@ import java.io.Reader;
 import org.apache.log4j.Logger;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 
 import com.google.inject.Inject;
 
@@ -31,17 +32,21 @@ public class RulesImporter {
     private static Logger log = Logger.getLogger(RulesImporter.class);
 
     private RulesCurator curator;
+    private ComplianceStatusCache complianceStatusCache;
 
     @Inject
-    RulesImporter(RulesCurator curator) {
+    RulesImporter(RulesCurator curator, ComplianceStatusCache complianceStatusCache) {
         this.curator = curator;
+        this.complianceStatusCache = complianceStatusCache;
     }
 
     public Rules importObject(Reader reader, String candlepinVersion) throws IOException {
         log.debug("Importing rules file");
         new BufferedReader(reader);
 
-        return curator.update(new Rules(StringFromReader.asString(reader),
+        Rules rules = curator.update(new Rules(StringFromReader.asString(reader),
             candlepinVersion));
+        complianceStatusCache.invalidateAll();
+        return rules;
     }
 }
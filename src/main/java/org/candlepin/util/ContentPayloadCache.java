@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.codec.binary.Hex;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ContentPayloadCache
+ *
+ * Keeps the compressed content paths of recently generated v3 entitlement
+ * certificates. Consumers in the same environment subscribed to the same
+ * products get the same content paths, so a registration storm or a mass
+ * regeneration compresses each distinct set of paths only once.
+ *
+ * Entries are keyed by a digest of the content paths themselves, which already
+ * reflect the products, content, prefix and promoted content they came from.
+ * A change to any of those gives a new key rather than a stale hit, and unused
+ * entries age out once the cache holds its configured maximum
+ * {@link ConfigProperties} <code>CONTENT_PAYLOAD_CACHE_MAX</code>.
+ */
+@Singleton
+public class ContentPayloadCache {
+
+    private PayloadMapping payloads;
+
+    @Inject
+    public ContentPayloadCache(Config config) {
+        payloads = new PayloadMapping(
+            config.getInt(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX));
+    }
+
+    /**
+     * @param paths content paths, in certificate order
+     * @return the key of the payload compressed from those paths
+     */
+    public String fingerprint(List<String> paths) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+            for (String path : paths) {
+                md.update(String.valueOf(path).getBytes("UTF-8"));
+                md.update((byte) '\n');
+            }
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+        catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee);
+        }
+        return new String(Hex.encodeHex(md.digest()));
+    }
+
+    /**
+     * @param key fingerprint of the content paths
+     * @return a copy of the cached payload, or null if there is none
+     */
+    public byte[] get(String key) {
+        byte[] payload;
+        synchronized (payloads) {
+            payload = payloads.get(key);
+        }
+        return payload == null ? null : payload.clone();
+    }
+
+    public void put(String key, byte[] payload) {
+        synchronized (payloads) {
+            payloads.put(key, payload.clone());
+        }
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    /**
+     * PayloadMapping - least recently used payloads are dropped first.
+     */
+    private static class PayloadMapping extends LinkedHashMap<String, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+        private int max;
+
+        public PayloadMapping(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, byte[]> eldest) {
+            return this.size() > max;
+        }
+    }
+}
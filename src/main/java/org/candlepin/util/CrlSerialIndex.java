@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.pki.X509CRLEntryWrapper;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * CrlSerialIndex - the entries of a CRL file, kept in a small binary file next
+ * to it so the CRL can be updated without parsing it again. The index records
+ * the length and modification time of the CRL it was written for; if the CRL
+ * is changed by anything else, the index no longer describes it and has to be
+ * rebuilt from the CRL.
+ */
+public class CrlSerialIndex implements Iterable<X509CRLEntryWrapper> {
+    private static Logger log = Logger.getLogger(CrlSerialIndex.class);
+
+    private static final int MAGIC = 0x43524c31;
+
+    private final File file;
+    private final long crlLength;
+    private final long crlModified;
+    private final int count;
+    private final BigInteger crlNumber;
+
+    private CrlSerialIndex(File file, long crlLength, long crlModified,
+        int count, BigInteger crlNumber) {
+        this.file = file;
+        this.crlLength = crlLength;
+        this.crlModified = crlModified;
+        this.count = count;
+        this.crlNumber = crlNumber;
+    }
+
+    /**
+     * Reads the header of an index file.
+     *
+     * @param file the index file
+     * @return the index, or null if the file is missing or unreadable.
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public static CrlSerialIndex read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = open(file);
+        try {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring unrecognized CRL index: " + file);
+                return null;
+            }
+            long crlLength = in.readLong();
+            long crlModified = in.readLong();
+            int count = in.readInt();
+            return new CrlSerialIndex(file, crlLength, crlModified, count,
+                readBigInteger(in));
+        }
+        catch (EOFException e) {
+            log.warn("Ignoring truncated CRL index: " + file);
+            return null;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a new index file. The entries must already be sorted by serial.
+     *
+     * @param file the index file
+     * @param crlNumber number of the CRL the index is written for
+     * @param entries the entries of the CRL
+     * @return the new index
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public static CrlSerialIndex write(File file, BigInteger crlNumber,
+        Iterator<X509CRLEntryWrapper> entries) throws IOException {
+
+        int count = 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file)));
+        try {
+            writeHeader(out, -1L, -1L, 0);
+            writeBigInteger(out, crlNumber);
+            while (entries.hasNext()) {
+                X509CRLEntryWrapper entry = entries.next();
+                writeBigInteger(out, entry.getSerialNumber());
+                out.writeLong(entry.getRevocationDate().getTime());
+                count++;
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        CrlSerialIndex index = new CrlSerialIndex(file, -1L, -1L, count, crlNumber);
+        index.updateHeader();
+        return index;
+    }
+
+    /**
+     * Records the given CRL file as the one this index describes.
+     *
+     * @param crlFile the CRL written from this index
+     * @return the updated index
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public CrlSerialIndex describe(File crlFile) throws IOException {
+        CrlSerialIndex index = new CrlSerialIndex(file, crlFile.length(),
+            crlFile.lastModified(), count, crlNumber);
+        index.updateHeader();
+        return index;
+    }
+
+    public boolean describes(File crlFile) {
+        return crlFile.exists() && crlFile.length() == crlLength &&
+            crlFile.lastModified() == crlModified;
+    }
+
+    public BigInteger getCrlNumber() {
+        return crlNumber;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Streams the entries from disk, in serial order. The file is closed once
+     * the last entry has been read.
+     */
+    @Override
+    public Iterator<X509CRLEntryWrapper> iterator() {
+        final DataInputStream in;
+        try {
+            in = open(file);
+            in.readInt();
+            in.readLong();
+            in.readLong();
+            in.readInt();
+            readBigInteger(in);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return new Iterator<X509CRLEntryWrapper>() {
+            private int remaining = count;
+
+            @Override
+            public boolean hasNext() {
+                if (remaining <= 0) {
+                    IOUtils.closeQuietly(in);
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public X509CRLEntryWrapper next() {
+                if (remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    BigInteger serial = readBigInteger(in);
+                    Date revoked = new Date(in.readLong());
+                    if (--remaining == 0) {
+                        IOUtils.closeQuietly(in);
+                    }
+                    return new X509CRLEntryWrapper(serial, revoked);
+                }
+                catch (IOException e) {
+                    IOUtils.closeQuietly(in);
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void updateHeader() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            writeHeader(raf, crlLength, crlModified, count);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static void writeHeader(DataOutput out, long crlLength,
+        long crlModified, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(crlLength);
+        out.writeLong(crlModified);
+        out.writeInt(count);
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static void writeBigInteger(DataOutputStream out, BigInteger value)
+        throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+}
@@ -64,6 +64,7 @@ public class X509V3ExtensionUtil extends X509Util{
     private static Logger log = Logger.getLogger(X509V3ExtensionUtil.class);
     private Config config;
     private EntitlementCurator entCurator;
+    private ContentPayloadCache contentCache;
     private String thisVersion = "3.0";
 
     private long pathNodeId = 0;
@@ -72,10 +73,12 @@ public class X509V3ExtensionUtil extends X509Util{
     private static boolean treeDebug = false;
 
     @Inject
-    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator) {
+    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator,
+        ContentPayloadCache contentCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.contentCache = contentCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Set<Product> products,
@@ -98,12 +101,20 @@ public class X509V3ExtensionUtil extends X509Util{
         Entitlement ent, String contentPrefix,
         Map<String, EnvironmentContent> promotedContent,
         org.candlepin.model.Subscription sub) throws IOException {
+        return getByteExtensions(createEntitlementBodyContent(products, ent,
+            contentPrefix, promotedContent, sub));
+    }
+
+    /**
+     * @param eb entitlement body, only its products are used
+     * @return the byte extension carrying the compressed content paths of eb
+     * @throws IOException
+     */
+    public Set<X509ByteExtensionWrapper> getByteExtensions(EntitlementBody eb)
+        throws IOException {
         Set<X509ByteExtensionWrapper> toReturn =
             new LinkedHashSet<X509ByteExtensionWrapper>();
 
-        EntitlementBody eb = createEntitlementBodyContent(products, ent,
-            contentPrefix, promotedContent, sub);
-
         X509ByteExtensionWrapper bodyExtension =
             new X509ByteExtensionWrapper(OIDUtil.REDHAT_OID + "." +
                 OIDUtil.TOPLEVEL_NAMESPACES.get(OIDUtil.ENTITLEMENT_DATA_KEY),
@@ -119,16 +130,42 @@ public class X509V3ExtensionUtil extends X509Util{
         org.candlepin.model.Subscription sub)
         throws UnsupportedEncodingException, IOException {
 
-        EntitlementBody map = createEntitlementBody(products, ent,
-            contentPrefix, promotedContent, sub);
+        return createEntitlementDataPayload(createEntitlementBody(products, ent,
+            contentPrefix, promotedContent, sub));
+    }
 
-        String json = toJson(map);
+    /**
+     * @param eb entitlement body built by createEntitlementBody
+     * @return the deflated json of eb, as carried in the ENTITLEMENT DATA block
+     * @throws IOException
+     */
+    public byte[] createEntitlementDataPayload(EntitlementBody eb)
+        throws UnsupportedEncodingException, IOException {
+        String json = toJson(eb);
         return processPayload(json);
     }
 
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+
+        // The compressed value depends on nothing but the content paths:
+        List<String> paths = new ArrayList<String>(contentList.size());
+        for (Content c : contentList) {
+            paths.add(c.getPath());
+        }
+        String key = contentCache.fingerprint(paths);
+        byte[] cached = contentCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] value = compressContent(contentList);
+        contentCache.put(key, value);
+        return value;
+    }
+
+    private byte[] compressContent(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -601,6 +601,27 @@ var Entitlement = {
         pre.checkQuantity(pool);
     },
 
+    // Runs the pre rules for many pools in one call. "batch" is a list with one
+    // entry per pool, holding the pool, product, attributes and pre helper for
+    // that pool, and the names of the rules to run for it, in order.
+    pre_entitlement_batch: function() {
+        for (var i = 0; i < batch.size(); i++) {
+            var item = batch.get(i);
+            pool = item.get("pool");
+            product = item.get("product");
+            attributes = item.get("attributes");
+            pre = item.get("pre");
+
+            var rules = item.get("rules");
+            for (var j = 0; j < rules.size(); j++) {
+                var rule = this["pre_" + rules.get(j)];
+                if (typeof(rule) == "function") {
+                    rule.call(this);
+                }
+            }
+        }
+    },
+
     post_global: function() {
     },
 
@@ -668,15 +689,15 @@ var Entitlement = {
                         log.debug("  provides same product combo as: " + pool.getId());
 
                         // figure out where to insert this pool in its sorted class
-                        var i = 0;
-                        for (; i < pool_class.length; i++) {
-                            if (comparePools(pool, best_pool)) {
+                        var j = 0;
+                        for (; j < pool_class.length; j++) {
+                            if (comparePools(pool, pool_class[j])) {
                                 break;
                             }
                         }
 
                         // now insert the pool into the middle of the array
-                        pool_class.splice(i, 0, pool);
+                        pool_class.splice(j, 0, pool);
                         break;
                     }
                 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * ComplianceListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ComplianceListenerTest {
+
+    @Mock private ComplianceStatusCache cache;
+    @Mock private Event event;
+    private ComplianceListener listener;
+
+    @Before
+    public void init() {
+        listener = new ComplianceListener(cache);
+        when(event.getConsumerId()).thenReturn("consumer");
+    }
+
+    @Test
+    public void entitlementChangeInvalidatesConsumer() {
+        when(event.getTarget()).thenReturn(Event.Target.ENTITLEMENT);
+        when(event.getType()).thenReturn(Event.Type.DELETED);
+        listener.onEvent(event);
+        verify(cache).invalidate("consumer");
+    }
+
+    @Test
+    public void consumerChangeInvalidatesConsumer() {
+        when(event.getTarget()).thenReturn(Event.Target.CONSUMER);
+        when(event.getType()).thenReturn(Event.Type.MODIFIED);
+        listener.onEvent(event);
+        verify(cache).invalidate("consumer");
+    }
+
+    @Test
+    public void poolChangeInvalidatesAll() {
+        when(event.getTarget()).thenReturn(Event.Target.POOL);
+        when(event.getType()).thenReturn(Event.Type.MODIFIED);
+        listener.onEvent(event);
+        verify(cache).invalidateAll();
+    }
+
+    @Test
+    public void unrelatedChangeIgnored() {
+        when(event.getTarget()).thenReturn(Event.Target.ROLE);
+        when(event.getType()).thenReturn(Event.Type.MODIFIED);
+        listener.onEvent(event);
+        verify(cache, never()).invalidate(anyString());
+        verify(cache, never()).invalidateAll();
+    }
+}
@@ -20,16 +20,20 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.ArgumentCaptor;
 
 import org.candlepin.auth.Principal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.ActivationKey;
 import org.candlepin.model.Consumer;
@@ -38,6 +42,8 @@ import org.candlepin.model.Pool;
 import org.candlepin.test.TestUtil;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.client.ClientMessage;
@@ -45,13 +51,21 @@ import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.ServerLocator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.inject.Provider;
+
 import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 /**
  * EventSinkImplTest
@@ -65,31 +79,53 @@ public class EventSinkImplTest {
     @Mock private ClientMessage mockClientMessage;
     @Mock private PrincipalProvider mockPrincipalProvider;
     @Mock private ServerLocator mockLocator;
+    @Mock private Provider<EntityManager> mockEntityManagerProvider;
+    @Mock private EntityManager mockEntityManager;
+    @Mock private Session mockSession;
+    @Mock private Transaction mockTransaction;
     private EventFactory factory;
     private EventSinkImpl eventSinkImpl;
     private Principal principal;
     private ObjectMapper mapper;
+    private Config config;
 
     @Before
     public void init() throws Exception {
-        this.factory = new EventFactory(mockPrincipalProvider);
         this.principal = TestUtil.createOwnerPrincipal();
         when(mockPrincipalProvider.get()).thenReturn(this.principal);
-        when(mockSessionFactory.createSession()).thenReturn(mockClientSession);
+        when(mockSessionFactory.createSession(false, true)).thenReturn(mockClientSession);
         when(mockClientSession.createProducer(anyString())).thenReturn(mockClientProducer);
         when(mockClientSession.createMessage(anyBoolean())).thenReturn(mockClientMessage);
         when(mockClientMessage.getBodyBuffer()).thenReturn(
             HornetQBuffers.fixedBuffer(2000));
         when(mockSessionFactory.getServerLocator()).thenReturn(mockLocator);
+        when(mockEntityManagerProvider.get()).thenReturn(mockEntityManager);
+        when(mockEntityManager.getDelegate()).thenReturn(mockSession);
+        when(mockSession.getTransaction()).thenReturn(mockTransaction);
         this.mapper = spy(new ObjectMapper());
+        this.config = new Config(new HashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+            {
+                // the mocks are shared, keep them on one thread
+                this.put(ConfigProperties.AUDIT_DISPATCH_THREADS, "1");
+            }
+        });
+        this.factory = new EventFactory(mockPrincipalProvider, config);
         this.eventSinkImpl = createEventSink(mockSessionFactory);
     }
 
+    @After
+    public void shutDown() {
+        if (eventSinkImpl != null) {
+            eventSinkImpl.shutDown();
+        }
+    }
+
     /**
      * @return
      */
     private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory) {
-        return new EventSinkImpl(factory, mapper) {
+        return new EventSinkImpl(factory, mapper, config, mockEntityManagerProvider) {
             @Override
             protected ClientSessionFactory createClientSessionFactory() {
                 return sessionFactory;
@@ -98,7 +134,7 @@ public class EventSinkImplTest {
     }
 
     /**Set up the {@link ClientSessionFactory} to throw an exception when
-     * {@link ClientSessionFactory#createSession()} is called.
+     * {@link ClientSessionFactory#createSession(boolean, boolean)} is called.
      * Make sure, we throw up our hands saying "I am not dealing with this".
      * @throws Exception
      */
@@ -106,7 +142,7 @@ public class EventSinkImplTest {
     public void eventSinkShouldThrowExceptionWhenSessionCreationFailsInConstructor()
         throws Exception {
         final ClientSessionFactory csFactory = mock(ClientSessionFactory.class);
-        doThrow(new HornetQException()).when(csFactory.createSession());
+        when(csFactory.createSession(false, true)).thenThrow(new HornetQException());
         createEventSink(csFactory);
         fail("Runtime exception should have been thrown.");
     }
@@ -120,8 +156,8 @@ public class EventSinkImplTest {
     @Test(expected = RuntimeException.class)
     public void eventSinkShouldThrowExceptionWhenProducerCreationFailsInConstructor()
         throws Exception {
-        doThrow(new HornetQException()).when(
-            mockClientSession.createProducer(anyString()));
+        when(mockClientSession.createProducer(anyString()))
+            .thenThrow(new HornetQException());
         createEventSink(mockSessionFactory);
         fail("Runtime exception should have been thrown.");
     }
@@ -133,6 +169,7 @@ public class EventSinkImplTest {
         ArgumentCaptor<ClientMessage> argumentCaptor = ArgumentCaptor
             .forClass(ClientMessage.class);
         eventSinkImpl.sendEvent(mock(Event.class));
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(argumentCaptor.capture());
         assertEquals(content, argumentCaptor.getValue().getBodyBuffer()
             .readString());
@@ -146,7 +183,9 @@ public class EventSinkImplTest {
         Event event = mock(Event.class);
 
         eventSinkImpl.sendEvent(event);
+        eventSinkImpl.flush();
         verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        assertEquals(1, eventSinkImpl.getFailedCount());
     }
 
     @Test
@@ -154,6 +193,7 @@ public class EventSinkImplTest {
         throws Exception {
         Consumer consumer = TestUtil.createConsumer();
         eventSinkImpl.emitConsumerCreated(consumer);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -162,6 +202,7 @@ public class EventSinkImplTest {
         throws Exception {
         Owner owner = new Owner("Test Owner ");
         eventSinkImpl.emitOwnerCreated(owner);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -170,6 +211,7 @@ public class EventSinkImplTest {
         throws Exception {
         Pool pool = TestUtil.createPool(TestUtil.createProduct());
         eventSinkImpl.emitPoolCreated(pool);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -178,6 +220,7 @@ public class EventSinkImplTest {
         throws Exception {
         Consumer consumer = TestUtil.createConsumer();
         eventSinkImpl.emitExportCreated(consumer);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -186,6 +229,7 @@ public class EventSinkImplTest {
         throws Exception {
         Owner owner = new Owner("Import guy");
         eventSinkImpl.emitImportCreated(owner);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -194,6 +238,7 @@ public class EventSinkImplTest {
         throws Exception {
         ActivationKey key = TestUtil.createActivationKey(new Owner("deadbeef"), null);
         eventSinkImpl.emitActivationKeyCreated(key);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
@@ -205,7 +250,64 @@ public class EventSinkImplTest {
         pools.add(TestUtil.createPool(TestUtil.createProduct()));
         ActivationKey key = TestUtil.createActivationKey(new Owner("deadbeef"), pools);
         eventSinkImpl.emitActivationKeyCreated(key);
+        eventSinkImpl.flush();
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
+    @Test
+    public void eventsAreSentInCommittedBatches() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            eventSinkImpl.emitOwnerCreated(new Owner("owner" + i));
+        }
+        eventSinkImpl.flush();
+
+        verify(mockClientProducer, times(5)).send(any(ClientMessage.class));
+        verify(mockClientSession, atLeastOnce()).commit();
+        assertEquals(5, eventSinkImpl.getSentCount());
+        assertEquals(0, eventSinkImpl.getQueueSize());
+    }
+
+    @Test
+    public void eventsInTransactionAreSentAfterCommit() throws Exception {
+        when(mockTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+
+        eventSinkImpl.emitOwnerCreated(new Owner("owner1"));
+        eventSinkImpl.emitOwnerCreated(new Owner("owner2"));
+        eventSinkImpl.flush();
+        verify(mockTransaction).registerSynchronization(sync.capture());
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+
+        sync.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        eventSinkImpl.flush();
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+    }
+
+    @Test
+    public void eventsInRolledBackTransactionAreDropped() throws Exception {
+        when(mockTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+
+        eventSinkImpl.emitOwnerCreated(new Owner("owner1"));
+        verify(mockTransaction).registerSynchronization(sync.capture());
+
+        sync.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+        eventSinkImpl.flush();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        assertEquals(1, eventSinkImpl.getRolledBackCount());
+    }
+
+    @Test
+    public void failedCommitCountsBatchAsFailed() throws Exception {
+        doThrow(new HornetQException()).when(mockClientSession).commit();
+
+        eventSinkImpl.emitOwnerCreated(new Owner("owner1"));
+        eventSinkImpl.flush();
+
+        verify(mockClientSession).rollback();
+        assertEquals(1, eventSinkImpl.getFailedCount());
+        assertEquals(0, eventSinkImpl.getSentCount());
+    }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.OwnerInfoCurator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * OwnerInfoListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class OwnerInfoListenerTest {
+
+    @Mock private OwnerInfoCurator curator;
+    @Mock private Event event;
+    private OwnerInfoListener listener;
+
+    @Before
+    public void init() {
+        listener = new OwnerInfoListener(curator);
+        when(event.getOwnerId()).thenReturn("owner");
+    }
+
+    @Test
+    public void entitlementChangeMarksOwnerDirty() {
+        when(event.getTarget()).thenReturn(Event.Target.ENTITLEMENT);
+        listener.onEvent(event);
+        verify(curator).markDirty("owner");
+    }
+
+    @Test
+    public void consumerChangeMarksOwnerDirty() {
+        when(event.getTarget()).thenReturn(Event.Target.CONSUMER);
+        listener.onEvent(event);
+        verify(curator).markDirty("owner");
+    }
+
+    @Test
+    public void unrelatedChangeIgnored() {
+        when(event.getTarget()).thenReturn(Event.Target.ROLE);
+        listener.onEvent(event);
+        verify(curator, never()).markDirty(anyString());
+    }
+
+    @Test
+    public void eventWithoutOwnerIgnored() {
+        when(event.getOwnerId()).thenReturn(null);
+        when(event.getTarget()).thenReturn(Event.Target.POOL);
+        listener.onEvent(event);
+        verify(curator, never()).markDirty(anyString());
+    }
+}
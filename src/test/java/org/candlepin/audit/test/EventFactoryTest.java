@@ -14,20 +14,28 @@
  */
 package org.candlepin.audit.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventFactory;
 import org.candlepin.auth.Principal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.GuestId;
 import org.candlepin.model.Owner;
+import org.candlepin.test.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.HashMap;
+
 /**
  * EventFactoryTest
  */
@@ -42,7 +50,13 @@ public class EventFactoryTest {
         principalProvider = mock(PrincipalProvider.class);
         Principal principal = mock(Principal.class);
         when(principalProvider.get()).thenReturn(principal);
-        eventFactory = new EventFactory(principalProvider);
+        Config config = new Config(new HashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+            {
+                this.put(ConfigProperties.AUDIT_CONSUMER_FACTS_MAX, "2");
+            }
+        });
+        eventFactory = new EventFactory(principalProvider, config);
     }
 
     @Test
@@ -63,4 +77,31 @@ public class EventFactoryTest {
         assertNotNull(event.getEntityId());
     }
 
+    @Test
+    public void consumerModifiedKeepsStateBeforeChanges() throws Exception {
+        Consumer consumer = TestUtil.createConsumer(new Owner("owner"));
+        Consumer updated = TestUtil.createConsumer(new Owner("owner"));
+        updated.setName("updated-name");
+
+        Event event = eventFactory.consumerModified(consumer, updated);
+        String oldName = consumer.getName();
+        consumer.setName("changed-after-event");
+
+        assertTrue(event.getOldEntity().contains(oldName));
+        assertFalse(event.getOldEntity().contains("changed-after-event"));
+        assertTrue(event.getNewEntity().contains("updated-name"));
+    }
+
+    @Test
+    public void consumerFactsCapped() throws Exception {
+        Consumer consumer = TestUtil.createConsumer(new Owner("owner"));
+        consumer.setFact("a", "first");
+        consumer.setFact("z", "last");
+
+        Event event = eventFactory.consumerCreated(consumer);
+
+        assertTrue(event.getNewEntity().contains("\"first\""));
+        assertFalse(event.getNewEntity().contains("\"last\""));
+        assertEquals(4, consumer.getFacts().size());
+    }
 }
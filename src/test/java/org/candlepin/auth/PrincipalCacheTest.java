@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * PrincipalCacheTest
+ */
+public class PrincipalCacheTest {
+
+    private static final BigInteger SERIAL = BigInteger.valueOf(42);
+
+    private long now;
+    private PrincipalCache cache;
+
+    @Before
+    public void init() {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(ConfigProperties.PRINCIPAL_CACHE_TTL, "30");
+        props.put(ConfigProperties.PRINCIPAL_CACHE_MAX, "2");
+        now = 1000000L;
+        cache = new PrincipalCache(new Config(props)) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void authenticatedWithSameSerial() {
+        cache.authenticated("uuid", SERIAL, "id");
+        assertTrue(cache.isAuthenticated("uuid", SERIAL));
+        assertFalse(cache.isAuthenticated("uuid", BigInteger.ONE));
+        assertFalse(cache.isAuthenticated("uuid", null));
+        assertEquals("id", cache.getConsumerId("uuid"));
+    }
+
+    @Test
+    public void authenticatedWithoutCertificate() {
+        cache.authenticated("uuid", null, "id");
+        assertTrue(cache.isAuthenticated("uuid", null));
+        assertFalse(cache.isAuthenticated("uuid", SERIAL));
+    }
+
+    @Test
+    public void foundIsNotAuthenticated() {
+        cache.found("uuid", "id");
+        assertFalse(cache.isAuthenticated("uuid", null));
+        assertEquals("id", cache.getConsumerId("uuid"));
+    }
+
+    @Test
+    public void foundKeepsAuthentication() {
+        cache.authenticated("uuid", SERIAL, "id");
+        cache.found("uuid", "id");
+        assertTrue(cache.isAuthenticated("uuid", SERIAL));
+    }
+
+    @Test
+    public void entriesExpire() {
+        cache.authenticated("uuid", SERIAL, "id");
+        now += 31000L;
+        assertFalse(cache.isAuthenticated("uuid", SERIAL));
+        assertNull(cache.getConsumerId("uuid"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidate() {
+        cache.authenticated("uuid", SERIAL, "id");
+        cache.invalidate("uuid");
+        assertFalse(cache.isAuthenticated("uuid", SERIAL));
+        assertNull(cache.getConsumerId("uuid"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache.authenticated("a", SERIAL, "id-a");
+        cache.authenticated("b", SERIAL, "id-b");
+        cache.getConsumerId("a");
+        cache.authenticated("c", SERIAL, "id-c");
+
+        assertEquals(2, cache.size());
+        assertEquals("id-a", cache.getConsumerId("a"));
+        assertNull(cache.getConsumerId("b"));
+    }
+}
@@ -27,6 +27,8 @@ public class CandlepinCommonTestConfig extends Config {
         // explicitly _not_ using the /etc/candlepin/candlepin.conf file in testing.
         this.configuration = new TreeMap<String, String>(
             ConfigProperties.DEFAULT_PROPERTIES);
+        // generate key pairs as needed, no background threads in tests
+        this.configuration.put(ConfigProperties.KEYPAIR_POOL_SIZE, "0");
     }
 
     @Override
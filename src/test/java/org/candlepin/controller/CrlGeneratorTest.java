@@ -15,6 +15,7 @@
 package org.candlepin.controller;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -32,6 +33,7 @@ import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509CRLEntryWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
+import org.candlepin.util.CrlFileUtil;
 import org.candlepin.util.Util;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +41,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -68,6 +71,7 @@ public class CrlGeneratorTest {
     @Mock private PKIReader pkiReader;
     @Mock private CertificateSerialCurator curator;
     private PKIUtility pkiUtility;
+    private CrlFileUtil crlFileUtil;
 
     private CrlGenerator generator;
 
@@ -109,7 +113,8 @@ public class CrlGeneratorTest {
     public void init() throws Exception {
         this.pkiUtility = new BouncyCastlePKIUtility(pkiReader,
             new DefaultSubjectKeyIdentifierWriter());
-        this.generator = new CrlGenerator(curator, pkiUtility);
+        this.crlFileUtil = new CrlFileUtil(pkiUtility);
+        this.generator = new CrlGenerator(curator, pkiUtility, crlFileUtil);
 
         when(pkiReader.getCaKey()).thenReturn(KP.getPrivate());
         when(pkiReader.getCACert()).thenReturn(CERT);
@@ -316,6 +321,87 @@ public class CrlGeneratorTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("serial")
+    public void syncCRLFileWithDB() throws Exception {
+        File crlFile = tempCrlFile();
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(getStubCSList()); //1, 100, 1235465
+        generator.syncCRLFileWithDB(crlFile);
+
+        X509CRL x509crl = crlFileUtil.readCRLFile(crlFile);
+        x509crl.verify(KP.getPublic());
+        assertEquals(BigInteger.ONE, generator.getCRLNumber(x509crl));
+        assertEquals(serials(1L, 100L, 1235465L), serialsOf(x509crl));
+
+        // second run only merges in what changed:
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(new ArrayList<CertificateSerial>() {
+                {
+                    add(stubCS(50L, new Date()));
+                    add(stubCS(100L, new Date()));
+                }
+            });
+        when(this.curator.getExpiredSerials())
+            .thenReturn(new ArrayList<CertificateSerial>() {
+                {
+                    add(stubCS(1L, new Date()));
+                }
+            });
+        generator.syncCRLFileWithDB(crlFile);
+
+        x509crl = crlFileUtil.readCRLFile(crlFile);
+        x509crl.verify(KP.getPublic());
+        assertEquals(new BigInteger("2"), generator.getCRLNumber(x509crl));
+        assertEquals(serials(50L, 100L, 1235465L), serialsOf(x509crl));
+        verify(this.curator, times(2)).deleteExpiredSerials();
+    }
+
+    @Test
+    public void syncCRLFileWithDBMarksSerialsCollected() throws Exception {
+        List<CertificateSerial> serials = getStubCSList();
+        when(this.curator.retrieveTobeCollectedSerials()).thenReturn(serials);
+
+        generator.syncCRLFileWithDB(tempCrlFile());
+
+        verify(this.curator).saveOrUpdateAll(serials);
+        for (CertificateSerial cs : serials) {
+            assertTrue(cs.isCollected());
+        }
+    }
+
+    @Test
+    public void syncCRLFileWithDBRebuildsIndexForChangedCRL() throws Exception {
+        File crlFile = tempCrlFile();
+        generator.syncCRLFileWithDB(crlFile);
+
+        // a crl written some other way, as unrevoking does:
+        List<X509CRLEntryWrapper> entries = Util.newList();
+        entries.add(new X509CRLEntryWrapper(BigInteger.TEN, new Date()));
+        crlFileUtil.writeCRLFile(crlFile,
+            pkiUtility.createX509CRL(entries, new BigInteger("5")));
+        // make sure the change is seen even within the same second
+        assertTrue(crlFile.setLastModified(crlFile.lastModified() - 5000));
+
+        generator.syncCRLFileWithDB(crlFile);
+
+        X509CRL x509crl = crlFileUtil.readCRLFile(crlFile);
+        assertEquals(new BigInteger("6"), generator.getCRLNumber(x509crl));
+        assertEquals(serials(10L), serialsOf(x509crl));
+    }
+
+    @Test
+    public void syncCRLFileWithDBEmpty() throws Exception {
+        File crlFile = tempCrlFile();
+        generator.syncCRLFileWithDB(crlFile);
+
+        X509CRL x509crl = crlFileUtil.readCRLFile(crlFile);
+        x509crl.verify(KP.getPublic());
+        assertEquals(BigInteger.ONE, generator.getCRLNumber(x509crl));
+        assertTrue(x509crl.getRevokedCertificates() == null);
+        assertFalse(new File(crlFile.getPath() + ".new").exists());
+    }
+
     @Test
     public void decodeValue() throws Exception {
         // there's gotta be a way to reduce to a set of mocks
@@ -353,6 +439,30 @@ public class CrlGeneratorTest {
             X509Extensions.CRLNumber.getId())));
     }
 
+    private File tempCrlFile() throws Exception {
+        File crlFile = File.createTempFile("crl-generator-test", ".crl");
+        crlFile.delete();
+        crlFile.deleteOnExit();
+        new File(crlFile.getPath() + ".idx").deleteOnExit();
+        return crlFile;
+    }
+
+    private Set<BigInteger> serials(long... serials) {
+        Set<BigInteger> result = Util.newSet();
+        for (long serial : serials) {
+            result.add(Util.toBigInt(serial));
+        }
+        return result;
+    }
+
+    private Set<BigInteger> serialsOf(X509CRL x509crl) {
+        Set<BigInteger> serials = Util.newSet();
+        for (X509CRLEntry entry : x509crl.getRevokedCertificates()) {
+            serials.add(entry.getSerialNumber());
+        }
+        return serials;
+    }
+
     @SuppressWarnings("serial")
     private List<CertificateSerial> getStubCSList() {
         return new ArrayList<CertificateSerial>() {
@@ -26,6 +26,9 @@ import static org.mockito.Mockito.reset;
 
 import org.candlepin.audit.Event;
 import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
@@ -288,6 +291,38 @@ public class PoolManagerFunctionalTest extends DatabaseTestFixture {
         assertEquals(1, pools.size());
     }
 
+    @Test
+    public void testParallelRefreshRevokesFromOverConsumedPools() throws Exception {
+        CandlepinCommonTestConfig config =
+            (CandlepinCommonTestConfig) injector.getInstance(Config.class);
+        config.setProperty(ConfigProperties.REFRESH_POOLS_THREADS, "3");
+        config.setProperty(ConfigProperties.REFRESH_POOLS_CHUNK_SIZE, "1");
+
+        Product[] products = {monitoring, provisioning};
+        for (Product product : products) {
+            Pool pool = poolCurator.listByOwnerAndProduct(o, product.getId()).get(0);
+            for (int i = 0; i < 5; i++) {
+                poolManager.entitleByPool(parentSystem, pool, 1);
+            }
+        }
+
+        // Every subscription shrinks, so each chunk runs the unbind rules while the
+        // other threads run the pool rules for theirs:
+        for (Subscription sub : subCurator.listByOwner(o)) {
+            sub.setQuantity(2L);
+            subCurator.merge(sub);
+        }
+        poolManager.getRefresher().add(o).run();
+
+        for (Product product : products) {
+            Pool pool = poolCurator.listByOwnerAndProduct(o, product.getId()).get(0);
+            poolCurator.refresh(pool);
+            assertEquals(Long.valueOf(2), pool.getQuantity());
+            assertEquals(Long.valueOf(2), pool.getConsumed());
+        }
+        assertEquals(4, entitlementCurator.listByConsumer(parentSystem).size());
+    }
+
     /**
      *
      */
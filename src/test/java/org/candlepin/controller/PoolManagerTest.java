@@ -20,7 +20,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
@@ -32,9 +35,12 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.audit.Event;
@@ -131,13 +137,13 @@ public class PoolManagerTest {
         pool = TestUtil.createPool(o, product);
 
         when(mockConfig.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        this.productCache = new ProductCache(mockConfig, mockProductAdapter);
+        this.productCache = new ProductCache(mockConfig, mockProductAdapter, null);
 
         this.principal = TestUtil.createOwnerPrincipal();
         this.manager = spy(new CandlepinPoolManager(mockPoolCurator, mockSubAdapter,
             productCache, entCertAdapterMock, mockEventSink, eventFactory,
             mockConfig, enforcerMock, poolRulesMock, entitlementCurator,
-            consumerCuratorMock, certCuratorMock, complianceRules, envCurator));
+            consumerCuratorMock, certCuratorMock, complianceRules, envCurator, null));
 
         when(entCertAdapterMock.generateEntitlementCert(any(Entitlement.class),
             any(Subscription.class), any(Product.class))).thenReturn(
@@ -228,6 +234,59 @@ public class PoolManagerTest {
         verify(mockEventSink, times(1)).sendEvent(any(Event.class));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNonLazyRegenerateInBatches() throws Exception {
+        when(mockConfig.getInt(eq(ConfigProperties.ENTITLEMENT_REGEN_BATCH_SIZE),
+            anyInt())).thenReturn(2);
+        Subscription s = TestUtil.createSubscription(getOwner(), product);
+        s.setId("testSubId");
+        pool.setSubscriptionId(s.getId());
+        when(mockSubAdapter.getSubscription(pool.getSubscriptionId())).thenReturn(s);
+
+        Consumer c = TestUtil.createConsumer(o);
+        for (int i = 0; i < 3; i++) {
+            Entitlement e = new Entitlement(pool, c, pool.getStartDate(),
+                pool.getEndDate(), 1);
+            e.setId("ent" + i);
+            e.setDirty(true);
+            c.addEntitlement(e);
+        }
+
+        manager.regenerateEntitlementCertificates(c, false);
+
+        for (Entitlement e : c.getEntitlements()) {
+            assertFalse(e.getDirty());
+            verify(entCertAdapterMock).revokeEntitlementCertificates(e);
+        }
+        verify(entCertAdapterMock, times(2)).generateEntitlementCerts(anyList(),
+            anyMap(), anyMap());
+        // looked up once per batch rather than once per entitlement
+        verify(mockSubAdapter, times(2)).getSubscription(eq("testSubId"));
+        verify(mockEventSink, times(3)).sendEvent(any(Event.class));
+    }
+
+    @Test
+    public void testRegenerateProductResumesAfterCheckpoint() {
+        when(mockConfig.getInt(eq(ConfigProperties.ENTITLEMENT_REGEN_BATCH_SIZE),
+            anyInt())).thenReturn(1);
+        List<Pool> pools = Arrays.asList(pool);
+        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
+            any(Owner.class), eq(product.getId()), any(Date.class), anyBoolean(),
+            anyBoolean())).thenReturn(pools);
+        when(entitlementCurator.listIdsByPools(eq(pools))).thenReturn(
+            new ArrayList<String>(Arrays.asList("c", "a", "b")));
+        PoolManager.RegenProgress progress = mock(PoolManager.RegenProgress.class);
+
+        manager.regenerateCertificatesOf(product.getId(), true, "a", progress);
+
+        verify(entitlementCurator, times(0)).listByIds(eq(Arrays.asList("a")));
+        verify(entitlementCurator).listByIds(eq(Arrays.asList("b")));
+        verify(entitlementCurator).listByIds(eq(Arrays.asList("c")));
+        verify(progress).batchDone(eq("b"), eq(2), eq(3));
+        verify(progress).batchDone(eq("c"), eq(3), eq(3));
+    }
+
     /**
      * @return
      */
@@ -324,12 +383,14 @@ public class PoolManagerTest {
 
         ValidationResult result = mock(ValidationResult.class);
 
-        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
-            any(Owner.class), any(String.class), eq(now), anyBoolean(),
+        when(mockPoolCurator.listAvailablePoolsProviding(any(Consumer.class),
+            any(Owner.class), anyCollection(), eq(now), anyBoolean(),
             anyBoolean())).thenReturn(pools);
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt()))
             .thenReturn(helper);
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollection(), anyInt()))
+            .thenReturn(resultsFor(pools, result));
 
         when(helper.getResult()).thenReturn(result);
         when(result.isSuccessful()).thenReturn(true);
@@ -472,13 +533,15 @@ public class PoolManagerTest {
         when(complianceRules.getStatus(any(Consumer.class),
             any(Date.class))).thenReturn(mockCompliance);
 
-        when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
-            any(Owner.class), anyString(), eq(now),
-            anyBoolean(), anyBoolean())).thenReturn(pools);
+        when(mockPoolCurator.listAvailablePoolsProviding(any(Consumer.class),
+            any(Owner.class), anyCollection(), eq(now), anyBoolean(),
+            anyBoolean())).thenReturn(pools);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
         when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt()))
             .thenReturn(helper);
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollection(), anyInt()))
+            .thenReturn(resultsFor(pools, result));
 
         when(helper.getResult()).thenReturn(result);
         when(result.isSuccessful()).thenReturn(true);
@@ -498,4 +561,13 @@ public class PoolManagerTest {
             any(List.class), eq(mockCompliance), any(String.class),
             any(Set.class));
     }
+
+    private Map<Pool, ValidationResult> resultsFor(List<Pool> pools,
+        ValidationResult result) {
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, result);
+        }
+        return results;
+    }
 }
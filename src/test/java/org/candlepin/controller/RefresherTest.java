@@ -14,17 +14,28 @@
  */
 package org.candlepin.controller;
 
-import static org.mockito.Mockito.any;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
-import org.candlepin.model.PoolCurator;
 import org.candlepin.model.Product;
 import org.candlepin.model.Subscription;
 import org.candlepin.service.SubscriptionServiceAdapter;
@@ -32,17 +43,23 @@ import org.candlepin.util.Util;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.inject.Provider;
+
 /**
  * RefresherTest
  */
 @RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("unchecked")
 public class RefresherTest {
 
     private CandlepinPoolManager poolManager;
     private SubscriptionServiceAdapter subAdapter;
-    private PoolCurator poolCurator;
+    private WorkerManagers workers;
 
     private Refresher refresher;
 
@@ -50,9 +67,9 @@ public class RefresherTest {
     public void setUp() {
         poolManager = mock(CandlepinPoolManager.class);
         subAdapter = mock(SubscriptionServiceAdapter.class);
-        poolCurator = mock(PoolCurator.class);
+        workers = new WorkerManagers();
 
-        refresher = new Refresher(poolManager, subAdapter, poolCurator, false);
+        refresher = new Refresher(poolManager, workers, subAdapter, false, 100, 1);
     }
 
     @Test
@@ -63,7 +80,8 @@ public class RefresherTest {
         refresher.add(owner);
         refresher.run();
 
-        verify(poolManager, times(1)).refreshPoolsWithoutRegeneration(owner);
+        verify(poolManager, times(1)).planPoolRefresh(eq(owner), anyList(), anyMap(),
+            anyList());
     }
 
     @Test
@@ -84,63 +102,171 @@ public class RefresherTest {
 
         when(product.getId()).thenReturn("product id");
 
-        Pool pool = new Pool();
-        pool.setSubscriptionId("subId");
-        pool.setOwner(owner);
         Subscription subscription = new Subscription();
         subscription.setId("subId");
         subscription.setOwner(owner);
 
-        List<Pool> pools = Util.newList();
-        pools.add(pool);
         List<Subscription> subscriptions = Util.newList();
         subscriptions.add(subscription);
 
         when(subAdapter.getSubscriptions(product)).thenReturn(subscriptions);
         when(subAdapter.getSubscriptions(owner)).thenReturn(subscriptions);
-        when(subAdapter.getSubscription("subId")).thenReturn(subscription);
-
-        when(poolCurator.listAvailableEntitlementPools(null, owner, null, null, false,
-            false)).thenReturn(pools);
-        when(poolCurator.lookupBySubscriptionId("subId")).thenReturn(pools);
 
         refresher.add(owner);
         refresher.add(product);
         refresher.run();
 
-        verify(poolManager, times(1)).refreshPoolsWithoutRegeneration(owner);
-        verify(poolManager, times(0)).updatePoolsForSubscription(any(List.class),
-            any(Subscription.class));
+        // The subscription is left to the owner refresh, which found nothing to do:
+        verify(poolManager, times(1)).planPoolRefresh(eq(owner), anyList(), anyMap(),
+            anyList());
+        verify(poolManager, never()).refreshPoolsChunk(anyList(), anyMap(), anyList(),
+            anyBoolean(), anyBoolean());
     }
 
     @Test
     public void testPoolOnlyExaminedOnceTwoProducts() {
-        Owner owner = mock(Owner.class);
         Product product = mock(Product.class);
         Product product2 = mock(Product.class);
 
         when(product.getId()).thenReturn("product id");
         when(product2.getId()).thenReturn("product id 2");
 
-        Pool pool = new Pool();
-        pool.setSubscriptionId("subId");
         Subscription subscription = new Subscription();
         subscription.setId("subId");
 
-        List<Pool> pools = Util.newList();
-        pools.add(pool);
         List<Subscription> subscriptions = Util.newList();
         subscriptions.add(subscription);
 
         when(subAdapter.getSubscriptions(product)).thenReturn(subscriptions);
         when(subAdapter.getSubscriptions(product2)).thenReturn(subscriptions);
-        when(subAdapter.getSubscription("subId")).thenReturn(subscription);
-        when(poolCurator.lookupBySubscriptionId("subId")).thenReturn(pools);
         refresher.add(product);
         refresher.add(product2);
         refresher.run();
 
-        verify(poolManager, times(1)).updatePoolsForSubscription(any(List.class),
-            any(Subscription.class));
+        ArgumentCaptor<List> subs = ArgumentCaptor.forClass(List.class);
+        verify(poolManager, times(1)).refreshPoolsChunk(subs.capture(), anyMap(),
+            anyList(), eq(false), eq(false));
+        assertEquals(1, subs.getValue().size());
+    }
+
+    @Test
+    public void testChunksReportProgress() {
+        Product product = mock(Product.class);
+        when(subAdapter.getSubscriptions(product)).thenReturn(createSubscriptions(5));
+        RecordingProgress progress = new RecordingProgress();
+
+        refresher = new Refresher(poolManager, workers, subAdapter, false, 2, 1);
+        refresher.setProgress(progress);
+        refresher.add(product);
+        refresher.run();
+
+        verify(poolManager, times(3)).refreshPoolsChunk(anyList(), anyMap(), anyList(),
+            eq(false), eq(false));
+        assertEquals("2/5 4/5 5/5", progress.toString());
+    }
+
+    @Test
+    public void testParallelChunksReadPoolsAgain() {
+        Product product = mock(Product.class);
+        when(subAdapter.getSubscriptions(product)).thenReturn(createSubscriptions(5));
+        RecordingProgress progress = new RecordingProgress();
+
+        refresher = new Refresher(poolManager, workers, subAdapter, true, 2, 3);
+        refresher.setProgress(progress);
+        refresher.add(product);
+        refresher.run();
+
+        int chunks = 0;
+        for (CandlepinPoolManager worker : workers.created) {
+            ArgumentCaptor<List> subs = ArgumentCaptor.forClass(List.class);
+            verify(worker, atLeast(0)).refreshPoolsChunk(subs.capture(), anyMap(),
+                anyList(), eq(true), eq(true));
+            chunks += subs.getAllValues().size();
+        }
+        assertEquals(3, chunks);
+        assertEquals("2/5 4/5 5/5", progress.toString());
+    }
+
+    @Test
+    public void testParallelChunksNeverShareAPoolManager() {
+        // Every chunk revokes entitlements from over-consumed pools, which runs the
+        // unbind rules of the manager applying it:
+        Product product = mock(Product.class);
+        when(subAdapter.getSubscriptions(product)).thenReturn(createSubscriptions(12));
+        workers.revokeWhileRunning();
+
+        refresher = new Refresher(poolManager, workers, subAdapter, false, 1, 4);
+        refresher.add(product);
+        refresher.run();
+
+        assertEquals(4, workers.created.size());
+        assertEquals(12, workers.chunksRun.get());
+        assertFalse("a pool manager was used by two threads at once",
+            workers.shared.get());
+        verify(poolManager, never()).refreshPoolsChunk(anyList(), anyMap(), anyList(),
+            anyBoolean(), anyBoolean());
+    }
+
+    private List<Subscription> createSubscriptions(int count) {
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (int i = 0; i < count; i++) {
+            Subscription subscription = new Subscription();
+            subscription.setId("sub" + i);
+            subscriptions.add(subscription);
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Hands out a mock pool manager per worker, which can check that no two
+     * threads ever run a chunk on the same manager at once.
+     */
+    private static class WorkerManagers implements Provider<CandlepinPoolManager> {
+        private List<CandlepinPoolManager> created =
+            new CopyOnWriteArrayList<CandlepinPoolManager>();
+        private AtomicInteger chunksRun = new AtomicInteger();
+        private AtomicBoolean shared = new AtomicBoolean();
+        private boolean revoke;
+
+        void revokeWhileRunning() {
+            this.revoke = true;
+        }
+
+        public CandlepinPoolManager get() {
+            CandlepinPoolManager manager = mock(CandlepinPoolManager.class);
+            if (revoke) {
+                final AtomicBoolean running = new AtomicBoolean();
+                doAnswer(new Answer<Object>() {
+                    public Object answer(InvocationOnMock invocation) throws Exception {
+                        if (!running.compareAndSet(false, true)) {
+                            shared.set(true);
+                        }
+                        // long enough for other threads to reach their chunks
+                        Thread.sleep(20);
+                        chunksRun.incrementAndGet();
+                        running.set(false);
+                        return null;
+                    }
+                }).when(manager).refreshPoolsChunk(anyList(), anyMap(), anyList(),
+                    anyBoolean(), anyBoolean());
+            }
+            created.add(manager);
+            return manager;
+        }
+    }
+
+    private static class RecordingProgress implements Refresher.Progress {
+        private StringBuilder updates = new StringBuilder();
+
+        public void update(int done, int total) {
+            if (updates.length() > 0) {
+                updates.append(" ");
+            }
+            updates.append(done + "/" + total);
+        }
+
+        public String toString() {
+            return updates.toString();
+        }
     }
 }
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.jackson.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.candlepin.jackson.HateoasArrayExclude;
+import org.candlepin.jackson.HateoasBeanPropertyFilter;
+import org.candlepin.jackson.HateoasInclude;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonFilter;
+import org.codehaus.jackson.map.ser.impl.SimpleFilterProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * HateoasBeanPropertyFilterTest
+ */
+public class HateoasBeanPropertyFilterTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void init() {
+        mapper = new ObjectMapper();
+        SimpleFilterProvider filterProvider = new SimpleFilterProvider();
+        filterProvider.addFilter("ApiHateoas", new HateoasBeanPropertyFilter());
+        mapper.setFilters(filterProvider);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void nestedObjectsReducedToIncludedFields() throws Exception {
+        Map<String, Object> result = mapper.readValue(mapper.writeValueAsString(
+            new TestBean("parent", new TestBean("child"))), Map.class);
+
+        assertEquals(3, result.size());
+        assertEquals("lots", result.get("details"));
+        Map<String, Object> child = (Map<String, Object>) result.get("child");
+        assertEquals(1, child.size());
+        assertEquals("child", child.get("id"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void arrayExcludedFieldsSkipped() throws Exception {
+        List<Map<String, Object>> result = mapper.readValue(mapper.writeValueAsString(
+            Arrays.asList(new TestBean("one"), new TestBean("two"))), List.class);
+
+        assertEquals(2, result.size());
+        for (Map<String, Object> bean : result) {
+            assertTrue(bean.containsKey("id"));
+            assertFalse(bean.containsKey("details"));
+        }
+    }
+
+    @Test
+    public void propertyWithoutGetterNeverAnnotated() {
+        IncludeFilter filter = new IncludeFilter();
+        assertFalse(filter.included(new TestBean("one"), "missing"));
+        // answered by the negative entry the first lookup left behind
+        assertFalse(filter.included(new TestBean("two"), "missing"));
+        assertTrue(filter.included(new TestBean("three"), "id"));
+    }
+
+    /**
+     * IncludeFilter
+     */
+    private static class IncludeFilter extends HateoasBeanPropertyFilter {
+        boolean included(Object obj, String propertyName) {
+            return annotationPresent(obj, propertyName, HateoasInclude.class);
+        }
+    }
+
+    /**
+     * TestBean
+     */
+    @JsonFilter("ApiHateoas")
+    public static class TestBean {
+        private String id;
+        private TestBean child;
+
+        public TestBean(String id) {
+            this.id = id;
+        }
+
+        public TestBean(String id, TestBean child) {
+            this.id = id;
+            this.child = child;
+        }
+
+        @HateoasInclude
+        public String getId() {
+            return id;
+        }
+
+        @HateoasArrayExclude
+        public String getDetails() {
+            return "lots";
+        }
+
+        public TestBean getChild() {
+            return child;
+        }
+    }
+}
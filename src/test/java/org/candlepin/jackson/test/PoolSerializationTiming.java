@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.jackson.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import org.candlepin.config.Config;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.resteasy.JsonProvider;
+import org.candlepin.test.TestUtil;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * PoolSerializationTiming
+ *
+ * Times serializing a large pool list through the mapper the API uses, with its
+ * HATEOAS filter. Not a unit test, run it by hand to compare filter changes:
+ *
+ *   java org.candlepin.jackson.test.PoolSerializationTiming [pools] [rounds]
+ */
+public class PoolSerializationTiming {
+
+    private PoolSerializationTiming() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int poolCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ObjectMapper mapper = new JsonProvider(new Config(new HashMap<String, String>()))
+            .locateMapper(Pool.class, MediaType.APPLICATION_JSON_TYPE);
+        List<Pool> pools = createPools(poolCount);
+
+        // The first round also builds the filter's per class tables:
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            int length = mapper.writeValueAsString(pools).length();
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+            System.out.println("round " + (i + 1) + ": " + poolCount + " pools, " +
+                length + " chars in " + elapsed + " ms");
+        }
+    }
+
+    private static List<Pool> createPools(int count) {
+        Owner owner = new Owner("timing", "Timing Owner");
+        owner.setId("timing-owner");
+
+        List<Pool> pools = new ArrayList<Pool>(count);
+        for (int i = 0; i < count; i++) {
+            Set<ProvidedProduct> provided = new HashSet<ProvidedProduct>();
+            provided.add(new ProvidedProduct("provided-" + (i % 50),
+                "Provided " + (i % 50)));
+
+            Pool pool = TestUtil.createPool(owner,
+                TestUtil.createProduct("product-" + (i % 100), "Product " + (i % 100)),
+                provided, 10);
+            pool.setId("pool-" + i);
+            pool.setProductAttribute("sockets", "2", pool.getProductId());
+            pool.setProductAttribute("arch", "x86_64", pool.getProductId());
+            pools.add(pool);
+        }
+        return pools;
+    }
+}
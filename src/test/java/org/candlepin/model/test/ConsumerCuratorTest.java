@@ -15,10 +15,14 @@
 package org.candlepin.model.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
@@ -28,6 +32,9 @@ import org.candlepin.model.DeletedConsumerCurator;
 import org.candlepin.model.GuestId;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Product;
+import org.candlepin.model.ResultStream;
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
 import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Test;
 
@@ -123,6 +130,89 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertEquals("guestConsumer2", guests2.get(0).getName());
     }
 
+    @Test
+    public void findHostsAndGuestsByGuestIds() {
+        Owner owner = new Owner("test-owner", "Test Owner");
+        owner = ownerCurator.create(owner);
+        ConsumerType ct = new ConsumerType(ConsumerTypeEnum.SYSTEM);
+        ct = consumerTypeCurator.create(ct);
+        Consumer host = new Consumer("hostConsumer", "testUser", owner, ct);
+        consumerCurator.create(host);
+        Consumer guest = new Consumer("guestConsumer", "testUser", owner, ct);
+        guest.getFacts().put("virt.uuid", "test-guest-1");
+        consumerCurator.create(guest);
+        host.addGuestId(new GuestId("test-guest-1"));
+        host.addGuestId(new GuestId("test-guest-2"));
+        consumerCurator.update(host);
+
+        List<String> guestIds = Arrays.asList("test-guest-1", "test-guest-2",
+            "test-guest-3");
+        Map<String, Consumer> hosts = consumerCurator.getHostsByGuestIds(guestIds);
+        Map<String, Consumer> guests = consumerCurator.findByVirtUuids(guestIds);
+
+        assertEquals(2, hosts.size());
+        assertEquals(host, hosts.get("test-guest-1"));
+        assertEquals(host, hosts.get("test-guest-2"));
+        assertEquals(1, guests.size());
+        assertEquals(guest, guests.get("test-guest-1"));
+    }
+
+    @Test
+    public void findByVirtUuidFollowsFactUpdates() {
+        Owner owner = new Owner("test-owner", "Test Owner");
+        owner = ownerCurator.create(owner);
+        ConsumerType ct = new ConsumerType(ConsumerTypeEnum.SYSTEM);
+        ct = consumerTypeCurator.create(ct);
+        Consumer guest = new Consumer("guestConsumer", "testUser", owner, ct);
+        guest.setFact("virt.uuid", "test-guest-1");
+        guest = consumerCurator.create(guest);
+        assertEquals(guest, consumerCurator.findByVirtUuid("test-guest-1"));
+
+        Consumer updated = new Consumer("guestConsumer", "testUser", owner, ct);
+        updated.setId(guest.getId());
+        updated.setUuid(guest.getUuid());
+        updated.setFact("virt.uuid", "test-guest-2");
+        consumerCurator.update(updated);
+
+        assertNull(consumerCurator.findByVirtUuid("test-guest-1"));
+        assertEquals(guest, consumerCurator.findByVirtUuid("test-guest-2"));
+    }
+
+    @Test
+    public void getHostReturnsNewestReporter() throws Exception {
+        Owner owner = new Owner("test-owner", "Test Owner");
+        owner = ownerCurator.create(owner);
+        ConsumerType ct = new ConsumerType(ConsumerTypeEnum.SYSTEM);
+        ct = consumerTypeCurator.create(ct);
+        Consumer host1 = new Consumer("hostConsumer1", "testUser", owner, ct);
+        host1.addGuestId(new GuestId("test-guest-1"));
+        consumerCurator.create(host1);
+
+        // Make sure the second report is newer:
+        Thread.sleep(5);
+
+        Consumer host2 = new Consumer("hostConsumer2", "testUser", owner, ct);
+        host2.addGuestId(new GuestId("test-guest-1"));
+        consumerCurator.create(host2);
+
+        assertEquals(host2, consumerCurator.getHost("test-guest-1"));
+    }
+
+    @Test
+    public void findByUuids() {
+        Owner owner = new Owner("test-owner", "Test Owner");
+        owner = ownerCurator.create(owner);
+        ConsumerType ct = new ConsumerType(ConsumerTypeEnum.SYSTEM);
+        ct = consumerTypeCurator.create(ct);
+        Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
+        consumerCurator.create(consumer);
+
+        Map<String, Consumer> found = consumerCurator.findByUuids(
+            Arrays.asList(consumer.getUuid(), "unknown"));
+        assertEquals(1, found.size());
+        assertEquals(consumer, found.get(consumer.getUuid()));
+    }
+
     @Test
     public void noHostRegistered() {
         Consumer host = consumerCurator.getHost("system-uuid-for-guest");
@@ -204,4 +294,70 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertEquals(-1, deletionDate1.compareTo(deletionDate2));
         assertEquals(altOwner.getId(), dc.getOwnerId());
     }
+
+    @Test
+    public void listByUsernameAndTypePaged() {
+        Owner owner = ownerCurator.create(new Owner("test-owner", "Test Owner"));
+        ConsumerType ct = consumerTypeCurator.create(
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        for (int i = 1; i <= 3; i++) {
+            consumerCurator.create(new Consumer("consumer" + i, "testUser", owner, ct));
+        }
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPage(2);
+        pageRequest.setPerPage(2);
+        pageRequest.setSortBy("name");
+        pageRequest.setOrder(PageRequest.Order.DESCENDING);
+        Page<Consumer> page = consumerCurator.listByUsernameAndType(null, null, owner,
+            pageRequest);
+
+        assertEquals(Integer.valueOf(3), page.getMaxRecords());
+        assertEquals(2, page.getLastPage());
+        List<Consumer> consumers = new ArrayList<Consumer>();
+        for (Consumer c : page.getPageData()) {
+            consumers.add(c);
+        }
+        assertEquals(1, consumers.size());
+        assertEquals("consumer1", consumers.get(0).getName());
+    }
+
+    @Test
+    public void listByUsernameAndTypeIgnoresUnsortableField() {
+        Owner owner = ownerCurator.create(new Owner("test-owner", "Test Owner"));
+        ConsumerType ct = consumerTypeCurator.create(
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumerCurator.create(new Consumer("consumer", "testUser", owner, ct));
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPage(1);
+        pageRequest.setPerPage(10);
+        pageRequest.setSortBy("facts");
+        Page<Consumer> page = consumerCurator.listByUsernameAndType(null, null, owner,
+            pageRequest);
+
+        assertEquals(Integer.valueOf(1), page.getMaxRecords());
+    }
+
+    @Test
+    public void listByUsernameAndTypeStreamsWithoutPaging() {
+        Owner owner = ownerCurator.create(new Owner("test-owner", "Test Owner"));
+        ConsumerType ct = consumerTypeCurator.create(
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        for (int i = 0; i < 3; i++) {
+            consumerCurator.create(new Consumer("consumer" + i, "testUser", owner, ct));
+        }
+
+        Page<Consumer> page = consumerCurator.listByUsernameAndType("testUser", null,
+            owner, null);
+
+        assertNull(page.getMaxRecords());
+        assertTrue(page.getPageData() instanceof ResultStream);
+        int count = 0;
+        for (Consumer c : page.getPageData()) {
+            assertEquals(owner.getId(), c.getOwner().getId());
+            count++;
+        }
+        assertEquals(3, count);
+    }
 }
@@ -145,6 +145,25 @@ public class ConsumerTest extends DatabaseTestFixture {
         assertEquals("bar1", lookedUp.getFacts().get("foo1"));
     }
 
+    @Test
+    public void updateFactsWritesOnlyChangedFacts() {
+        Map<String, String> facts = new HashMap<String, String>();
+        facts.put("foo", "bar");
+        facts.put("foo1", "changed");
+        facts.put("foo2", "added");
+
+        Consumer lookedUp = consumerCurator.find(consumer.getId());
+        assertEquals(2, lookedUp.updateFacts(facts));
+        assertEquals(0, lookedUp.updateFacts(facts));
+
+        facts.remove("foo");
+        assertEquals(1, lookedUp.updateFacts(facts));
+        consumerCurator.update(lookedUp);
+
+        lookedUp = consumerCurator.find(consumer.getId());
+        assertEquals(facts, lookedUp.getFacts());
+    }
+
     @Test
     public void ensureUpdatedDateChangesOnUpdate() {
         Date beforeUpdateDate = consumer.getUpdated();
@@ -15,6 +15,7 @@
 package org.candlepin.model.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -26,7 +27,9 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 /**
  * DeletedConsumerCuratorTest
@@ -56,6 +59,13 @@ public class DeletedConsumerCuratorTest extends DatabaseTestFixture {
         assertEquals("abcde", found.getConsumerUuid());
     }
 
+    @Test
+    public void deletedUuids() {
+        Set<String> found = dcc.findDeletedUuids(Arrays.asList("abcde", "zzzzz"));
+        assertEquals(1, found.size());
+        assertTrue(found.contains("abcde"));
+    }
+
     @Test
     public void byConsumer() {
         Consumer c = mock(Consumer.class);
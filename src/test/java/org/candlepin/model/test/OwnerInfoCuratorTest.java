@@ -15,6 +15,8 @@
 package org.candlepin.model.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
@@ -688,4 +690,48 @@ public class OwnerInfoCuratorTest extends DatabaseTestFixture {
         assertEquals((Integer) 0, info.getConsumerCountByStatus("Unknown Status"));
     }
 
+    @Test
+    public void snapshotServedUntilOwnerChanges() {
+        setupConsumerCountTest();
+        OwnerInfo info = ownerInfoCurator.lookupByOwner(owner);
+        assertEquals((Integer) 2, info.getConsumerCountByStatus(ComplianceStatus.GREEN));
+
+        ConsumerType systemType = consumerTypeCurator.lookupByLabel("system");
+        Consumer consumer = new Consumer("test-consumer5", "test-user", owner, systemType);
+        consumer.setEntitlementStatus(ComplianceStatus.GREEN);
+        consumerCurator.create(consumer);
+
+        // Served from the snapshot until the change is reported:
+        info = ownerInfoCurator.lookupByOwner(owner);
+        assertConsumerCountsByEntitlementStatus(info);
+        assertEquals(info.getConsumerCounts(), ownerInfoCurator.lookupByOwner(owner)
+            .getConsumerCounts());
+
+        ownerInfoCurator.markDirty(owner.getId());
+        info = ownerInfoCurator.lookupByOwner(owner);
+        assertEquals((Integer) 3, info.getConsumerCountByStatus(ComplianceStatus.GREEN));
+    }
+
+    @Test
+    public void snapshotKeepsFamilyCounts() {
+        OwnerInfo counted = ownerInfoCurator.refresh(owner);
+        OwnerInfo stored = ownerInfoCurator.lookupByOwner(owner);
+
+        assertEquals(counted.getEntitlementsConsumedByFamily(),
+            stored.getEntitlementsConsumedByFamily());
+        assertEquals(counted.getConsumerTypeCountByPool(),
+            stored.getConsumerTypeCountByPool());
+        assertEquals(counted.getConsumerGuestCounts(), stored.getConsumerGuestCounts());
+    }
+
+    @Test
+    public void ownersToRefresh() {
+        assertTrue(ownerInfoCurator.listOwnersToRefresh().contains(owner));
+
+        ownerInfoCurator.lookupByOwner(owner);
+        assertFalse(ownerInfoCurator.listOwnersToRefresh().contains(owner));
+
+        ownerInfoCurator.markDirty(owner.getId());
+        assertTrue(ownerInfoCurator.listOwnersToRefresh().contains(owner));
+    }
 }
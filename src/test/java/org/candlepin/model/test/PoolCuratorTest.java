@@ -37,6 +37,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -265,6 +266,53 @@ public class PoolCuratorTest extends DatabaseTestFixture {
             activeOn, false, false).size());
     }
 
+    @Test
+    public void testListByProductMatchesProvidedProducts() {
+        Product other = TestUtil.createProduct();
+        productCurator.create(other);
+        Product unrelated = TestUtil.createProduct();
+        productCurator.create(unrelated);
+
+        Pool direct = TestUtil.createPool(owner, product);
+        poolCurator.create(direct);
+        Pool providing = TestUtil.createPool(owner, other);
+        providing.addProvidedProduct(new ProvidedProduct(product.getId(),
+            product.getName()));
+        poolCurator.create(providing);
+        poolCurator.create(TestUtil.createPool(owner, unrelated));
+
+        List<Pool> results = poolCurator.listAvailableEntitlementPools(null, owner,
+            product.getId(), null, false, false);
+        assertEquals(2, results.size());
+        assertTrue(results.contains(direct));
+        assertTrue(results.contains(providing));
+    }
+
+    @Test
+    public void testListAvailablePoolsProvidingAnyProduct() {
+        Product other = TestUtil.createProduct();
+        productCurator.create(other);
+        Product unrelated = TestUtil.createProduct();
+        productCurator.create(unrelated);
+
+        Pool direct = TestUtil.createPool(owner, product);
+        poolCurator.create(direct);
+        Pool providing = TestUtil.createPool(owner, unrelated);
+        providing.addProvidedProduct(new ProvidedProduct(other.getId(),
+            other.getName()));
+        poolCurator.create(providing);
+        poolCurator.create(TestUtil.createPool(owner, unrelated));
+
+        List<Pool> results = poolCurator.listAvailablePoolsProviding(null, owner,
+            Arrays.asList(product.getId(), other.getId()), null, false, false);
+        assertEquals(2, results.size());
+        assertTrue(results.contains(direct));
+        assertTrue(results.contains(providing));
+
+        assertTrue(poolCurator.listAvailablePoolsProviding(null, owner,
+            new ArrayList<String>(), null, false, false).isEmpty());
+    }
+
     @Test
     public void testActivationKeyList() {
         Date activeOn = TestUtil.createDate(2011, 2, 2);
@@ -395,4 +443,36 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(2, levels.size());
     }
 
+    @Test
+    public void testAdjustConsumed() {
+        Pool pool = createPoolAndSub(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        poolCurator.adjustConsumed(pool, 5, 2);
+        poolCurator.adjustConsumed(pool, -1, 0);
+
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(4), pool.getConsumed());
+        assertEquals(Long.valueOf(2), pool.getExported());
+    }
+
+    @Test
+    public void testReconcileConsumed() {
+        Pool pool = createPoolAndSub(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        Entitlement e = new Entitlement(pool, consumer, pool.getStartDate(),
+            pool.getEndDate(), 3);
+        entitlementCurator.create(e);
+
+        // Created behind the pool manager's back, so the counter has drifted:
+        List<String> drifted = poolCurator.listPoolIdsWithCounterDrift();
+        assertEquals(1, drifted.size());
+        assertEquals(pool.getId(), drifted.get(0));
+
+        assertEquals(1, poolCurator.reconcileConsumed(drifted));
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(3), pool.getConsumed());
+        assertEquals(Long.valueOf(0), pool.getExported());
+        assertTrue(poolCurator.listPoolIdsWithCounterDrift().isEmpty());
+    }
+
 }
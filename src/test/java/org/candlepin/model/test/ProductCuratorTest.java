@@ -21,6 +21,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -246,6 +247,31 @@ public class ProductCuratorTest extends DatabaseTestFixture {
         assertEquals(Long.valueOf(1), product.getMultiplier());
     }
 
+    @Test
+    public void listAllByIds() {
+        Product p = createTestProduct();
+        productCurator.create(p);
+        Product other = new Product("otherProductId", "Other Product");
+        productCurator.create(other);
+        entityManager().clear();
+
+        List<Product> found = productCurator.listAllByIds(
+            Arrays.asList(p.getId(), other.getId(), "unknown"));
+
+        // One result per product, despite the joined attributes:
+        assertEquals(2, found.size());
+        for (Product product : found) {
+            if (product.getId().equals(p.getId())) {
+                assertEquals(3, product.getAttributes().size());
+            }
+        }
+    }
+
+    @Test
+    public void listAllByIdsEmpty() {
+        assertTrue(productCurator.listAllByIds(new LinkedList<String>()).isEmpty());
+    }
+
     private Product createTestProduct() {
         Product p = new Product("testProductId", "Test Product");
 
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Statistic;
+import org.candlepin.model.Statistic.EntryType;
+import org.candlepin.model.Statistic.ValueType;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StatisticCuratorTest
+ */
+public class StatisticCuratorTest extends DatabaseTestFixture {
+
+    private Owner owner;
+    private Pool pool;
+    private ConsumerType systemType;
+
+    @Before
+    public void setUp() {
+        owner = createOwner();
+        ownerCurator.create(owner);
+
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        pool = createPoolAndSub(owner, product, 10L, Util.yesterday(), Util.tomorrow());
+        poolCurator.create(pool);
+
+        systemType = new ConsumerType("system");
+        consumerTypeCurator.create(systemType);
+
+        createConsumer("2", "true");
+        createConsumer("2", "false");
+        createConsumer("4", null);
+        createConsumer(null, null);
+    }
+
+    @Test
+    public void consumerCounts() {
+        statisticCurator.executeStatisticRun(owner.getId());
+
+        assertEquals((Integer) 4, value(EntryType.TOTALCONSUMERS, ValueType.RAW, null));
+        assertEquals((Integer) 1, value(EntryType.SYSTEM, ValueType.VIRTUAL, null));
+        assertEquals((Integer) 3, value(EntryType.SYSTEM, ValueType.PHYSICAL, null));
+    }
+
+    @Test
+    public void consumersPerSocketCount() {
+        statisticCurator.executeStatisticRun(owner.getId());
+
+        assertEquals((Integer) 2,
+            value(EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, "2"));
+        assertEquals((Integer) 1,
+            value(EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, "4"));
+        assertEquals((Integer) 1,
+            value(EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, null));
+    }
+
+    @Test
+    public void poolStatistics() {
+        statisticCurator.executeStatisticRun();
+
+        assertEquals((Integer) 10,
+            value(EntryType.TOTALSUBSCRIPTIONCOUNT, ValueType.RAW, null));
+        assertEquals((Integer) 0,
+            value(EntryType.TOTALSUBSCRIPTIONCONSUMED, ValueType.RAW, null));
+        assertEquals((Integer) 0,
+            value(EntryType.PERPOOL, ValueType.USED, pool.getId()));
+        assertEquals((Integer) 0,
+            value(EntryType.PERPRODUCT, ValueType.CONSUMED, pool.getProductId()));
+    }
+
+    private Integer value(EntryType entryType, ValueType valueType, String reference) {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        for (Statistic stat : statisticCurator.listAll()) {
+            if (owner.getId().equals(stat.getOwnerId()) &&
+                stat.getEntryType() == entryType && stat.getValueType() == valueType) {
+                values.put(stat.getValueReference(), stat.getValue());
+            }
+        }
+        return values.get(reference);
+    }
+
+    private void createConsumer(String sockets, String guest) {
+        Consumer consumer = new Consumer("consumer", "test-user", owner, systemType);
+        if (sockets != null) {
+            consumer.setFact("cpu.cpu_socket(s)", sockets);
+        }
+        if (guest != null) {
+            consumer.setFact("virt.is_guest", guest);
+        }
+        consumerCurator.create(consumer);
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerInfoCurator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * OwnerInfoRefreshJobTest
+ */
+public class OwnerInfoRefreshJobTest {
+
+    @Test
+    public void nothingToRefresh() throws Exception {
+        OwnerInfoCurator curator = mock(OwnerInfoCurator.class);
+        when(curator.listOwnersToRefresh()).thenReturn(Collections.<Owner>emptyList());
+
+        new OwnerInfoRefreshJob(curator).execute(null);
+        verify(curator, never()).refresh(any(Owner.class));
+    }
+
+    @Test
+    public void refreshesListedOwners() throws Exception {
+        Owner first = new Owner("first");
+        Owner second = new Owner("second");
+        OwnerInfoCurator curator = mock(OwnerInfoCurator.class);
+        when(curator.listOwnersToRefresh()).thenReturn(Arrays.asList(first, second));
+
+        new OwnerInfoRefreshJob(curator).execute(null);
+        verify(curator).refresh(first);
+        verify(curator).refresh(second);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.PoolCurator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PoolCounterReconcilerJobTest
+ */
+public class PoolCounterReconcilerJobTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void nothingToReconcile() throws Exception {
+        PoolCurator curator = mock(PoolCurator.class);
+        when(curator.listPoolIdsWithCounterDrift())
+            .thenReturn(Collections.<String>emptyList());
+
+        new PoolCounterReconcilerJob(curator).execute(null);
+        verify(curator, never()).reconcileConsumed(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void reconcilesInBatches() throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < PoolCounterReconcilerJob.BATCH_SIZE + 1; i++) {
+            ids.add("pool" + i);
+        }
+        PoolCurator curator = mock(PoolCurator.class);
+        when(curator.listPoolIdsWithCounterDrift()).thenReturn(ids);
+
+        new PoolCounterReconcilerJob(curator).execute(null);
+        verify(curator).reconcileConsumed(
+            ids.subList(0, PoolCounterReconcilerJob.BATCH_SIZE));
+        verify(curator).reconcileConsumed(
+            ids.subList(PoolCounterReconcilerJob.BATCH_SIZE, ids.size()));
+        verify(curator, times(2)).reconcileConsumed(anyList());
+    }
+}
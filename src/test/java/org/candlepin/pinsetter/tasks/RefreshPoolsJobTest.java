@@ -24,14 +24,17 @@ import static org.mockito.Mockito.when;
 
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.Refresher;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.pinsetter.core.model.JobStatus;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 
 /**
  * RefreshPoolsJobTest
@@ -47,8 +50,12 @@ public class RefreshPoolsJobTest {
         JobExecutionContext ctx = mock(JobExecutionContext.class);
         JobDataMap jdm = mock(JobDataMap.class);
         Refresher refresher = mock(Refresher.class);
+        JobCurator jc = mock(JobCurator.class);
+        JobDetail detail = mock(JobDetail.class);
 
         when(ctx.getMergedJobDataMap()).thenReturn(jdm);
+        when(ctx.getJobDetail()).thenReturn(detail);
+        when(detail.getKey()).thenReturn(new JobKey("refresh_pools_job"));
         when(jdm.getString(eq(JobStatus.TARGET_ID))).thenReturn("someownerkey");
         when(jdm.getBoolean(eq(RefreshPoolsJob.LAZY_REGEN))).thenReturn(true);
         when(oc.lookupByKey(eq("someownerkey"))).thenReturn(owner);
@@ -57,13 +64,20 @@ public class RefreshPoolsJobTest {
         when(refresher.add(eq(owner))).thenReturn(refresher);
 
         // test
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jc);
         rpj.execute(ctx);
 
         // verification
         verify(pm).getRefresher(true);
         verify(refresher).add(owner);
+        ArgumentCaptor<Refresher.Progress> progress =
+            ArgumentCaptor.forClass(Refresher.Progress.class);
+        verify(refresher).setProgress(progress.capture());
         verify(refresher).run();
+
+        progress.getValue().update(10, 20);
+        verify(jc).updateResult(eq("refresh_pools_job"),
+            eq("Refreshed 10 of 20 subscriptions and pools for owner test owner"));
         verify(ctx).setResult(eq("Pools refreshed for owner test owner"));
     }
 
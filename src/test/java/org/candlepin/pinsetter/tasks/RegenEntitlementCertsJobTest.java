@@ -14,17 +14,25 @@
  */
 package org.candlepin.pinsetter.tasks;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.PoolManager.RegenProgress;
+import org.candlepin.model.JobCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
 
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 
 
 /**
@@ -32,24 +40,52 @@ import org.quartz.JobExecutionContext;
  */
 public class RegenEntitlementCertsJobTest {
 
-    @Test
-    public void execute() throws Exception {
-        // prep
-        CandlepinPoolManager pm = mock(CandlepinPoolManager.class);
-        JobExecutionContext jec = mock(JobExecutionContext.class);
+    private CandlepinPoolManager pm;
+    private JobCurator jobCurator;
+    private JobExecutionContext jec;
+
+    @Before
+    public void init() {
+        pm = mock(CandlepinPoolManager.class);
+        jobCurator = mock(JobCurator.class);
+        jec = mock(JobExecutionContext.class);
         JobDetail detail = mock(JobDetail.class);
         JobDataMap jdm = mock(JobDataMap.class);
 
         when(jdm.getString(eq("product_id"))).thenReturn("foobarbaz");
         when(jdm.getBoolean(eq("lazy_regen"))).thenReturn(true);
         when(detail.getJobDataMap()).thenReturn(jdm);
+        when(detail.getKey()).thenReturn(new JobKey("regen_job"));
         when(jec.getJobDetail()).thenReturn(detail);
+    }
 
+    @Test
+    public void execute() throws Exception {
         // test
-        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(pm);
+        RegenProductEntitlementCertsJob recj =
+            new RegenProductEntitlementCertsJob(pm, jobCurator);
         recj.execute(jec);
 
         // verification
-        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true));
+        ArgumentCaptor<RegenProgress> progress =
+            ArgumentCaptor.forClass(RegenProgress.class);
+        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true),
+            (String) isNull(), progress.capture());
+
+        progress.getValue().batchDone("ent-100", 100, 250);
+        verify(jobCurator).updateCheckpoint(eq("regen_job"), eq("ent-100"),
+            any(String.class));
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        JobStatus status = new JobStatus();
+        status.setCheckpoint("ent-100");
+        when(jobCurator.find(eq("regen_job"))).thenReturn(status);
+
+        new RegenProductEntitlementCertsJob(pm, jobCurator).execute(jec);
+
+        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true), eq("ent-100"),
+            any(RegenProgress.class));
     }
 }
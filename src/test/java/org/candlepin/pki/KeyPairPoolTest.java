@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * KeyPairPoolTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class KeyPairPoolTest {
+
+    @Mock private PKIUtility pki;
+    @Mock private java.security.PublicKey publicKey;
+    @Mock private java.security.PrivateKey privateKey;
+    private KeyPair pair;
+
+    @Before
+    public void init() throws Exception {
+        pair = new KeyPair(publicKey, privateKey);
+        when(pki.generateNewKeyPair()).thenReturn(pair);
+    }
+
+    @Test
+    public void disabledPoolGeneratesInline() throws Exception {
+        KeyPairPool pool = new KeyPairPool(pki, config("0"));
+
+        assertSame(pair, pool.take());
+        assertSame(pair, pool.take());
+        verify(pki, times(2)).generateNewKeyPair();
+        assertEquals(2, pool.getInlineCount());
+        assertEquals(0, pool.getReserveSize());
+    }
+
+    @Test
+    public void takesFromReserve() throws Exception {
+        KeyPairPool pool = new KeyPairPool(pki, config("3"));
+        waitForReserve(pool, 3);
+
+        assertSame(pair, pool.take());
+        assertEquals(1, pool.getTakenCount());
+        assertEquals(0, pool.getInlineCount());
+
+        // the producer tops the reserve back up
+        waitForReserve(pool, 3);
+        assertTrue(pool.getGeneratedCount() >= 4);
+        assertTrue(pool.getGenerationRate() > 0);
+    }
+
+    private void waitForReserve(KeyPairPool pool, int size) throws Exception {
+        for (int i = 0; i < 500 && pool.getReserveSize() < size; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, pool.getReserveSize());
+    }
+
+    private Config config(String size) {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(ConfigProperties.KEYPAIR_POOL_SIZE, size);
+        props.put(ConfigProperties.KEYPAIR_POOL_THREADS, "1");
+        return new Config(props);
+    }
+}
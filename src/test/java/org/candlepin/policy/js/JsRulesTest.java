@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JsRulesTest
+ */
+public class JsRulesTest {
+
+    // Every evaluation of test_name_space builds a new namespace object with its
+    // own id, so the id tells us whether the namespace was evaluated again:
+    private static final String RULES =
+        "function echo() { return typeof(value) == 'undefined' ? null : value; }\n" +
+        "function getId() { return this.nsId; }\n" +
+        "function test_name_space() {\n" +
+        "    return { nsId: Math.random(), echo: echo, id: getId };\n" +
+        "}\n" +
+        "function other_name_space() { return Other; }\n" +
+        "var Other = {\n" +
+        "    echo: function() { return 'other'; }\n" +
+        "}\n";
+
+    private JsRulesProvider provider;
+
+    @Before
+    public void setUp() {
+        RulesCurator rulesCurator = mock(RulesCurator.class);
+        Rules rules = mock(Rules.class);
+        when(rules.getRules()).thenReturn(RULES);
+        when(rulesCurator.getRules()).thenReturn(rules);
+        when(rulesCurator.getUpdated()).thenReturn(new Date());
+        provider = new JsRulesProvider(rulesCurator);
+    }
+
+    @Test
+    public void argsOnlyVisibleToTheirCall() throws Exception {
+        JsRules jsRules = provider.get();
+        jsRules.init("test_name_space");
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("value", "first");
+        assertEquals("first", jsRules.invokeMethod("test_name_space", "echo", args));
+        assertNull(jsRules.invokeMethod("test_name_space", "echo"));
+    }
+
+    @Test
+    public void namespaceEvaluatedOncePerRulesVersion() throws Exception {
+        JsRules jsRules = provider.get();
+        Object id = jsRules.invokeMethod("test_name_space", "id");
+
+        assertEquals("other", jsRules.invokeMethod("other_name_space", "echo"));
+        assertEquals(id, jsRules.invokeMethod("test_name_space", "id"));
+
+        JsRules another = provider.get();
+        assertEquals(id, another.invokeMethod("test_name_space", "id"));
+    }
+
+    @Test
+    public void derivedValuesSharedPerRulesVersion() {
+        JsRules jsRules = provider.get();
+        assertNull(jsRules.getDerived("key"));
+        assertEquals("first", jsRules.putDerived("key", "first"));
+        assertEquals("first", jsRules.putDerived("key", "second"));
+
+        assertEquals("first", provider.get().getDerived("key"));
+    }
+
+    @Test
+    public void namespacesUsedConcurrently() throws Exception {
+        final JsRules jsRules = provider.get();
+        final Object id = jsRules.invokeMethod("test_name_space", "id");
+
+        // Each thread sticks to one namespace on the same instance, no call may
+        // run in the namespace of another thread:
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 4; i++) {
+            final boolean other = i % 2 == 0;
+            tasks.add(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    for (int j = 0; j < 200; j++) {
+                        Object result = other ?
+                            jsRules.invokeMethod("other_name_space", "echo") :
+                            jsRules.invokeMethod("test_name_space", "id");
+                        if (!(other ? "other" : id).equals(result)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -17,22 +17,39 @@ package org.candlepin.policy.js;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.mock;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Product;
 import org.candlepin.service.ProductServiceAdapter;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.google.inject.Provider;
+
 /**
  * ProductCacheTest
  */
@@ -44,6 +61,18 @@ public class ProductCacheTest {
     @Mock
     private Config config;
 
+    @Mock
+    private Provider<EntityManager> mockEntityManagerProvider;
+
+    @Mock
+    private EntityManager mockEntityManager;
+
+    @Mock
+    private Session mockSession;
+
+    @Mock
+    private Transaction mockTransaction;
+
     private TestingProductCache cache;
 
     @Before
@@ -51,7 +80,12 @@ public class ProductCacheTest {
         MockitoAnnotations.initMocks(this);
 
         when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        cache = new TestingProductCache(config, mockProductAdapter);
+        when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_TTL))).thenReturn(600);
+        when(mockEntityManagerProvider.get()).thenReturn(mockEntityManager);
+        when(mockEntityManager.getDelegate()).thenReturn(mockSession);
+        when(mockSession.getTransaction()).thenReturn(mockTransaction);
+        cache = new TestingProductCache(config, mockProductAdapter,
+            mockEntityManagerProvider);
     }
 
     @Test
@@ -60,7 +94,10 @@ public class ProductCacheTest {
         Config testConfigMock = mock(Config.class);
         when(testConfigMock.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX)))
             .thenReturn(maxProducts);
-        ProductCache testCache = new ProductCache(testConfigMock, mockProductAdapter);
+        when(testConfigMock.getInt(eq(ConfigProperties.PRODUCT_CACHE_TTL)))
+            .thenReturn(600);
+        ProductCache testCache = new ProductCache(testConfigMock, mockProductAdapter,
+            mockEntityManagerProvider);
         for (int i = 0; i < 220; i++) {
             addProductToCache(testCache, "Prod" + i);
         }
@@ -99,23 +136,27 @@ public class ProductCacheTest {
     }
 
     @Test
-    public void ensureFirstProductRemovedWhenMaxReached() {
+    public void ensureLeastRecentlyUsedProductRemovedWhenMaxReached() {
 
         Product initial = addProductToCache("initial_product");
-        for (int i = 0; i < 99; i++) {
+        Product first = addProductToCache("first_product");
+        for (int i = 0; i < 98; i++) {
             addProductToCache("Product" + i);
         }
-
         assertEquals(100, cache.size());
-        assertTrue(cache.contains(initial.getId()));
+
+        // Use the initial product again so it is no longer the eldest.
+        cache.getProductById(initial.getId());
 
         // Add one more to roll the cache over its max.
         Product overflow = addProductToCache("overflow");
 
         // Cache size should remain at MAX.
         assertEquals(100, cache.size());
-        // First product added should no longer be there.
-        assertFalse(cache.contains(initial.getId()));
+        assertEquals(1, cache.getEvictions());
+        // Least recently used product should no longer be there.
+        assertFalse(cache.contains(first.getId()));
+        assertTrue(cache.contains(initial.getId()));
         // New product should exist.
         assertTrue(cache.contains(overflow.getId()));
     }
@@ -127,55 +168,118 @@ public class ProductCacheTest {
     }
 
     @Test
-    public void doesNotContainProductWhenReferenceIsNull() {
+    public void unknownProductNotCached() {
+        assertNull(cache.getProductById("unknown"));
+        assertNull(cache.getProductById("unknown"));
+        assertEquals(0, cache.size());
+
+        verify(mockProductAdapter, times(2)).getProductById(eq("unknown"));
+    }
+
+    @Test
+    public void productLookedUpAgainWhenExpired() {
         String productId = "product";
         addProductToCache(productId);
         assertTrue(cache.contains(productId));
 
-        cache.setNullReferenceForKey(productId);
+        cache.time += 601 * 1000L;
         assertFalse(cache.contains(productId));
+
+        Product fetched = cache.getProductById(productId);
+        assertEquals(productId, fetched.getId());
+
+        // The adapter should be hit again on the second lookup.
+        verify(mockProductAdapter, times(2)).getProductById(eq(productId));
     }
 
     @Test
-    public void doesNotContainProductWhenReferencedProductIsNull() {
+    public void productLookedUpAgainWhenInvalidated() {
         String productId = "product";
         addProductToCache(productId);
-        assertTrue(cache.contains(productId));
-
-        cache.setNullReferenceForProduct(productId);
+        cache.invalidate(productId);
         assertFalse(cache.contains(productId));
+
+        cache.getProductById(productId);
+        verify(mockProductAdapter, times(2)).getProductById(eq(productId));
+        verify(mockTransaction, times(0)).registerSynchronization(
+            any(Synchronization.class));
     }
 
     @Test
-    public void productLookedUpAgainIfReferenceIsNull() {
+    public void productInvalidatedAgainAfterCommit() {
         String productId = "product";
+        when(mockTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+
+        cache.invalidate(productId);
+        verify(mockTransaction).registerSynchronization(sync.capture());
+
+        // Another request caches the product before the change is committed.
         addProductToCache(productId);
         assertTrue(cache.contains(productId));
 
-        cache.setNullReferenceForKey(productId);
+        sync.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        assertFalse(cache.contains(productId));
+    }
 
-        // Look the product up again so that we can verify that
-        // a second adapter call was not made.
-        Product fetched = cache.getProductById(productId);
-        assertEquals(productId, fetched.getId());
+    @Test
+    public void allProductsInvalidatedAgainAfterRollback() {
+        when(mockTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
 
-        // The adapter should be hit again on the second lookup.
-        verify(mockProductAdapter, times(2)).getProductById(eq(productId));
+        cache.invalidateAll();
+        verify(mockTransaction).registerSynchronization(sync.capture());
+
+        addProductToCache("product");
+        sync.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachesDetachedCopy() {
+        Product p = new Product("a_product", "a_product");
+        p.setAttribute("sockets", "2");
+        when(mockProductAdapter.getProductById(p.getId())).thenReturn(p);
+
+        Product fetched = cache.getProductById(p.getId());
+        assertNotSame(p, fetched);
+        assertEquals("2", fetched.getAttributeValue("sockets"));
+
+        // Changes to the entity do not leak into the cached copy.
+        p.setAttribute("sockets", "4");
+        assertEquals("2", cache.getProductById(p.getId()).getAttributeValue("sockets"));
     }
 
     @Test
-    public void productLookedUpAgainIfProductIsNullInReference() {
+    public void countsHitsAndMisses() {
         String productId = "product";
         addProductToCache(productId);
-        assertTrue(cache.contains(productId));
-
-        cache.setNullReferenceForProduct(productId);
+        cache.getProductById(productId);
+        cache.getProductById(productId);
 
-        Product fetched = cache.getProductById(productId);
-        assertEquals(productId, fetched.getId());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
 
-        // The adapter should be hit again on the second lookup.
-        verify(mockProductAdapter, times(2)).getProductById(eq(productId));
+    @Test
+    public void bulkLookupOnlyLoadsMissingProducts() {
+        Product cached = addProductToCache("cached");
+        Product missing = new Product("missing", "missing");
+        Set<String> missingIds = new HashSet<String>(Arrays.asList("missing", "unknown"));
+        when(mockProductAdapter.getProductsByIds(eq(missingIds)))
+            .thenReturn(Arrays.asList(missing));
+
+        Map<String, Product> found = cache.getProductsByIds(
+            Arrays.asList("cached", "missing", "unknown"));
+
+        assertEquals(2, found.size());
+        assertEquals(cached.getId(), found.get("cached").getId());
+        assertEquals(missing.getId(), found.get("missing").getId());
+        assertTrue(cache.contains("missing"));
+        verify(mockProductAdapter, times(1)).getProductById(eq("cached"));
+        verify(mockProductAdapter).getProductsByIds(eq(missingIds));
     }
 
     private Product addProductToCache(ProductCache prodCache, String productId) {
@@ -192,19 +296,16 @@ public class ProductCacheTest {
 
     private class TestingProductCache extends ProductCache {
 
-        public TestingProductCache(Config config, ProductServiceAdapter productAdapter) {
-            super(config, productAdapter);
-        }
+        private long time = System.currentTimeMillis();
 
-        public void setNullReferenceForKey(String productId) {
-            assertTrue(contains(productId));
-            this.products.put(productId, null);
+        public TestingProductCache(Config config, ProductServiceAdapter productAdapter,
+            Provider<EntityManager> entityManager) {
+            super(config, productAdapter, entityManager);
         }
 
-        public void setNullReferenceForProduct(String productId) {
-            assertTrue(contains(productId));
-            this.products.get(productId).clear();
-            assertNotNull(this.products.get(productId));
+        @Override
+        protected long now() {
+            return time;
         }
     }
 }
@@ -34,6 +34,7 @@ import java.util.Random;
 import java.util.Set;
 
 import org.candlepin.policy.js.JsRulesProvider;
+import org.candlepin.config.Config;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.Entitlement;
@@ -71,6 +72,7 @@ public class ComplianceRulesTest {
 
     @Mock private EntitlementCurator entCurator;
     @Mock private RulesCurator rulesCuratorMock;
+    @Mock private Config config;
     private JsRulesProvider provider;
 
     @Before
@@ -83,7 +85,8 @@ public class ComplianceRulesTest {
         when(rulesCuratorMock.getUpdated()).thenReturn(new Date());
         when(rulesCuratorMock.getRules()).thenReturn(rules);
         provider = new JsRulesProvider(rulesCuratorMock);
-        compliance = new ComplianceRules(provider.get(), entCurator);
+        compliance = new ComplianceRules(provider.get(), entCurator,
+            new ComplianceStatusCache(config));
         owner = new Owner("test");
     }
 
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ComplianceStatusCacheTest {
+
+    @Mock private Config config;
+    private ComplianceStatusCache cache;
+    private Consumer consumer;
+    private Entitlement ent;
+    private Date now;
+    private Date rules;
+
+    @Before
+    public void init() {
+        when(config.getInt(ConfigProperties.COMPLIANCE_CACHE_BUCKET)).thenReturn(3600);
+        when(config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX)).thenReturn(2);
+        cache = new ComplianceStatusCache(config);
+
+        consumer = newConsumer("consumer");
+        ent = new Entitlement();
+        ent.setId("ent");
+        ent.setQuantity(1);
+        now = new Date();
+        rules = new Date(1000L);
+    }
+
+    @Test
+    public void cachedStatusRebuiltWithCurrentEntitlements() {
+        cache.put(consumer, now, Arrays.asList(ent), rules, status(now, ent));
+
+        Entitlement reloaded = new Entitlement();
+        reloaded.setId("ent");
+        reloaded.setQuantity(1);
+        ComplianceStatus cached = cache.get(consumer, now, Arrays.asList(reloaded),
+            rules);
+
+        assertNotNull(cached);
+        assertSame(reloaded,
+            cached.getCompliantProducts().get("product").iterator().next());
+        assertEquals(1, cached.getNonCompliantProducts().size());
+    }
+
+    @Test
+    public void changedEntitlementMisses() {
+        List<Entitlement> ents = Arrays.asList(ent);
+        cache.put(consumer, now, ents, rules, status(now, ent));
+
+        ent.setQuantity(2);
+        assertNull(cache.get(consumer, now, ents, rules));
+    }
+
+    @Test
+    public void changedInstalledProductsMiss() {
+        List<Entitlement> ents = Arrays.asList(ent);
+        cache.put(consumer, now, ents, rules, status(now, ent));
+
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("other", "other"));
+        assertNull(cache.get(consumer, now, ents, rules));
+    }
+
+    @Test
+    public void newRulesMiss() {
+        List<Entitlement> ents = Arrays.asList(ent);
+        cache.put(consumer, now, ents, rules, status(now, ent));
+
+        assertNotNull(cache.get(consumer, now, ents, rules));
+        assertNull(cache.get(consumer, now, ents, new Date(2000L)));
+    }
+
+    @Test
+    public void invalidatedConsumerMisses() {
+        List<Entitlement> ents = Arrays.asList(ent);
+        cache.put(consumer, now, ents, rules, status(now, ent));
+
+        cache.invalidate("consumer");
+        assertNull(cache.get(consumer, now, ents, rules));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        List<Entitlement> ents = Arrays.asList(ent);
+        cache.put(consumer, now, ents, rules, status(now, ent));
+        cache.put(newConsumer("second"), now, ents, rules, status(now, ent));
+        cache.put(newConsumer("third"), now, ents, rules, status(now, ent));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(consumer, now, ents, rules));
+    }
+
+    @Test
+    public void disabledCacheStoresNothing() {
+        when(config.getInt(ConfigProperties.COMPLIANCE_CACHE_BUCKET)).thenReturn(0);
+        cache = new ComplianceStatusCache(config);
+        cache.put(consumer, now, Arrays.asList(ent), rules, status(now, ent));
+
+        assertEquals(0, cache.size());
+    }
+
+    private ComplianceStatus status(Date date, Entitlement compliant) {
+        ComplianceStatus status = new ComplianceStatus(date);
+        status.addCompliantProduct("product", compliant);
+        status.addNonCompliantProduct("missing");
+        return status;
+    }
+
+    private Consumer newConsumer(String id) {
+        Consumer c = new Consumer();
+        c.setId(id);
+        c.addInstalledProduct(new ConsumerInstalledProduct("product", "product"));
+        c.addInstalledProduct(new ConsumerInstalledProduct("missing", "missing"));
+        return c;
+    }
+}
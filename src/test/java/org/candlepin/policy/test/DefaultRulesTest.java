@@ -107,7 +107,7 @@ public class DefaultRulesTest {
         MockitoAnnotations.initMocks(this);
 
         when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        this.productCache = new ProductCache(config, this.prodAdapter);
+        this.productCache = new ProductCache(config, this.prodAdapter, null);
 
         URL url = this.getClass().getClassLoader()
             .getResource("rules/default-rules.js");
@@ -198,6 +198,43 @@ public class DefaultRulesTest {
 
 
 
+    @Test
+    public void batchPreEntitlementMatchesSinglePoolChecks() {
+        Product product = new Product(productId, "A product for testing");
+        when(this.prodAdapter.getProductById(productId)).thenReturn(product);
+
+        Pool available = createPool(owner, product);
+        Pool alreadyEntitled = createPool(owner, product);
+        consumer.addEntitlement(new Entitlement(alreadyEntitled, consumer, new Date(),
+            new Date(), 1));
+        Pool virtOnly = createPool(owner, product);
+        virtOnly.setAttribute("virt_only", "true");
+        Pool expired = createPool(owner, product);
+        expired.setEndDate(TestUtil.createDate(2000, 1, 1));
+
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(available);
+        pools.add(alreadyEntitled);
+        pools.add(virtOnly);
+        pools.add(expired);
+
+        Map<Pool, ValidationResult> results = enforcer.preEntitlement(consumer, pools, 1);
+
+        assertEquals(pools.size(), results.size());
+        for (Pool pool : pools) {
+            ValidationResult single = enforcer.preEntitlement(consumer, pool, 1)
+                .getResult();
+            assertEquals(single.getErrors().toString(),
+                results.get(pool).getErrors().toString());
+            assertEquals(single.getWarnings().toString(),
+                results.get(pool).getWarnings().toString());
+        }
+        assertTrue(results.get(available).isSuccessful());
+        assertFalse(results.get(alreadyEntitled).isSuccessful());
+        assertFalse(results.get(virtOnly).isSuccessful());
+        assertFalse(results.get(expired).isSuccessful());
+    }
+
     @Test public void bindWithQuantityNoMultiEntitle() {
         Product product = new Product(productId, "A product for testing");
         Pool pool = createPool(owner, product);
@@ -82,7 +82,7 @@ public class EnforcerTest extends DatabaseTestFixture {
         MockitoAnnotations.initMocks(this);
 
         when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        productCache = new ProductCache(config, productAdapter);
+        productCache = new ProductCache(config, productAdapter, null);
 
         owner = createOwner();
         ownerCurator.create(owner);
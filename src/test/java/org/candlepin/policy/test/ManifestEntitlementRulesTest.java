@@ -109,7 +109,7 @@ public class ManifestEntitlementRulesTest extends DatabaseTestFixture {
         jsRules = new JsRulesProvider(rulesCurator).get();
 
         when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        productCache = new ProductCache(config, productAdapter);
+        productCache = new ProductCache(config, productAdapter, null);
 
         enforcer = new ManifestEntitlementRules(new DateSourceForTesting(2010, 1, 1),
             jsRules, productCache, i18n, config, consumerCurator);
@@ -66,7 +66,7 @@ public class PoolHelperTest {
 
         Config config = mock(Config.class);
         when(config.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
-        productCache = new ProductCache(config, psa);
+        productCache = new ProductCache(config, psa, null);
 
         // default to an empty list, override in the test
         when(pool.getProvidedProducts()).thenReturn(Collections.EMPTY_SET);
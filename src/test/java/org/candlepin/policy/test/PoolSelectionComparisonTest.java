@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolQuantity;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.Enforcer;
+import org.candlepin.policy.js.JsRulesProvider;
+import org.candlepin.policy.js.ProductCache;
+import org.candlepin.policy.js.RuleExecutionException;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.entitlement.EntitlementRules;
+import org.candlepin.service.ProductServiceAdapter;
+import org.candlepin.test.TestDateUtil;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.DateSourceImpl;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xnap.commons.i18n.I18nFactory;
+
+/**
+ * PoolSelectionComparisonTest - runs the recorded consumer/pool fixtures in
+ * rules/pool-selection-fixtures.json through both the javascript select_pool_global
+ * rule and the java GreedyPoolSelector, and checks both engines agree.
+ */
+public class PoolSelectionComparisonTest {
+
+    @Mock private RulesCurator rulesCurator;
+    @Mock private ProductServiceAdapter prodAdapter;
+    @Mock private ConsumerCurator consumerCurator;
+    @Mock private Config jsConfig;
+    @Mock private Config javaConfig;
+
+    private Enforcer jsEnforcer;
+    private Enforcer javaEnforcer;
+    private Owner owner;
+
+    @Before
+    public void createEnforcers() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(jsConfig.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
+        when(javaConfig.getInt(eq(ConfigProperties.PRODUCT_CACHE_MAX))).thenReturn(100);
+        when(javaConfig.javaPoolSelectionEnabled()).thenReturn(true);
+        ProductCache productCache = new ProductCache(jsConfig, prodAdapter, null);
+
+        URL url = this.getClass().getClassLoader()
+            .getResource("rules/default-rules.js");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            url.openStream()));
+        StringBuilder builder = new StringBuilder();
+        String line = null;
+        while ((line = reader.readLine()) != null) {
+            builder.append(line + "\n");
+        }
+        reader.close();
+
+        Rules rules = mock(Rules.class);
+        when(rules.getRules()).thenReturn(builder.toString());
+        when(rulesCurator.getRules()).thenReturn(rules);
+        when(rulesCurator.getUpdated()).thenReturn(TestDateUtil.date(2010, 1, 1));
+
+        jsEnforcer = new EntitlementRules(new DateSourceImpl(),
+            new JsRulesProvider(rulesCurator).get(), productCache,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            jsConfig, consumerCurator);
+        javaEnforcer = new EntitlementRules(new DateSourceImpl(),
+            new JsRulesProvider(rulesCurator).get(), productCache,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            javaConfig, consumerCurator);
+
+        owner = new Owner("test-owner");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void enginesAgreeOnRecordedFixtures() throws Exception {
+        InputStream in = getClass().getClassLoader()
+            .getResourceAsStream("rules/pool-selection-fixtures.json");
+        List<Map<String, Object>> fixtures = new ObjectMapper().readValue(in,
+            List.class);
+        in.close();
+
+        assertTrue(fixtures.size() > 0);
+        for (Map<String, Object> fixture : fixtures) {
+            String name = (String) fixture.get("name");
+            Map<String, Integer> jsResult = select(jsEnforcer, fixture);
+            Map<String, Integer> javaResult = select(javaEnforcer, fixture);
+
+            assertEquals(name, jsResult, javaResult);
+            if (fixture.containsKey("expected")) {
+                assertEquals(name, fixture.get("expected"), javaResult);
+            }
+        }
+    }
+
+    @Test
+    public void javaEngineHandlesManyPoolClasses() {
+        // Far too many classes for the javascript power set, one pool per product:
+        List<Pool> pools = new LinkedList<Pool>();
+        String[] productIds = new String[40];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = "product-" + i;
+            Pool pool = TestUtil.createPool(owner, new Product("mkt-" + i, "mkt-" + i));
+            pool.setId("pool-" + i);
+            pool.addProvidedProduct(new ProvidedProduct(productIds[i], productIds[i]));
+            pools.add(pool);
+        }
+        // plus one pool providing the first half:
+        Pool big = TestUtil.createPool(owner, new Product("mkt-big", "mkt-big"));
+        big.setId("pool-big");
+        for (int i = 0; i < productIds.length / 2; i++) {
+            big.addProvidedProduct(new ProvidedProduct(productIds[i], productIds[i]));
+        }
+        pools.add(big);
+
+        List<PoolQuantity> best = javaEnforcer.selectBestPools(newConsumer(),
+            productIds, pools, new ComplianceStatus(new Date()), null,
+            new HashSet<String>());
+
+        assertEquals(productIds.length / 2 + 1, best.size());
+        assertTrue(best.contains(new PoolQuantity(big, 1)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> select(Enforcer enforcer, Map<String, Object> fixture) {
+        Consumer consumer = newConsumer();
+        Map<String, String> facts = (Map<String, String>) fixture.get("facts");
+        if (facts != null) {
+            for (Entry<String, String> fact : facts.entrySet()) {
+                consumer.setFact(fact.getKey(), fact.getValue());
+            }
+        }
+        consumer.setServiceLevel((String) fixture.get("serviceLevel"));
+
+        List<Pool> pools = new ArrayList<Pool>();
+        for (Map<String, Object> poolDef :
+            (List<Map<String, Object>>) fixture.get("pools")) {
+            pools.add(createPool(poolDef));
+        }
+
+        ComplianceStatus compliance = new ComplianceStatus(new Date());
+        List<String> compliant = (List<String>) fixture.get("compliant");
+        if (compliant != null) {
+            for (String productId : compliant) {
+                compliance.addCompliantProduct(productId, new Entitlement());
+            }
+        }
+        Map<String, List<Map<String, Object>>> partialStacks =
+            (Map<String, List<Map<String, Object>>>) fixture.get("partialStacks");
+        if (partialStacks != null) {
+            for (Entry<String, List<Map<String, Object>>> stack :
+                partialStacks.entrySet()) {
+                for (Map<String, Object> entDef : stack.getValue()) {
+                    Pool entPool = TestUtil.createPool(owner, new Product(
+                        (String) entDef.get("productId"), "existing"));
+                    entPool.setProductAttribute("sockets", (String) entDef.get("sockets"),
+                        entPool.getProductId());
+                    compliance.addPartialStack(stack.getKey(), new Entitlement(entPool,
+                        consumer, entPool.getStartDate(), entPool.getEndDate(),
+                        (Integer) entDef.get("quantity")));
+                }
+            }
+        }
+
+        Set<String> exempt = new HashSet<String>();
+        if (fixture.get("exempt") != null) {
+            exempt.addAll((List<String>) fixture.get("exempt"));
+        }
+
+        List<String> productIds = (List<String>) fixture.get("products");
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        try {
+            List<PoolQuantity> best = enforcer.selectBestPools(consumer,
+                productIds.toArray(new String[productIds.size()]), pools, compliance,
+                null, exempt);
+            if (best != null) {
+                for (PoolQuantity pq : best) {
+                    result.put(pq.getPool().getId(), pq.getQuantity());
+                }
+            }
+        }
+        catch (RuleExecutionException e) {
+            // No selection at all, compared as an empty result.
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Pool createPool(Map<String, Object> poolDef) {
+        String productId = (String) poolDef.get("productId");
+        Integer quantity = (Integer) poolDef.get("quantity");
+        Pool pool = TestUtil.createPool(owner, new Product(productId, productId),
+            quantity == null ? 5 : quantity);
+        pool.setId((String) poolDef.get("id"));
+
+        if (poolDef.containsKey("endYear")) {
+            pool.setEndDate(TestUtil.createDate((Integer) poolDef.get("endYear"), 11, 30));
+        }
+
+        Map<String, String> productAttributes =
+            (Map<String, String>) poolDef.get("productAttributes");
+        if (productAttributes != null) {
+            for (Entry<String, String> attr : productAttributes.entrySet()) {
+                pool.setProductAttribute(attr.getKey(), attr.getValue(), productId);
+            }
+        }
+
+        Map<String, String> attributes = (Map<String, String>) poolDef.get("attributes");
+        if (attributes != null) {
+            for (Entry<String, String> attr : attributes.entrySet()) {
+                pool.setAttribute(attr.getKey(), attr.getValue());
+            }
+        }
+
+        List<String> provided = (List<String>) poolDef.get("provided");
+        if (provided != null) {
+            for (String providedId : provided) {
+                pool.addProvidedProduct(new ProvidedProduct(providedId, providedId));
+            }
+        }
+        return pool;
+    }
+
+    private Consumer newConsumer() {
+        return new Consumer("test consumer", "test user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+    }
+}
@@ -16,7 +16,10 @@ package org.candlepin.resource;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.audit.EventFactory;
@@ -24,6 +27,7 @@ import org.candlepin.audit.EventSink;
 import org.candlepin.auth.Access;
 import org.candlepin.auth.UserPrincipal;
 import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.model.ActivationKeyCurator;
 import org.candlepin.model.Consumer;
@@ -54,8 +58,10 @@ import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -122,7 +128,7 @@ public class HypervisorResourceTest {
             this.activationKeyCurator, null, this.complianceRules,
             this.deletedConsumerCurator, null, new Config());
         hypervisorResource = new HypervisorResource(consumerResource, poolManager,
-            consumerCurator, this.deletedConsumerCurator);
+            consumerCurator, this.deletedConsumerCurator, new Config());
 
         // Ensure that we get the consumer that was passed in back from the create call.
         when(consumerCurator.create(any(Consumer.class))).thenAnswer(new Answer<Object>() {
@@ -143,7 +149,6 @@ public class HypervisorResourceTest {
         hostGuestMap.put("test-host", Arrays.asList(new GuestId("GUEST_A"),
             new GuestId("GUEST_B")));
 
-        when(consumerCurator.findByUuid(eq("test-host"))).thenReturn(null);
         when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
         when(principal.canAccess(eq(owner), eq(Access.ALL))).thenReturn(true);
         when(consumerTypeCurator.lookupByLabel(
@@ -177,7 +182,8 @@ public class HypervisorResourceTest {
         existing.setUuid("test-host");
         existing.addGuestId(new GuestId("GUEST_A"));
 
-        when(consumerCurator.findByUuid(eq("test-host"))).thenReturn(existing);
+        when(consumerCurator.findByUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("test-host", existing));
 
         HypervisorCheckInResult result = hypervisorResource.hypervisorCheckIn(hostGuestMap,
             principal, owner.getKey());
@@ -199,9 +205,7 @@ public class HypervisorResourceTest {
         hostGuestMap.put(expectedHostVirtId, Arrays.asList(new GuestId("GUEST_A"),
             new GuestId("GUEST_B")));
 
-        // Force create.
-        when(consumerCurator.findByUuid(eq(expectedHostVirtId))).thenReturn(null);
-
+        // Force create, no hosts are found.
         String expectedMessage = "Forced Exception.";
         RuntimeException exception = new RuntimeException(expectedMessage);
         // Simulate failure  when checking the owner
@@ -229,12 +233,13 @@ public class HypervisorResourceTest {
         existing.addGuestId(new GuestId("GUEST_A"));
 
         // Force update
-        when(consumerCurator.findByUuid(eq(expectedHostVirtId))).thenReturn(existing);
+        when(consumerCurator.findByUuids(anyCollection())).thenReturn(
+            Collections.singletonMap(expectedHostVirtId, existing));
 
         String expectedMessage = "Forced Exception.";
         RuntimeException exception = new RuntimeException(expectedMessage);
         // Simulate failure  when checking the owner
-        when(consumerCurator.getHost(any(String.class))).thenThrow(exception);
+        when(consumerCurator.getHostsByGuestIds(anyCollection())).thenThrow(exception);
 
         HypervisorCheckInResult result = hypervisorResource.hypervisorCheckIn(hostGuestMap,
             principal, owner.getKey());
@@ -245,4 +250,65 @@ public class HypervisorResourceTest {
             failures.iterator().next());
     }
 
+    @Test
+    public void hypervisorCheckInClearsSessionAfterEveryChunk() throws Exception {
+        Map<String, List<GuestId>> hostGuestMap =
+            new LinkedHashMap<String, List<GuestId>>();
+        Map<String, Consumer> hosts = new HashMap<String, Consumer>();
+        for (String hostId : Arrays.asList("host-1", "host-2", "host-3")) {
+            hostGuestMap.put(hostId, Arrays.asList(new GuestId("guest-" + hostId)));
+            Consumer existing = new Consumer();
+            existing.setUuid(hostId);
+            hosts.put(hostId, existing);
+        }
+        when(consumerCurator.findByUuids(anyCollection())).thenReturn(hosts);
+
+        HypervisorCheckInResult result = chunkedResource().hypervisorCheckIn(
+            hostGuestMap, principal, "admin");
+
+        assertEquals(3, result.getUpdated().size());
+        assertEquals(0, result.getFailedUpdate().size());
+        verify(consumerCurator, times(3)).findByUuids(anyCollection());
+        verify(consumerCurator, times(3)).clear();
+    }
+
+    @Test
+    public void hypervisorCheckInFailedChunkDoesNotFailLaterChunks() throws Exception {
+        Map<String, List<GuestId>> hostGuestMap =
+            new LinkedHashMap<String, List<GuestId>>();
+        Map<String, Consumer> hosts = new HashMap<String, Consumer>();
+        for (String hostId : Arrays.asList("host-1", "host-2", "host-3")) {
+            hostGuestMap.put(hostId, Arrays.asList(new GuestId("guest-" + hostId)));
+            Consumer existing = new Consumer();
+            existing.setUuid(hostId);
+            hosts.put(hostId, existing);
+        }
+        when(consumerCurator.findByUuids(anyCollection())).thenReturn(hosts);
+
+        // The second chunk cannot commit:
+        RuntimeException exception = new RuntimeException("Commit failed.");
+        when(deletedConsumerCurator.findDeletedUuids(anyCollection()))
+            .thenReturn(Collections.<String>emptySet())
+            .thenThrow(exception)
+            .thenReturn(Collections.<String>emptySet());
+
+        HypervisorCheckInResult result = chunkedResource().hypervisorCheckIn(
+            hostGuestMap, principal, "admin");
+
+        assertEquals(2, result.getUpdated().size());
+        assertEquals(1, result.getFailedUpdate().size());
+        assertEquals("host-2: Commit failed.", result.getFailedUpdate().iterator().next());
+        verify(consumerCurator, times(3)).clear();
+    }
+
+    private HypervisorResource chunkedResource() {
+        Config config = new Config(new HashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+            {
+                this.put(ConfigProperties.HYPERVISOR_CHECKIN_CHUNK_SIZE, "1");
+            }
+        });
+        return new HypervisorResource(consumerResource, poolManager,
+            consumerCurator, this.deletedConsumerCurator, config);
+    }
 }
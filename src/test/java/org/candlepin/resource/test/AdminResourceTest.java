@@ -20,6 +20,9 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Map;
+
+import org.candlepin.model.ConsumerFactMetrics;
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
 import org.candlepin.resource.AdminResource;
@@ -38,12 +41,14 @@ public class AdminResourceTest {
     private UserServiceAdapter usa;
     private AdminResource ar;
     private UserCurator uc;
+    private ConsumerFactMetrics metrics;
 
     @Before
     public void init() {
         usa = mock(DefaultUserServiceAdapter.class);
         uc = mock(UserCurator.class);
-        ar = new AdminResource(usa, uc);
+        metrics = new ConsumerFactMetrics();
+        ar = new AdminResource(usa, uc, metrics);
     }
 
     @Test
@@ -55,7 +60,7 @@ public class AdminResourceTest {
 
     @Test
     public void initWithNonDefaultUserService() {
-        ar = new AdminResource(mock(UserServiceAdapter.class), uc);
+        ar = new AdminResource(mock(UserServiceAdapter.class), uc, metrics);
         assertEquals("Already initialized.", ar.initialize());
     }
 
@@ -64,4 +69,15 @@ public class AdminResourceTest {
         when(uc.getUserCount()).thenReturn(new Long(1000));
         assertEquals("Already initialized.", ar.initialize());
     }
+
+    @Test
+    public void factMetrics() {
+        metrics.record(100, 2);
+        metrics.record(100, 0);
+
+        Map<String, Long> result = ar.getFactMetrics();
+        assertEquals(Long.valueOf(2), result.get("updates"));
+        assertEquals(Long.valueOf(200), result.get("factsReported"));
+        assertEquals(Long.valueOf(2), result.get("factsWritten"));
+    }
 }
@@ -23,6 +23,7 @@ import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,6 +39,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 import org.candlepin.audit.EventFactory;
 import org.candlepin.audit.EventSink;
 import org.candlepin.auth.NoAuthPrincipal;
@@ -109,27 +114,74 @@ public class ConsumerResourceTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testGetCertSerials() {
         Consumer consumer = createConsumer();
-        List<EntitlementCertificate> certificates = createEntitlementCertificates();
 
-        when(mockedEntitlementCertServiceAdapter.listForConsumer(consumer))
-            .thenReturn(certificates);
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 2L, 3L));
         when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
             consumer);
-        when(mockedEntitlementCurator.listByConsumer(consumer)).thenReturn(
+        when(mockedEntitlementCurator.listDirtyByConsumer(consumer)).thenReturn(
             new ArrayList<Entitlement>());
 
-        ConsumerResource consumerResource = new ConsumerResource(
+        Response response = createSerialsResource()
+            .getEntitlementCertificateSerials(consumer.getUuid(), mock(Request.class));
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(response.getMetadata().getFirst("ETag"));
+        verifyCertificateSerialNumbers((List<CertificateSerialDto>) response.getEntity());
+        verify(mockedEntitlementCertServiceAdapter, never()).listForConsumer(consumer);
+    }
+
+    @Test
+    public void testGetCertSerialsNotModified() {
+        Consumer consumer = createConsumer();
+
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(EntityTag.class))).thenReturn(
+            Response.notModified());
+
+        Response response = createSerialsResource()
+            .getEntitlementCertificateSerials(consumer.getUuid(), request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(null, response.getEntity());
+    }
+
+    @Test
+    public void testGetCertSerialsTagFollowsSerials() {
+        Consumer consumer = createConsumer();
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        ConsumerResource consumerResource = createSerialsResource();
+
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 2L, 3L));
+        Object first = consumerResource.getEntitlementCertificateSerials(
+            consumer.getUuid(), mock(Request.class)).getMetadata().getFirst("ETag");
+        Object same = consumerResource.getEntitlementCertificateSerials(
+            consumer.getUuid(), mock(Request.class)).getMetadata().getFirst("ETag");
+
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 2L, 4L));
+        Object changed = consumerResource.getEntitlementCertificateSerials(
+            consumer.getUuid(), mock(Request.class)).getMetadata().getFirst("ETag");
+
+        assertEquals(first, same);
+        assertFalse(first.equals(changed));
+    }
+
+    private ConsumerResource createSerialsResource() {
+        return new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
             mockedEntitlementCertServiceAdapter, null, null, null, null, null,
             null, null, mockedPoolManager, null, null, null, null, null, null,
             null, null, null, new Config());
-
-        List<CertificateSerialDto> serials = consumerResource
-            .getEntitlementCertificateSerials(consumer.getUuid());
-
-        verifyCertificateSerialNumbers(serials);
     }
 
     @Test (expected = RuntimeException.class)
@@ -153,7 +205,8 @@ public class ConsumerResourceTest {
         CandlepinPoolManager poolManager = new CandlepinPoolManager(null,
             mockedSubscriptionServiceAdapter, null,
             mockedEntitlementCertServiceAdapter, null, null, new Config(), null,
-            null, mockedEntitlementCurator, mockedConsumerCurator, null, null, null);
+            null, mockedEntitlementCurator, mockedConsumerCurator, null, null, null,
+            null);
 
         ConsumerResource consumerResource = new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
@@ -171,13 +224,6 @@ public class ConsumerResourceTest {
         assertTrue(serials.get(0).getSerial() > 0);
     }
 
-    private List<EntitlementCertificate> createEntitlementCertificates() {
-        return Arrays.asList(new EntitlementCertificate[]{
-            createEntitlementCertificate("key1", "cert1"),
-            createEntitlementCertificate("key2", "cert2"),
-            createEntitlementCertificate("key3", "cert3") });
-    }
-
 
     /**
      * Test just verifies that entitler is called only once and it doesn't need
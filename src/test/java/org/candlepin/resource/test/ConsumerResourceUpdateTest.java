@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -107,6 +108,41 @@ public class ConsumerResourceUpdateTest {
         verify(sink, never()).sendEvent((Event) any());
     }
 
+    @Test
+    public void unchangedFactsCountAsCheckIn() {
+        Consumer consumer = getFakeConsumer();
+        consumer.setFact("cpu.count", "4");
+
+        Consumer incoming = new Consumer();
+        incoming.setFact("cpu.count", "4");
+        this.resource.updateConsumer(consumer.getUuid(), incoming);
+
+        verify(consumerCurator).recordFactUpdate(1, 0);
+        verify(sink, never()).sendEvent((Event) any());
+    }
+
+    @Test
+    public void changedFactsCountWrites() {
+        Consumer consumer = getFakeConsumer();
+        consumer.setFact("cpu.count", "4");
+        consumer.setFact("memory", "2048");
+
+        Consumer incoming = new Consumer();
+        incoming.setFact("cpu.count", "8");
+        incoming.setFact("memory", "2048");
+        this.resource.updateConsumer(consumer.getUuid(), incoming);
+
+        verify(consumerCurator).recordFactUpdate(2, 1);
+    }
+
+    @Test
+    public void missingFactsAreNotCounted() {
+        Consumer consumer = getFakeConsumer();
+        this.resource.updateConsumer(consumer.getUuid(), new Consumer());
+
+        verify(consumerCurator, never()).recordFactUpdate(anyInt(), anyInt());
+    }
+
     private Consumer getFakeConsumer() {
         Consumer consumer = new Consumer();
         String uuid = "FAKEUUID";
@@ -379,9 +415,11 @@ public class ConsumerResourceUpdateTest {
         ConsumerInstalledProduct installed = mock(ConsumerInstalledProduct.class);
         guest1.addInstalledProduct(installed);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
         // Ensure that the guests host is the existing.
-        when(consumerCurator.getHost("Guest 1")).thenReturn(existingHost);
+        when(consumerCurator.getHostsByGuestIds(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", existingHost));
         when(consumerCurator.findByUuid("Guest 1")).thenReturn(guest1);
 
         Consumer existingMigratedTo = createConsumerWithGuests();
@@ -412,9 +450,11 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
         // Ensure that the guests host is the existing.
-        when(consumerCurator.getHost("Guest 1")).thenReturn(existingHost);
+        when(consumerCurator.getHostsByGuestIds(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", existingHost));
 
         Consumer existingMigratedTo = createConsumerWithGuests("Guest 1");
         existingMigratedTo.setUuid("MIGRATED_TO");
@@ -446,11 +486,10 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
-
-        // Ensure that the guest was not reported by another host.
-        when(consumerCurator.getHost("Guest 1")).thenReturn(null);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
 
+        // The guest was not reported by another host, so no host is found.
         this.resource.updateConsumer(host.getUuid(), updatedHost);
         verify(poolManager, never()).revokeEntitlement(eq(entitlement));
     }
@@ -474,10 +513,12 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
 
         // Ensure that the guest was already reported by same host.
-        when(consumerCurator.getHost("Guest 1")).thenReturn(host);
+        when(consumerCurator.getHostsByGuestIds(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", host));
 
         this.resource.updateConsumer(host.getUuid(), updatedHost);
         verify(poolManager, never()).revokeEntitlement(eq(entitlement));
@@ -502,10 +543,11 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
 
         this.resource.updateConsumer(host.getUuid(), updatedHost);
-        //verify(consumerCurator).findByVirtUuid(eq("Guest 1"));
+        //verify(consumerCurator).findByVirtUuids(anyCollection());
         verify(poolManager, never()).revokeEntitlement(eq(entitlement));
     }
 
@@ -529,8 +571,10 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
-        when(consumerCurator.getHost("Guest 1")).thenReturn(host);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
+        when(consumerCurator.getHostsByGuestIds(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", host));
 
         this.resource.updateConsumer(host.getUuid(), updatedHost);
 
@@ -555,11 +599,12 @@ public class ConsumerResourceUpdateTest {
         guest1.setUuid("Guest 1");
         guest1.addEntitlement(entitlement);
 
-        when(consumerCurator.findByVirtUuid("Guest 1")).thenReturn(guest1);
+        when(consumerCurator.findByVirtUuids(anyCollection())).thenReturn(
+            Collections.singletonMap("Guest 1", guest1));
 
         this.resource.updateConsumer(host.getUuid(), updatedHost);
 
-        //verify(consumerCurator).findByVirtUuid(eq("Guest 1"));
+        //verify(consumerCurator).findByVirtUuids(anyCollection());
         verify(poolManager, never()).revokeEntitlement(eq(entitlement));
     }
 
@@ -277,7 +277,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.getPools(owner.getKey(), null, null, false, null);
+        ownerResource.getPools(owner.getKey(), null, null, false, null, null);
     }
 
     @Test
@@ -291,9 +291,13 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         poolCurator.create(pool1);
         poolCurator.create(pool2);
 
-        List<Pool> pools = ownerResource.getPools(owner.getKey(),
-            null, null, true, null);
-        assertEquals(2, pools.size());
+        Iterable<Pool> pools = ownerResource.getPools(owner.getKey(),
+            null, null, true, null, null);
+        int count = 0;
+        for (Pool pool : pools) {
+            count++;
+        }
+        assertEquals(2, count);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -312,7 +316,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         securityInterceptor.enable();
 
         // Filtering should just cause this to return no results:
-        ownerResource.getPools(owner.getKey(), null, null, true, null);
+        ownerResource.getPools(owner.getKey(), null, null, true, null, null);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -413,7 +417,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.ownerConsumers(owner.getKey(), null, null);
+        ownerResource.ownerConsumers(owner.getKey(), null, null, null);
     }
 
     public void consumerCanListPools() {
@@ -424,7 +428,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         securityInterceptor.enable();
 
-        ownerResource.getPools(owner.getKey(), null, null, false, null);
+        ownerResource.getPools(owner.getKey(), null, null, false, null, null);
     }
 
     @Test(expected = ForbiddenException.class)
@@ -552,6 +556,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         this.entitlementCurator.create(e1);
         this.poolCurator.merge(e1.getPool());
+        this.poolCurator.adjustConsumed(pool, quantity, 0);
         this.poolCurator.refresh(pool);
 
         e1.setCreated(dateFormat.parse(date));
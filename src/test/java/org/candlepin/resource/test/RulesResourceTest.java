@@ -15,8 +15,12 @@
 package org.candlepin.resource.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import org.candlepin.model.Rules;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.resource.RulesResource;
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.util.VersionUtil;
@@ -65,4 +69,15 @@ public class RulesResourceTest extends DatabaseTestFixture {
         String rulesAfterDelete = rulesResource.get();
         assertEquals(rulesAfterDelete, origRules);
     }
+
+    @Test
+    public void uploadAndDeleteClearComplianceCache() {
+        ComplianceStatusCache cache = mock(ComplianceStatusCache.class);
+        RulesResource resource = new RulesResource(rulesCurator, i18n, cache);
+        resource.upload(new String(Base64.encodeBase64String("//foobar".getBytes())));
+        verify(cache).invalidateAll();
+
+        resource.delete();
+        verify(cache, times(2)).invalidateAll();
+    }
 }
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
+import org.candlepin.config.Config;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.Entitlement;
@@ -43,6 +44,7 @@ import org.candlepin.model.RulesCurator;
 import org.candlepin.policy.js.JsRulesProvider;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.VersionUtil;
 import org.junit.Before;
@@ -67,6 +69,7 @@ public class InstalledProductStatusCalculatorTest {
 
     @Mock private EntitlementCurator entCurator;
     @Mock private RulesCurator rulesCuratorMock;
+    @Mock private Config config;
     private JsRulesProvider provider;
 
     @Before
@@ -79,7 +82,8 @@ public class InstalledProductStatusCalculatorTest {
         when(rulesCuratorMock.getUpdated()).thenReturn(new Date());
         when(rulesCuratorMock.getRules()).thenReturn(rules);
         provider = new JsRulesProvider(rulesCuratorMock);
-        compliance = new ComplianceRules(provider.get(), entCurator);
+        compliance = new ComplianceRules(provider.get(), entCurator,
+            new ComplianceStatusCache(config));
         owner = new Owner("test");
     }
 
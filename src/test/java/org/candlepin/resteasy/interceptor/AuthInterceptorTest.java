@@ -29,6 +29,7 @@ import javax.servlet.http.HttpServletRequest;
 import org.candlepin.auth.ConsumerPrincipal;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
+import org.candlepin.auth.PrincipalCache;
 import org.candlepin.auth.UserPrincipal;
 import org.candlepin.auth.interceptor.SecurityHole;
 import org.candlepin.config.Config;
@@ -71,7 +72,8 @@ public class AuthInterceptorTest {
         cc = mock(ConsumerCurator.class);
         dcc = mock(DeletedConsumerCurator.class);
         injector = Guice.createInjector(new AuthInterceptorTestModule());
-        interceptor = new AuthInterceptor(config, usa, oc, cc, dcc, injector);
+        interceptor = new AuthInterceptor(config, usa, oc, cc, dcc,
+            new PrincipalCache(config), injector);
     }
 
     @Test(expected = UnauthorizedException.class)
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.paging.Page;
+import org.candlepin.paging.PageRequest;
+import org.jboss.resteasy.core.ServerResponse;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * LinkHeaderPostInterceptorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LinkHeaderPostInterceptorTest {
+    private static final String URL =
+        "https://localhost:8443/candlepin/owners/admin/consumers";
+
+    @Mock private HttpRequest request;
+    @Mock private UriInfo uriInfo;
+    @Mock private ServerResponse response;
+
+    private MultivaluedMap<String, Object> headers;
+    private LinkHeaderPostInterceptor interceptor;
+
+    @Before
+    public void init() {
+        headers = new MultivaluedMapImpl<String, Object>();
+        when(response.getMetadata()).thenReturn(headers);
+        when(request.getUri()).thenReturn(uriInfo);
+        ResteasyProviderFactory.pushContext(HttpRequest.class, request);
+        interceptor = new LinkHeaderPostInterceptor();
+    }
+
+    @After
+    public void clearContext() {
+        ResteasyProviderFactory.clearContextData();
+    }
+
+    @Test
+    public void noPage() {
+        interceptor.postProcess(response);
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void unpagedResults() {
+        Page<String> page = new Page<String>();
+        page.setPageData(Collections.singletonList("a"));
+        ResteasyProviderFactory.pushContext(Page.class, page);
+
+        interceptor.postProcess(response);
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void middlePage() {
+        pushPage(2, 10, 35, "?page=2&per_page=10");
+
+        interceptor.postProcess(response);
+        assertEquals("<" + URL + "?page=1&per_page=10>; rel=\"first\", " +
+            "<" + URL + "?page=1&per_page=10>; rel=\"prev\", " +
+            "<" + URL + "?page=3&per_page=10>; rel=\"next\", " +
+            "<" + URL + "?page=4&per_page=10>; rel=\"last\"",
+            headers.getFirst(LinkHeaderPostInterceptor.LINK_HEADER));
+        assertEquals(35, headers.getFirst(
+            LinkHeaderPostInterceptor.TOTAL_RECORDS_HEADER));
+    }
+
+    @Test
+    public void onlyPage() {
+        pushPage(1, 10, 0, "?per_page=10");
+
+        interceptor.postProcess(response);
+        assertEquals("<" + URL + "?per_page=10&page=1>; rel=\"first\", " +
+            "<" + URL + "?per_page=10&page=1>; rel=\"last\"",
+            headers.getFirst(LinkHeaderPostInterceptor.LINK_HEADER));
+    }
+
+    private void pushPage(int pageNumber, int perPage, int maxRecords,
+        final String query) {
+        // The interceptor changes the builder it gets, so hand out a new one each time:
+        when(uriInfo.getRequestUriBuilder()).thenAnswer(new Answer<UriBuilder>() {
+            public UriBuilder answer(InvocationOnMock invocation) {
+                return UriBuilder.fromUri(URL + query);
+            }
+        });
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPage(pageNumber);
+        pageRequest.setPerPage(perPage);
+        Page<String> page = new Page<String>();
+        page.setPageRequest(pageRequest);
+        page.setMaxRecords(maxRecords);
+        ResteasyProviderFactory.pushContext(Page.class, page);
+    }
+}
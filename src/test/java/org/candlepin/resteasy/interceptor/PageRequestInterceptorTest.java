@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.google.inject.Provider;
+
+import org.candlepin.exceptions.BadRequestException;
+import org.candlepin.paging.PageRequest;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.util.Locale;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * PageRequestInterceptorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PageRequestInterceptorTest {
+
+    @Mock private HttpRequest request;
+    @Mock private UriInfo uriInfo;
+    @Mock private Provider<I18n> i18nProvider;
+
+    private MultivaluedMap<String, String> params;
+    private PageRequestInterceptor interceptor;
+
+    @Before
+    public void init() {
+        params = new MultivaluedMapImpl<String, String>();
+        when(request.getUri()).thenReturn(uriInfo);
+        when(uriInfo.getQueryParameters()).thenReturn(params);
+        when(i18nProvider.get()).thenReturn(
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK));
+        interceptor = new PageRequestInterceptor(i18nProvider);
+    }
+
+    @After
+    public void clearContext() {
+        ResteasyProviderFactory.clearContextData();
+    }
+
+    @Test
+    public void noParameters() {
+        assertNull(interceptor.preProcess(request, null));
+        assertNull(ResteasyProviderFactory.getContextData(PageRequest.class));
+    }
+
+    @Test
+    public void pageAndPerPage() {
+        params.add("page", "3");
+        params.add("per_page", "25");
+        interceptor.preProcess(request, null);
+
+        PageRequest pageRequest = ResteasyProviderFactory.getContextData(
+            PageRequest.class);
+        assertTrue(pageRequest.isPaging());
+        assertEquals(Integer.valueOf(3), pageRequest.getPage());
+        assertEquals(Integer.valueOf(25), pageRequest.getPerPage());
+        assertEquals(50, pageRequest.getFirstResult());
+        assertEquals(PageRequest.Order.ASCENDING, pageRequest.getOrder());
+    }
+
+    @Test
+    public void perPageDefaultsToFirstPage() {
+        params.add("per_page", "5");
+        interceptor.preProcess(request, null);
+
+        PageRequest pageRequest = ResteasyProviderFactory.getContextData(
+            PageRequest.class);
+        assertEquals(Integer.valueOf(1), pageRequest.getPage());
+        assertEquals(Integer.valueOf(5), pageRequest.getPerPage());
+    }
+
+    @Test
+    public void orderingWithoutPaging() {
+        params.add("order", "desc");
+        params.add("sort_by", "name");
+        interceptor.preProcess(request, null);
+
+        PageRequest pageRequest = ResteasyProviderFactory.getContextData(
+            PageRequest.class);
+        assertFalse(pageRequest.isPaging());
+        assertEquals(PageRequest.Order.DESCENDING, pageRequest.getOrder());
+        assertEquals("name", pageRequest.getSortBy());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidPage() {
+        params.add("page", "zero");
+        interceptor.preProcess(request, null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void perPageTooLarge() {
+        params.add("per_page", String.valueOf(PageRequest.MAX_PER_PAGE + 1));
+        interceptor.preProcess(request, null);
+    }
+
+    @Test
+    public void lastPageWithIntOffset() {
+        int last = Integer.MAX_VALUE / 100 + 1;
+        params.add("page", String.valueOf(last));
+        params.add("per_page", "100");
+        interceptor.preProcess(request, null);
+
+        PageRequest pageRequest = ResteasyProviderFactory.getContextData(
+            PageRequest.class);
+        assertEquals(Integer.valueOf(last), pageRequest.getPage());
+        assertTrue(pageRequest.getFirstResult() >= 0);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void pagePastIntOffsetRejected() {
+        params.add("page", String.valueOf(Integer.MAX_VALUE / 100 + 2));
+        params.add("per_page", "100");
+        interceptor.preProcess(request, null);
+    }
+
+    @Test
+    public void maxPageForSingleRecordPages() {
+        params.add("page", String.valueOf(Integer.MAX_VALUE));
+        params.add("per_page", "1");
+        interceptor.preProcess(request, null);
+
+        PageRequest pageRequest = ResteasyProviderFactory.getContextData(
+            PageRequest.class);
+        assertEquals(Integer.MAX_VALUE - 1, pageRequest.getFirstResult());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidOrder() {
+        params.add("order", "sideways");
+        interceptor.preProcess(request, null);
+    }
+}
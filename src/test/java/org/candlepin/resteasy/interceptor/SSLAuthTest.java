@@ -18,12 +18,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.math.BigInteger;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.PrincipalCache;
+import org.candlepin.config.Config;
+import org.candlepin.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -43,11 +49,13 @@ public class SSLAuthTest {
     @Mock private DeletedConsumerCurator deletedConsumerCurator;
 
     private SSLAuth auth;
+    private X509Certificate idCert;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator);
+        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator,
+            new PrincipalCache(new Config()));
     }
 
     /**
@@ -105,8 +113,61 @@ public class SSLAuthTest {
     }
 
 
+    @Test
+    public void repeatedAuthenticationSkipsDeletedCheck() throws Exception {
+        Consumer consumer = createConsumer("453-44423-235");
+        mockCert("CN=453-44423-235");
+        when(idCert.getSerialNumber()).thenReturn(BigInteger.valueOf(7));
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+
+        assertEquals(new ConsumerPrincipal(consumer), this.auth.getPrincipal(request));
+        assertEquals(new ConsumerPrincipal(consumer), this.auth.getPrincipal(request));
+        verify(deletedConsumerCurator, times(1)).countByConsumerUuid("453-44423-235");
+    }
+
+    @Test
+    public void newCertificateSerialIsCheckedAgain() throws Exception {
+        Consumer consumer = createConsumer("453-44423-235");
+        mockCert("CN=453-44423-235");
+        when(idCert.getSerialNumber()).thenReturn(BigInteger.valueOf(7));
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+        this.auth.getPrincipal(request);
+
+        when(idCert.getSerialNumber()).thenReturn(BigInteger.valueOf(8));
+        this.auth.getPrincipal(request);
+        verify(deletedConsumerCurator, times(2)).countByConsumerUuid("453-44423-235");
+    }
+
+    @Test(expected = GoneException.class)
+    public void consumerDeletedSinceLastAuthentication() throws Exception {
+        Consumer consumer = createConsumer("453-44423-235");
+        mockCert("CN=453-44423-235");
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+        this.auth.getPrincipal(request);
+
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(null);
+        when(deletedConsumerCurator.countByConsumerUuid("453-44423-235")).thenReturn(1);
+        this.auth.getPrincipal(request);
+    }
+
+    @Test
+    public void unknownConsumerIsNotRemembered() throws Exception {
+        mockCert("CN=235-8");
+        assertNull(this.auth.getPrincipal(request));
+        assertNull(this.auth.getPrincipal(request));
+        verify(deletedConsumerCurator, times(2)).countByConsumerUuid("235-8");
+    }
+
+    private Consumer createConsumer(String uuid) {
+        Consumer consumer = new Consumer("machine_name", "test user",
+            new Owner("test owner"), new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setUuid(uuid);
+        consumer.setId("id-" + uuid);
+        return consumer;
+    }
+
     private void mockCert(String dn) {
-        X509Certificate idCert =  mock(X509Certificate.class);
+        idCert = mock(X509Certificate.class);
         Principal principal = mock(Principal.class);
 
         when(principal.getName()).thenReturn(dn);
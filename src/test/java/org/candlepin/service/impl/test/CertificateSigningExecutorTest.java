@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.service.impl.CertificateSigningExecutor;
+import org.junit.Test;
+
+/**
+ * CertificateSigningExecutorTest
+ */
+public class CertificateSigningExecutorTest {
+
+    @Test
+    public void threadsConfigurable() {
+        assertEquals(1, executor("1").getThreads());
+        assertEquals(3, executor("3").getThreads());
+    }
+
+    @Test
+    public void batchesShareTheSigningThreads() throws Exception {
+        CertificateSigningExecutor executor = executor("2");
+        Set<String> names = new HashSet<String>();
+        for (int batch = 0; batch < 3; batch++) {
+            for (Future<String> name : executor.invokeAll(threadNames(10))) {
+                names.add(name.get());
+            }
+        }
+
+        assertTrue(names.size() <= 2);
+        for (String name : names) {
+            assertTrue(name.startsWith("cert-signer-"));
+        }
+    }
+
+    private CertificateSigningExecutor executor(String threads) {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(ConfigProperties.ENTITLEMENT_REGEN_SIGNING_THREADS, threads);
+        return new CertificateSigningExecutor(new Config(props));
+    }
+
+    private List<Callable<String>> threadNames(int count) {
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Callable<String>() {
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            });
+        }
+        return tasks;
+    }
+}
@@ -22,6 +22,10 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -29,6 +33,7 @@ import static org.mockito.Mockito.mock;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -39,6 +44,7 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -51,6 +57,7 @@ import java.util.StringTokenizer;
 import java.util.zip.InflaterOutputStream;
 
 import org.candlepin.config.Config;
+import org.candlepin.json.model.EntitlementBody;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Consumer;
@@ -68,14 +75,17 @@ import org.candlepin.model.PoolAttribute;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductAttribute;
 import org.candlepin.model.ProductContent;
+import org.candlepin.model.ProvidedProduct;
 import org.candlepin.model.Subscription;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.service.ProductServiceAdapter;
+import org.candlepin.service.impl.CertificateSigningExecutor;
 import org.candlepin.service.impl.DefaultEntitlementCertServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.X509ExtensionUtil;
 import org.candlepin.util.X509V3ExtensionUtil;
@@ -87,7 +97,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.xnap.commons.i18n.I18nFactory;
 
 /**
@@ -125,6 +137,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
 
     private X509ExtensionUtil extensionUtil;
     private X509V3ExtensionUtil v3extensionUtil;
+    private ContentPayloadCache contentCache;
     private Product product;
     private Subscription subscription;
     private Entitlement entitlement;
@@ -145,14 +158,15 @@ public class DefaultEntitlementCertServiceAdapterTest {
     public void setUp() {
         Config config = new Config();
         extensionUtil = new X509ExtensionUtil(config);
-        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator);
+        contentCache = new ContentPayloadCache(config);
+        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator, contentCache);
 
         certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
             mockedPKI, extensionUtil, v3extensionUtil,
             mock(EntitlementCertificateCurator.class), keyPairCurator,
             serialCurator, productAdapter, entCurator,
             I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-            config);
+            config, new CertificateSigningExecutor(config));
 
 
         product = new Product("12345", "a product", "variant", "version",
@@ -584,14 +598,15 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mockV3extensionUtil, mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new CertificateSigningExecutor(mockConfig));
 
         entAdapter.createX509Certificate(entitlement, subscription,
             product, new BigInteger("1234"), keyPair(), true);
         verify(mockV3extensionUtil).getExtensions(any(Set.class), eq(entitlement),
             any(String.class), any(Map.class), eq(subscription));
-        verify(mockV3extensionUtil).getByteExtensions(any(Set.class),
+        verify(mockV3extensionUtil).createEntitlementBodyContent(any(Set.class),
             eq(entitlement), any(String.class), any(Map.class), eq(subscription));
+        verify(mockV3extensionUtil).getByteExtensions(any(EntitlementBody.class));
         verifyZeroInteractions(mockExtensionUtil);
     }
 
@@ -610,7 +625,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mockV3extensionUtil, mock(EntitlementCertificateCurator.class),
                 keyPairCurator, serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new CertificateSigningExecutor(mockConfig));
 
         entAdapter.createX509Certificate(entitlement, subscription,
             product, new BigInteger("1234"), keyPair(), true);
@@ -836,6 +851,22 @@ public class DefaultEntitlementCertServiceAdapterTest {
         assertTrue((Boolean) subs.get("virt_only"));
     }
 
+    @Test
+    public void providedProductsWithoutSubscriptionLoadedByProductId() {
+        ProvidedProduct provided = new ProvidedProduct("prov1", "Provided One");
+        provided.setId("provided-row-id");
+        pool.addProvidedProduct(provided);
+        Product providedProduct = new Product("prov1", "Provided One");
+        when(productAdapter.getProductsByIds(eq(Arrays.asList("prov1"))))
+            .thenReturn(Arrays.asList(providedProduct));
+
+        Set<Product> products = certServiceAdapter.getProvidedProducts(pool, null);
+
+        assertEquals(Collections.singleton(providedProduct), products);
+        verify(productAdapter).getProductsByIds(eq(Arrays.asList("prov1")));
+        verify(productAdapter, never()).getProductById(any(String.class));
+    }
+
     @Test
     public void testDetachedEntitlementDataNotAddedToCertV1()
         throws Exception {
@@ -858,6 +889,118 @@ public class DefaultEntitlementCertServiceAdapterTest {
         assertTrue(!cert.getCert().contains("ENTITLEMENT DATA"));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBulkGenerationKeepsEntitlementOrder() throws Exception {
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(
+            keyPair());
+        when(mockedPKI.getPemEncoded(any(X509Certificate.class))).thenReturn(
+            "".getBytes());
+        when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("".getBytes());
+
+        // Serial ids are assigned when the serials are persisted:
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                long id = 1;
+                for (CertificateSerial serial :
+                    (Collection<CertificateSerial>) invocation.getArguments()[0]) {
+                    serial.setId(id++);
+                }
+                return null;
+            }
+        }).when(serialCurator).createAll(any(Collection.class));
+
+        entitlement.setId("ent1");
+        Entitlement second = new Entitlement();
+        second.setId("ent2");
+        second.setQuantity(1);
+        second.setConsumer(consumer);
+        second.setStartDate(subscription.getStartDate());
+        second.setEndDate(subscription.getEndDate());
+        second.setPool(pool);
+        second.setOwner(owner);
+
+        Map<String, Subscription> subs = new HashMap<String, Subscription>();
+        Map<String, Product> products = new HashMap<String, Product>();
+        for (Entitlement ent : Arrays.asList(entitlement, second)) {
+            subs.put(ent.getId(), subscription);
+            products.put(ent.getId(), product);
+        }
+
+        List<EntitlementCertificate> certs = certServiceAdapter.generateEntitlementCerts(
+            Arrays.asList(entitlement, second), subs, products);
+
+        assertEquals(2, certs.size());
+        assertEquals(entitlement, certs.get(0).getEntitlement());
+        assertEquals(Long.valueOf(1), certs.get(0).getSerial().getId());
+        assertEquals(second, certs.get(1).getEntitlement());
+        assertEquals(Long.valueOf(2), certs.get(1).getSerial().getId());
+        assertTrue(second.getCertificates().contains(certs.get(1)));
+        verify(mockedPKI).createX509Certificate(eq("CN=ent2"), any(Set.class),
+            any(Set.class), any(Date.class), any(Date.class), any(KeyPair.class),
+            eq(BigInteger.valueOf(2)), any(String.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testV3EntitlementBodyBuiltOncePerCert() throws Exception {
+        when(consumer.getFact(eq("system.certificate_version"))).thenReturn("3.0");
+        when(consumer.hasFact(eq("system.testing"))).thenReturn(true);
+        when(consumer.getUuid()).thenReturn("test-consumer");
+
+        X509V3ExtensionUtil v3Spy = spy(v3extensionUtil);
+        DefaultEntitlementCertServiceAdapter entAdapter =
+            new DefaultEntitlementCertServiceAdapter(mockedPKI, extensionUtil,
+                v3Spy, mock(EntitlementCertificateCurator.class),
+                keyPairCurator, serialCurator, productAdapter, entCurator,
+                I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+                new Config(), new CertificateSigningExecutor(new Config()));
+
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(
+            keyPair());
+        when(mockedPKI.getPemEncoded(any(X509Certificate.class))).thenReturn(
+            "".getBytes());
+        when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("".getBytes());
+        when(mockedPKI.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
+            "signature".getBytes());
+        CertificateSerial serial = mock(CertificateSerial.class);
+        when(serial.getId()).thenReturn(1L);
+        when(serialCurator.create(any(CertificateSerial.class))).thenReturn(serial);
+
+        EntitlementCertificate cert = entAdapter.generateEntitlementCert(entitlement,
+            subscription, product);
+
+        assertTrue(cert.getCert().contains("ENTITLEMENT DATA"));
+        verify(v3Spy, times(1)).createEntitlementBody(any(Set.class),
+            eq(entitlement), any(String.class), any(Map.class), eq(subscription));
+        verify(v3Spy, never()).createEntitlementBodyContent(any(Set.class),
+            any(Entitlement.class), any(String.class), any(Map.class),
+            any(Subscription.class));
+    }
+
+    @Test
+    public void testContentExtensionCompressedOncePerContentSet() throws IOException {
+        Set<Product> products = new HashSet<Product>();
+        products.add(product);
+        product.setContent(superContent);
+        when(entitlement.getConsumer().getUuid()).thenReturn("test-consumer");
+
+        Set<X509ByteExtensionWrapper> first =
+            certServiceAdapter.prepareV3ByteExtensions(products, entitlement, "prefix",
+                null, subscription);
+        Set<X509ByteExtensionWrapper> second =
+            certServiceAdapter.prepareV3ByteExtensions(products, entitlement, "prefix",
+                null, subscription);
+
+        assertEquals(1, contentCache.size());
+        assertTrue(Arrays.equals(first.iterator().next().getValue(),
+            second.iterator().next().getValue()));
+
+        certServiceAdapter.prepareV3ByteExtensions(products, entitlement, "other",
+            null, subscription);
+        assertEquals(2, contentCache.size());
+    }
+
     @Test
     public void testContentExtension() throws IOException {
         Set<Product> products = new HashSet<Product>();
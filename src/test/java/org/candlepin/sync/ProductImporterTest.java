@@ -37,6 +37,7 @@ import org.candlepin.model.ContentCurator;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
 import org.candlepin.model.ProductCurator;
+import org.candlepin.policy.js.ProductCache;
 import org.candlepin.test.TestUtil;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Before;
@@ -51,13 +52,16 @@ public class ProductImporterTest {
     private ProductCurator productCuratorMock;
     private ContentCurator contentCuratorMock;
     private CandlepinPoolManager poolManagerMock;
+    private ProductCache productCacheMock;
     @Before
     public void setUp() throws IOException {
         mapper = SyncUtils.getObjectMapper(new Config(new HashMap<String, String>()));
         productCuratorMock = mock(ProductCurator.class);
         contentCuratorMock = mock(ContentCurator.class);
         poolManagerMock = mock(CandlepinPoolManager.class);
-        importer = new ProductImporter(productCuratorMock, contentCuratorMock, poolManagerMock);
+        productCacheMock = mock(ProductCache.class);
+        importer = new ProductImporter(productCuratorMock, contentCuratorMock,
+            poolManagerMock, productCacheMock);
     }
 
     @Test
@@ -106,6 +110,7 @@ public class ProductImporterTest {
         importer.store(storeThese);
 
         verify(productCuratorMock).createOrUpdate(created);
+        verify(productCacheMock).invalidate(created.getId());
     }
 
     @Test
@@ -22,6 +22,7 @@ import java.io.StringReader;
 
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.util.VersionUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,12 +38,13 @@ import org.mockito.runners.MockitoJUnitRunner;
 public class RulesImporterTest {
 
     @Mock private RulesCurator curator;
+    @Mock private ComplianceStatusCache complianceStatusCache;
     private RulesImporter importer;
     private String RULE = "good bye, cruel world!";
 
     @Before
     public void setUp() {
-        importer = new RulesImporter(curator);
+        importer = new RulesImporter(curator, complianceStatusCache);
     }
 
     @Test
@@ -51,6 +53,12 @@ public class RulesImporterTest {
         verify(curator).update(any(Rules.class)); // TODO: can't get custom matcher to work?
     }
 
+    @Test
+    public void importRulesClearsComplianceCache() throws IOException {
+        importer.importObject(new StringReader(RULE), VersionUtil.getVersionString());
+        verify(complianceStatusCache).invalidateAll();
+    }
+
     static class RulesMatcher extends ArgumentMatcher<Rules> {
         private String rule;
 
@@ -19,6 +19,7 @@ import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.policy.Enforcer;
+import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.policy.js.entitlement.PreEntHelper;
@@ -26,7 +27,10 @@ import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 import org.candlepin.policy.js.pool.PoolHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -46,6 +50,16 @@ public class EnforcerForTesting implements Enforcer {
         return new PreEntHelper(1, null);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> pools, Integer quantity) {
+        Map<Pool, ValidationResult> results = new LinkedHashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, new ValidationResult());
+        }
+        return results;
+    }
+
     @Override
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
         List<Pool> pools, ComplianceStatus compliance, String serviceLevelOverride,
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ContentPayloadCacheTest
+ */
+public class ContentPayloadCacheTest {
+
+    private ContentPayloadCache cache;
+
+    @Before
+    public void init() {
+        Config config = mock(Config.class);
+        when(config.getInt(eq(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX)))
+            .thenReturn(2);
+        cache = new ContentPayloadCache(config);
+    }
+
+    @Test
+    public void fingerprintDependsOnPathsAndOrder() {
+        String key = cache.fingerprint(Arrays.asList("/a/b", "/a/c"));
+
+        assertEquals(key, cache.fingerprint(Arrays.asList("/a/b", "/a/c")));
+        assertFalse(key.equals(cache.fingerprint(Arrays.asList("/a/c", "/a/b"))));
+        assertFalse(key.equals(cache.fingerprint(Arrays.asList("/a/b/a/c"))));
+    }
+
+    @Test
+    public void returnsCopies() {
+        byte[] payload = new byte[] {1, 2, 3};
+        cache.put("key", payload);
+        payload[0] = 9;
+
+        byte[] cached = cache.get("key");
+        assertArrayEquals(new byte[] {1, 2, 3}, cached);
+        cached[1] = 9;
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get("key"));
+    }
+
+    @Test
+    public void leastRecentlyUsedDropped() {
+        cache.put("one", new byte[] {1});
+        cache.put("two", new byte[] {2});
+        cache.get("one");
+        cache.put("three", new byte[] {3});
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("two"));
+        assertArrayEquals(new byte[] {1}, cache.get("one"));
+    }
+}